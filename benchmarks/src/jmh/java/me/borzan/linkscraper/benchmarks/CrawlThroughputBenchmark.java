@@ -0,0 +1,122 @@
+package me.borzan.linkscraper.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlSettings;
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A whole crawl against an in-process site of PAGE_COUNT interlinked pages, so the score is pages per second
+ * through everything: dispatching, politeness, reading the bodies, tokenizing, the visited set and the frontier.
+ *
+ * Politeness is effectively switched off, otherwise the benchmark would only measure the configured request rate.
+ * The server answers from pages generated up front, so it is not what is being measured either.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CrawlThroughputBenchmark {
+    static final int PAGE_COUNT = 500;
+    private static final int LINKS_PER_PAGE = 10;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private URI seed;
+    private PropagatingHyperlinkWebScraperService scraperService;
+
+    @Setup(Level.Trial)
+    public void startSite() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        String baseUri = "http://127.0.0.1:%d".formatted(server.getAddress().getPort());
+        byte[][] pages = generatePages(baseUri);
+
+        server.createContext("/", exchange -> {
+            byte[] page;
+            try {
+                page = pages[Integer.parseInt(exchange.getRequestURI().getPath().substring("/page/".length()))];
+            } catch (RuntimeException e) {
+                page = null;
+            }
+
+            if (page == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, page.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(page);
+                }
+            }
+            exchange.close();
+        });
+        serverExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        seed = URI.create(baseUri + "/page/0");
+        scraperService = new PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings.builder(10, 5)
+                .maxConcurrentRequests(64)
+                .politenessPolicy(new HostPolitenessPolicy(64, 1_000_000, 0, Duration.ZERO))
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopSite() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_COUNT)
+    public long crawl(Blackhole blackhole) {
+        return scraperService.scrapeUri(seed, blackhole::consume);
+    }
+
+    static byte[][] generatePages(String baseUri) {
+        Random random = new Random(42);
+        byte[][] pages = new byte[PAGE_COUNT][];
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            StringBuilder links = new StringBuilder("<ul>\n");
+            for (int link = 1; link <= LINKS_PER_PAGE; link++) {
+                // the first link chains all pages together so every page is reachable from the seed
+                int target = link == 1 ? (page + 1) % PAGE_COUNT : random.nextInt(PAGE_COUNT);
+                links.append("<li><a href=\"").append(baseUri).append("/page/").append(target).append("\">Page ").append(target).append("</a></li>\n");
+            }
+            links.append("</ul>\n");
+
+            String body = new String(HtmlFixtures.regularPage("https://www.example.com", 8 * 1024, random), StandardCharsets.UTF_8)
+                    .replace("<main>", "<main>\n" + links);
+            pages[page] = body.getBytes(StandardCharsets.UTF_8);
+        }
+        return pages;
+    }
+}
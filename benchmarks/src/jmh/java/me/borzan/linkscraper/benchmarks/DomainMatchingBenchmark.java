@@ -0,0 +1,76 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.domain.PublicSuffixList;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Every extracted link is turned into a Hyperlink, which extracts its domain up front, and is then compared to the
+ * seed's domain. Both happen once per link on the crawl's hot path. The bare Public Suffix List lookup is measured
+ * on its own as well, without the cache per host in front of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DomainMatchingBenchmark {
+    private static final int URI_COUNT = 1024;
+
+    private static final String[] HOSTS = {
+            "example.com", "www.example.com", "blog.eu.example.com", "example.co.uk", "shop.example.co.uk",
+            "localhost", "127.0.0.1", "a.b.c.d.e.example.org", "xn--bcher-kva.example", "cdn.example.net"
+    };
+
+    private final String[] hosts = new String[URI_COUNT];
+    private final URI[] uris = new URI[URI_COUNT];
+    private final Hyperlink[] hyperlinks = new Hyperlink[URI_COUNT];
+    private Hyperlink seed;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < URI_COUNT; i++) {
+            String host = HOSTS[random.nextInt(HOSTS.length)];
+            hosts[i] = host;
+            uris[i] = URI.create("https://%s/path/%d?q=%d".formatted(host, i, random.nextInt(1000)));
+            hyperlinks[i] = new Hyperlink(uris[i], "label " + i);
+        }
+        seed = new Hyperlink(URI.create("https://www.example.com/"), "");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URI_COUNT)
+    public void createHyperlink(Blackhole blackhole) {
+        for (URI uri : uris) {
+            blackhole.consume(new Hyperlink(uri, "label"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URI_COUNT)
+    public void registrableDomainStart(Blackhole blackhole) {
+        PublicSuffixList publicSuffixList = PublicSuffixList.getDefault();
+        for (String host : hosts) {
+            blackhole.consume(publicSuffixList.registrableDomainStart(host));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URI_COUNT)
+    public void sharesDomainWith(Blackhole blackhole) {
+        for (Hyperlink hyperlink : hyperlinks) {
+            blackhole.consume(seed.sharesDomainWith(hyperlink));
+        }
+    }
+}
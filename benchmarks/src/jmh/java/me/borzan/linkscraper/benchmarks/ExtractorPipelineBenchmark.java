@@ -0,0 +1,82 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.extract.CanonicalLinkExtractor;
+import me.borzan.linkscraper.web.extract.ImageExtractor;
+import me.borzan.linkscraper.web.extract.MetaRobotsExtractor;
+import me.borzan.linkscraper.web.extract.PageExtractors;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkExtractor;
+import me.borzan.linkscraper.web.hyperlink.UriCanonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What three more extractors cost per page when they share the pass of the tokenizer with the hyperlinks, compared to
+ * tokenizing the page once per extractor, which is what a crawl per extractor would spend on parsing alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExtractorPipelineBenchmark {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final URI PAGE_URI = URI.create("https://www.example.com/posts/1");
+
+    @Param({"SMALL", "LARGE"})
+    public HtmlFixtures.Fixture fixture;
+
+    private byte[] document;
+    private PageExtractors extractors;
+    private ImageExtractor imageExtractor;
+    private CanonicalLinkExtractor canonicalLinkExtractor;
+    private MetaRobotsExtractor metaRobotsExtractor;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        document = fixture.bytes();
+        imageExtractor = new ImageExtractor();
+        canonicalLinkExtractor = new CanonicalLinkExtractor();
+        metaRobotsExtractor = new MetaRobotsExtractor();
+        extractors = PageExtractors.NONE
+                .with(imageExtractor, (page, image) -> blackhole.consume(image))
+                .with(canonicalLinkExtractor, (page, canonicalUri) -> blackhole.consume(canonicalUri))
+                .with(metaRobotsExtractor, (page, metaRobots) -> blackhole.consume(metaRobots));
+    }
+
+    @Benchmark
+    public void extractHyperlinks(Blackhole blackhole) {
+        tokenize(new HyperlinkExtractor(PAGE_URI, UriCanonicalizer.DEFAULT, blackhole::consume));
+    }
+
+    @Benchmark
+    public void extractHyperlinksAndThreeMoreInOnePass(Blackhole blackhole) {
+        tokenize(new HyperlinkExtractor(PAGE_URI, UriCanonicalizer.DEFAULT, blackhole::consume)
+                .andThen(extractors.newPageListener(PAGE_URI)));
+    }
+
+    @Benchmark
+    public void extractHyperlinksAndThreeMoreInFourPasses(Blackhole blackhole) {
+        tokenize(new HyperlinkExtractor(PAGE_URI, UriCanonicalizer.DEFAULT, blackhole::consume));
+        tokenize(imageExtractor.newListener(PAGE_URI, blackhole::consume));
+        tokenize(canonicalLinkExtractor.newListener(PAGE_URI, blackhole::consume));
+        tokenize(metaRobotsExtractor.newListener(PAGE_URI, blackhole::consume));
+    }
+
+    private void tokenize(HtmlTokenListener listener) {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(listener);
+        for (int offset = 0; offset < document.length; offset += CHUNK_SIZE) {
+            tokenizer.feed(document, offset, Math.min(CHUNK_SIZE, document.length - offset));
+        }
+        tokenizer.finish();
+    }
+}
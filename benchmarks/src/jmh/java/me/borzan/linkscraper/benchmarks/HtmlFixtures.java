@@ -0,0 +1,137 @@
+package me.borzan.linkscraper.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/*
+ * Generates the HTML documents the benchmarks run on. They are generated instead of checked in so the corpus can be
+ * sized freely, but always from the same seed, so every run sees exactly the same bytes.
+ *
+ *  - SMALL is a typical page: head with styles and scripts, navigation, an article with inline links, a footer.
+ *  - LARGE is the same kind of content repeated up to about 1 MB, e.g. a long listing or archive page.
+ *  - PATHOLOGICAL is what makes naive parsers suffer: anchors that are never closed, huge attribute values,
+ *    markup inside scripts and comments, stray angle brackets and deep nesting.
+ */
+public final class HtmlFixtures {
+    public enum Fixture {
+        SMALL(20 * 1024),
+        LARGE(1024 * 1024),
+        PATHOLOGICAL(128 * 1024);
+
+        private final int targetSize;
+
+        Fixture(int targetSize) {
+            this.targetSize = targetSize;
+        }
+
+        public byte[] bytes() {
+            return this == PATHOLOGICAL ? pathologicalPage(targetSize) : regularPage("https://www.example.com", targetSize, new Random(42));
+        }
+    }
+
+    private static final String[] WORDS = {
+            "crawler", "frontier", "politeness", "latency", "throughput", "parser", "hyperlink", "domain", "server",
+            "response", "header", "cache", "über", "naïve", "東京", "benchmark", "allocation", "queue", "thread", "page"
+    };
+
+    private HtmlFixtures() {}
+
+    /*
+     * A page of roughly targetSize bytes whose internal links point to baseUri.
+     */
+    public static byte[] regularPage(String baseUri, int targetSize, Random random) {
+        StringBuilder page = new StringBuilder(targetSize + 4096);
+        page.append("""
+                <!DOCTYPE html>
+                <html lang="en">
+                <head>
+                  <meta charset="utf-8">
+                  <meta name="viewport" content="width=device-width, initial-scale=1">
+                  <title>Benchmark fixture</title>
+                  <link rel="stylesheet" href="/static/site.css">
+                  <style>a > span { color: #333; } .nav a:hover { text-decoration: underline; }</style>
+                  <script>
+                    var template = '<a href="https://tracking.example.net/pixel">not a link</a>';
+                    if (window.innerWidth < 600 && document.links.length > 0) { console.log(template); }
+                  </script>
+                </head>
+                <body class="article-page">
+                <!-- navigation, <a href="https://commented.out/">ignored</a> -->
+                <nav class="nav"><ul>
+                """);
+        for (int i = 0; i < 30; i++) {
+            page.append("  <li><a class=\"nav-link\" href=\"").append(baseUri).append("/section/").append(i).append("\">")
+                    .append(word(random)).append(' ').append(word(random)).append("</a></li>\n");
+        }
+        page.append("</ul></nav>\n<main>\n");
+
+        int article = 0;
+        while (page.length() < targetSize) {
+            page.append("<article id=\"post-").append(article).append("\">\n<h2><a href=\"").append(baseUri).append("/posts/")
+                    .append(article).append("\" title=\"").append(word(random)).append("\">").append(sentence(random, 6)).append("</a></h2>\n");
+            for (int paragraph = 0; paragraph < 4; paragraph++) {
+                page.append("<p>").append(sentence(random, 25)).append(' ');
+                switch (random.nextInt(4)) {
+                    case 0 -> page.append("<a href=\"").append(baseUri).append("/tags/").append(word(random)).append("\"\n   rel=\"tag\">")
+                            .append("<span>").append(word(random)).append("</span></a>");
+                    case 1 -> page.append("<a target='_blank' href='https://external-").append(random.nextInt(50))
+                            .append(".example.org/ref?id=").append(random.nextInt(100000)).append("&amp;utm_source=bench'>").append(sentence(random, 3)).append("</a>");
+                    case 2 -> page.append("<a href=\"/relative/").append(random.nextInt(1000)).append("\">").append(word(random)).append("</a>");
+                    default -> page.append("<img src=\"").append(baseUri).append("/img/").append(random.nextInt(1000)).append(".png\" alt=\"").append(word(random)).append("\">");
+                }
+                page.append(' ').append(sentence(random, 15)).append("</p>\n");
+            }
+            page.append("</article>\n");
+            article++;
+        }
+
+        page.append("</main>\n<footer><a href=\"").append(baseUri).append("/imprint\">Imprint</a> &copy; 2024</footer>\n</body>\n</html>\n");
+        return page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] pathologicalPage(int targetSize) {
+        Random random = new Random(7);
+        StringBuilder page = new StringBuilder(targetSize + 4096);
+        page.append("<html><head><title>pathological</title></head><body>\n");
+
+        page.append("<div data-blob=\"");
+        for (int i = 0; i < 16 * 1024; i++) {
+            page.append((char) ('a' + random.nextInt(26)));
+        }
+        page.append("\">\n");
+
+        int i = 0;
+        while (page.length() < targetSize) {
+            switch (i % 6) {
+                // an anchor that is never closed, which makes a lazy ".*?</a>" scan to the end of the document
+                case 0 -> page.append("<a href=\"https://www.example.com/unclosed/").append(i).append("\" class=\"x\">").append(sentence(random, 4)).append('\n');
+                case 1 -> page.append("<<<< < <a < href= >> ").append(sentence(random, 3)).append('\n');
+                case 2 -> page.append("<script>document.write('<a href=\"https://www.example.com/script/").append(i).append("\">x</a>');</script>\n");
+                case 3 -> page.append("<!-- <a href=\"https://www.example.com/comment/").append(i).append("\">x</a> -->\n");
+                case 4 -> {
+                    page.append("<span>".repeat(20)).append("<a href=https://www.example.com/unquoted/").append(i).append(">deep</a>").append("</span>".repeat(20)).append('\n');
+                }
+                default -> page.append("<a href=\"https://www.example.com/closed/").append(i).append("\"\n\n title=\"").append("t".repeat(200)).append("\">closed</a>\n");
+            }
+            i++;
+        }
+
+        page.append("</div></body></html>\n");
+        return page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        return sentence.toString();
+    }
+}
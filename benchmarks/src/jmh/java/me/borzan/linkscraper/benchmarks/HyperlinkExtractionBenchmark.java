@@ -0,0 +1,61 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Extracting the hyperlinks of one document: the streaming tokenizer against the old regex, plus the old
+ * newline flattening on its own. Both paths start from the raw bytes of the response, since decoding the body into
+ * a String was part of the old path's cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HyperlinkExtractionBenchmark {
+    // about the size of the chunks the HttpClient hands to a body subscriber
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Param({"SMALL", "LARGE", "PATHOLOGICAL"})
+    public HtmlFixtures.Fixture fixture;
+
+    private byte[] document;
+    private String decodedDocument;
+
+    @Setup
+    public void setUp() {
+        document = fixture.bytes();
+        decodedDocument = new String(document, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void streamingTokenizer(Blackhole blackhole) {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HyperlinkExtractor(blackhole::consume));
+        for (int offset = 0; offset < document.length; offset += CHUNK_SIZE) {
+            tokenizer.feed(document, offset, Math.min(CHUNK_SIZE, document.length - offset));
+        }
+        tokenizer.finish();
+    }
+
+    @Benchmark
+    public void legacyRegex(Blackhole blackhole) {
+        String body = new String(document, StandardCharsets.UTF_8);
+        LegacyRegexExtraction.parseHyperlinksFromResponse(LegacyRegexExtraction.extractBodyWithoutNewLines(body)).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public String legacyExtractBodyWithoutNewLines() {
+        return LegacyRegexExtraction.extractBodyWithoutNewLines(decodedDocument);
+    }
+}
@@ -0,0 +1,43 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.util.UriUtils;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * The regex based extraction the crawler used before the streaming tokenizer, copied verbatim (minus logging),
+ * so the tokenizer always has its baseline to be measured against.
+ */
+final class LegacyRegexExtraction {
+    private static final Pattern ABSOLUTE_HYPERLINK_REGEX =
+            Pattern.compile("<a\\s+[^>]*href=\"(https?[^\"\\s]*)\"[^>]*>(.*?)</a>", Pattern.CASE_INSENSITIVE);
+
+    private LegacyRegexExtraction() {}
+
+    static String extractBodyWithoutNewLines(String responseBody) {
+        // flatten response to one line so the regex can match originally-multi-line <a> tags
+        return responseBody.replaceAll("[\n\r]", "");
+    }
+
+    static Set<Hyperlink> parseHyperlinksFromResponse(String responseBody) {
+        Matcher regexMatcher = ABSOLUTE_HYPERLINK_REGEX.matcher(responseBody);
+
+        Set<Hyperlink> parsedLinks = new HashSet<>();
+        while (regexMatcher.find()) {
+            String hrefMatch = regexMatcher.group(1).trim();
+            String labelMatch = regexMatcher.group(2).replaceAll("\\s+", " ").trim();
+
+            URI parsedUri = UriUtils.tryParseUri(hrefMatch);
+            if (parsedUri != null) {
+                parsedLinks.add(new Hyperlink(parsedUri, labelMatch));
+            }
+        }
+
+        return parsedLinks;
+    }
+}
@@ -0,0 +1,82 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.duplicate.NearDuplicateIndex;
+import me.borzan.linkscraper.web.duplicate.SimHashFingerprinter;
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What near-duplicate detection adds to every page: fingerprinting the text on top of extracting the hyperlinks,
+ * and one lookup in an index that already holds a million pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NearDuplicateBenchmark {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int INDEXED_PAGES = 1_000_000;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"SMALL", "LARGE"})
+    public HtmlFixtures.Fixture fixture;
+
+    private byte[] document;
+    private NearDuplicateIndex index;
+    private long[] lookups;
+
+    @Setup
+    public void setUp() {
+        document = fixture.bytes();
+        Random random = new Random(42);
+        index = new NearDuplicateIndex();
+        for (int i = 0; i < INDEXED_PAGES; i++) {
+            index.containsNearDuplicateOrAdd(random.nextLong());
+        }
+        // indexed fingerprints with 3 bits flipped, so every lookup scans its buckets and finds a match without adding anything
+        lookups = new long[LOOKUPS];
+        Random indexed = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = indexed.nextLong() ^ (1L << 5) ^ (1L << 21) ^ (1L << 60);
+        }
+    }
+
+    @Benchmark
+    public void extractHyperlinks(Blackhole blackhole) {
+        tokenize(new HtmlTokenizer(new HyperlinkExtractor(blackhole::consume)));
+    }
+
+    @Benchmark
+    public long extractHyperlinksAndFingerprint(Blackhole blackhole) {
+        SimHashFingerprinter fingerprinter = new SimHashFingerprinter();
+        tokenize(new HtmlTokenizer(new HyperlinkExtractor(blackhole::consume).andThen(fingerprinter)));
+        return fingerprinter.fingerprint();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void lookUpNearDuplicate(Blackhole blackhole) {
+        for (long fingerprint : lookups) {
+            blackhole.consume(index.containsNearDuplicateOrAdd(fingerprint));
+        }
+    }
+
+    private void tokenize(HtmlTokenizer tokenizer) {
+        for (int offset = 0; offset < document.length; offset += CHUNK_SIZE) {
+            tokenizer.feed(document, offset, Math.min(CHUNK_SIZE, document.length - offset));
+        }
+        tokenizer.finish();
+    }
+}
@@ -0,0 +1,105 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.robots.RobotsRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/*
+ * Every new hyperlink is checked against the robots.txt of its host before it enters the frontier, so the check runs
+ * once per hyperlink on the crawl's hot path. The compiled rules are measured against the obvious alternative, a regex
+ * per rule that are all tried to find the longest match, on a robots.txt the size of a big site's, with prefix and
+ * wildcard rules. Parsing is measured as well, which happens once per host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RobotsRulesBenchmark {
+    private static final int URI_COUNT = 1024;
+    private static final int SECTIONS = 40;
+
+    private record RegexRule(boolean allow, int length, Pattern pattern) {}
+
+    private byte[] robotsTxt;
+    private RobotsRules rules;
+    private final List<RegexRule> regexRules = new ArrayList<>();
+    private final URI[] uris = new URI[URI_COUNT];
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder("User-agent: otherbot\nDisallow: /\n\nUser-agent: *\n");
+        for (int i = 0; i < SECTIONS; i++) {
+            text.append("Disallow: /section-%d/private/\n".formatted(i));
+            text.append("Allow: /section-%d/private/public-\n".formatted(i));
+            text.append("Disallow: /section-%d/*?session=\n".formatted(i));
+            text.append("Disallow: /*/print-%d$\n".formatted(i));
+        }
+        text.append("Disallow: /*.pdf$\nDisallow: /search\nCrawl-delay: 1\nSitemap: https://www.example.com/sitemap.xml\n");
+        robotsTxt = text.toString().getBytes(StandardCharsets.UTF_8);
+        rules = RobotsRules.parse(URI.create("https://www.example.com/robots.txt"), robotsTxt, "linkscraper");
+
+        for (String line : text.toString().split("\n")) {
+            if (line.startsWith("Allow: ") || (line.startsWith("Disallow: ") && !line.equals("Disallow: /"))) {
+                String pattern = line.substring(line.indexOf(' ') + 1);
+                boolean anchored = pattern.endsWith("$");
+                String literal = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+                StringBuilder regex = new StringBuilder();
+                for (String segment : literal.split("\\*", -1)) {
+                    regex.append(regex.isEmpty() ? "" : ".*").append(Pattern.quote(segment));
+                }
+                regexRules.add(new RegexRule(line.startsWith("Allow"), pattern.length(), Pattern.compile(regex + (anchored ? "$" : ""))));
+            }
+        }
+
+        Random random = new Random(42);
+        String[] suffixes = { "/page", "/private/doc", "/private/public-doc", "/list?session=abc", "/article/print-3", "/file.pdf", "/file.pdf?x" };
+        for (int i = 0; i < URI_COUNT; i++) {
+            uris[i] = URI.create("https://www.example.com/section-%d%s%d".formatted(random.nextInt(SECTIONS * 2), suffixes[random.nextInt(suffixes.length)], i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URI_COUNT)
+    public void compiledRules(Blackhole blackhole) {
+        for (URI uri : uris) {
+            blackhole.consume(rules.isAllowed(uri));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URI_COUNT)
+    public void regexPerRule(Blackhole blackhole) {
+        for (URI uri : uris) {
+            String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+            int longestMatch = -1;
+            boolean allowed = true;
+            for (RegexRule rule : regexRules) {
+                if (rule.length() >= longestMatch && rule.pattern().matcher(path).lookingAt()
+                        && (rule.length() > longestMatch || rule.allow())) {
+                    longestMatch = rule.length();
+                    allowed = rule.allow();
+                }
+            }
+            blackhole.consume(allowed);
+        }
+    }
+
+    @Benchmark
+    public RobotsRules parse() {
+        return RobotsRules.parse(URI.create("https://www.example.com/robots.txt"), robotsTxt, "linkscraper");
+    }
+}
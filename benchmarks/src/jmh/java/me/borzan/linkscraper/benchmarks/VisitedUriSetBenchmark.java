@@ -0,0 +1,115 @@
+package me.borzan.linkscraper.benchmarks;
+
+import me.borzan.linkscraper.web.visited.FingerprintVisitedUriSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The visited check every discovered link goes through, hammered by as many threads as a busy crawl has workers
+ * reporting results. The legacy variant is the synchronized map the crawler used before the fingerprint set, copied
+ * here as the baseline.
+ *
+ * A quarter of every thread's URIs are shared with the other threads, so the sets see both first visits and
+ * concurrent duplicates, like a crawl where many pages link to the same navigation targets.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class VisitedUriSetBenchmark {
+    private static final int URIS_PER_THREAD = 1 << 16;
+
+    public enum Implementation {
+        FINGERPRINT_HEAP, FINGERPRINT_OFF_HEAP, LEGACY_SYNCHRONIZED_MAP
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedSet {
+        @Param({"FINGERPRINT_HEAP", "FINGERPRINT_OFF_HEAP", "LEGACY_SYNCHRONIZED_MAP"})
+        public Implementation implementation;
+
+        private FingerprintVisitedUriSet fingerprintSet;
+        private LegacyKnownUris legacySet;
+
+        // recreated per iteration, otherwise every iteration after the first would only measure duplicates
+        @Setup(Level.Iteration)
+        public void setUp() {
+            switch (implementation) {
+                case FINGERPRINT_HEAP -> fingerprintSet = new FingerprintVisitedUriSet(1 << 10, false);
+                case FINGERPRINT_OFF_HEAP -> fingerprintSet = new FingerprintVisitedUriSet(1 << 10, true);
+                case LEGACY_SYNCHRONIZED_MAP -> legacySet = new LegacyKnownUris();
+            }
+        }
+
+        boolean markVisited(URI uri) {
+            return legacySet != null ? legacySet.isNew(uri, "label") : fingerprintSet.markVisited(uri);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadUris {
+        private static int nextThreadIndex;
+
+        private URI[] uris;
+        private int position;
+
+        @Setup
+        public void setUp() {
+            int threadIndex;
+            synchronized (ThreadUris.class) {
+                threadIndex = nextThreadIndex++;
+            }
+
+            uris = new URI[URIS_PER_THREAD];
+            for (int i = 0; i < URIS_PER_THREAD; i++) {
+                uris[i] = i % 4 == 0
+                        ? URI.create("https://www.example.com/shared/" + i)
+                        : URI.create("https://www.example.com/thread-%d/page/%d".formatted(threadIndex, i));
+            }
+        }
+
+        URI next() {
+            URI uri = uris[position];
+            position = (position + 1) & (URIS_PER_THREAD - 1);
+            return uri;
+        }
+    }
+
+    @Benchmark
+    public boolean markVisited(SharedSet set, ThreadUris threadUris) {
+        return set.markVisited(threadUris.next());
+    }
+
+    /*
+     * The crawler's old isNew check, which kept every label a URI was found with.
+     */
+    static final class LegacyKnownUris {
+        private final Map<URI, Set<String>> knownUris = new HashMap<>();
+
+        boolean isNew(URI uri, String label) {
+            synchronized (knownUris) {
+                if (knownUris.containsKey(uri)) {
+                    knownUris.get(uri).add(label);
+                    return false;
+                }
+
+                knownUris.computeIfAbsent(uri, key -> new HashSet<>()).add(label);
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package me.borzan.linkscraper.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.WebScraperService;
+import me.borzan.linkscraper.web.archive.WarcArchive;
+import me.borzan.linkscraper.web.archive.WarcRecordingHttpClient;
+import me.borzan.linkscraper.web.archive.WarcReplayHttpClient;
+import me.borzan.linkscraper.web.archive.WarcWriter;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlSettings;
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * The crawl of CrawlThroughputBenchmark three ways: against the in-process site, against it while recording every
+ * exchange into WARC files, and replayed from the WARC files of one recorded crawl, without any network at all.
+ * The score is pages per second, so the first two tell what recording costs, the last one how fast a crawl can be
+ * processed again once it is on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WarcReplayBenchmark {
+    private static final HostPolitenessPolicy NO_DELAY = new HostPolitenessPolicy(64, 1_000_000, 0, Duration.ZERO);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private URI seed;
+    private HyperlinkCrawlSettings settings;
+    private PropagatingHyperlinkWebScraperService liveService;
+    private PropagatingHyperlinkWebScraperService replayService;
+    private Path archiveDirectory;
+
+    private Path recordingDirectory;
+    private WarcWriter recording;
+    private PropagatingHyperlinkWebScraperService recordingService;
+
+    @Setup(Level.Trial)
+    public void recordSite() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        String baseUri = "http://127.0.0.1:%d".formatted(server.getAddress().getPort());
+        byte[][] pages = CrawlThroughputBenchmark.generatePages(baseUri);
+
+        server.createContext("/", exchange -> {
+            byte[] page;
+            try {
+                page = pages[Integer.parseInt(exchange.getRequestURI().getPath().substring("/page/".length()))];
+            } catch (RuntimeException e) {
+                page = null;
+            }
+
+            if (page == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, page.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(page);
+                }
+            }
+            exchange.close();
+        });
+        serverExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        seed = URI.create(baseUri + "/page/0");
+        settings = HyperlinkCrawlSettings.builder(10, 5).maxConcurrentRequests(64).politenessPolicy(NO_DELAY).build();
+        liveService = new PropagatingHyperlinkWebScraperService(settings);
+
+        archiveDirectory = Files.createTempDirectory("warc-replay-benchmark");
+        try (WarcWriter writer = new WarcWriter(archiveDirectory)) {
+            ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+            new PropagatingHyperlinkWebScraperService(settings,
+                    new WarcRecordingHttpClient(WebScraperService.createHttpClient(executorService, 10), writer), executorService)
+                    .scrapeUri(seed, hyperlink -> {});
+        }
+        ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+        replayService = new PropagatingHyperlinkWebScraperService(settings,
+                new WarcReplayHttpClient(WarcArchive.open(archiveDirectory), executorService), executorService);
+    }
+
+    @Setup(Level.Iteration)
+    public void startRecording() throws IOException {
+        recordingDirectory = Files.createTempDirectory("warc-recording-benchmark");
+        recording = new WarcWriter(recordingDirectory);
+        ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+        recordingService = new PropagatingHyperlinkWebScraperService(settings,
+                new WarcRecordingHttpClient(WebScraperService.createHttpClient(executorService, 10), recording), executorService);
+    }
+
+    // so the recordings of all iterations do not pile up on disk
+    @TearDown(Level.Iteration)
+    public void deleteRecording() throws IOException {
+        recording.close();
+        deleteDirectory(recordingDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopSite() throws IOException {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        deleteDirectory(archiveDirectory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CrawlThroughputBenchmark.PAGE_COUNT)
+    public long crawlLive(Blackhole blackhole) {
+        return liveService.scrapeUri(seed, blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CrawlThroughputBenchmark.PAGE_COUNT)
+    public long crawlLiveWhileRecording(Blackhole blackhole) {
+        return recordingService.scrapeUri(seed, blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CrawlThroughputBenchmark.PAGE_COUNT)
+    public long crawlReplayed(Blackhole blackhole) {
+        return replayService.scrapeUri(seed, blackhole::consume);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.walk(directory)) {
+            for (Path entry : entries.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(entry);
+            }
+        }
+    }
+}
@@ -1,34 +1,250 @@
 package me.borzan.linkscraper.application;
 
+import me.borzan.linkscraper.server.CrawlServer;
 import me.borzan.linkscraper.util.ArgsUtils;
 import me.borzan.linkscraper.util.LoggingUtils;
-import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.util.UriUtils;
+import me.borzan.linkscraper.web.WebScraperService;
+import me.borzan.linkscraper.web.archive.WarcArchive;
+import me.borzan.linkscraper.web.archive.WarcRecordingHttpClient;
+import me.borzan.linkscraper.web.archive.WarcReplayHttpClient;
+import me.borzan.linkscraper.web.archive.WarcWriter;
+import me.borzan.linkscraper.web.cluster.ClusterSettings;
+import me.borzan.linkscraper.web.duplicate.NearDuplicatePolicy;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlJob;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlJobScheduler;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlSettings;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkSink;
+import me.borzan.linkscraper.web.hyperlink.PrintingHyperlinkSink;
 import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.persistence.SortingHyperlinkSink;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import me.borzan.linkscraper.web.robots.RobotsPolicy;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LinkScraperApplication {
     private static final int CONNECTION_TIMEOUT_SECONDS = 5;
     private static final int MAX_DURATION_MINUTES = 1;
+    private static final int MAX_CONCURRENT_REQUESTS = 64;
+    // hyperlinks beyond this are sorted on disk
+    private static final long SORTING_HEAP_BUDGET_BYTES = 64L * 1024 * 1024;
+    private static final Duration METRICS_SUMMARY_INTERVAL = Duration.ofSeconds(10);
+    // crawls run as jobs share the requests of one service, 256 of them leave 8 per job when all 32 jobs run
+    private static final int MAX_RUNNING_JOBS = 32;
+    private static final int JOBS_MAX_CONCURRENT_REQUESTS = 256;
+    // a replayed host is only limited by the requests in flight
+    private static final double REPLAY_REQUESTS_PER_SECOND_PER_HOST = 1_000_000;
+
+    private static final Logger LOGGER = Logger.getLogger(LinkScraperApplication.class.getName());
 
     public static void main(String[] args) {
         LoggingUtils.setRootLogLevel(Level.INFO); // Set to INFO level for some crude logs.
 
-        URI websiteUri = ArgsUtils.tryParseWebsiteFromArgs(args);
+        ArgsUtils.Arguments arguments = ArgsUtils.tryParseArgs(args);
+        if (arguments.runsJobs()) {
+            runJobs(arguments);
+            return;
+        }
+        String destination = arguments.outputFile() == null ? "Here they are" : "They are written to '%s'".formatted(arguments.outputFile());
+
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(CONNECTION_TIMEOUT_SECONDS, MAX_DURATION_MINUTES)
+                .maxConcurrentRequests(MAX_CONCURRENT_REQUESTS)
+                .nearDuplicateDetection(arguments.skipNearDuplicates() ? NearDuplicatePolicy.DEFAULT : null)
+                .robotsPolicy(arguments.obeyRobots() ? RobotsPolicy.DEFAULT : null)
+                .cluster(arguments.clusterNodes() == null ? null : ClusterSettings.parse(arguments.clusterNodeId(), arguments.clusterNodes()))
+                .build();
+        WarcWriter recording = openRecording(arguments);
+        PropagatingHyperlinkWebScraperService service = createService(arguments, settings, recording);
+        CrawlMetrics.Registration summary = service.getMetrics().logSummaryEvery(METRICS_SUMMARY_INTERVAL, LOGGER);
+        // results are streamed to the output as they are found, or sorted with a bounded amount of memory when the output is closed
+        try (service;
+             recording;
+             HyperlinkSink output = createOutput(arguments)) {
+            if (!arguments.sorted()) {
+                System.out.printf("%s, in the order they are found in the format '<label>' ('<URL>'):%n", destination);
+            }
+
+            long hyperlinksFound = service.scrapeUri(arguments.websiteUri(), output);
+            LOGGER.log(Level.INFO, service.getMetrics().snapshot().summaryLine());
+
+            System.out.printf("Found %d unique URLs when visiting from '%s'%n", hyperlinksFound, arguments.websiteUri());
+            logRecording(arguments, recording);
+            if (arguments.sorted() && hyperlinksFound > 0) {
+                System.out.printf("%s, sorted by label in the format '<label>' ('<URL>'):%n", destination);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not write the results: %s".formatted(e.getMessage()));
+            System.exit(1);
+        } finally {
+            summary.close();
+        }
+    }
+
+    /*
+     * With --serve, the server keeps running after the seeds of the file were submitted, until the process is stopped.
+     * Without it, the seeds are crawled as a batch, and the application exits once all of them are done.
+     */
+    private static void runJobs(ArgsUtils.Arguments arguments) {
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(CONNECTION_TIMEOUT_SECONDS, MAX_DURATION_MINUTES)
+                .maxConcurrentRequests(JOBS_MAX_CONCURRENT_REQUESTS)
+                .nearDuplicateDetection(arguments.skipNearDuplicates() ? NearDuplicatePolicy.DEFAULT : null)
+                .robotsPolicy(arguments.obeyRobots() ? RobotsPolicy.DEFAULT : null)
+                .build();
+        WarcWriter recording = openRecording(arguments);
+        PropagatingHyperlinkWebScraperService service = createService(arguments, settings, recording);
+        try {
+            Path outputDirectory = arguments.outputFile() != null ? arguments.outputFile() : Files.createTempDirectory("linkscraper-jobs");
+            List<URI> seeds = arguments.seedsFile() == null ? List.of() : readSeeds(arguments.seedsFile());
+
+            if (arguments.serverPort() != -1) {
+                CrawlServer server = new CrawlServer(service, MAX_RUNNING_JOBS, outputDirectory, arguments.serverPort());
+                CrawlMetrics.Registration summary = service.getMetrics().logSummaryEvery(METRICS_SUMMARY_INTERVAL, LOGGER);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.close();
+                    summary.close();
+                    service.close();
+                    closeRecording(recording);
+                }, "crawl-server-shutdown"));
+                server.start();
+                submitAll(server.getScheduler(), seeds);
+                return;
+            }
+
+            Files.createDirectories(outputDirectory);
+            CrawlMetrics.Registration summary = service.getMetrics().logSummaryEvery(METRICS_SUMMARY_INTERVAL, LOGGER);
+            try (service;
+                 HyperlinkCrawlJobScheduler scheduler = new HyperlinkCrawlJobScheduler(service, MAX_RUNNING_JOBS,
+                         job -> PrintingHyperlinkSink.toFile(outputDirectory.resolve("job-%d.txt".formatted(job.getId()))));
+                 recording) {
+                List<HyperlinkCrawlJob> jobs = submitAll(scheduler, seeds);
+                System.out.printf("Crawling from %d seeds, the results of each are written to '%s'%n", jobs.size(), outputDirectory.resolve("job-<id>.txt"));
+                CompletableFuture.allOf(jobs.stream().map(job -> job.completion().thenRun(() -> {
+                    HyperlinkCrawlJob.Snapshot finished = job.snapshot();
+                    System.out.printf("Job %d %s with %d unique URLs when visiting from '%s'%n",
+                            finished.id(), finished.state(), finished.hyperlinksFound(), finished.seed());
+                })).toArray(CompletableFuture[]::new)).join();
+                LOGGER.log(Level.INFO, service.getMetrics().snapshot().summaryLine());
+                logRecording(arguments, recording);
+            } finally {
+                summary.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not run the crawl jobs: %s".formatted(e.getMessage()));
+            System.exit(1);
+        }
+    }
 
-        PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(CONNECTION_TIMEOUT_SECONDS, MAX_DURATION_MINUTES);
-        List<Hyperlink> allRecursiveDomainUris = service.scrapeUri(websiteUri).result().stream().sorted().toList();
+    /*
+     * With --record, the exchanges of the crawl go through the returned writer, which has to be closed once the crawl is over.
+     */
+    private static WarcWriter openRecording(ArgsUtils.Arguments arguments) {
+        if (arguments.recordDirectory() == null) {
+            return null;
+        }
+        try {
+            return new WarcWriter(arguments.recordDirectory());
+        } catch (UncheckedIOException e) {
+            LOGGER.log(Level.SEVERE, "Could not record the crawl: %s".formatted(e.getMessage()));
+            System.exit(1);
+            return null;
+        }
+    }
 
-        System.out.printf("Found %d unique URL-label pairs when visiting from '%s'%n", allRecursiveDomainUris.size(), websiteUri);
-        if(allRecursiveDomainUris.isEmpty()) {
+    /*
+     * With --replay, nothing is requested from the web, the responses come from the WARC files of an earlier --record.
+     * There is no host to be polite to then, so the archive is read as fast as the pages can be processed, and the
+     * Crawl-delay of a recorded robots.txt is ignored.
+     */
+    private static PropagatingHyperlinkWebScraperService createService(ArgsUtils.Arguments arguments, HyperlinkCrawlSettings settings, WarcWriter recording) {
+        if (arguments.replayDirectory() != null) {
+            WarcArchive archive = null;
+            try {
+                archive = WarcArchive.open(arguments.replayDirectory());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not open the archive in '%s': %s".formatted(arguments.replayDirectory(), e.getMessage()));
+                System.exit(1);
+            }
+            LOGGER.log(Level.INFO, "Replaying the %d responses recorded in '%s'.".formatted(archive.size(), arguments.replayDirectory()));
+            ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+            HostPolitenessPolicy noDelay = new HostPolitenessPolicy(settings.maxConcurrentRequests(), REPLAY_REQUESTS_PER_SECOND_PER_HOST, 0, Duration.ZERO);
+            HyperlinkCrawlSettings replaySettings = settings.toBuilder()
+                    .politenessPolicy(noDelay)
+                    .robotsPolicy(settings.robotsPolicy() == null ? null : settings.robotsPolicy().withMaxCrawlDelay(Duration.ZERO))
+                    .build();
+            return new PropagatingHyperlinkWebScraperService(replaySettings, new WarcReplayHttpClient(archive, executorService), executorService);
+        }
+        if (recording != null) {
+            ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+            HttpClient httpClient = WebScraperService.createHttpClient(executorService, settings.connectionTimeoutSeconds());
+            return new PropagatingHyperlinkWebScraperService(settings, new WarcRecordingHttpClient(httpClient, recording), executorService);
+        }
+        return new PropagatingHyperlinkWebScraperService(settings);
+    }
+
+    private static void logRecording(ArgsUtils.Arguments arguments, WarcWriter recording) {
+        if (recording != null) {
+            LOGGER.log(Level.INFO, "Recorded %d exchanges into '%s'.".formatted(recording.getExchangesWritten(), arguments.recordDirectory()));
+        }
+    }
+
+    private static void closeRecording(WarcWriter recording) {
+        if (recording == null) {
             return;
         }
+        try {
+            recording.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not finish the recording: %s".formatted(e.getMessage()));
+        }
+    }
+
+    // blank lines and lines starting with # are skipped
+    private static List<URI> readSeeds(Path seedsFile) throws IOException {
+        List<URI> seeds = new ArrayList<>();
+        for (String line : Files.readAllLines(seedsFile)) {
+            String seed = line.strip();
+            if (seed.isEmpty() || seed.startsWith("#")) {
+                continue;
+            }
+            URI seedUri = UriUtils.tryParseUri(seed);
+            if (seedUri != null) {
+                seeds.add(seedUri);
+            }
+        }
+        return seeds;
+    }
+
+    private static List<HyperlinkCrawlJob> submitAll(HyperlinkCrawlJobScheduler scheduler, List<URI> seeds) {
+        List<HyperlinkCrawlJob> jobs = new ArrayList<>(seeds.size());
+        for (URI seed : seeds) {
+            try {
+                jobs.add(scheduler.submit(seed));
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.SEVERE, e.getMessage());
+            }
+        }
+        return jobs;
+    }
 
-        System.out.println("Here they are, sorted by label in the format '<label>' ('<URL>'):");
-        allRecursiveDomainUris.stream()
-                .map(Hyperlink::toString)
-                .forEach(System.out::println);
+    private static HyperlinkSink createOutput(ArgsUtils.Arguments arguments) throws IOException {
+        HyperlinkSink output = arguments.outputFile() == null
+                ? PrintingHyperlinkSink.toStandardOutput()
+                : PrintingHyperlinkSink.toFile(arguments.outputFile());
+        return arguments.sorted() ? new SortingHyperlinkSink(output, SORTING_HEAP_BUDGET_BYTES) : output;
     }
-}
\ No newline at end of file
+}
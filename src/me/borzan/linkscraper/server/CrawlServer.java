@@ -0,0 +1,357 @@
+package me.borzan.linkscraper.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlJob;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlJobScheduler;
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/*
+ * A small HTTP/JSON API on the loopback interface, which runs crawls as jobs of one HyperlinkCrawlJobScheduler:
+ *
+ *     POST   /jobs                   submits one job per seed URL in the body, answers with the jobs created
+ *     GET    /jobs[?state=<state>]   lists all jobs, or only those in the given state, e.g. RUNNING
+ *     GET    /jobs/<id>              a single job
+ *     DELETE /jobs/<id>              cancels a job, whether it is queued or running (202 while the latter winds down)
+ *     GET    /jobs/<id>/hyperlinks   streams the hyperlinks of a job as JSON lines, from the first one until the job is over
+ *     GET    /status                 the number of jobs per state and a summary of the metrics of the shared service
+ *
+ * The body of a submission is a text/uri-list with one seed per line, so a file of seeds can be posted as it is.
+ * Blank lines and lines starting with # are skipped, and if any seed cannot be crawled, none of them are submitted.
+ * Browsers send that content type only after a CORS preflight, which this server never allows, so a web page that is
+ * open in a local browser cannot start crawls. Submissions of any other content type are rejected for the same reason.
+ *
+ * Every job writes its hyperlinks to a file of its own in the output directory, which the stream reads from.
+ * So neither jobs nor streams keep hyperlinks in memory, and a stream can be opened at any time during or after its job.
+ */
+public final class CrawlServer implements AutoCloseable {
+    private static final int MAX_SUBMISSION_BYTES = 16 * 1024 * 1024;
+    private static final long STREAM_POLL_INTERVAL_MILLIS = 250;
+    private static final String SUBMISSION_CONTENT_TYPE = "text/uri-list";
+
+    private final HyperlinkCrawlJobScheduler scheduler;
+    private final PropagatingHyperlinkWebScraperService service;
+    private final Path outputDirectory;
+    // the sinks of running jobs, so a stream that caught up with a result file can have it flushed
+    private final Map<Long, JsonLinesHyperlinkSink> openSinks;
+    private final HttpServer httpServer;
+    private final ExecutorService requestThreads;
+    private final Logger logger;
+
+    public CrawlServer(PropagatingHyperlinkWebScraperService service, int maxRunningJobs, Path outputDirectory, int port) throws IOException {
+        if (outputDirectory == null) {
+            throw new IllegalStateException("The output directory is null. The results of the jobs have to be written somewhere.");
+        }
+        Files.createDirectories(outputDirectory);
+
+        this.service = service;
+        this.outputDirectory = outputDirectory;
+        this.openSinks = new ConcurrentHashMap<>();
+        this.scheduler = new HyperlinkCrawlJobScheduler(service, maxRunningJobs, this::openResultSink);
+        this.logger = Logger.getLogger(this.getClass().getName());
+
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // streams block their thread for as long as their job runs
+        this.requestThreads = Executors.newVirtualThreadPerTaskExecutor();
+        httpServer.setExecutor(requestThreads);
+        httpServer.createContext("/jobs", this::handleJobs);
+        httpServer.createContext("/status", this::handleStatus);
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.log(Level.INFO, "Serving the crawl API on http://%s:%d/jobs, the results go to '%s'."
+                .formatted(httpServer.getAddress().getHostString(), getPort(), outputDirectory));
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public HyperlinkCrawlJobScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Path resultFile(long jobId) {
+        return outputDirectory.resolve("job-%d.jsonl".formatted(jobId));
+    }
+
+    private JsonLinesHyperlinkSink openResultSink(HyperlinkCrawlJob job) throws IOException {
+        JsonLinesHyperlinkSink sink = new JsonLinesHyperlinkSink(resultFile(job.getId()), () -> openSinks.remove(job.getId()));
+        openSinks.put(job.getId(), sink);
+        return sink;
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String[] segments = path.substring("/jobs".length()).split("/");
+            // "/jobs" and "/jobs/" have no further segments, "/jobs/3/hyperlinks" has "", "3", "hyperlinks"
+            List<String> rest = new ArrayList<>();
+            for (String segment : segments) {
+                if (!segment.isEmpty()) {
+                    rest.add(segment);
+                }
+            }
+            String method = exchange.getRequestMethod();
+
+            if (rest.isEmpty()) {
+                switch (method) {
+                    case "GET" -> listJobs(exchange);
+                    case "POST" -> submitJobs(exchange);
+                    default -> methodNotAllowed(exchange, "GET, POST");
+                }
+                return;
+            }
+
+            Optional<HyperlinkCrawlJob> job = parseJobId(rest.get(0)).flatMap(scheduler::getJob);
+            if (job.isEmpty() || rest.size() > 2 || (rest.size() == 2 && !rest.get(1).equals("hyperlinks"))) {
+                respond(exchange, 404, Json.error("There is no '%s'.".formatted(path)));
+                return;
+            }
+            if (rest.size() == 2) {
+                if (method.equals("GET")) {
+                    streamHyperlinks(exchange, job.get());
+                } else {
+                    methodNotAllowed(exchange, "GET");
+                }
+                return;
+            }
+            switch (method) {
+                case "GET" -> respond(exchange, 200, Json.job(job.get().snapshot()));
+                case "DELETE" -> {
+                    scheduler.cancel(job.get().getId());
+                    // a running job takes a moment to wind down
+                    HyperlinkCrawlJob.Snapshot snapshot = job.get().snapshot();
+                    respond(exchange, snapshot.state().isFinished() ? 200 : 202, Json.job(snapshot));
+                }
+                default -> methodNotAllowed(exchange, "GET, DELETE");
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not answer %s %s: %s".formatted(exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage()));
+        }
+    }
+
+    private void listJobs(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        HyperlinkCrawlJob.State state = null;
+        if (query != null && query.startsWith("state=")) {
+            try {
+                state = HyperlinkCrawlJob.State.valueOf(query.substring("state=".length()).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, Json.error("There is no job state '%s'.".formatted(query.substring("state=".length()))));
+                return;
+            }
+        }
+        HyperlinkCrawlJob.State selectedState = state;
+        String jobs = scheduler.getJobs().stream()
+                .map(HyperlinkCrawlJob::snapshot)
+                .filter(job -> selectedState == null || job.state() == selectedState)
+                .map(Json::job)
+                .collect(Collectors.joining(",\n", "[", "]"));
+        respond(exchange, 200, jobs);
+    }
+
+    private void submitJobs(HttpExchange exchange) throws IOException {
+        if (!isSubmission(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+            respond(exchange, 415, Json.error("Seeds have to be submitted as %s, one per line.".formatted(SUBMISSION_CONTENT_TYPE)));
+            return;
+        }
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_SUBMISSION_BYTES + 1);
+        if (body.length > MAX_SUBMISSION_BYTES) {
+            respond(exchange, 413, Json.error("Submissions are limited to %d bytes.".formatted(MAX_SUBMISSION_BYTES)));
+            return;
+        }
+
+        List<URI> seeds = new ArrayList<>();
+        for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            String seed = line.strip();
+            if (seed.isEmpty() || seed.startsWith("#")) {
+                continue;
+            }
+            URI seedUri = parseSeed(seed);
+            if (!scheduler.canCrawlFrom(seedUri)) {
+                respond(exchange, 400, Json.error("Cannot crawl from '%s', only absolute http(s) URIs can be crawled. Nothing was submitted.".formatted(seed)));
+                return;
+            }
+            seeds.add(seedUri);
+        }
+        if (seeds.isEmpty()) {
+            respond(exchange, 400, Json.error("The body has to list at least one seed URL, one per line."));
+            return;
+        }
+
+        List<HyperlinkCrawlJob> submitted = new ArrayList<>(seeds.size());
+        try {
+            for (URI seed : seeds) {
+                submitted.add(scheduler.submit(seed));
+            }
+        } catch (IllegalStateException e) {
+            // the scheduler was closed meanwhile, the seeds before this one stay submitted and are listed along with the error
+            respond(exchange, submitted.isEmpty() ? 400 : 500, "{\"error\":%s,\"jobs\":%s}".formatted(Json.string(e.getMessage()), toJson(submitted)));
+            return;
+        }
+        respond(exchange, 201, toJson(submitted));
+    }
+
+    private static URI parseSeed(String seed) {
+        try {
+            return new URI(seed);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    // parameters such as a charset do not matter, the body is read as UTF-8 anyway
+    private static boolean isSubmission(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = parameters < 0 ? contentType : contentType.substring(0, parameters);
+        return mediaType.strip().equalsIgnoreCase(SUBMISSION_CONTENT_TYPE);
+    }
+
+    private static String toJson(List<HyperlinkCrawlJob> jobs) {
+        return jobs.stream().map(job -> Json.job(job.snapshot())).collect(Collectors.joining(",\n", "[", "]"));
+    }
+
+    /*
+     * Follows the result file of the job like tail -f. The state of the job is read before the file, so once a finished
+     * job's file was read to its end, there is nothing more to come.
+     */
+    private void streamHyperlinks(HttpExchange exchange, HyperlinkCrawlJob job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        Path resultFile = resultFile(job.getId());
+
+        try (OutputStream body = exchange.getResponseBody()) {
+            while (job.snapshot().state() == HyperlinkCrawlJob.State.QUEUED || (!job.snapshot().state().isFinished() && !Files.exists(resultFile))) {
+                awaitJob(job);
+            }
+            if (!Files.exists(resultFile)) {
+                return;
+            }
+
+            try (InputStream results = Files.newInputStream(resultFile)) {
+                byte[] buffer = new byte[8192];
+                while (true) {
+                    boolean finished = job.snapshot().state().isFinished();
+                    int read;
+                    while ((read = results.read(buffer)) > 0) {
+                        body.write(buffer, 0, read);
+                    }
+                    if (finished) {
+                        return;
+                    }
+                    body.flush();
+                    flushResults(job);
+                    if (results.available() == 0) {
+                        awaitJob(job);
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushResults(HyperlinkCrawlJob job) {
+        JsonLinesHyperlinkSink sink = openSinks.get(job.getId());
+        if (sink == null) {
+            return;
+        }
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            // closed in the meantime, which flushed it anyway
+        }
+    }
+
+    private static void awaitJob(HyperlinkCrawlJob job) throws IOException {
+        try {
+            job.completion().get(STREAM_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // the job goes on, so does the stream
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming the hyperlinks of job %d.".formatted(job.getId()), e);
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                methodNotAllowed(exchange, "GET");
+                return;
+            }
+            Map<HyperlinkCrawlJob.State, Integer> jobsPerState = new EnumMap<>(HyperlinkCrawlJob.State.class);
+            for (HyperlinkCrawlJob.State state : HyperlinkCrawlJob.State.values()) {
+                jobsPerState.put(state, 0);
+            }
+            for (HyperlinkCrawlJob job : scheduler.getJobs()) {
+                jobsPerState.merge(job.snapshot().state(), 1, Integer::sum);
+            }
+            String jobs = jobsPerState.entrySet().stream()
+                    .map(entry -> "\"%s\":%d".formatted(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue()))
+                    .collect(Collectors.joining(",", "{", "}"));
+            respond(exchange, 200, "{\"jobs\":%s,\"metrics\":%s}".formatted(jobs, Json.string(service.getMetrics().snapshot().summaryLine())));
+        }
+    }
+
+    private static Optional<Long> parseJobId(String segment) {
+        try {
+            return Optional.of(Long.parseLong(segment));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String allowedMethods) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowedMethods);
+        respond(exchange, 405, Json.error("Only %s are allowed here.".formatted(allowedMethods)));
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /*
+     * Stops accepting requests, cancels all jobs and waits for the running ones to end.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        scheduler.close();
+        requestThreads.close();
+    }
+}
@@ -0,0 +1,51 @@
+package me.borzan.linkscraper.server;
+
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlJob;
+
+import java.time.Instant;
+
+/*
+ * The little JSON the crawl server writes, without pulling in a library for it. It never has to read any.
+ */
+final class Json {
+    private Json() {}
+
+    static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u%04x".formatted((int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    static String instant(Instant instant) {
+        return instant == null ? "null" : string(instant.toString());
+    }
+
+    static String job(HyperlinkCrawlJob.Snapshot job) {
+        return "{\"id\":%d,\"seed\":%s,\"state\":\"%s\",\"submittedAt\":%s,\"startedAt\":%s,\"finishedAt\":%s,\"pagesRequested\":%d,\"hyperlinksFound\":%d,\"failure\":%s}"
+                .formatted(job.id(), string(job.seed().toString()), job.state(), instant(job.submittedAt()), instant(job.startedAt()),
+                        instant(job.finishedAt()), job.pagesRequested(), job.hyperlinksFound(), string(job.failureMessage()));
+    }
+
+    static String error(String message) {
+        return "{\"error\":%s}".formatted(string(message));
+    }
+}
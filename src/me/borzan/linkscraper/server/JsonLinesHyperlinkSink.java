@@ -0,0 +1,49 @@
+package me.borzan.linkscraper.server;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Writes every hyperlink to a file as one JSON object per line, {"uri":...,"label":...,"depth":...}.
+ * The file is only flushed when full, on close, or when a reader that caught up with it asks for it with flush.
+ * onClose is run once the file is closed.
+ */
+final class JsonLinesHyperlinkSink implements HyperlinkSink {
+    private final Writer writer;
+    private final Runnable onClose;
+
+    JsonLinesHyperlinkSink(Path file, Runnable onClose) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.onClose = onClose;
+    }
+
+    @Override
+    public synchronized void accept(Hyperlink hyperlink) {
+        try {
+            writer.write("{\"uri\":%s,\"label\":%s,\"depth\":%d}\n".formatted(
+                    Json.string(hyperlink.getUri().toString()), Json.string(hyperlink.getLabel()), hyperlink.getDepth()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write hyperlink '%s'".formatted(hyperlink.getUri()), e);
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            onClose.run();
+        }
+    }
+}
@@ -1,27 +1,145 @@
 package me.borzan.linkscraper.util;
 
 import java.net.URI;
+import java.nio.file.Path;
 
 public class ArgsUtils {
-    public static URI tryParseWebsiteFromArgs(String[] args) {
-        if (args.length != 1) {
-            printUsagePrompt();
-            System.exit(1);
+    /*
+     * outputFile is null if the results should go to standard output.
+     * clusterNodes is null unless this process is one node of a cluster, then clusterNodeId says which one.
+     * serverPort is -1 unless crawls are run as jobs of a server, seedsFile is null unless a batch of seeds is crawled.
+     * In both cases websiteUri is null, and outputFile is the directory the results of the jobs go to.
+     * At most one of recordDirectory and replayDirectory is set, both are null if the web is crawled as usual.
+     * obeyRobots is false if robots.txt and sitemaps should be ignored.
+     * skipNearDuplicates is true if the hyperlinks of pages that nearly duplicate an earlier page should not be followed.
+     */
+    public record Arguments(URI websiteUri, boolean sorted, Path outputFile, String clusterNodeId, String clusterNodes, int serverPort, Path seedsFile,
+                            Path recordDirectory, Path replayDirectory, boolean obeyRobots, boolean skipNearDuplicates) {
+        public boolean runsJobs() {
+            return serverPort != -1 || seedsFile != null;
         }
+    }
+
+    public static Arguments tryParseArgs(String[] args) {
+        URI websiteUri = null;
+        boolean sorted = true;
+        Path outputFile = null;
+        String clusterNodeId = null;
+        String clusterNodes = null;
+        int serverPort = -1;
+        Path seedsFile = null;
+        Path recordDirectory = null;
+        Path replayDirectory = null;
+        boolean obeyRobots = true;
+        boolean skipNearDuplicates = false;
 
-        URI parsedUri = UriUtils.tryParseUri(args[0]);
-        if (parsedUri == null) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--unsorted" -> sorted = false;
+                case "--ignore-robots" -> obeyRobots = false;
+                case "--skip-near-duplicates" -> skipNearDuplicates = true;
+                case "--output" -> {
+                    if (i + 1 >= args.length) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    outputFile = Path.of(args[++i]);
+                }
+                case "--cluster", "--node" -> {
+                    if (i + 1 >= args.length) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    if (args[i].equals("--cluster")) {
+                        clusterNodes = args[++i];
+                    } else {
+                        clusterNodeId = args[++i];
+                    }
+                }
+                case "--serve" -> {
+                    if (i + 1 >= args.length) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    try {
+                        serverPort = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        serverPort = -2;
+                    }
+                    if (serverPort < 0 || serverPort > 65535) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                }
+                case "--seeds" -> {
+                    if (i + 1 >= args.length) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    seedsFile = Path.of(args[++i]);
+                }
+                case "--record", "--replay" -> {
+                    if (i + 1 >= args.length) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    if (args[i].equals("--record")) {
+                        recordDirectory = Path.of(args[++i]);
+                    } else {
+                        replayDirectory = Path.of(args[++i]);
+                    }
+                }
+                default -> {
+                    if (websiteUri != null) {
+                        printUsagePrompt();
+                        System.exit(1);
+                    }
+                    websiteUri = UriUtils.tryParseUri(args[i]);
+                    if (websiteUri == null) {
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+
+        boolean runsJobs = serverPort != -1 || seedsFile != null;
+        if ((websiteUri == null) != runsJobs || (clusterNodes == null) != (clusterNodeId == null) || (runsJobs && clusterNodes != null)
+                || (recordDirectory != null && replayDirectory != null)) {
+            printUsagePrompt();
             System.exit(1);
         }
 
-        return parsedUri;
+        return new Arguments(websiteUri, sorted, outputFile, clusterNodeId, clusterNodes, serverPort, seedsFile, recordDirectory, replayDirectory, obeyRobots, skipNearDuplicates);
     }
 
     private static void printUsagePrompt() {
         System.out.println("""
-                     Run this application with one argument.
+                     Run this application with the website to start from, and optionally:
+                         --unsorted        print the results as they are found instead of sorted by label at the end
+                         --output <file>   write the results to a file instead of standard output
+                         --ignore-robots   crawl what robots.txt disallows and do not start from the sitemaps
+                                           it lists, e.g. to replay WARC files recorded without robots.txt
+                         --skip-near-duplicates
+                                           do not follow the hyperlinks of pages that nearly duplicate a page
+                                           crawled before, they are still listed
+                         --cluster <nodes> --node <id>
+                                           crawl as node <id> of a cluster, where <nodes> lists every node as
+                                           <id>=<host>:<port>, separated by commas, the same on every node
+                     Or, instead of a website, to run many crawls as jobs that share one connection pool:
+                         --seeds <file>    crawl from every URL in the file, one per line, and exit once all are done
+                         --serve <port>    keep running and take jobs over an HTTP/JSON API on localhost:<port>,
+                                           e.g. POST /jobs with a text/uri-list of seed URLs as the body,
+                                           GET /jobs/<id>/hyperlinks
+                         --output <dir>    the directory for the results of the jobs, one file per job
+                     Either way, the crawl can be recorded, or be replayed instead of requesting anything from the web:
+                         --record <dir>    write every request and response into WARC files in the directory
+                         --replay <dir>    answer every request from the WARC files in the directory, as fast as
+                                           they can be read, e.g. to extract something new from an earlier crawl
                      Example Usage:
-                         java -jar ArgsParser.jar <your-website-url>
+                         java -jar ArgsParser.jar <your-website-url> [--unsorted] [--output <file>]
+                         java -jar ArgsParser.jar <your-website-url> --cluster a=localhost:7401,b=localhost:7402 --node a
+                         java -jar ArgsParser.jar --seeds <seeds-file> --output <dir> [--serve <port>]
+                         java -jar ArgsParser.jar <your-website-url> --record <warc-dir>, later with --replay <warc-dir>
                 """);
     }
 }
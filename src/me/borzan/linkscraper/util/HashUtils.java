@@ -0,0 +1,30 @@
+package me.borzan.linkscraper.util;
+
+public class HashUtils {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /*
+     * A 64-bit FNV-1a hash over the characters, with the MurmurHash3 finalizer on top to spread FNV's weak low bits.
+     * Zero is never returned, so callers can use it as an "empty" marker.
+     */
+    public static long fingerprint64(CharSequence input) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        hash = mix64(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    public static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
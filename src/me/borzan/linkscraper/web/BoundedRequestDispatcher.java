@@ -0,0 +1,279 @@
+package me.borzan.linkscraper.web;
+
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.metrics.FetchTimer;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import me.borzan.linkscraper.web.politeness.HostPolitenessScheduler;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Sends requests asynchronously, but never more than maxConcurrentRequests at once.
+ * Requests beyond that wait in per-host queues of a HostPolitenessScheduler, which also decides which host is polite to
+ * contact next. Once maxQueuedRequests are waiting in total, new requests are rejected. Every queued request holds one of
+ * maxQueuedRequests permits from dispatch until it is sent or taken out of its queue, so the bound holds exactly however many threads dispatch at once.
+ * Callers that would rather hold on to their work than be rejected can check hasCapacity and ask to be called back
+ * once a request finished, which is how the crawl frontier applies backpressure.
+ *
+ * Every state change (a request queued, a request finished, a host's delay passed) is followed by draining the queues.
+ * Draining is serialized without a lock: whoever finds a drain already running just asks it to go another round.
+ *
+ * Every request is timed into the CrawlMetrics: how long it waited in the queue, until its headers arrived and until its body was complete.
+ *
+ * Cancelling the future of a request takes it out of its host's queue right away if it is still queued, so it never costs
+ * its host a politeness delay, and aborts the exchange if it was sent already, which also stops its body from being read any further.
+ *
+ * Closing the dispatcher stops its wake-up timer and takes its gauges out of the CrawlMetrics. Requests that are in flight
+ * still complete, but new requests are rejected, and queued requests are not sent anymore. Their futures fail with
+ * a RejectedExecutionException, so nobody waits for them forever.
+ */
+public final class BoundedRequestDispatcher implements AutoCloseable {
+    private final HttpClient httpClient;
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final Semaphore concurrencyPermits;
+    private final Semaphore queuePermits;
+    private final HostPolitenessScheduler<QueuedRequest<?>> politenessScheduler;
+    private final Queue<Runnable> capacityListeners;
+    private final CrawlMetrics metrics;
+
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicLong nextWakeUpAt = new AtomicLong(Long.MAX_VALUE);
+    private final ScheduledExecutorService wakeUpTimer;
+    private final CrawlMetrics.Registration requestsInFlightGauge;
+    private final CrawlMetrics.Registration requestsQueuedGauge;
+
+    public BoundedRequestDispatcher(HttpClient httpClient, int maxConcurrentRequests, int maxQueuedRequests) {
+        this(httpClient, maxConcurrentRequests, maxQueuedRequests, HostPolitenessPolicy.DEFAULT);
+    }
+
+    public BoundedRequestDispatcher(HttpClient httpClient, int maxConcurrentRequests, int maxQueuedRequests, HostPolitenessPolicy politenessPolicy) {
+        this(httpClient, maxConcurrentRequests, maxQueuedRequests, politenessPolicy, new CrawlMetrics());
+    }
+
+    public BoundedRequestDispatcher(HttpClient httpClient, int maxConcurrentRequests, int maxQueuedRequests, HostPolitenessPolicy politenessPolicy, CrawlMetrics metrics) {
+        if(httpClient == null) {
+            throw new IllegalStateException("HttpClient is null. Cannot dispatch requests without it.");
+        }
+        if(maxConcurrentRequests < 1 || maxQueuedRequests < 1) {
+            throw new IllegalStateException("At least one concurrent and one queued request are needed to dispatch anything.");
+        }
+        if(metrics == null) {
+            throw new IllegalStateException("CrawlMetrics are null. Cannot time requests without them.");
+        }
+
+        this.httpClient = httpClient;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.concurrencyPermits = new Semaphore(maxConcurrentRequests);
+        this.queuePermits = new Semaphore(maxQueuedRequests);
+        this.politenessScheduler = new HostPolitenessScheduler<>(politenessPolicy);
+        this.capacityListeners = new ConcurrentLinkedQueue<>();
+        this.metrics = metrics;
+        this.requestsInFlightGauge = metrics.registerGauge(CrawlMetrics.REQUESTS_IN_FLIGHT, this::getRequestsInFlight);
+        this.requestsQueuedGauge = metrics.registerGauge(CrawlMetrics.REQUESTS_QUEUED, this::getQueuedRequests);
+        this.wakeUpTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "request-dispatcher-wake-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <B> CompletableFuture<HttpResponse<B>> dispatch(HttpRequest request, HttpResponse.BodyHandler<B> bodyHandler) {
+        if (isClosed()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Request dispatcher is closed. Rejected request to '%s'.".formatted(request.uri())));
+        }
+        if (!queuePermits.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Request queue is full (%d requests). Rejected request to '%s'.".formatted(maxQueuedRequests, request.uri())));
+        }
+        QueuedRequest<B> queuedRequest = new QueuedRequest<>(request, bodyHandler, metrics);
+        politenessScheduler.offer(queuedRequest.host, queuedRequest);
+        queuedRequest.responseFuture.whenComplete((ignored, exception) -> {
+            if (queuedRequest.responseFuture.isCancelled() && politenessScheduler.remove(queuedRequest.host, queuedRequest)) {
+                queuedRequest.fetchTimer.onCancelled();
+                queuePermits.release();
+                notifyCapacityListeners();
+            }
+        });
+        if (isClosed() && politenessScheduler.remove(queuedRequest.host, queuedRequest)) {
+            // closed while this was being queued, after close took the queued requests out
+            reject(queuedRequest);
+            return queuedRequest.responseFuture;
+        }
+        drainQueuedRequests();
+        return queuedRequest.responseFuture;
+    }
+
+    public boolean hasCapacity() {
+        return queuePermits.availablePermits() > 0;
+    }
+
+    /*
+     * Registers a one-shot callback that is run as soon as a queued request can be accepted again.
+     */
+    public void whenCapacityAvailable(Runnable listener) {
+        capacityListeners.add(listener);
+        if (hasCapacity()) {
+            notifyCapacityListeners();
+        }
+    }
+
+    public void setMinimumHostDelay(String host, Duration minimumDelay) {
+        politenessScheduler.setMinimumDelay(host, minimumDelay);
+    }
+
+    public int getRequestsInFlight() {
+        return maxConcurrentRequests - concurrencyPermits.availablePermits();
+    }
+
+    public int getQueuedRequests() {
+        return politenessScheduler.getQueuedRequests();
+    }
+
+    public boolean isClosed() {
+        return wakeUpTimer.isShutdown();
+    }
+
+    @Override
+    public void close() {
+        wakeUpTimer.shutdownNow();
+        requestsInFlightGauge.close();
+        requestsQueuedGauge.close();
+        for (QueuedRequest<?> queuedRequest : politenessScheduler.removeAll()) {
+            reject(queuedRequest);
+        }
+    }
+
+    private void reject(QueuedRequest<?> queuedRequest) {
+        queuedRequest.fetchTimer.onCancelled();
+        queuePermits.release();
+        queuedRequest.responseFuture.completeExceptionally(new RejectedExecutionException(
+                "Request dispatcher was closed before the request to '%s' was sent.".formatted(queuedRequest.request.uri())));
+    }
+
+    private void drainQueuedRequests() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            while (politenessScheduler.hasQueuedRequests() && concurrencyPermits.tryAcquire()) {
+                QueuedRequest<?> next = politenessScheduler.pollReady();
+                if (next == null) {
+                    concurrencyPermits.release();
+                    scheduleWakeUp(politenessScheduler.getNanosUntilNextReady());
+                    break;
+                }
+                queuePermits.release();
+                send(next);
+            }
+        } while (drainRequests.decrementAndGet() != 0);
+        notifyCapacityListeners();
+    }
+
+    /*
+     * Makes sure the queues are drained again once the next host's delay passed, unless an earlier wake-up is planned anyway.
+     */
+    private void scheduleWakeUp(long delayNanos) {
+        if (delayNanos == Long.MAX_VALUE || isClosed()) {
+            return;
+        }
+        long wakeUpAt = System.nanoTime() + delayNanos;
+        long plannedWakeUpAt = nextWakeUpAt.get();
+        if (plannedWakeUpAt != Long.MAX_VALUE && plannedWakeUpAt - wakeUpAt <= 0) {
+            return;
+        }
+        if (nextWakeUpAt.compareAndSet(plannedWakeUpAt, wakeUpAt)) {
+            try {
+                wakeUpTimer.schedule(() -> {
+                    nextWakeUpAt.compareAndSet(wakeUpAt, Long.MAX_VALUE);
+                    drainQueuedRequests();
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed in the meantime, there is nobody left to wake up for
+            }
+        }
+    }
+
+    private <B> void send(QueuedRequest<B> queuedRequest) {
+        if (queuedRequest.responseFuture.isCancelled()) {
+            // cancelled while it was being polled, the host's connection and the permit were taken for it already
+            queuedRequest.fetchTimer.onCancelled();
+            politenessScheduler.onRequestFinished(queuedRequest.host, -1, -1, null);
+            concurrencyPermits.release();
+            return;
+        }
+        long sentAt = System.nanoTime();
+        FetchTimer fetchTimer = queuedRequest.fetchTimer;
+        fetchTimer.onSent();
+        HttpResponse.BodyHandler<B> timedBodyHandler = responseInfo -> {
+            fetchTimer.onHeadersReceived();
+            return queuedRequest.bodyHandler.apply(responseInfo);
+        };
+
+        CompletableFuture<HttpResponse<B>> sentRequest;
+        try {
+            sentRequest = httpClient.sendAsync(queuedRequest.request, timedBodyHandler);
+        } catch (RuntimeException e) {
+            sentRequest = CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<HttpResponse<B>> exchange = sentRequest;
+        queuedRequest.responseFuture.whenComplete((ignored, exception) -> {
+            if (queuedRequest.responseFuture.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        sentRequest.whenComplete((response, exception) -> {
+            fetchTimer.onCompleted(response == null ? -1 : response.statusCode());
+            politenessScheduler.onRequestFinished(queuedRequest.host, System.nanoTime() - sentAt,
+                    response == null ? -1 : response.statusCode(),
+                    response == null ? null : response.headers().firstValue("Retry-After").orElse(null));
+            concurrencyPermits.release();
+            drainQueuedRequests();
+
+            if (exception != null) {
+                queuedRequest.responseFuture.completeExceptionally(exception);
+            } else {
+                queuedRequest.responseFuture.complete(response);
+            }
+        });
+    }
+
+    private void notifyCapacityListeners() {
+        Runnable listener;
+        while (hasCapacity() && (listener = capacityListeners.poll()) != null) {
+            listener.run();
+        }
+    }
+
+    private static final class QueuedRequest<B> {
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<B> bodyHandler;
+        private final String host;
+        private final CompletableFuture<HttpResponse<B>> responseFuture;
+        private final FetchTimer fetchTimer;
+
+        private QueuedRequest(HttpRequest request, HttpResponse.BodyHandler<B> bodyHandler, CrawlMetrics metrics) {
+            this.request = request;
+            this.bodyHandler = bodyHandler;
+            this.host = HostPolitenessScheduler.hostKey(request.uri());
+            this.responseFuture = new CompletableFuture<>();
+            this.fetchTimer = metrics.startFetch(host, request.uri());
+        }
+    }
+}
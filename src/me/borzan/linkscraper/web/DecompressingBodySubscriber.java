@@ -0,0 +1,497 @@
+package me.borzan.linkscraper.web;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Sits between the HttpClient and the actual body subscriber, decodes gzip and deflate bodies on the fly and
+ * enforces a limit on the size of the decoded body. The HttpClient itself neither decompresses nor limits anything.
+ *
+ * Every chunk of the response is inflated straight into a few output buffers, which are handed on as one chunk,
+ * so there is never more than a chunk's worth of decoded data around. Uncompressed chunks are passed on untouched.
+ * A chunk that decodes to nothing (e.g. just a gzip header) is not passed on, instead the next chunk is requested,
+ * so the downstream subscriber's demand is still met.
+ *
+ * If the body turns out bigger than allowed, upstream is cancelled and the downstream subscriber gets an IOException.
+ * A Content-Length above the limit fails the body before a single byte was read, which also holds for compressed
+ * bodies, since they never get smaller by decoding them.
+ *
+ * For compressed files (e.g. a sitemap.xml.gz), a body without a Content-Encoding is inflated if its first byte is
+ * that of the gzip magic number, which no text document starts with.
+ *
+ * Responses without a body, like a 204 or a 304 Not Modified, may still repeat the Content-Encoding of the full response.
+ * Their (empty) body is passed on as it is, and so is an empty body of any other compressed response, e.g. of a HEAD request.
+ */
+final class DecompressingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    private final HttpResponse.BodySubscriber<T> downstream;
+    private final Decoder decoder;
+    private final long maxBodyBytes;
+    private final IOException rejection;
+
+    private Flow.Subscription upstream;
+    private long decodedBytes;
+    private volatile boolean done;
+
+    private DecompressingBodySubscriber(HttpResponse.BodySubscriber<T> downstream, Decoder decoder, long maxBodyBytes, IOException rejection) {
+        this.downstream = downstream;
+        this.decoder = decoder;
+        this.maxBodyBytes = maxBodyBytes;
+        this.rejection = rejection;
+    }
+
+    static <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> bodyHandler, long maxBodyBytes) {
+        return wrap(bodyHandler, maxBodyBytes, false);
+    }
+
+    static <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> bodyHandler, long maxBodyBytes, boolean compressedFile) {
+        return responseInfo -> {
+            HttpResponse.BodySubscriber<T> downstream = bodyHandler.apply(responseInfo);
+            String contentEncoding = responseInfo.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+            long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1);
+
+            boolean withoutBody = responseInfo.statusCode() == 204 || responseInfo.statusCode() == 304;
+            Decoder decoder = withoutBody ? new IdentityDecoder() : switch (contentEncoding) {
+                case "", "identity" -> compressedFile ? new GzipFileDecoder(maxBodyBytes) : new IdentityDecoder();
+                case "gzip", "x-gzip" -> new GzipDecoder(maxBodyBytes);
+                case "deflate" -> new DeflateDecoder(maxBodyBytes);
+                default -> null;
+            };
+            IOException rejection = null;
+            if (decoder == null) {
+                rejection = new IOException("Unsupported Content-Encoding '%s'".formatted(contentEncoding));
+                decoder = new IdentityDecoder();
+            } else if (contentLength > maxBodyBytes) {
+                rejection = new IOException("The response body of %d bytes exceeds the limit of %d bytes".formatted(contentLength, maxBodyBytes));
+            }
+            return new DecompressingBodySubscriber<>(downstream, decoder, maxBodyBytes, rejection);
+        };
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return downstream.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.upstream = subscription;
+        if (rejection != null) {
+            // before downstream gets the chance to request anything
+            done = true;
+            subscription.cancel();
+            decoder.end();
+        }
+        downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                upstream.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+                upstream.cancel();
+                decoder.end();
+            }
+        });
+        if (rejection != null) {
+            downstream.onError(rejection);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (done) {
+            return;
+        }
+
+        List<ByteBuffer> decoded = new ArrayList<>(2);
+        try {
+            for (ByteBuffer buffer : buffers) {
+                decoder.decode(buffer, decoded);
+            }
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+
+        for (ByteBuffer buffer : decoded) {
+            decodedBytes += buffer.remaining();
+        }
+        if (decodedBytes > maxBodyBytes) {
+            fail(new IOException("The response body exceeds the limit of %d bytes".formatted(maxBodyBytes)));
+            return;
+        }
+
+        if (decoded.isEmpty()) {
+            upstream.request(1);
+        } else {
+            downstream.onNext(decoded);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) {
+            return;
+        }
+        done = true;
+        decoder.end();
+        downstream.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (done) {
+            return;
+        }
+        try {
+            decoder.finish();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        done = true;
+        decoder.end();
+        downstream.onComplete();
+    }
+
+    private void fail(IOException exception) {
+        done = true;
+        upstream.cancel();
+        decoder.end();
+        downstream.onError(exception);
+    }
+
+    private interface Decoder {
+        void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException;
+
+        /*
+         * Called at the end of the body, throws if the encoded data stopped midway.
+         */
+        void finish() throws IOException;
+
+        void end();
+    }
+
+    private static final class IdentityDecoder implements Decoder {
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) {
+            if (input.hasRemaining()) {
+                output.add(input);
+            }
+        }
+
+        @Override
+        public void finish() {}
+
+        @Override
+        public void end() {}
+    }
+
+    /*
+     * Decides by the first byte of the body whether it is a gzip file or not. Synchronized for the same reason as the
+     * InflatingDecoder, so a cancellation never misses the decoder that is created while it happens.
+     */
+    private static final class GzipFileDecoder implements Decoder {
+        private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+
+        private final long maxBodyBytes;
+        private Decoder decoder;
+        private boolean ended;
+
+        GzipFileDecoder(long maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        @Override
+        public synchronized void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            if (ended || !input.hasRemaining()) {
+                return;
+            }
+            if (decoder == null) {
+                decoder = (input.get(input.position()) & 0xff) == GZIP_MAGIC_FIRST_BYTE ? new GzipDecoder(maxBodyBytes) : new IdentityDecoder();
+            }
+            decoder.decode(input, output);
+        }
+
+        @Override
+        public synchronized void finish() throws IOException {
+            if (decoder != null) {
+                decoder.finish();
+            }
+        }
+
+        @Override
+        public synchronized void end() {
+            ended = true;
+            if (decoder != null) {
+                decoder.end();
+            }
+        }
+    }
+
+    /*
+     * The methods are synchronized because a downstream subscriber may cancel (and thereby end the inflater)
+     * from another thread while a chunk is being inflated.
+     * The size limit is checked while inflating as well, since a single small chunk can inflate to megabytes.
+     */
+    private abstract static class InflatingDecoder implements Decoder {
+        private final long maxBodyBytes;
+        protected Inflater inflater;
+        private long inflatedBytes;
+        private boolean anyInput;
+        private boolean ended;
+
+        InflatingDecoder(long maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        @Override
+        public final synchronized void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            if (ended) {
+                return;
+            }
+            anyInput |= input.hasRemaining();
+            try {
+                decodeInput(input, output);
+            } catch (DataFormatException e) {
+                throw new IOException("Malformed compressed response body: %s".formatted(e.getMessage()), e);
+            }
+        }
+
+        @Override
+        public final synchronized void finish() throws IOException {
+            // an empty body is no compressed data at all, rather than compressed data that was cut off
+            if (!ended && anyInput && !isComplete()) {
+                throw new IOException("The compressed response body ended prematurely");
+            }
+        }
+
+        @Override
+        public final synchronized void end() {
+            if (!ended) {
+                ended = true;
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+
+        protected abstract void decodeInput(ByteBuffer input, List<ByteBuffer> output) throws DataFormatException, IOException;
+
+        protected abstract boolean isComplete();
+
+        /*
+         * Inflates as much of the input as possible. The input's position is moved past whatever the inflater consumed.
+         */
+        protected final void inflate(ByteBuffer input, List<ByteBuffer> output) throws DataFormatException, IOException {
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                ByteBuffer decoded = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+                int decodedBytes = inflater.inflate(decoded);
+                if (decodedBytes > 0) {
+                    inflatedBytes += decodedBytes;
+                    if (inflatedBytes > maxBodyBytes) {
+                        throw new IOException("The response body exceeds the limit of %d bytes".formatted(maxBodyBytes));
+                    }
+                    output.add(decoded.flip());
+                    continue;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Compressed response bodies with a preset dictionary are not supported");
+                }
+                if (inflater.needsInput()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * Raw deflate data wrapped into gzip members (RFC 1952). Headers and trailers are skipped byte by byte, since they
+     * may be split across chunks, the CRC in the trailer is not checked. A body may consist of several members.
+     */
+    private static final class GzipDecoder extends InflatingDecoder {
+        private static final int FIXED_HEADER_SIZE = 10;
+        private static final int TRAILER_SIZE = 8;
+        private static final int FLAG_HEADER_CRC = 0x02;
+        private static final int FLAG_EXTRA = 0x04;
+        private static final int FLAG_NAME = 0x08;
+        private static final int FLAG_COMMENT = 0x10;
+
+        private enum State { FIXED_HEADER, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, BODY, TRAILER, DONE }
+
+        private State state = State.FIXED_HEADER;
+        private int flags;
+        private int bytesInState;
+        private int extraLength;
+        private int membersDecoded;
+
+        GzipDecoder(long maxBodyBytes) {
+            super(maxBodyBytes);
+            this.inflater = new Inflater(true);
+        }
+
+        @Override
+        protected void decodeInput(ByteBuffer input, List<ByteBuffer> output) throws DataFormatException, IOException {
+            while (input.hasRemaining()) {
+                if (state == State.BODY) {
+                    inflate(input, output);
+                    if (!inflater.finished()) {
+                        return;
+                    }
+                    moveTo(State.TRAILER);
+                    continue;
+                }
+                if (state == State.DONE) {
+                    // anything after the last complete member, servers sometimes pad with zeroes
+                    input.position(input.limit());
+                    return;
+                }
+                readHeaderOrTrailerByte(input.get() & 0xff);
+            }
+        }
+
+        private void readHeaderOrTrailerByte(int value) throws IOException {
+            switch (state) {
+                case FIXED_HEADER -> {
+                    if ((bytesInState == 0 && value != 0x1f) || (bytesInState == 1 && value != 0x8b) || (bytesInState == 2 && value != 8)) {
+                        if (membersDecoded > 0) {
+                            moveTo(State.DONE);
+                            return;
+                        }
+                        throw new IOException("The response body is not in gzip format");
+                    }
+                    if (bytesInState == 3) {
+                        flags = value;
+                    }
+                    if (++bytesInState == FIXED_HEADER_SIZE) {
+                        moveToNextHeaderField(State.FIXED_HEADER);
+                    }
+                }
+                case EXTRA_LENGTH -> {
+                    extraLength |= value << (8 * bytesInState);
+                    if (++bytesInState == 2) {
+                        moveTo(State.EXTRA);
+                        if (extraLength == 0) {
+                            moveToNextHeaderField(State.EXTRA);
+                        }
+                    }
+                }
+                case EXTRA -> {
+                    if (++bytesInState == extraLength) {
+                        moveToNextHeaderField(State.EXTRA);
+                    }
+                }
+                case NAME, COMMENT -> {
+                    if (value == 0) {
+                        moveToNextHeaderField(state);
+                    }
+                }
+                case HEADER_CRC -> {
+                    if (++bytesInState == 2) {
+                        moveToNextHeaderField(State.HEADER_CRC);
+                    }
+                }
+                case TRAILER -> {
+                    if (++bytesInState == TRAILER_SIZE) {
+                        membersDecoded++;
+                        moveTo(State.FIXED_HEADER);
+                    }
+                }
+                default -> throw new IllegalStateException("No header byte expected in state " + state);
+            }
+        }
+
+        /*
+         * The optional header fields come in a fixed order, each one only if its flag is set.
+         */
+        private void moveToNextHeaderField(State finishedField) {
+            State[] optionalFields = { State.EXTRA_LENGTH, State.NAME, State.COMMENT, State.HEADER_CRC };
+            int[] optionalFlags = { FLAG_EXTRA, FLAG_NAME, FLAG_COMMENT, FLAG_HEADER_CRC };
+
+            int next = switch (finishedField) {
+                case FIXED_HEADER -> 0;
+                case EXTRA_LENGTH, EXTRA -> 1;
+                case NAME -> 2;
+                case COMMENT -> 3;
+                default -> 4;
+            };
+            for (; next < optionalFields.length; next++) {
+                if ((flags & optionalFlags[next]) != 0) {
+                    moveTo(optionalFields[next]);
+                    return;
+                }
+            }
+            inflater.reset();
+            moveTo(State.BODY);
+        }
+
+        private void moveTo(State newState) {
+            state = newState;
+            bytesInState = 0;
+            if (newState == State.EXTRA_LENGTH) {
+                extraLength = 0;
+            }
+        }
+
+        @Override
+        protected boolean isComplete() {
+            return membersDecoded > 0 && (state == State.DONE || (state == State.FIXED_HEADER && bytesInState == 0));
+        }
+    }
+
+    /*
+     * "deflate" is meant to be zlib-wrapped (RFC 1950), but plenty of servers send raw deflate data instead.
+     * Which one it is can be told from the first two bytes, so the inflater is only created once those are known.
+     */
+    private static final class DeflateDecoder extends InflatingDecoder {
+        private int firstByte = -1;
+
+        DeflateDecoder(long maxBodyBytes) {
+            super(maxBodyBytes);
+        }
+
+        @Override
+        protected void decodeInput(ByteBuffer input, List<ByteBuffer> output) throws DataFormatException, IOException {
+            if (!input.hasRemaining()) {
+                return;
+            }
+            if (inflater == null) {
+                if (firstByte < 0) {
+                    firstByte = input.get() & 0xff;
+                    if (!input.hasRemaining()) {
+                        return;
+                    }
+                }
+                int secondByte = input.get(input.position()) & 0xff;
+                boolean zlibWrapped = (firstByte & 0x0f) == 8 && ((firstByte << 8) | secondByte) % 31 == 0;
+                inflater = new Inflater(!zlibWrapped);
+                inflate(ByteBuffer.wrap(new byte[] { (byte) firstByte }), output);
+            }
+            if (inflater.finished()) {
+                input.position(input.limit());
+                return;
+            }
+            inflate(input, output);
+        }
+
+        @Override
+        protected boolean isComplete() {
+            return inflater != null && inflater.finished();
+        }
+    }
+}
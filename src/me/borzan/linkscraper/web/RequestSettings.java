@@ -0,0 +1,89 @@
+package me.borzan.linkscraper.web;
+
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+
+/*
+ * How a WebScraperService sends its requests: how many at once, how many may wait, how politely per host,
+ * how big a response body may get and which product token the User-Agent starts with.
+ * Start from DEFAULT or builder(), or from toBuilder() of existing settings, and adjust single settings with the Builder.
+ */
+public record RequestSettings(int maxConcurrentRequests,
+                              int maxQueuedRequests,
+                              HostPolitenessPolicy politenessPolicy,
+                              long maxResponseBodyBytes,
+                              String productToken) {
+    public static final RequestSettings DEFAULT = builder().build();
+
+    public RequestSettings {
+        if (maxConcurrentRequests < 1 || maxQueuedRequests < 1) {
+            throw new IllegalStateException("At least one concurrent and one queued request are needed to dispatch anything.");
+        }
+        if (politenessPolicy == null) {
+            throw new IllegalStateException("HostPolitenessPolicy is null. Use HostPolitenessPolicy.DEFAULT if in doubt.");
+        }
+        if (maxResponseBodyBytes < 1) {
+            throw new IllegalStateException("The maximum size of a response body must be positive.");
+        }
+        if (productToken == null || productToken.isBlank()) {
+            throw new IllegalStateException("The product token is blank. Use DEFAULT_PRODUCT_TOKEN if in doubt.");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .maxConcurrentRequests(maxConcurrentRequests)
+                .maxQueuedRequests(maxQueuedRequests)
+                .politenessPolicy(politenessPolicy)
+                .maxResponseBodyBytes(maxResponseBodyBytes)
+                .productToken(productToken);
+    }
+
+    public static final class Builder {
+        private int maxConcurrentRequests = WebScraperService.DEFAULT_MAX_CONCURRENT_REQUESTS;
+        private int maxQueuedRequests = WebScraperService.DEFAULT_MAX_QUEUED_REQUESTS;
+        private HostPolitenessPolicy politenessPolicy = HostPolitenessPolicy.DEFAULT;
+        private long maxResponseBodyBytes = WebScraperService.DEFAULT_MAX_RESPONSE_BODY_BYTES;
+        private String productToken = WebScraperService.DEFAULT_PRODUCT_TOKEN;
+
+        private Builder() {}
+
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Builder maxQueuedRequests(int maxQueuedRequests) {
+            this.maxQueuedRequests = maxQueuedRequests;
+            return this;
+        }
+
+        public Builder politenessPolicy(HostPolitenessPolicy politenessPolicy) {
+            this.politenessPolicy = politenessPolicy;
+            return this;
+        }
+
+        /*
+         * Bodies bigger than this, after decoding, are aborted.
+         */
+        public Builder maxResponseBodyBytes(long maxResponseBodyBytes) {
+            this.maxResponseBodyBytes = maxResponseBodyBytes;
+            return this;
+        }
+
+        /*
+         * The name the crawler introduces itself with, and the one robots.txt groups are matched against.
+         */
+        public Builder productToken(String productToken) {
+            this.productToken = productToken;
+            return this;
+        }
+
+        public RequestSettings build() {
+            return new RequestSettings(maxConcurrentRequests, maxQueuedRequests, politenessPolicy, maxResponseBodyBytes, productToken);
+        }
+    }
+}
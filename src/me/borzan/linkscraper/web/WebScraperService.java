@@ -1,11 +1,15 @@
 package me.borzan.linkscraper.web;
 
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.politeness.HostPolitenessScheduler;
+
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -18,47 +22,184 @@ import java.util.concurrent.Executors;
  * This class only assumes a WebScraperWorker thread class facilitates the scraping, and provides an http client
  * and executor service to schedule the worker and send web requests as the worker thread sees fit.
  *
+ * How requests are sent is set with RequestSettings. They are sent asynchronously through a BoundedRequestDispatcher, which limits how many responses are in flight
+ * at once and how many requests may wait for their turn, and which spreads the requests over hosts as politely as the
+ * HostPolitenessPolicy demands. Workers are expected to chain on the returned futures.
+ *
+ * Every request identifies the crawler with a User-Agent of its product token and the version of the application,
+ * e.g. linkscraper/1.0, which is also the token robots.txt groups are matched against.
+ *
+ * Every request asks for a gzip or deflate compressed response, which is decoded on the fly before the worker's
+ * body handler sees it. Bodies bigger than maxResponseBodyBytes (after decoding) are aborted.
+ *
+ * All requests of a service are recorded into the same CrawlMetrics, which workers add their own stages and gauges to.
+ *
  * The executor service does not shut down internally, so that it can be re-used for multiple different scraper workers.
+ * Closing the service only closes its BoundedRequestDispatcher, whose wake-up timer would otherwise outlive the service.
  */
-public abstract class WebScraperService<T extends WebScrapingResult<?>> {
+public abstract class WebScraperService<T extends WebScrapingResult<?>> implements AutoCloseable {
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+    public static final long DEFAULT_MAX_RESPONSE_BODY_BYTES = 16L * 1024 * 1024;
+    public static final String DEFAULT_PRODUCT_TOKEN = "linkscraper";
+
     protected final HttpClient httpClient;
     protected final ExecutorService executorService;
+    protected final BoundedRequestDispatcher requestDispatcher;
+    protected final long maxResponseBodyBytes;
+    protected final CrawlMetrics metrics;
+    protected final String userAgent;
 
-    public WebScraperService(HttpClient httpClient, ExecutorService executorService) {
+    public WebScraperService(HttpClient httpClient, ExecutorService executorService, RequestSettings requestSettings) {
         if(httpClient == null) {
             throw new IllegalStateException("HttpClient is null. Cannot create web scrapers without it.");
         }
         if(executorService == null) {
             throw new IllegalStateException("ExecutorService is null. Cannot schedule web scrapers without it.");
         }
+        if(requestSettings == null) {
+            throw new IllegalStateException("RequestSettings are null. Use RequestSettings.DEFAULT if in doubt.");
+        }
 
         this.httpClient = httpClient;
         this.executorService = executorService;
+        this.metrics = new CrawlMetrics();
+        this.requestDispatcher = new BoundedRequestDispatcher(httpClient, requestSettings.maxConcurrentRequests(),
+                requestSettings.maxQueuedRequests(), requestSettings.politenessPolicy(), metrics);
+        this.maxResponseBodyBytes = requestSettings.maxResponseBodyBytes();
+        this.userAgent = userAgent(requestSettings.productToken());
+    }
+
+    public WebScraperService(HttpClient httpClient, ExecutorService executorService) {
+        this(httpClient, executorService, RequestSettings.DEFAULT);
+    }
+
+    public WebScraperService(ExecutorService executorService, int connectionTimeoutSeconds, RequestSettings requestSettings) {
+        this(createHttpClient(executorService, connectionTimeoutSeconds), executorService, requestSettings);
     }
 
     public WebScraperService(ExecutorService executorService, int connectionTimeoutSeconds) {
-        this(HttpClient
+        this(executorService, connectionTimeoutSeconds, RequestSettings.DEFAULT);
+    }
+
+    public WebScraperService(int connectionTimeoutSeconds, RequestSettings requestSettings) {
+        this(Executors.newVirtualThreadPerTaskExecutor(), connectionTimeoutSeconds, requestSettings);
+    }
+
+    public WebScraperService(int connectionTimeoutSeconds) {
+        this(connectionTimeoutSeconds, RequestSettings.DEFAULT);
+    }
+
+    /*
+     * The client every service creates for itself unless it is given one, e.g. to wrap it into a recording client.
+     */
+    public static HttpClient createHttpClient(ExecutorService executorService, int connectionTimeoutSeconds) {
+        return HttpClient
                 .newBuilder()
                 .executor(executorService)
                 .connectTimeout(Duration.ofSeconds(connectionTimeoutSeconds))
                 .followRedirects(HttpClient.Redirect.NORMAL)
-                .build(),
-            executorService);
+                .build();
     }
 
-    public WebScraperService(int connectionTimeoutSeconds) {
-        this(Executors.newVirtualThreadPerTaskExecutor(), connectionTimeoutSeconds);
+    /*
+     * The version comes from the manifest of the jar, a build that runs from its class files has none.
+     */
+    public static String userAgent(String productToken) {
+        String version = WebScraperService.class.getPackage().getImplementationVersion();
+        return "%s/%s".formatted(productToken, version == null ? "dev" : version);
     }
 
     public final T scrapeUri(URI websiteUri) {
+        return scrape(createScraperForUri(websiteUri));
+    }
+
+    /*
+     * For subclasses that offer other ways to start scraping than scrapeUri, e.g. with a worker configured differently.
+     */
+    protected final T scrape(WebScraperWorker<T> worker) {
         if(executorService.isShutdown()) {
             throw new IllegalStateException("ExecutorService is shut down. Cannot re-use this WebScraperService.");
         }
-        return createScraperForUri(websiteUri).scrape();
+        return worker.scrape();
     }
 
+    /*
+     * The blocking variant, kept for callers that do not care about throughput. It goes through the same dispatcher,
+     * so it counts towards the same concurrency limit.
+     */
     public final HttpResponse<String> sendHttpRequest(URI uri) throws IOException, InterruptedException {
-        return httpClient.send(HttpRequest.newBuilder().uri(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+        try {
+            return sendHttpRequestAsync(uri, HttpResponse.BodyHandlers.ofString()).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public final <B> CompletableFuture<HttpResponse<B>> sendHttpRequestAsync(URI uri, HttpResponse.BodyHandler<B> bodyHandler) {
+        return sendConditionalHttpRequestAsync(uri, null, null, bodyHandler);
+    }
+
+    /*
+     * Sends If-None-Match and If-Modified-Since with the validators of an earlier response, where present.
+     * If the page did not change, the server answers with 304 Not Modified and an empty body.
+     */
+    public final <B> CompletableFuture<HttpResponse<B>> sendConditionalHttpRequestAsync(URI uri, String entityTag, String lastModified, HttpResponse.BodyHandler<B> bodyHandler) {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(uri).GET()
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", DecompressingBodySubscriber.ACCEPT_ENCODING);
+        if (entityTag != null && !entityTag.isEmpty()) {
+            request.header("If-None-Match", entityTag);
+        }
+        if (lastModified != null && !lastModified.isEmpty()) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        return requestDispatcher.dispatch(request.build(), DecompressingBodySubscriber.wrap(bodyHandler, maxResponseBodyBytes));
+    }
+
+    /*
+     * For files that are gzip-compressed themselves, like a sitemap.xml.gz, which servers send as they are, as
+     * application/gzip without a Content-Encoding. A body that starts like gzip is inflated no matter what the headers say,
+     * any other body is handed on as usual.
+     */
+    public final <B> CompletableFuture<HttpResponse<B>> sendHttpRequestForCompressedFileAsync(URI uri, HttpResponse.BodyHandler<B> bodyHandler) {
+        HttpRequest request = HttpRequest.newBuilder().uri(uri).GET()
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", DecompressingBodySubscriber.ACCEPT_ENCODING)
+                .build();
+        return requestDispatcher.dispatch(request, DecompressingBodySubscriber.wrap(bodyHandler, maxResponseBodyBytes, true));
+    }
+
+    /*
+     * Keeps at least this much time between two requests to the host of the uri, on top of what the politeness policy
+     * demands, e.g. for the Crawl-delay of its robots.txt.
+     */
+    public final void setMinimumHostDelay(URI uri, Duration minimumDelay) {
+        requestDispatcher.setMinimumHostDelay(HostPolitenessScheduler.hostKey(uri), minimumDelay);
+    }
+
+    /*
+     * Whether a new request would currently be accepted instead of rejected. Workers should keep their work
+     * (e.g. in a frontier) while this is false and use whenRequestCapacityAvailable to be told when to continue.
+     */
+    public final boolean canAcceptRequests() {
+        return requestDispatcher.hasCapacity();
+    }
+
+    public final void whenRequestCapacityAvailable(Runnable listener) {
+        requestDispatcher.whenCapacityAvailable(listener);
+    }
+
+    public final CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        requestDispatcher.close();
     }
 
     public final T scheduleWorkerAndWaitForResult(WebScraperWorker<T> worker) throws ExecutionException, InterruptedException {
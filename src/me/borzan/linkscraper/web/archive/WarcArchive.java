@@ -0,0 +1,163 @@
+package me.borzan.linkscraper.web.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/*
+ * The responses of all .warc.gz files in a directory, looked up by the URI they were requested with.
+ * Where a URI was recorded more than once, the response recorded last wins, files are taken in the order of their names.
+ *
+ * Every file is memory-mapped once, and its responses are indexed from the index the WarcWriter put next to it.
+ * Whatever the index does not cover (the whole file, if it was written by another tool) is found by inflating the
+ * rest of the file record by record. After that, the archive never changes, so lookups need no locking at all:
+ * a lookup inflates the single gzip member of its response straight from the mapping.
+ *
+ * The mappings are released with the archive by the garbage collector, there is nothing to close.
+ */
+public final class WarcArchive {
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /*
+     * The body is exactly as it was received, still compressed if the response says so in its Content-Encoding.
+     */
+    public record ArchivedResponse(URI uri, int statusCode, HttpClient.Version version, HttpHeaders headers, ByteBuffer body) {}
+
+    private record Location(int file, int offset, int length) {}
+
+    private final Path directory;
+    private final List<MappedByteBuffer> files;
+    private final Map<String, Location> responses;
+
+    private WarcArchive(Path directory, List<MappedByteBuffer> files, Map<String, Location> responses) {
+        this.directory = directory;
+        this.files = files;
+        this.responses = responses;
+    }
+
+    public static WarcArchive open(Path directory) throws IOException {
+        List<Path> warcFiles;
+        try (Stream<Path> entries = Files.list(directory)) {
+            warcFiles = entries.filter(entry -> entry.getFileName().toString().endsWith(WarcRecords.FILE_EXTENSION)).sorted().toList();
+        }
+
+        Logger logger = Logger.getLogger(WarcArchive.class.getName());
+        List<MappedByteBuffer> files = new ArrayList<>(warcFiles.size());
+        Map<String, Location> responses = new HashMap<>();
+        for (Path warcFile : warcFiles) {
+            MappedByteBuffer file;
+            try (FileChannel channel = FileChannel.open(warcFile, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("'%s' is bigger than 2 GiB, which cannot be mapped at once. Split it into smaller files.".formatted(warcFile));
+                }
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int fileNumber = files.size();
+            files.add(file);
+
+            int indexedUpTo = readIndex(indexFile(warcFile), fileNumber, file.limit(), responses);
+            int scannedResponses = scan(warcFile, file, fileNumber, indexedUpTo, responses);
+            if (scannedResponses > 0) {
+                logger.log(Level.INFO, "Indexed %d responses of '%s' that were not in its index.".formatted(scannedResponses, warcFile));
+            }
+        }
+        return new WarcArchive(directory, files, responses);
+    }
+
+    static Path indexFile(Path warcFile) {
+        return warcFile.resolveSibling(warcFile.getFileName() + INDEX_EXTENSION);
+    }
+
+    /*
+     * Returns where the indexed part of the file ends, lines pointing past the end of the file are ignored.
+     */
+    private static int readIndex(Path indexFile, int fileNumber, int fileSize, Map<String, Location> responses) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+        int indexedUpTo = 0;
+        for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ", 3);
+            if (fields.length < 3) {
+                continue;
+            }
+            int offset;
+            int length;
+            try {
+                offset = Integer.parseInt(fields[0]);
+                length = Integer.parseInt(fields[1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (offset < 0 || length < 1 || (long) offset + length > fileSize) {
+                continue;
+            }
+            responses.put(fields[2], new Location(fileNumber, offset, length));
+            // the request recorded after the response is skipped by the scan
+            indexedUpTo = Math.max(indexedUpTo, offset + length);
+        }
+        return indexedUpTo;
+    }
+
+    private static int scan(Path warcFile, ByteBuffer file, int fileNumber, int from, Map<String, Location> responses) {
+        int scannedResponses = 0;
+        int offset = from;
+        while (offset < file.limit()) {
+            WarcRecords.Record record;
+            try {
+                record = WarcRecords.decode(file, offset, -1);
+            } catch (IOException e) {
+                // most likely the end of a file that was still being written, everything before is fine
+                Logger.getLogger(WarcArchive.class.getName()).log(Level.WARNING, "Stopped reading '%s' at offset %d: %s".formatted(warcFile, offset, e.getMessage()));
+                break;
+            }
+            if (record.type().equals("response") && record.targetUri() != null) {
+                responses.put(record.targetUri(), new Location(fileNumber, offset, record.memberLength()));
+                scannedResponses++;
+            }
+            offset += record.memberLength();
+        }
+        return scannedResponses;
+    }
+
+    /*
+     * Returns null if no response to the URI was recorded.
+     */
+    public ArchivedResponse find(URI uri) {
+        Location location = responses.get(uri.toString());
+        if (location == null) {
+            return null;
+        }
+        try {
+            WarcRecords.Record record = WarcRecords.decode(files.get(location.file()), location.offset(), location.length());
+            WarcRecords.HttpMessage response = WarcRecords.parseHttpResponse(record);
+            return new ArchivedResponse(uri, response.statusCode(), response.version(), response.headers(), response.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException("The response to '%s' in '%s' cannot be read".formatted(uri, directory), e);
+        }
+    }
+
+    public boolean contains(URI uri) {
+        return responses.containsKey(uri.toString());
+    }
+
+    public int size() {
+        return responses.size();
+    }
+}
@@ -0,0 +1,207 @@
+package me.borzan.linkscraper.web.archive;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Sends every request through another HttpClient and records each exchange with a WarcWriter, so the crawl can be
+ * replayed later by a WarcReplayHttpClient. Hand it to a service in place of the client it wraps.
+ *
+ * The body is copied as it streams past the body subscriber, the way it came off the wire, so a compressed body is
+ * recorded compressed. Only exchanges whose body was read completely are recorded, the response is handed on once
+ * it was written, so the writer can be closed as soon as the crawl is over.
+ * If writing fails, the crawl goes on regardless and the exchange is not recorded, which is only logged the first time.
+ */
+public final class WarcRecordingHttpClient extends HttpClient {
+    private final HttpClient delegate;
+    private final WarcWriter writer;
+    private final AtomicBoolean failureLogged;
+    private final Logger logger;
+
+    public WarcRecordingHttpClient(HttpClient delegate, WarcWriter writer) {
+        if (delegate == null || writer == null) {
+            throw new IllegalStateException("An HttpClient to send the requests and a WarcWriter to record them are needed.");
+        }
+        this.delegate = delegate;
+        this.writer = writer;
+        this.failureLogged = new AtomicBoolean();
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return sendAsync(request, responseBodyHandler, null);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        AtomicReference<RecordingBodySubscriber<T>> recording = new AtomicReference<>();
+        CompletableFuture<HttpResponse<T>> exchange = delegate.sendAsync(request, responseInfo -> {
+            RecordingBodySubscriber<T> subscriber = new RecordingBodySubscriber<>(responseBodyHandler.apply(responseInfo));
+            recording.set(subscriber);
+            return subscriber;
+        }, pushPromiseHandler);
+
+        CompletableFuture<HttpResponse<T>> recorded = exchange.thenApply(response -> {
+            record(response, recording.get());
+            return response;
+        });
+        // cancelling the response has to abort the exchange, as it would without recording
+        recorded.whenComplete((ignored, exception) -> {
+            if (recorded.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return recorded;
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, responseBodyHandler).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void record(HttpResponse<?> response, RecordingBodySubscriber<?> recording) {
+        if (recording == null || !recording.isComplete()) {
+            return;
+        }
+        try {
+            writer.writeExchange(response, recording.getRecordedBody());
+        } catch (RuntimeException e) {
+            if (failureLogged.compareAndSet(false, true)) {
+                logger.log(Level.SEVERE, "Could not record the response to '%s', further failures to record are not logged: %s"
+                        .formatted(response.request().uri(), e.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return delegate.cookieHandler();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return delegate.connectTimeout();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return delegate.followRedirects();
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return delegate.proxy();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        return delegate.sslContext();
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return delegate.sslParameters();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return delegate.authenticator();
+    }
+
+    @Override
+    public Version version() {
+        return delegate.version();
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return delegate.executor();
+    }
+
+    /*
+     * Passes everything on untouched, and keeps a copy of the bytes. The copy has to be taken right away,
+     * as the subscriber downstream may reuse or consume the buffers.
+     */
+    private static final class RecordingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private byte[] recordedBody = new byte[8 * 1024];
+        private int recordedBytes;
+        private volatile boolean complete;
+
+        private RecordingBodySubscriber(HttpResponse.BodySubscriber<T> downstream) {
+            this.downstream = downstream;
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+
+        ByteBuffer getRecordedBody() {
+            return ByteBuffer.wrap(recordedBody, 0, recordedBytes);
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return downstream.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                int length = buffer.remaining();
+                if (recordedBytes + length > recordedBody.length) {
+                    recordedBody = Arrays.copyOf(recordedBody, Math.max(recordedBody.length * 2, recordedBytes + length));
+                }
+                buffer.get(buffer.position(), recordedBody, recordedBytes, length);
+                recordedBytes += length;
+            }
+            downstream.onNext(buffers);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            // before downstream completes the body, which is what completes the response
+            complete = true;
+            downstream.onComplete();
+        }
+    }
+}
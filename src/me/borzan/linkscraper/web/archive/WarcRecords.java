@@ -0,0 +1,324 @@
+package me.borzan.linkscraper.web.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/*
+ * Encodes and decodes WARC 1.1 records, each compressed into a gzip member of its own, which is how .warc.gz files
+ * are meant to be written: any record can be read on its own, given where its member starts.
+ *
+ * Only what the writer and the archive need is supported. In particular, a file compressed as a whole instead of record
+ * by record cannot be read, and of the records read, only responses are looked at.
+ */
+final class WarcRecords {
+    static final String FILE_EXTENSION = ".warc.gz";
+
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int GZIP_FIXED_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FLAG_HEADER_CRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+
+    /*
+     * A record inflated from its gzip member, with the WARC header names in lower case.
+     * The block is the content of the record, e.g. a whole HTTP response with its status line and headers.
+     */
+    record Record(Map<String, String> headers, byte[] data, int blockOffset, int blockLength, int memberLength) {
+        String type() {
+            return headers.getOrDefault("warc-type", "");
+        }
+
+        String targetUri() {
+            return headers.get("warc-target-uri");
+        }
+    }
+
+    /*
+     * An HTTP response taken apart, the body is a view of the record's data.
+     */
+    record HttpMessage(int statusCode, HttpClient.Version version, HttpHeaders headers, ByteBuffer body) {}
+
+    private WarcRecords() {}
+
+    /*
+     * A random (version 4) UUID. UUID.randomUUID draws from one SecureRandom that all recording threads would queue for,
+     * record IDs only have to be unique, not unpredictable.
+     */
+    static String newRecordId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSignificantBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long leastSignificantBits = (random.nextLong() & ~(0xc0L << 56)) | (0x80L << 56);
+        return "<urn:uuid:%s>".formatted(new UUID(mostSignificantBits, leastSignificantBits));
+    }
+
+    static byte[] encodeWarcInfo(String recordId, Instant date, String fileName) {
+        byte[] fields = ("software: linkscraper\r\nformat: WARC File Format 1.1\r\n").getBytes(StandardCharsets.UTF_8);
+        String header = "WARC/1.1\r\nWARC-Type: warcinfo\r\nWARC-Record-ID: %s\r\nWARC-Date: %s\r\nWARC-Filename: %s\r\nContent-Type: application/warc-fields\r\n"
+                .formatted(recordId, formatDate(date), fileName);
+        return compress(header, fields, ByteBuffer.allocate(0));
+    }
+
+    static byte[] encodeResponse(String recordId, Instant date, URI targetUri, int statusCode, HttpClient.Version version, HttpHeaders headers, ByteBuffer body) {
+        StringBuilder head = new StringBuilder(256).append(version == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1").append(' ').append(statusCode).append("\r\n");
+        headers.map().forEach((name, values) -> {
+            // the body is recorded the way the HttpClient handed it over, which is without the chunks of the transfer
+            if (name.startsWith(":") || name.equalsIgnoreCase("Transfer-Encoding")) {
+                return;
+            }
+            values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n"));
+        });
+        head.append("\r\n");
+
+        String header = "WARC/1.1\r\nWARC-Type: response\r\nWARC-Record-ID: %s\r\nWARC-Date: %s\r\nWARC-Target-URI: %s\r\nContent-Type: application/http;msgtype=response\r\n"
+                .formatted(recordId, formatDate(date), targetUri);
+        return compress(header, head.toString().getBytes(StandardCharsets.ISO_8859_1), body);
+    }
+
+    static byte[] encodeRequest(String recordId, Instant date, URI targetUri, String concurrentTo, String method, HttpHeaders headers) {
+        String target = targetUri.getRawPath() == null || targetUri.getRawPath().isEmpty() ? "/" : targetUri.getRawPath();
+        if (targetUri.getRawQuery() != null) {
+            target += "?" + targetUri.getRawQuery();
+        }
+        StringBuilder head = new StringBuilder(256).append(method).append(' ').append(target).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(targetUri.getRawAuthority()).append("\r\n");
+        headers.map().forEach((name, values) -> values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n")));
+        head.append("\r\n");
+
+        String header = "WARC/1.1\r\nWARC-Type: request\r\nWARC-Record-ID: %s\r\nWARC-Date: %s\r\nWARC-Target-URI: %s\r\nWARC-Concurrent-To: %s\r\nContent-Type: application/http;msgtype=request\r\n"
+                .formatted(recordId, formatDate(date), targetUri, concurrentTo);
+        return compress(header, head.toString().getBytes(StandardCharsets.ISO_8859_1), ByteBuffer.allocate(0));
+    }
+
+    private static String formatDate(Instant date) {
+        return date.truncatedTo(ChronoUnit.SECONDS).toString();
+    }
+
+    private static byte[] compress(String header, byte[] blockHead, ByteBuffer body) {
+        int bodyLength = body.remaining();
+        ByteArrayOutputStream member = new ByteArrayOutputStream(256 + (blockHead.length + bodyLength) / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 8 * 1024) {
+            {
+                // records are compressed while the crawl waits for them, the fastest level still shrinks HTML a lot
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }) {
+            gzip.write(header.getBytes(StandardCharsets.UTF_8));
+            gzip.write(("Content-Length: %d\r\n\r\n".formatted(blockHead.length + bodyLength)).getBytes(StandardCharsets.US_ASCII));
+            gzip.write(blockHead);
+            if (body.hasArray()) {
+                gzip.write(body.array(), body.arrayOffset() + body.position(), bodyLength);
+            } else {
+                byte[] copy = new byte[bodyLength];
+                body.duplicate().get(copy);
+                gzip.write(copy);
+            }
+            gzip.write(CRLF);
+            gzip.write(CRLF);
+        } catch (IOException e) {
+            // there is no I/O, it all goes into memory
+            throw new UncheckedIOException(e);
+        }
+        return member.toByteArray();
+    }
+
+    /*
+     * Inflates the gzip member starting at offset. If the length of the member is not known, pass -1, it is found
+     * while inflating and returned with the record. Throws if there is no complete WARC record in the member.
+     */
+    static Record decode(ByteBuffer file, int offset, int memberLength) throws IOException {
+        int headerLength = gzipHeaderLength(file, offset);
+        int available = (memberLength < 0 ? file.limit() - offset : memberLength) - headerLength;
+        if (available < GZIP_TRAILER_SIZE) {
+            throw new IOException("The gzip member at offset %d is cut off".formatted(offset));
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(file.slice(offset + headerLength, available));
+            int capacity = 64 * 1024;
+            if (memberLength >= 0) {
+                // the trailer ends with the size of the data (mod 2^32, little-endian), so the output is sized right away,
+                // one byte more lets the inflater see the end of the data without another round
+                int expectedSize = Integer.reverseBytes(file.getInt(offset + memberLength - 4));
+                capacity = expectedSize >= 0 && expectedSize < Integer.MAX_VALUE ? expectedSize + 1 : capacity;
+            }
+            byte[] data = new byte[capacity];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                int inflated = inflater.inflate(data, size, data.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("The gzip member at offset %d is cut off".formatted(offset));
+                }
+                size += inflated;
+            }
+            int length = headerLength + (int) inflater.getBytesRead() + GZIP_TRAILER_SIZE;
+            if (memberLength < 0 && offset + length > file.limit()) {
+                throw new IOException("The gzip member at offset %d is cut off".formatted(offset));
+            }
+            return parseRecord(data, size, offset, length);
+        } catch (DataFormatException e) {
+            throw new IOException("The gzip member at offset %d is malformed: %s".formatted(offset, e.getMessage()), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int gzipHeaderLength(ByteBuffer file, int offset) throws IOException {
+        if (file.limit() - offset < GZIP_FIXED_HEADER_SIZE || (file.get(offset) & 0xff) != 0x1f || (file.get(offset + 1) & 0xff) != 0x8b || file.get(offset + 2) != 8) {
+            throw new IOException("There is no gzip member at offset %d".formatted(offset));
+        }
+        int flags = file.get(offset + 3) & 0xff;
+        int position = offset + GZIP_FIXED_HEADER_SIZE;
+        try {
+            if ((flags & FLAG_EXTRA) != 0) {
+                position += 2 + ((file.get(position) & 0xff) | (file.get(position + 1) & 0xff) << 8);
+            }
+            if ((flags & FLAG_NAME) != 0) {
+                while (file.get(position++) != 0) {}
+            }
+            if ((flags & FLAG_COMMENT) != 0) {
+                while (file.get(position++) != 0) {}
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("The gzip member at offset %d is cut off".formatted(offset));
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            position += 2;
+        }
+        return position - offset;
+    }
+
+    private static Record parseRecord(byte[] data, int size, int offset, int memberLength) throws IOException {
+        int headerEnd = indexOfBlankLine(data, 0, size);
+        if (headerEnd < 0 || !new String(data, 0, Math.min(size, 5), StandardCharsets.US_ASCII).equals("WARC/")) {
+            throw new IOException("The gzip member at offset %d holds no WARC record".formatted(offset));
+        }
+        Map<String, String> headers = new TreeMap<>();
+        List<String> lines = lines(data, 0, headerEnd);
+        for (String line : lines.subList(1, lines.size())) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        int blockOffset = headerEnd + 4;
+        int blockLength;
+        try {
+            blockLength = Integer.parseInt(headers.getOrDefault("content-length", ""));
+        } catch (NumberFormatException e) {
+            throw new IOException("The WARC record at offset %d has no valid Content-Length".formatted(offset));
+        }
+        if (blockLength < 0 || blockOffset + blockLength > size) {
+            throw new IOException("The WARC record at offset %d is shorter than its Content-Length".formatted(offset));
+        }
+        return new Record(headers, data, blockOffset, blockLength, memberLength);
+    }
+
+    /*
+     * Takes the block of a response record apart. A body that was recorded with its transfer chunks
+     * (as other tools do) is put back together, so it looks the same as one recorded by this package.
+     */
+    static HttpMessage parseHttpResponse(Record record) throws IOException {
+        byte[] data = record.data();
+        int blockEnd = record.blockOffset() + record.blockLength();
+        int headEnd = indexOfBlankLine(data, record.blockOffset(), blockEnd);
+        if (headEnd < 0) {
+            throw new IOException("The response to '%s' has no end of its headers".formatted(record.targetUri()));
+        }
+        List<String> lines = lines(data, record.blockOffset(), headEnd);
+        String[] statusLine = lines.get(0).split(" ", 3);
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(statusLine.length < 2 ? "" : statusLine[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("The response to '%s' has no valid status line".formatted(record.targetUri()));
+        }
+        HttpClient.Version version = statusLine[0].equals("HTTP/2") || statusLine[0].equals("HTTP/2.0") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+
+        Map<String, List<String>> headerMap = new LinkedHashMap<>();
+        boolean chunked = false;
+        for (String line : lines.subList(1, lines.size())) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked |= value.toLowerCase(Locale.ROOT).contains("chunked");
+                continue;
+            }
+            headerMap.computeIfAbsent(name, ignored -> new ArrayList<>()).add(value);
+        }
+
+        ByteBuffer body = ByteBuffer.wrap(data, headEnd + 4, blockEnd - headEnd - 4).slice();
+        return new HttpMessage(statusCode, version, HttpHeaders.of(headerMap, (name, value) -> true), chunked ? dechunk(body) : body);
+    }
+
+    private static ByteBuffer dechunk(ByteBuffer chunked) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(chunked.remaining());
+        while (chunked.hasRemaining()) {
+            StringBuilder sizeLine = new StringBuilder();
+            while (chunked.hasRemaining()) {
+                char c = (char) chunked.get();
+                if (c == '\n') {
+                    break;
+                }
+                sizeLine.append(c);
+            }
+            int extension = sizeLine.indexOf(";");
+            int size;
+            try {
+                size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).toString().trim(), 16);
+            } catch (NumberFormatException e) {
+                break;
+            }
+            if (size == 0 || size > chunked.remaining()) {
+                break;
+            }
+            body.write(chunked.array(), chunked.arrayOffset() + chunked.position(), size);
+            chunked.position(Math.min(chunked.limit(), chunked.position() + size + 2));
+        }
+        return ByteBuffer.wrap(body.toByteArray());
+    }
+
+    private static int indexOfBlankLine(byte[] data, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<String> lines(byte[] data, int from, int to) {
+        return List.of(new String(data, from, to - from, StandardCharsets.ISO_8859_1).split("\r\n"));
+    }
+}
@@ -0,0 +1,282 @@
+package me.borzan.linkscraper.web.archive;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * An HttpClient that never touches the network, it answers every request with the response recorded for its URI
+ * in a WarcArchive. Hand it to a service in place of a real client to run a whole crawl offline, at the speed the
+ * archive can be read and the pages processed, and with the same responses every time.
+ *
+ * Redirects are followed the way HttpClient.Redirect.NORMAL does, through the responses recorded for each hop.
+ * A request whose URI was not recorded fails with an IOException, as the request that could not be recorded did.
+ *
+ * The body is handed to the body subscriber in chunks that are views of the inflated record, on the thread that
+ * asks for them, there is no copying and no I/O once the record was inflated. Conditional request headers are
+ * ignored, the recorded response is what the server answered back then.
+ */
+public final class WarcReplayHttpClient extends HttpClient {
+    // the same as HttpClient's own default
+    private static final int MAX_REDIRECTS = 5;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final WarcArchive archive;
+    private final Executor executor;
+
+    public WarcReplayHttpClient(WarcArchive archive, Executor executor) {
+        if (archive == null || executor == null) {
+            throw new IllegalStateException("An archive to replay and an executor to replay it with are needed.");
+        }
+        this.archive = archive;
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        CompletableFuture<HttpResponse<T>> response = new CompletableFuture<>();
+        executor.execute(() -> replay(request, responseBodyHandler, response));
+        return response;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        // nothing is ever pushed
+        return sendAsync(request, responseBodyHandler);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, responseBodyHandler).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private <T> void replay(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, CompletableFuture<HttpResponse<T>> response) {
+        if (response.isDone()) {
+            return;
+        }
+        try {
+            URI uri = request.uri();
+            WarcArchive.ArchivedResponse archived;
+            for (int redirects = 0; ; redirects++) {
+                archived = archive.find(uri);
+                if (archived == null) {
+                    response.completeExceptionally(new IOException("There is no response to '%s' in the archive".formatted(uri)));
+                    return;
+                }
+                URI redirectTarget = redirectTarget(archived);
+                if (redirectTarget == null || redirects == MAX_REDIRECTS) {
+                    break;
+                }
+                uri = redirectTarget;
+            }
+
+            WarcArchive.ArchivedResponse replayed = archived;
+            HttpRequest finalRequest = uri.equals(request.uri()) ? request : HttpRequest.newBuilder(request, (name, value) -> true).uri(uri).build();
+            HttpResponse.BodySubscriber<T> subscriber = responseBodyHandler.apply(new ReplayedResponseInfo(replayed.statusCode(), replayed.headers(), replayed.version()));
+            ReplaySubscription subscription = new ReplaySubscription(subscriber, replayed.body());
+
+            subscriber.getBody().whenComplete((body, exception) -> {
+                if (exception != null) {
+                    response.completeExceptionally(exception);
+                } else {
+                    response.complete(new ReplayedResponse<>(finalRequest, replayed, body));
+                }
+            });
+            response.whenComplete((ignored, exception) -> {
+                if (response.isCancelled()) {
+                    subscription.cancel();
+                }
+            });
+            subscriber.onSubscribe(subscription);
+            // an empty body completes without being asked for
+            subscription.drain();
+        } catch (RuntimeException e) {
+            response.completeExceptionally(e);
+        }
+    }
+
+    private static URI redirectTarget(WarcArchive.ArchivedResponse archived) {
+        int statusCode = archived.statusCode();
+        if (statusCode != 301 && statusCode != 302 && statusCode != 303 && statusCode != 307 && statusCode != 308) {
+            return null;
+        }
+        Optional<String> location = archived.headers().firstValue("Location");
+        if (location.isEmpty()) {
+            return null;
+        }
+        URI target;
+        try {
+            target = archived.uri().resolve(location.get().trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // NORMAL never goes from https to http
+        if ("https".equalsIgnoreCase(archived.uri().getScheme()) && !"https".equalsIgnoreCase(target.getScheme())) {
+            return null;
+        }
+        return target;
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return Redirect.NORMAL;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("There is no default SSLContext.", e);
+        }
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return new SSLParameters();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+        return Version.HTTP_1_1;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return Optional.of(executor);
+    }
+
+    private record ReplayedResponseInfo(int statusCode, HttpHeaders headers, Version version) implements HttpResponse.ResponseInfo {}
+
+    private record ReplayedResponse<T>(HttpRequest request, WarcArchive.ArchivedResponse archived, T body) implements HttpResponse<T> {
+        @Override
+        public int statusCode() {
+            return archived.statusCode();
+        }
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return archived.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public Version version() {
+            return archived.version();
+        }
+    }
+
+    /*
+     * Hands out the body as far as it was asked for. Requests made from within onNext (which is what most subscribers do)
+     * do not recurse, they are picked up by the loop that is already running, the same way the request dispatcher drains.
+     */
+    private static final class ReplaySubscription implements Flow.Subscription {
+        private final HttpResponse.BodySubscriber<?> subscriber;
+        private final ByteBuffer body;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger drainRequests = new AtomicInteger();
+        private volatile boolean cancelled;
+        private boolean completed;
+
+        private ReplaySubscription(HttpResponse.BodySubscriber<?> subscriber, ByteBuffer body) {
+            this.subscriber = subscriber;
+            this.body = body;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Only a positive number of chunks can be requested, not %d".formatted(n)));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!cancelled && body.hasRemaining() && demand.get() > 0) {
+                    int length = Math.min(CHUNK_SIZE, body.remaining());
+                    ByteBuffer chunk = body.slice(body.position(), length);
+                    body.position(body.position() + length);
+                    demand.decrementAndGet();
+                    subscriber.onNext(List.of(chunk));
+                }
+                if (!cancelled && !completed && !body.hasRemaining()) {
+                    completed = true;
+                    subscriber.onComplete();
+                }
+            } while (drainRequests.decrementAndGet() != 0);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package me.borzan.linkscraper.web.archive;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Writes request/response pairs into .warc.gz files in a directory, every record compressed into a gzip member of its own.
+ * A file is closed and the next one started once it would grow beyond maxFileBytes, and every file starts with a warcinfo record.
+ *
+ * Records are compressed by the thread that writes them, before taking the lock, so many threads can record at once
+ * and only the copy into the write buffer is serialized. The buffer goes to the FileChannel whenever it is full.
+ *
+ * Next to every file, an index with one line per response ("<offset> <length> <target URI>") is written, so the
+ * WarcArchive does not have to inflate a whole file to find its responses. The index is a shortcut only, a file
+ * without one (or with the end of it missing after a crash) is still read completely.
+ */
+public final class WarcWriter implements Closeable {
+    public static final long DEFAULT_MAX_FILE_BYTES = 1L << 30;
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final String filePrefix;
+    private final long maxFileBytes;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    // all guarded by this
+    private int fileNumber;
+    private Path file;
+    private FileChannel channel;
+    private long fileSize;
+    private BufferedWriter index;
+    private long exchangesWritten;
+    private boolean closed;
+
+    public WarcWriter(Path directory, String filePrefix, long maxFileBytes) {
+        if (directory == null || filePrefix == null || filePrefix.isBlank()) {
+            throw new IllegalStateException("A directory and a file prefix are needed to write WARC files.");
+        }
+        if (maxFileBytes < WRITE_BUFFER_SIZE || maxFileBytes > Integer.MAX_VALUE) {
+            // a WarcArchive maps every file as a whole, which a single mapping can only do below 2 GiB
+            throw new IllegalStateException("WARC files must be allowed to grow to at least %d bytes, and must stay below 2 GiB.".formatted(WRITE_BUFFER_SIZE));
+        }
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.maxFileBytes = maxFileBytes;
+
+        try {
+            Files.createDirectories(directory);
+            openNextFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a WARC file in '%s'".formatted(directory), e);
+        }
+    }
+
+    public WarcWriter(Path directory) {
+        this(directory, "linkscraper", DEFAULT_MAX_FILE_BYTES);
+    }
+
+    /*
+     * Records the response with its body and the request it answered. If the response is the end of a chain of redirects,
+     * each response of the chain is recorded as well (without a body, which the HttpClient discards), so the chain can be
+     * followed again when the archive is replayed.
+     */
+    public void writeExchange(HttpResponse<?> response, ByteBuffer body) {
+        Instant now = Instant.now();
+        List<byte[]> members = new ArrayList<>(4);
+        List<String> indexedUris = new ArrayList<>(2);
+        for (HttpResponse<?> hop = response; hop != null; hop = hop.previousResponse().orElse(null)) {
+            String responseId = WarcRecords.newRecordId();
+            members.add(WarcRecords.encodeResponse(responseId, now, hop.request().uri(), hop.statusCode(), hop.version(), hop.headers(),
+                    hop == response ? body : ByteBuffer.allocate(0)));
+            members.add(WarcRecords.encodeRequest(WarcRecords.newRecordId(), now, hop.request().uri(), responseId, hop.request().method(), hop.request().headers()));
+            indexedUris.add(hop.request().uri().toString());
+        }
+        append(members, indexedUris);
+    }
+
+    public synchronized long getExchangesWritten() {
+        return exchangesWritten;
+    }
+
+    /*
+     * The members alternate between a response, which is indexed, and the request it answered.
+     */
+    private synchronized void append(List<byte[]> members, List<String> indexedUris) {
+        if (closed) {
+            throw new IllegalStateException("The WARC writer is closed. Cannot record '%s'.".formatted(indexedUris.get(0)));
+        }
+        long exchangeBytes = 0;
+        for (byte[] member : members) {
+            exchangeBytes += member.length;
+        }
+        try {
+            if (fileSize + exchangeBytes > maxFileBytes) {
+                closeFile();
+                openNextFile();
+            }
+            for (int i = 0; i < members.size(); i++) {
+                byte[] member = members.get(i);
+                if (i % 2 == 0) {
+                    index.write("%d %d %s\n".formatted(fileSize, member.length, indexedUris.get(i / 2)));
+                }
+                write(member);
+            }
+            exchangesWritten++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the WARC file '%s'".formatted(file), e);
+        }
+    }
+
+    private void write(byte[] member) throws IOException {
+        if (member.length > writeBuffer.remaining()) {
+            flushWriteBuffer();
+        }
+        if (member.length > writeBuffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(member);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+        } else {
+            writeBuffer.put(member);
+        }
+        fileSize += member.length;
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void openNextFile() throws IOException {
+        // the timestamp keeps the files of several runs apart, and sorts them in the order they were written
+        String fileName;
+        do {
+            fileName = "%s-%s-%05d%s".formatted(filePrefix, FILE_TIMESTAMP.format(Instant.now()), fileNumber++, WarcRecords.FILE_EXTENSION);
+            file = directory.resolve(fileName);
+        } while (Files.exists(file));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        fileSize = 0;
+        index = Files.newBufferedWriter(WarcArchive.indexFile(file), StandardCharsets.UTF_8);
+        write(WarcRecords.encodeWarcInfo(WarcRecords.newRecordId(), Instant.now(), fileName));
+    }
+
+    private void closeFile() throws IOException {
+        try {
+            flushWriteBuffer();
+            channel.close();
+        } finally {
+            // the index last, so once closed, it does not point past the end of its file
+            index.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeFile();
+    }
+}
@@ -0,0 +1,346 @@
+package me.borzan.linkscraper.web.cluster;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Connects the crawl of this node to the crawls of the other nodes of a cluster.
+ *
+ * Every host is owned by exactly one node (see HostPartitioner), and only its owner fetches pages of it. So each node
+ * keeps the visited set, the frontier and the politeness state of its own hosts only, and hyperlinks to any other host
+ * are forwarded to the node that owns it, where they enter the crawl as if they had been found there.
+ *
+ * The crawl of one node running dry does not end the crawl of the cluster, since any other node may still send it work.
+ * Every node counts the hyperlinks it sent and received. A node that is idle asks all nodes for their idleness and counts,
+ * and the cluster is done once two such waves in a row find every node idle, the counts unchanged and everything sent
+ * also received. Had anything happened between the waves, a count would have changed, and nothing can be in transit
+ * while the sums agree. The node that finds this tells all others, and termination() completes on every node.
+ * A node that cannot be reached counts as busy, so a cluster only finishes with all of its nodes.
+ */
+public final class ClusterCoordinator implements AutoCloseable {
+    private static final int STATUS_TIMEOUT_MILLIS = 2_000;
+
+    private final ClusterSettings settings;
+    private final ClusterNode localNode;
+    private final HostPartitioner partitioner;
+    private final Map<String, PeerForwarder> forwarders;
+
+    private final AtomicLong sent;
+    private final AtomicLong received;
+    // batches that were received, but not handed to the crawl yet
+    private final AtomicInteger batchesInIntake;
+    private final CompletableFuture<Void> termination;
+    private final Set<Socket> connections;
+
+    private volatile Consumer<List<Hyperlink>> intake;
+    private volatile BooleanSupplier locallyIdle;
+    private volatile boolean closed;
+    private ServerSocket serverSocket;
+    private Thread detector;
+
+    private final Logger logger;
+
+    public ClusterCoordinator(ClusterSettings settings) {
+        if (settings == null) {
+            throw new IllegalStateException("ClusterSettings are null. Cannot coordinate a cluster without knowing its nodes.");
+        }
+        this.settings = settings;
+        this.localNode = settings.localNode();
+        this.partitioner = new HostPartitioner(settings.nodes());
+        this.sent = new AtomicLong();
+        this.received = new AtomicLong();
+        this.batchesInIntake = new AtomicInteger();
+        this.termination = new CompletableFuture<>();
+        this.connections = ConcurrentHashMap.newKeySet();
+
+        Map<String, PeerForwarder> peerForwarders = new HashMap<>();
+        for (ClusterNode node : settings.nodes()) {
+            if (!node.id().equals(localNode.id())) {
+                // a dropped hyperlink will never be received, so it must not count as sent either
+                peerForwarders.put(node.id(), new PeerForwarder(node, settings, dropped -> sent.addAndGet(-dropped)));
+            }
+        }
+        this.forwarders = Map.copyOf(peerForwarders);
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /*
+     * Starts to accept hyperlinks from the other nodes, to forward hyperlinks to them, and to watch for the end of the crawl.
+     * Received hyperlinks are handed to intake batch by batch, and locallyIdle tells whether this node has nothing left to do.
+     */
+    public void start(Consumer<List<Hyperlink>> intake, BooleanSupplier locallyIdle) {
+        if (serverSocket != null) {
+            throw new IllegalStateException("The cluster coordinator of node '%s' was already started.".formatted(localNode.id()));
+        }
+        this.intake = intake;
+        this.locallyIdle = locallyIdle;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(localNode.address());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Node '%s' could not listen on %s:%d.".formatted(localNode.id(), localNode.host(), localNode.port()), e);
+        }
+
+        startDaemon(this::acceptConnections, "cluster-acceptor");
+        forwarders.values().forEach(PeerForwarder::start);
+        detector = startDaemon(this::detectTermination, "cluster-termination-detector");
+        logger.log(Level.INFO, "Node '%s' listens on %s:%d, %d other nodes in the cluster."
+                .formatted(localNode.id(), localNode.host(), localNode.port(), forwarders.size()));
+    }
+
+    public boolean owns(Hyperlink hyperlink) {
+        String host = hyperlink.getUri().getHost();
+        return host == null || partitioner.ownerOf(host) == localNode;
+    }
+
+    /*
+     * Queues a hyperlink that this node does not own to be sent to its owner.
+     */
+    public void forward(Hyperlink hyperlink) {
+        ClusterNode owner = partitioner.ownerOf(hyperlink.getUri().getHost());
+        if (owner == localNode) {
+            throw new IllegalStateException("Node '%s' owns '%s' itself, there is nobody to forward it to.".formatted(localNode.id(), hyperlink.getUri()));
+        }
+        sent.incrementAndGet();
+        forwarders.get(owner.id()).forward(hyperlink);
+    }
+
+    /*
+     * Completes once the crawl of the whole cluster is over.
+     */
+    public CompletableFuture<Void> termination() {
+        return termination;
+    }
+
+    public long getHyperlinksSent() {
+        return sent.get();
+    }
+
+    public long getHyperlinksReceived() {
+        return received.get();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                startDaemon(() -> serve(socket), "cluster-connection-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "Node '%s' could not accept a connection: %s".formatted(localNode.id(), e.getMessage()));
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (!closed) {
+                byte type;
+                try {
+                    type = input.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (type) {
+                    case ClusterProtocol.HYPERLINKS -> {
+                        receiveHyperlinks(input);
+                        output.writeByte(ClusterProtocol.ACK);
+                    }
+                    case ClusterProtocol.STATUS -> ClusterProtocol.writeStatus(output, localStatus());
+                    case ClusterProtocol.TERMINATE -> {
+                        if (termination.complete(null)) {
+                            logger.log(Level.INFO, "Node '%s' was told the crawl of the cluster is over.".formatted(localNode.id()));
+                        }
+                        output.writeByte(ClusterProtocol.ACK);
+                    }
+                    default -> throw new IOException("Unknown request type '%c'.".formatted((char) type));
+                }
+                output.flush();
+            }
+        } catch (IOException e) {
+            if (!closed && !(e instanceof SocketException)) {
+                logger.log(Level.WARNING, "Closed a cluster connection of node '%s': %s".formatted(localNode.id(), e.getMessage()));
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void receiveHyperlinks(DataInputStream input) throws IOException {
+        int count = ClusterProtocol.readHyperlinkCount(input);
+        // counted as busy from before the hyperlinks are read until they are in the crawl, so no status can miss them
+        batchesInIntake.incrementAndGet();
+        try {
+            List<Hyperlink> hyperlinks = ClusterProtocol.readHyperlinks(input, count);
+            try {
+                intake.accept(hyperlinks);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Node '%s' lost %d received hyperlinks: %s".formatted(localNode.id(), hyperlinks.size(), e.getMessage()));
+            }
+        } finally {
+            // the whole batch counts, even unparseable or lost hyperlinks, otherwise the sums would never agree
+            received.addAndGet(count);
+            batchesInIntake.decrementAndGet();
+        }
+    }
+
+    private ClusterProtocol.Status localStatus() {
+        // the counts are read before idleness, so anything that happens in between makes the node look busy or changes a count
+        long sentSoFar = sent.get();
+        long receivedSoFar = received.get();
+        boolean idle = batchesInIntake.get() == 0 && locallyIdle.getAsBoolean();
+        return new ClusterProtocol.Status(idle, sentSoFar, receivedSoFar);
+    }
+
+    private void detectTermination() {
+        Map<String, ClusterProtocol.Status> previousWave = null;
+        try {
+            while (!closed && !termination.isDone()) {
+                Thread.sleep(settings.idlePollInterval().toMillis());
+                if (!localStatus().idle()) {
+                    previousWave = null;
+                    continue;
+                }
+
+                Map<String, ClusterProtocol.Status> wave = collectStatuses();
+                if (wave == null) {
+                    previousWave = null;
+                    continue;
+                }
+                long sentInTotal = wave.values().stream().mapToLong(ClusterProtocol.Status::sent).sum();
+                long receivedInTotal = wave.values().stream().mapToLong(ClusterProtocol.Status::received).sum();
+                if (sentInTotal == receivedInTotal && wave.equals(previousWave)) {
+                    logger.log(Level.INFO, "Node '%s' found every node idle, %d hyperlinks were exchanged. The crawl of the cluster is over."
+                            .formatted(localNode.id(), sentInTotal));
+                    broadcastTermination();
+                    termination.complete(null);
+                    return;
+                }
+                previousWave = wave;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * The status of every node, or null as soon as one of them is busy or cannot be reached.
+     */
+    private Map<String, ClusterProtocol.Status> collectStatuses() {
+        Map<String, ClusterProtocol.Status> wave = new LinkedHashMap<>();
+        for (ClusterNode node : settings.nodes()) {
+            ClusterProtocol.Status status;
+            if (node == localNode) {
+                status = localStatus();
+            } else {
+                try {
+                    status = requestStatus(node);
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Node '%s' could not get the status of node '%s': %s".formatted(localNode.id(), node.id(), e.getMessage()));
+                    return null;
+                }
+            }
+            if (!status.idle()) {
+                return null;
+            }
+            wave.put(node.id(), status);
+        }
+        return wave;
+    }
+
+    private ClusterProtocol.Status requestStatus(ClusterNode node) throws IOException {
+        try (Socket socket = connect(node)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeByte(ClusterProtocol.STATUS);
+            output.flush();
+            return ClusterProtocol.readStatus(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+        }
+    }
+
+    private void broadcastTermination() {
+        for (ClusterNode node : settings.nodes()) {
+            if (node == localNode) {
+                continue;
+            }
+            try (Socket socket = connect(node)) {
+                DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                output.writeByte(ClusterProtocol.TERMINATE);
+                output.flush();
+                ClusterProtocol.expectAck(new DataInputStream(socket.getInputStream()));
+            } catch (IOException e) {
+                // it finds out on its own with the next wave, or it has already shut down
+                logger.log(Level.FINE, "Node '%s' could not tell node '%s' that the crawl is over: %s".formatted(localNode.id(), node.id(), e.getMessage()));
+            }
+        }
+    }
+
+    private static Socket connect(ClusterNode node) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(node.address(), STATUS_TIMEOUT_MILLIS);
+            socket.setSoTimeout(STATUS_TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static Thread startDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /*
+     * Stops all network activity of this node. Hyperlinks that were not forwarded by now are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        forwarders.values().forEach(PeerForwarder::close);
+        if (detector != null) {
+            detector.interrupt();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket connection : connections) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not close the cluster connections of node '%s': %s".formatted(localNode.id(), e.getMessage()));
+        }
+    }
+}
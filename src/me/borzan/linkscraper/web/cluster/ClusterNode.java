@@ -0,0 +1,38 @@
+package me.borzan.linkscraper.web.cluster;
+
+import java.net.InetSocketAddress;
+
+/*
+ * One crawler process of a cluster, identified by an id that all nodes agree on, and reachable at host and port.
+ */
+public record ClusterNode(String id, String host, int port) {
+    public ClusterNode {
+        if (id == null || id.isBlank() || host == null || host.isBlank()) {
+            throw new IllegalStateException("A cluster node needs an id and a host.");
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalStateException("The port %d of cluster node '%s' is out of range.".formatted(port, id));
+        }
+    }
+
+    /*
+     * Parses "<id>=<host>:<port>", e.g. "node-1=10.0.0.5:7401".
+     */
+    public static ClusterNode parse(String node) {
+        int separator = node.indexOf('=');
+        int portSeparator = node.lastIndexOf(':');
+        if (separator < 1 || portSeparator < separator + 2) {
+            throw new IllegalStateException("Cannot parse cluster node '%s', expected <id>=<host>:<port>.".formatted(node));
+        }
+        try {
+            return new ClusterNode(node.substring(0, separator), node.substring(separator + 1, portSeparator),
+                    Integer.parseInt(node.substring(portSeparator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Cannot parse the port of cluster node '%s'.".formatted(node));
+        }
+    }
+
+    public InetSocketAddress address() {
+        return new InetSocketAddress(host, port);
+    }
+}
@@ -0,0 +1,103 @@
+package me.borzan.linkscraper.web.cluster;
+
+import me.borzan.linkscraper.util.UriUtils;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The wire format between the nodes of a cluster. A connection carries one request after the other, each request is
+ * a type byte and its payload, and each is answered before the next one is sent:
+ *
+ *  - HYPERLINKS: the number of hyperlinks, then every hyperlink as length-prefixed UTF-8 URI and label, and its depth.
+ *    Answered with ACK once the hyperlinks were handed to the crawl of the receiving node.
+ *  - STATUS: no payload. Answered with whether the node is idle, and how many hyperlinks it has sent and received so far.
+ *  - TERMINATE: no payload, the crawl of the cluster is over. Answered with ACK.
+ */
+final class ClusterProtocol {
+    static final byte HYPERLINKS = 'H';
+    static final byte STATUS = 'S';
+    static final byte TERMINATE = 'T';
+    static final byte ACK = 'A';
+
+    static final int MAX_BATCH_SIZE = 1 << 16;
+    private static final int MAX_STRING_SIZE = 1 << 20;
+
+    private ClusterProtocol() {}
+
+    record Status(boolean idle, long sent, long received) {}
+
+    static void writeHyperlinks(DataOutput output, List<Hyperlink> hyperlinks) throws IOException {
+        output.writeByte(HYPERLINKS);
+        output.writeInt(hyperlinks.size());
+        for (Hyperlink hyperlink : hyperlinks) {
+            writeString(output, hyperlink.getUri().toString());
+            writeString(output, hyperlink.getLabel());
+            output.writeInt(hyperlink.getDepth());
+        }
+    }
+
+    static int readHyperlinkCount(DataInput input) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > MAX_BATCH_SIZE) {
+            throw new IOException("A batch of %d hyperlinks is not a valid batch.".formatted(count));
+        }
+        return count;
+    }
+
+    /*
+     * Reads the hyperlinks of a HYPERLINKS request, after their count. Hyperlinks whose URI cannot be parsed are skipped.
+     */
+    static List<Hyperlink> readHyperlinks(DataInput input, int count) throws IOException {
+        List<Hyperlink> hyperlinks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String uri = readString(input);
+            String label = readString(input);
+            int depth = input.readInt();
+            URI parsedUri = UriUtils.tryParseUri(uri);
+            if (parsedUri != null) {
+                hyperlinks.add(new Hyperlink(parsedUri, label, depth));
+            }
+        }
+        return hyperlinks;
+    }
+
+    static void writeStatus(DataOutput output, Status status) throws IOException {
+        output.writeBoolean(status.idle());
+        output.writeLong(status.sent());
+        output.writeLong(status.received());
+    }
+
+    static Status readStatus(DataInput input) throws IOException {
+        return new Status(input.readBoolean(), input.readLong(), input.readLong());
+    }
+
+    static void expectAck(DataInput input) throws IOException {
+        byte answer = input.readByte();
+        if (answer != ACK) {
+            throw new IOException("Expected an acknowledgement, got '%c'.".formatted((char) answer));
+        }
+    }
+
+    private static void writeString(DataOutput output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_STRING_SIZE) {
+            throw new IOException("A string of %d bytes is not a valid string.".formatted(length));
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
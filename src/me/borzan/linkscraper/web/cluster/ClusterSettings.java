@@ -0,0 +1,69 @@
+package me.borzan.linkscraper.web.cluster;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Which node of which cluster this process is, and how it exchanges hyperlinks with the others.
+ * Every node of a cluster has to be started with the same list of nodes, otherwise they disagree on who owns which host.
+ *
+ * Hyperlinks for other nodes are sent once forwardBatchSize of them are pending, or once the oldest of them waited for
+ * forwardFlushInterval. The termination of the crawl is checked every idlePollInterval while this node has nothing to do.
+ */
+public record ClusterSettings(String localNodeId,
+                              List<ClusterNode> nodes,
+                              int forwardBatchSize,
+                              Duration forwardFlushInterval,
+                              Duration idlePollInterval) {
+    private static final int DEFAULT_FORWARD_BATCH_SIZE = 256;
+    private static final Duration DEFAULT_FORWARD_FLUSH_INTERVAL = Duration.ofMillis(50);
+    private static final Duration DEFAULT_IDLE_POLL_INTERVAL = Duration.ofMillis(250);
+
+    public ClusterSettings {
+        if (nodes == null || nodes.isEmpty()) {
+            throw new IllegalStateException("A cluster needs at least one node.");
+        }
+        nodes = List.copyOf(nodes);
+        Set<String> ids = new HashSet<>();
+        for (ClusterNode node : nodes) {
+            if (!ids.add(node.id())) {
+                throw new IllegalStateException("The node id '%s' is used twice in the cluster.".formatted(node.id()));
+            }
+        }
+        if (!ids.contains(localNodeId)) {
+            throw new IllegalStateException("The local node '%s' is not one of the cluster's nodes %s.".formatted(localNodeId, ids));
+        }
+        if (forwardBatchSize < 1 || forwardBatchSize > ClusterProtocol.MAX_BATCH_SIZE) {
+            throw new IllegalStateException("The forward batch size must be between 1 and %d.".formatted(ClusterProtocol.MAX_BATCH_SIZE));
+        }
+        if (forwardFlushInterval == null || forwardFlushInterval.isNegative() || idlePollInterval == null || idlePollInterval.isNegative() || idlePollInterval.isZero()) {
+            throw new IllegalStateException("The flush interval must not be negative and the idle poll interval must be positive.");
+        }
+    }
+
+    public static ClusterSettings of(String localNodeId, List<ClusterNode> nodes) {
+        return new ClusterSettings(localNodeId, nodes, DEFAULT_FORWARD_BATCH_SIZE, DEFAULT_FORWARD_FLUSH_INTERVAL, DEFAULT_IDLE_POLL_INTERVAL);
+    }
+
+    /*
+     * Parses a comma separated list of nodes, e.g. "a=localhost:7401,b=localhost:7402".
+     */
+    public static ClusterSettings parse(String localNodeId, String nodes) {
+        return of(localNodeId, Arrays.stream(nodes.split(",")).map(String::strip).filter(node -> !node.isEmpty()).map(ClusterNode::parse).toList());
+    }
+
+    public ClusterSettings withForwarding(int forwardBatchSize, Duration forwardFlushInterval) {
+        return new ClusterSettings(localNodeId, nodes, forwardBatchSize, forwardFlushInterval, idlePollInterval);
+    }
+
+    public ClusterSettings withIdlePollInterval(Duration idlePollInterval) {
+        return new ClusterSettings(localNodeId, nodes, forwardBatchSize, forwardFlushInterval, idlePollInterval);
+    }
+
+    public ClusterNode localNode() {
+        return nodes.stream().filter(node -> node.id().equals(localNodeId)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,52 @@
+package me.borzan.linkscraper.web.cluster;
+
+import me.borzan.linkscraper.util.HashUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Assigns every host to exactly one node with consistent hashing: each node takes VIRTUAL_NODES points on a ring of
+ * 64-bit hashes, and a host belongs to the node of the first point at or after the host's own hash.
+ * So every node owns a similar share of hosts, and adding or removing a node only moves the hosts of its share.
+ *
+ * The ring is two sorted arrays, a lookup is one hash and a binary search.
+ */
+public final class HostPartitioner {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final long[] ringPoints;
+    private final ClusterNode[] ringNodes;
+
+    public HostPartitioner(List<ClusterNode> nodes) {
+        if (nodes == null || nodes.isEmpty()) {
+            throw new IllegalStateException("Cannot partition hosts over no nodes at all.");
+        }
+
+        int points = nodes.size() * VIRTUAL_NODES;
+        long[][] ring = new long[points][];
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                ring[n * VIRTUAL_NODES + v] = new long[] { HashUtils.fingerprint64(nodes.get(n).id() + "#" + v), n };
+            }
+        }
+        // ties are practically impossible, the node index keeps the order deterministic anyway
+        Arrays.sort(ring, (left, right) -> left[0] != right[0] ? Long.compare(left[0], right[0]) : Long.compare(left[1], right[1]));
+
+        this.ringPoints = new long[points];
+        this.ringNodes = new ClusterNode[points];
+        for (int i = 0; i < points; i++) {
+            ringPoints[i] = ring[i][0];
+            ringNodes[i] = nodes.get((int) ring[i][1]);
+        }
+    }
+
+    public ClusterNode ownerOf(String host) {
+        long hash = HashUtils.fingerprint64(host);
+        int index = Arrays.binarySearch(ringPoints, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return ringNodes[index == ringPoints.length ? 0 : index];
+    }
+}
@@ -0,0 +1,175 @@
+package me.borzan.linkscraper.web.cluster;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Sends the hyperlinks owned by one other node to it, in batches, over one connection that is kept open.
+ * Crawl threads only put hyperlinks into a queue, a thread of its own takes them out and does the network I/O,
+ * so a slow or restarting peer never holds up the crawl of this node.
+ *
+ * A batch goes out once it is full, or once its first hyperlink waited for the flush interval.
+ * If the peer cannot be reached, the batch is retried with a growing pause until GIVE_UP_AFTER, e.g. while the peer
+ * is still starting up. A batch that is given up on is reported to onDropped.
+ */
+final class PeerForwarder implements AutoCloseable {
+    private static final Duration GIVE_UP_AFTER = Duration.ofMinutes(1);
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+    private final ClusterNode peer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final LongConsumer onDropped;
+    private final LinkedBlockingQueue<Hyperlink> pending;
+    private final Thread thread;
+    private final Logger logger;
+
+    private volatile boolean closed;
+    // volatile so close() can abort a blocking send from another thread
+    private volatile Socket socket;
+    private DataOutputStream output;
+    private DataInputStream input;
+
+    PeerForwarder(ClusterNode peer, ClusterSettings settings, LongConsumer onDropped) {
+        this.peer = peer;
+        this.batchSize = settings.forwardBatchSize();
+        this.flushIntervalNanos = settings.forwardFlushInterval().toNanos();
+        this.onDropped = onDropped;
+        this.pending = new LinkedBlockingQueue<>();
+        this.thread = new Thread(this::forwardUntilClosed, "cluster-forwarder-" + peer.id());
+        thread.setDaemon(true);
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void forward(Hyperlink hyperlink) {
+        pending.add(hyperlink);
+    }
+
+    private void forwardUntilClosed() {
+        List<Hyperlink> batch = new ArrayList<>(batchSize);
+        try {
+            while (!closed) {
+                Hyperlink first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch, System.nanoTime() + flushIntervalNanos);
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void fillBatch(List<Hyperlink> batch, long flushAt) throws InterruptedException {
+        while (batch.size() < batchSize) {
+            pending.drainTo(batch, batchSize - batch.size());
+            long remainingNanos = flushAt - System.nanoTime();
+            if (batch.size() >= batchSize || remainingNanos <= 0) {
+                return;
+            }
+            Hyperlink next = pending.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void send(List<Hyperlink> batch) throws InterruptedException {
+        long giveUpAt = System.nanoTime() + GIVE_UP_AFTER.toNanos();
+        long pauseMillis = 50;
+        while (true) {
+            try {
+                connectIfNeeded();
+                ClusterProtocol.writeHyperlinks(output, batch);
+                output.flush();
+                ClusterProtocol.expectAck(input);
+                return;
+            } catch (IOException e) {
+                disconnect();
+                if (closed || System.nanoTime() - giveUpAt > 0) {
+                    logger.log(Level.SEVERE, "Dropping %d hyperlinks for node '%s' at %s:%d, it could not be reached: %s"
+                            .formatted(batch.size(), peer.id(), peer.host(), peer.port(), e.getMessage()));
+                    onDropped.accept(batch.size());
+                    return;
+                }
+                logger.log(Level.FINE, "Node '%s' is not reachable yet, retrying in %d ms: %s".formatted(peer.id(), pauseMillis, e.getMessage()));
+                Thread.sleep(pauseMillis);
+                pauseMillis = Math.min(pauseMillis * 2, 2_000);
+            }
+        }
+    }
+
+    private void connectIfNeeded() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            newSocket.connect(peer.address(), CONNECT_TIMEOUT_MILLIS);
+            newSocket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            output = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream(), 64 * 1024));
+            input = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            socket = newSocket;
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+    }
+
+    private void disconnect() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the connection is abandoned either way
+        }
+        socket = null;
+        output = null;
+        input = null;
+    }
+
+    /*
+     * Stops forwarding, hyperlinks that were not sent by now are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // the forwarder thread cleans up after itself
+            }
+        }
+    }
+}
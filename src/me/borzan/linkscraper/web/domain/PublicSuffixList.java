@@ -0,0 +1,256 @@
+package me.borzan.linkscraper.web.domain;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The rules of the Public Suffix List (https://publicsuffix.org) in a trie of reversed labels, to tell the registrable
+ * domain of a host, e.g. example.co.uk for www.example.co.uk, where just taking the last two labels would give co.uk.
+ *
+ * The lookup walks the host from its last label to its first without allocating anything: children of a trie node are
+ * found by hashing the characters of the label in place, the same way String.hashCode would. Hosts are expected in lower case
+ * and with internationalized labels in their ASCII form (xn--...), which is how the UriCanonicalizer leaves them.
+ *
+ * registrableDomain additionally remembers the result per host in a small lock-free cache, so hyperlinks of the same host
+ * share one domain string and most lookups end with a single comparison.
+ *
+ * The list is bundled as a resource and parsed once, the first time it is needed. To update it, replace
+ * public_suffix_list.dat next to this class with the current version from https://publicsuffix.org/list/public_suffix_list.dat.
+ */
+public final class PublicSuffixList {
+    private static final String BUNDLED_LIST = "public_suffix_list.dat";
+    private static final int CACHE_SIZE = 1 << 14;
+
+    private final Node root;
+    private final AtomicReferenceArray<CachedDomain> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    private PublicSuffixList(Node root) {
+        this.root = root;
+    }
+
+    public static PublicSuffixList getDefault() {
+        return BundledList.INSTANCE;
+    }
+
+    /*
+     * Reads a list in the format of public_suffix_list.dat. Both its ICANN and private sections are used.
+     */
+    public static PublicSuffixList load(InputStream input) throws IOException {
+        MutableNode root = new MutableNode();
+        // the implicit "*" rule: without any other rule, the last label is the public suffix
+        root.wildcard = true;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            // a rule ends at the first whitespace
+            int end = 0;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            addRule(root, line.substring(0, end));
+        }
+        return new PublicSuffixList(root.freeze());
+    }
+
+    /*
+     * Returns the index at which the registrable domain of the host starts, e.g. 4 for www.example.co.uk,
+     * or -1 if the host is a public suffix itself and has no registrable domain.
+     */
+    public int registrableDomainStart(String host) {
+        int suffixStart = publicSuffixStart(host);
+        if (suffixStart == 0) {
+            return -1;
+        }
+        // one more label than the public suffix
+        return host.lastIndexOf('.', suffixStart - 2) + 1;
+    }
+
+    /*
+     * The registrable domain of the host, or the host itself if it is a public suffix or an IP address.
+     */
+    public String registrableDomain(String host) {
+        int hash = host.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        CachedDomain cached = cache.get(slot);
+        if (cached != null && cached.host.equals(host)) {
+            return cached.domain;
+        }
+
+        String domain;
+        if (isIpAddress(host)) {
+            domain = host;
+        } else {
+            int start = registrableDomainStart(host);
+            domain = start <= 0 ? host : host.substring(start);
+        }
+        cache.set(slot, new CachedDomain(host, domain));
+        return domain;
+    }
+
+    /*
+     * Walks the trie from the last label, remembering where the longest matching rule started.
+     */
+    private int publicSuffixStart(String host) {
+        int end = host.length();
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        int suffixStart = -1;
+        Node node = root;
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            Node child = node.child(host, start, end);
+            if (child != null && child.exception) {
+                // an exception rule makes the label it names registrable again
+                suffixStart = end + 1;
+                break;
+            }
+            if (node.wildcard) {
+                suffixStart = start;
+            }
+            if (child == null) {
+                break;
+            }
+            if (child.rule) {
+                suffixStart = start;
+            }
+            node = child;
+            end = start - 1;
+        }
+        return Math.max(0, suffixStart);
+    }
+
+    private static boolean isIpAddress(String host) {
+        if (host.startsWith("[")) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return !host.isEmpty();
+    }
+
+    private static void addRule(MutableNode root, String rule) {
+        boolean exception = rule.startsWith("!");
+        if (exception) {
+            rule = rule.substring(1);
+        }
+        String[] labels = rule.split("\\.");
+        MutableNode node = root;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            String label = labels[i];
+            if (label.equals("*") && i == 0) {
+                node.wildcard = true;
+                return;
+            }
+            node = node.children.computeIfAbsent(toAscii(label), ignored -> new MutableNode());
+        }
+        if (exception) {
+            node.exception = true;
+        } else {
+            node.rule = true;
+        }
+    }
+
+    private static String toAscii(String label) {
+        if (label.chars().allMatch(c -> c < 0x80)) {
+            return label.toLowerCase(Locale.ROOT);
+        }
+        try {
+            return IDN.toASCII(label, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return label.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record CachedDomain(String host, String domain) {}
+
+    private static final class MutableNode {
+        private final Map<String, MutableNode> children = new HashMap<>();
+        private boolean rule;
+        private boolean exception;
+        private boolean wildcard;
+
+        private Node freeze() {
+            int capacity = Integer.highestOneBit(Math.max(1, children.size() * 2 - 1)) << 1;
+            String[] labels = new String[capacity];
+            Node[] nodes = new Node[capacity];
+            for (Map.Entry<String, MutableNode> child : children.entrySet()) {
+                int slot = child.getKey().hashCode() & (capacity - 1);
+                while (labels[slot] != null) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                labels[slot] = child.getKey();
+                nodes[slot] = child.getValue().freeze();
+            }
+            return new Node(labels, nodes, rule, exception, wildcard);
+        }
+    }
+
+    /*
+     * Children are kept in an open-addressed table with linear probing, keyed by the String hash of their label.
+     */
+    private static final class Node {
+        private final String[] labels;
+        private final Node[] children;
+        private final boolean rule;
+        private final boolean exception;
+        private final boolean wildcard;
+
+        private Node(String[] labels, Node[] children, boolean rule, boolean exception, boolean wildcard) {
+            this.labels = labels;
+            this.children = children;
+            this.rule = rule;
+            this.exception = exception;
+            this.wildcard = wildcard;
+        }
+
+        private Node child(String host, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + host.charAt(i);
+            }
+            int mask = labels.length - 1;
+            int length = end - start;
+            for (int slot = hash & mask; labels[slot] != null; slot = (slot + 1) & mask) {
+                String label = labels[slot];
+                if (label.length() == length && host.regionMatches(start, label, 0, length)) {
+                    return children[slot];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class BundledList {
+        private static final PublicSuffixList INSTANCE = loadBundledList();
+
+        private static PublicSuffixList loadBundledList() {
+            try (InputStream input = PublicSuffixList.class.getResourceAsStream(BUNDLED_LIST)) {
+                if (input == null) {
+                    throw new IllegalStateException("The bundled public suffix list '%s' is missing.".formatted(BUNDLED_LIST));
+                }
+                return load(input);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the bundled public suffix list.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import java.net.URI;
+import java.util.List;
+
+/*
+ * Tells pages apart by their content rather than their URI, for one crawl: a page whose SimHash is close to that of
+ * a page fetched before is a near-duplicate, and URL patterns that keep producing near-duplicates are throttled.
+ *
+ * Every page gets a fingerprinter of its own to be fed the page's tokens, and is checked once its body is complete.
+ */
+public final class NearDuplicateDetector {
+    private final NearDuplicatePolicy policy;
+    private final NearDuplicateIndex index;
+    private final UrlPatternStatistics patternStatistics;
+
+    public NearDuplicateDetector(NearDuplicatePolicy policy) {
+        if (policy == null) {
+            throw new IllegalStateException("NearDuplicatePolicy is null. Use NearDuplicatePolicy.DEFAULT if in doubt.");
+        }
+        this.policy = policy;
+        this.index = new NearDuplicateIndex();
+        this.patternStatistics = new UrlPatternStatistics(policy);
+    }
+
+    public SimHashFingerprinter newFingerprinter() {
+        return new SimHashFingerprinter();
+    }
+
+    /*
+     * Returns true if a page with nearly the same content was checked before. The page itself is remembered otherwise,
+     * and counted for its URL pattern either way. Pages with too little text are never near-duplicates.
+     */
+    public boolean isNearDuplicate(URI pageUri, SimHashFingerprinter fingerprinter) {
+        if (fingerprinter.getShingleCount() < policy.minimumShingles()) {
+            return false;
+        }
+        boolean nearDuplicate = index.containsNearDuplicateOrAdd(fingerprinter.fingerprint());
+        patternStatistics.recordPage(pageUri, nearDuplicate);
+        return nearDuplicate;
+    }
+
+    public boolean isThrottled(URI uri) {
+        return patternStatistics.isThrottled(uri);
+    }
+
+    public List<UrlPatternStatistics.PatternSummary> throttledPatterns() {
+        return patternStatistics.throttledPatterns();
+    }
+
+    public int getDistinctPages() {
+        return index.size();
+    }
+}
@@ -0,0 +1,64 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import java.util.Arrays;
+
+/*
+ * The SimHash fingerprints of all pages seen so far, indexed for the question "is there one that differs from this one
+ * in at most MAX_HAMMING_DISTANCE bits?", without comparing against every fingerprint.
+ *
+ * The 64 bits are cut into BANDS bands of 16 bits. Two fingerprints that differ in at most 3 bits agree completely on
+ * at least one of the 4 bands, so only fingerprints sharing a band with the one looked up are candidates. Each band is
+ * a table with one bucket per possible 16-bit value, so finding the candidates is a plain array access, and only the
+ * candidates are compared bit by bit.
+ *
+ * Every fingerprint is stored once per band, 32 bytes per page. Lookups are rare compared to everything else a page
+ * goes through, so a single lock is enough.
+ */
+public final class NearDuplicateIndex {
+    public static final int MAX_HAMMING_DISTANCE = 3;
+    private static final int BANDS = MAX_HAMMING_DISTANCE + 1;
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+    private static final int BUCKETS_PER_BAND = 1 << BAND_BITS;
+    private static final int INITIAL_BUCKET_CAPACITY = 2;
+
+    // bucket band * BUCKETS_PER_BAND + value holds the fingerprints with that value in that band
+    private final long[][] buckets = new long[BANDS * BUCKETS_PER_BAND][];
+    private final int[] bucketSizes = new int[BANDS * BUCKETS_PER_BAND];
+    private int size;
+
+    /*
+     * Returns true if a near-duplicate of the fingerprint was added before, otherwise adds the fingerprint and returns false.
+     */
+    public synchronized boolean containsNearDuplicateOrAdd(long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = bucketIndex(band, fingerprint);
+            long[] candidates = buckets[bucket];
+            for (int i = 0; i < bucketSizes[bucket]; i++) {
+                if (Long.bitCount(candidates[i] ^ fingerprint) <= MAX_HAMMING_DISTANCE) {
+                    return true;
+                }
+            }
+        }
+
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = bucketIndex(band, fingerprint);
+            long[] bucketFingerprints = buckets[bucket];
+            if (bucketFingerprints == null) {
+                bucketFingerprints = buckets[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+            } else if (bucketSizes[bucket] == bucketFingerprints.length) {
+                bucketFingerprints = buckets[bucket] = Arrays.copyOf(bucketFingerprints, bucketFingerprints.length * 2);
+            }
+            bucketFingerprints[bucketSizes[bucket]++] = fingerprint;
+        }
+        size++;
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static int bucketIndex(int band, long fingerprint) {
+        return band * BUCKETS_PER_BAND + (int) ((fingerprint >>> (band * BAND_BITS)) & (BUCKETS_PER_BAND - 1));
+    }
+}
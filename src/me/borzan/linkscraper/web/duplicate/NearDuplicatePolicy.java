@@ -0,0 +1,24 @@
+package me.borzan.linkscraper.web.duplicate;
+
+/*
+ * When a page counts as a near-duplicate, and when a family of URLs counts as a crawler trap.
+ *
+ * Pages with fewer than minimumShingles shingles (roughly: words) are never compared, since nearly empty pages
+ * all look alike. A URL pattern is throttled once at least trapMinimumPages of its pages were fetched and at least
+ * trapDuplicateRatio of them were near-duplicates.
+ */
+public record NearDuplicatePolicy(int minimumShingles, int trapMinimumPages, double trapDuplicateRatio) {
+    public static final NearDuplicatePolicy DEFAULT = new NearDuplicatePolicy(16, 20, 0.5);
+
+    public NearDuplicatePolicy {
+        if (minimumShingles < 1) {
+            throw new IllegalStateException("At least one shingle is needed to compare pages.");
+        }
+        if (trapMinimumPages < 1) {
+            throw new IllegalStateException("At least one page is needed to tell a crawler trap.");
+        }
+        if (trapDuplicateRatio <= 0 || trapDuplicateRatio > 1) {
+            throw new IllegalStateException("The duplicate ratio of a crawler trap must be above 0 and at most 1.");
+        }
+    }
+}
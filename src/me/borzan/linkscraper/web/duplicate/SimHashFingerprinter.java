@@ -0,0 +1,132 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import me.borzan.linkscraper.util.HashUtils;
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+/*
+ * Computes the SimHash of the visible text of a document while it is being tokenized.
+ *
+ * The text is split into words, and every run of SHINGLE_WORDS consecutive words (a shingle) is hashed to 64 bits.
+ * Each bit of the fingerprint is set if it was set in more than half of the shingle hashes. Documents that share most
+ * of their shingles therefore end up with fingerprints that differ in only a few bits, unlike with a plain hash, where
+ * a changed date or session id in the text changes everything.
+ *
+ * Words are runs of ASCII letters and digits plus any non-ASCII bytes, lower-cased, and tags end a word.
+ * The text of scripts and styles never reaches the listener. Memory does not grow with the document.
+ *
+ * The set bits per position are counted bit-sliced: countPlanes[j] holds bit j of all 64 counters at once, so adding
+ * a shingle is a ripple-carry addition over a few longs instead of 64 separate additions.
+ */
+public final class SimHashFingerprinter implements HtmlTokenListener {
+    private static final int SHINGLE_WORDS = 4;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long SHINGLE_MULTIPLIER = 0x9e3779b97f4a7c15L;
+    // the lower-cased byte for every byte that belongs to a word, 0 for every byte that separates words
+    private static final byte[] WORD_BYTES = new byte[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            if (b >= 0x80 || (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z')) {
+                WORD_BYTES[b] = (byte) b;
+            } else if (b >= 'A' && b <= 'Z') {
+                WORD_BYTES[b] = (byte) (b + ('a' - 'A'));
+            }
+        }
+    }
+
+    private final long[] countPlanes = new long[Integer.SIZE];
+    // the hashes of the last SHINGLE_WORDS words, oldest first
+    private long word0;
+    private long word1;
+    private long word2;
+    private long word3;
+    private int wordCount;
+    private long currentWord = FNV_OFFSET_BASIS;
+    private boolean inWord;
+    private int shingleCount;
+
+    @Override
+    public void startTag(String tagName, HtmlAttributes attributes) {
+        endWord();
+    }
+
+    @Override
+    public void endTag(String tagName) {
+        endWord();
+    }
+
+    @Override
+    public void text(byte[] buffer, int offset, int length) {
+        long word = currentWord;
+        boolean wordPending = inWord;
+        for (int i = offset; i < offset + length; i++) {
+            byte wordByte = WORD_BYTES[buffer[i] & 0xff];
+            if (wordByte != 0) {
+                word = (word ^ (wordByte & 0xff)) * FNV_PRIME;
+                wordPending = true;
+            } else if (wordPending) {
+                currentWord = word;
+                inWord = true;
+                endWord();
+                word = FNV_OFFSET_BASIS;
+                wordPending = false;
+            }
+        }
+        currentWord = word;
+        inWord = wordPending;
+    }
+
+    @Override
+    public void endOfDocument() {
+        endWord();
+    }
+
+    private void endWord() {
+        if (!inWord) {
+            return;
+        }
+        word0 = word1;
+        word1 = word2;
+        word2 = word3;
+        word3 = currentWord;
+        currentWord = FNV_OFFSET_BASIS;
+        inWord = false;
+        if (wordCount < SHINGLE_WORDS) {
+            wordCount++;
+        }
+        if (wordCount == SHINGLE_WORDS) {
+            addShingle(((word0 * SHINGLE_MULTIPLIER + word1) * SHINGLE_MULTIPLIER + word2) * SHINGLE_MULTIPLIER + word3);
+        }
+    }
+
+    private void addShingle(long shingle) {
+        long carry = HashUtils.mix64(shingle);
+        for (int plane = 0; carry != 0; plane++) {
+            long sum = countPlanes[plane] ^ carry;
+            carry &= countPlanes[plane];
+            countPlanes[plane] = sum;
+        }
+        shingleCount++;
+    }
+
+    public int getShingleCount() {
+        return shingleCount;
+    }
+
+    public long fingerprint() {
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            long count = 0;
+            for (int plane = 0; plane < countPlanes.length; plane++) {
+                count |= ((countPlanes[plane] >>> bit) & 1) << plane;
+            }
+            // set in more than half of the shingles
+            if (2 * count > shingleCount) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,130 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Counts fetched pages and near-duplicates per URL pattern, to tell crawler traps such as calendars, faceted search
+ * or session ids in URLs. The pattern of a URL is its host and path, where every path segment with a digit in it
+ * (or an overly long one) is replaced by '*', plus the sorted names of its query parameters without their values.
+ * So /calendar/2024/05?view=week&sid=abc and /calendar/2031/11?sid=xyz&view=day are the same pattern.
+ *
+ * Once enough pages of a pattern were fetched and too many of them were near-duplicates, the pattern is throttled:
+ * only every THROTTLED_ADMISSION-th new URL of it is still let through, which keeps sampling it, so a pattern recovers
+ * if its pages turn out to be distinct after all.
+ */
+public final class UrlPatternStatistics {
+    private static final int MAX_PATTERNS = 100_000;
+    private static final int MAX_SEGMENT_LENGTH = 32;
+    private static final int THROTTLED_ADMISSION = 16;
+
+    private final NearDuplicatePolicy policy;
+    private final Map<String, PatternCounts> patterns;
+
+    public UrlPatternStatistics(NearDuplicatePolicy policy) {
+        if (policy == null) {
+            throw new IllegalStateException("NearDuplicatePolicy is null. Use NearDuplicatePolicy.DEFAULT if in doubt.");
+        }
+        this.policy = policy;
+        this.patterns = new ConcurrentHashMap<>();
+    }
+
+    public record PatternSummary(String pattern, long pages, long nearDuplicates, long throttledUris) {}
+
+    public void recordPage(URI uri, boolean nearDuplicate) {
+        String pattern = patternOf(uri);
+        PatternCounts counts = patterns.get(pattern);
+        if (counts == null) {
+            // beyond the cap, new patterns are not tracked any more, which keeps an endless trap from growing the map endlessly
+            if (patterns.size() >= MAX_PATTERNS) {
+                return;
+            }
+            counts = patterns.computeIfAbsent(pattern, ignored -> new PatternCounts());
+        }
+        long pages = counts.pages.incrementAndGet();
+        long nearDuplicates = nearDuplicate ? counts.nearDuplicates.incrementAndGet() : counts.nearDuplicates.get();
+        counts.throttled = pages >= policy.trapMinimumPages() && nearDuplicates >= policy.trapDuplicateRatio() * pages;
+    }
+
+    /*
+     * Returns true if the URL belongs to a throttled pattern and is not one of the few that are let through anyway.
+     */
+    public boolean isThrottled(URI uri) {
+        PatternCounts counts = patterns.get(patternOf(uri));
+        if (counts == null || !counts.throttled) {
+            return false;
+        }
+        return counts.throttledUris.incrementAndGet() % THROTTLED_ADMISSION != 0;
+    }
+
+    public List<PatternSummary> throttledPatterns() {
+        return patterns.entrySet().stream()
+                .filter(entry -> entry.getValue().throttled)
+                .map(entry -> new PatternSummary(entry.getKey(), entry.getValue().pages.get(),
+                        entry.getValue().nearDuplicates.get(), entry.getValue().throttledUris.get()))
+                .sorted(Comparator.comparingLong(PatternSummary::nearDuplicates).reversed())
+                .toList();
+    }
+
+    static String patternOf(URI uri) {
+        StringBuilder pattern = new StringBuilder(64);
+        pattern.append(uri.getHost());
+        if (uri.getPort() != -1) {
+            pattern.append(':').append(uri.getPort());
+        }
+
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        int segmentStart = 0;
+        while (segmentStart < path.length()) {
+            int segmentEnd = path.indexOf('/', segmentStart + 1);
+            if (segmentEnd == -1) {
+                segmentEnd = path.length();
+            }
+            // the segment including its leading slash
+            if (isVariable(path, segmentStart + 1, segmentEnd)) {
+                pattern.append("/*");
+            } else {
+                pattern.append(path, segmentStart, segmentEnd);
+            }
+            segmentStart = segmentEnd;
+        }
+
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] parameterNames = query.split("&");
+            for (int i = 0; i < parameterNames.length; i++) {
+                int separator = parameterNames[i].indexOf('=');
+                if (separator != -1) {
+                    parameterNames[i] = parameterNames[i].substring(0, separator);
+                }
+            }
+            pattern.append('?').append(String.join("&", Arrays.stream(parameterNames).distinct().sorted().toList()));
+        }
+        return pattern.toString();
+    }
+
+    private static boolean isVariable(String path, int start, int end) {
+        if (end - start > MAX_SEGMENT_LENGTH) {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class PatternCounts {
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong nearDuplicates = new AtomicLong();
+        private final AtomicLong throttledUris = new AtomicLong();
+        private volatile boolean throttled;
+    }
+}
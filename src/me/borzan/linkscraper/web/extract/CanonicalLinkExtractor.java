@@ -0,0 +1,61 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+import me.borzan.linkscraper.web.hyperlink.UriCanonicalizer;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/*
+ * Finds the URI a page declares as its canonical one with <link rel="canonical" href="...">.
+ * Only the first declaration counts, and a page without one yields nothing.
+ */
+public final class CanonicalLinkExtractor implements PageExtractor<URI> {
+    private final UriCanonicalizer canonicalizer;
+
+    public CanonicalLinkExtractor() {
+        this(UriCanonicalizer.DEFAULT);
+    }
+
+    public CanonicalLinkExtractor(UriCanonicalizer canonicalizer) {
+        if (canonicalizer == null) {
+            throw new IllegalStateException("UriCanonicalizer is null. Use UriCanonicalizer.DEFAULT if in doubt.");
+        }
+        this.canonicalizer = canonicalizer;
+    }
+
+    @Override
+    public HtmlTokenListener newListener(URI pageUri, Consumer<URI> found) {
+        DocumentBase documentBase = new DocumentBase(pageUri, canonicalizer);
+        return new HtmlTokenListener() {
+            private boolean canonicalSeen;
+
+            @Override
+            public void startTag(String tagName, HtmlAttributes attributes) {
+                if (documentBase.update(tagName, attributes) || canonicalSeen || !"link".equals(tagName) || !isCanonical(attributes.get("rel"))) {
+                    return;
+                }
+                canonicalSeen = true;
+                URI canonicalUri = documentBase.resolve(attributes.get("href"));
+                if (canonicalUri != null) {
+                    found.accept(canonicalUri);
+                }
+            }
+        };
+    }
+
+    // rel is a list of link types separated by whitespace
+    private static boolean isCanonical(String rel) {
+        if (rel == null) {
+            return false;
+        }
+        for (String linkType : rel.strip().split("\\s+")) {
+            if (linkType.toLowerCase(Locale.ROOT).equals("canonical")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
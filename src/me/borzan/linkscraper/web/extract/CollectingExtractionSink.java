@@ -0,0 +1,23 @@
+package me.borzan.linkscraper.web.extract;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Keeps everything an extractor found in memory, for crawls small enough for that.
+ */
+public final class CollectingExtractionSink<T> implements ExtractionSink<T> {
+    private final Queue<Extraction<T>> extractions = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void accept(URI pageUri, T value) {
+        extractions.add(new Extraction<>(pageUri, value));
+    }
+
+    // in the order they were found
+    public ExtractionWebScrapingResult<T> result() {
+        return new ExtractionWebScrapingResult<>(List.copyOf(extractions));
+    }
+}
@@ -0,0 +1,44 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.hyperlink.UriCanonicalizer;
+
+import java.net.URI;
+
+/*
+ * Resolves the URIs a document refers to against the URI of the document, or against its first <base href>,
+ * the same way the HyperlinkExtractor resolves hrefs. Anything that does not lead to an http(s) URI, e.g. a data: URI,
+ * is resolved to null.
+ */
+final class DocumentBase {
+    private final UriCanonicalizer canonicalizer;
+    private URI baseUri;
+    private boolean baseHrefSeen;
+
+    DocumentBase(URI documentUri, UriCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+        this.baseUri = documentUri == null ? null : canonicalizer.canonicalize(documentUri);
+    }
+
+    /*
+     * To be called with every start tag, returns true if it was a <base> tag.
+     */
+    boolean update(String tagName, HtmlAttributes attributes) {
+        if (!"base".equals(tagName)) {
+            return false;
+        }
+        String href = attributes.get("href");
+        if (href != null && !baseHrefSeen) {
+            baseHrefSeen = true;
+            URI resolvedBaseUri = canonicalizer.resolve(baseUri, href);
+            if (resolvedBaseUri != null) {
+                baseUri = resolvedBaseUri;
+            }
+        }
+        return true;
+    }
+
+    URI resolve(String href) {
+        return href == null ? null : canonicalizer.resolve(baseUri, href);
+    }
+}
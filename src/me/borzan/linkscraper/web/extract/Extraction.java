@@ -0,0 +1,8 @@
+package me.borzan.linkscraper.web.extract;
+
+import java.net.URI;
+
+/*
+ * A value found on a page.
+ */
+public record Extraction<T>(URI pageUri, T value) {}
@@ -0,0 +1,17 @@
+package me.borzan.linkscraper.web.extract;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+
+/*
+ * Receives every value an extractor found, along with the page it was found on, as soon as it was found.
+ * Like a HyperlinkSink, accept is called from many threads at once, and the sink is closed by whoever created it.
+ */
+@FunctionalInterface
+public interface ExtractionSink<T> extends Closeable {
+    void accept(URI pageUri, T value);
+
+    @Override
+    default void close() throws IOException {}
+}
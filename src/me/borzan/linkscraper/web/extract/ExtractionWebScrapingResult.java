@@ -0,0 +1,10 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.WebScrapingResult;
+
+import java.util.List;
+
+/*
+ * A wrapper record for everything one extractor found during a crawl
+ */
+public record ExtractionWebScrapingResult<T>(List<Extraction<T>> result) implements WebScrapingResult<List<Extraction<T>>> {}
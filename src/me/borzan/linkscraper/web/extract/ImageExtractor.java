@@ -0,0 +1,48 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+import me.borzan.linkscraper.web.hyperlink.UriCanonicalizer;
+
+import java.net.URI;
+import java.util.function.Consumer;
+
+/*
+ * Finds the images of a page in its <img> tags. Lazily loaded images often keep their actual source in data-src,
+ * which is taken if there is no src. Inline data: images are left out, the alt text is empty if there is none.
+ */
+public final class ImageExtractor implements PageExtractor<ImageExtractor.Image> {
+    public record Image(URI uri, String alt) {}
+
+    private final UriCanonicalizer canonicalizer;
+
+    public ImageExtractor() {
+        this(UriCanonicalizer.DEFAULT);
+    }
+
+    public ImageExtractor(UriCanonicalizer canonicalizer) {
+        if (canonicalizer == null) {
+            throw new IllegalStateException("UriCanonicalizer is null. Use UriCanonicalizer.DEFAULT if in doubt.");
+        }
+        this.canonicalizer = canonicalizer;
+    }
+
+    @Override
+    public HtmlTokenListener newListener(URI pageUri, Consumer<Image> found) {
+        DocumentBase documentBase = new DocumentBase(pageUri, canonicalizer);
+        return new HtmlTokenListener() {
+            @Override
+            public void startTag(String tagName, HtmlAttributes attributes) {
+                if (documentBase.update(tagName, attributes) || !"img".equals(tagName)) {
+                    return;
+                }
+                String source = attributes.get("src");
+                URI imageUri = documentBase.resolve(source == null || source.isBlank() ? attributes.get("data-src") : source);
+                if (imageUri != null) {
+                    String alt = attributes.get("alt");
+                    found.accept(new Image(imageUri, alt == null ? "" : alt.strip()));
+                }
+            }
+        };
+    }
+}
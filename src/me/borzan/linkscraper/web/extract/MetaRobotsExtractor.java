@@ -0,0 +1,52 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/*
+ * Finds the directives of <meta name="robots" content="..."> tags, e.g. noindex or nofollow.
+ * Every such tag of a page yields its own MetaRobots, directives are lower-cased and "none" counts as noindex and nofollow.
+ */
+public final class MetaRobotsExtractor implements PageExtractor<MetaRobotsExtractor.MetaRobots> {
+    public record MetaRobots(Set<String> directives) {
+        public boolean isNoIndex() {
+            return directives.contains("noindex") || directives.contains("none");
+        }
+
+        public boolean isNoFollow() {
+            return directives.contains("nofollow") || directives.contains("none");
+        }
+    }
+
+    @Override
+    public HtmlTokenListener newListener(URI pageUri, Consumer<MetaRobots> found) {
+        return new HtmlTokenListener() {
+            @Override
+            public void startTag(String tagName, HtmlAttributes attributes) {
+                if (!"meta".equals(tagName)) {
+                    return;
+                }
+                String name = attributes.get("name");
+                String content = attributes.get("content");
+                if (name == null || content == null || !name.strip().equalsIgnoreCase("robots")) {
+                    return;
+                }
+                Set<String> directives = new LinkedHashSet<>();
+                for (String directive : content.split(",")) {
+                    String normalizedDirective = directive.strip().toLowerCase(Locale.ROOT);
+                    if (!normalizedDirective.isEmpty()) {
+                        directives.add(normalizedDirective);
+                    }
+                }
+                found.accept(new MetaRobots(Collections.unmodifiableSet(directives)));
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+import java.net.URI;
+import java.util.function.Consumer;
+
+/*
+ * Extracts values of type T from the pages of a crawl, out of the same tokens the hyperlinks are extracted from,
+ * so a page is fetched and tokenized once no matter how many extractors look at it.
+ *
+ * newListener is called once per page, and the listener it returns sees the tokens of that page only, from one thread at a time.
+ * It can keep whatever state it needs for the page, and passes every value to found as soon as it is complete.
+ */
+@FunctionalInterface
+public interface PageExtractor<T> {
+    HtmlTokenListener newListener(URI pageUri, Consumer<T> found);
+}
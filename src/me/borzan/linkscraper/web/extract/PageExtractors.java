@@ -0,0 +1,97 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The extractors a crawl runs on every page, each with the sink its values go to.
+ *
+ * For every page, the crawl asks for one listener, which hands every token to all extractors in the order they were added.
+ * The tokens are passed straight out of the buffers of the tokenizer and are never copied, whatever the number of extractors,
+ * so N extractors add their own work to a page, but neither another fetch nor another pass of the tokenizer.
+ * The extractors of one page run one after the other on the thread that tokenizes it, many pages are tokenized in parallel.
+ */
+public final class PageExtractors {
+    public static final PageExtractors NONE = new PageExtractors(List.of());
+
+    private final List<Registration<?>> registrations;
+
+    private PageExtractors(List<Registration<?>> registrations) {
+        this.registrations = registrations;
+    }
+
+    public <T> PageExtractors with(PageExtractor<T> extractor, ExtractionSink<T> sink) {
+        if (extractor == null || sink == null) {
+            throw new IllegalStateException("The extractor and its sink must not be null, or its values would be lost.");
+        }
+        List<Registration<?>> extendedRegistrations = new ArrayList<>(registrations);
+        extendedRegistrations.add(new Registration<>(extractor, sink));
+        return new PageExtractors(List.copyOf(extendedRegistrations));
+    }
+
+    public boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    public int size() {
+        return registrations.size();
+    }
+
+    public HtmlTokenListener newPageListener(URI pageUri) {
+        if (registrations.size() == 1) {
+            return registrations.get(0).newListener(pageUri);
+        }
+        HtmlTokenListener[] listeners = new HtmlTokenListener[registrations.size()];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = registrations.get(i).newListener(pageUri);
+        }
+        return new FanOutListener(listeners);
+    }
+
+    private record Registration<T>(PageExtractor<T> extractor, ExtractionSink<T> sink) {
+        private HtmlTokenListener newListener(URI pageUri) {
+            return extractor.newListener(pageUri, value -> sink.accept(pageUri, value));
+        }
+    }
+
+    // a flat loop instead of a chain of andThen, which would nest one call deeper for every extractor
+    private static final class FanOutListener implements HtmlTokenListener {
+        private final HtmlTokenListener[] listeners;
+
+        private FanOutListener(HtmlTokenListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void startTag(String tagName, HtmlAttributes attributes) {
+            for (HtmlTokenListener listener : listeners) {
+                listener.startTag(tagName, attributes);
+            }
+        }
+
+        @Override
+        public void endTag(String tagName) {
+            for (HtmlTokenListener listener : listeners) {
+                listener.endTag(tagName);
+            }
+        }
+
+        @Override
+        public void text(byte[] buffer, int offset, int length) {
+            for (HtmlTokenListener listener : listeners) {
+                listener.text(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public void endOfDocument() {
+            for (HtmlTokenListener listener : listeners) {
+                listener.endOfDocument();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package me.borzan.linkscraper.web.html;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * The attributes of the start tag the HtmlTokenizer is currently reading, kept in fixed-size buffers.
+ * Attributes that do not fit (too many, or too long names or values) are marked as truncated and are treated as absent,
+ * since e.g. a cut-off href would only produce a broken link.
+ *
+ * Values are only decoded into Strings, with their character references resolved, when they are asked for.
+ */
+public final class HtmlAttributes {
+    private static final int MAX_ATTRIBUTES = 32;
+    private static final int NAME_BUFFER_SIZE = 1024;
+    private static final int VALUE_BUFFER_SIZE = 8192;
+
+    private final byte[] nameBuffer = new byte[NAME_BUFFER_SIZE];
+    private final byte[] valueBuffer = new byte[VALUE_BUFFER_SIZE];
+    private final int[] nameStarts = new int[MAX_ATTRIBUTES];
+    private final int[] nameLengths = new int[MAX_ATTRIBUTES];
+    private final int[] valueStarts = new int[MAX_ATTRIBUTES];
+    private final int[] valueLengths = new int[MAX_ATTRIBUTES];
+    private final boolean[] truncated = new boolean[MAX_ATTRIBUTES];
+
+    private int count;
+    private int nameBufferLength;
+    private int valueBufferLength;
+    private boolean open;
+
+    HtmlAttributes() {}
+
+    public String get(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        return HtmlEntities.decode(new String(valueBuffer, valueStarts[index], valueLengths[index], StandardCharsets.UTF_8));
+    }
+
+    public boolean has(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < count; i++) {
+            if (!truncated[i] && nameEquals(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int index, String name) {
+        if (nameLengths[index] != name.length()) {
+            return false;
+        }
+        int start = nameStarts[index];
+        for (int i = 0; i < name.length(); i++) {
+            if (nameBuffer[start + i] != HtmlTokenizer.toLowerAscii((byte) name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        count = 0;
+        nameBufferLength = 0;
+        valueBufferLength = 0;
+        open = false;
+    }
+
+    void startAttribute() {
+        if (count == MAX_ATTRIBUTES) {
+            open = false;
+            return;
+        }
+        nameStarts[count] = nameBufferLength;
+        nameLengths[count] = 0;
+        valueStarts[count] = valueBufferLength;
+        valueLengths[count] = 0;
+        truncated[count] = false;
+        open = true;
+    }
+
+    void appendToName(byte b) {
+        if (!open) {
+            return;
+        }
+        if (nameBufferLength == NAME_BUFFER_SIZE) {
+            truncated[count] = true;
+            return;
+        }
+        nameBuffer[nameBufferLength++] = b;
+        nameLengths[count]++;
+    }
+
+    void appendToValue(byte b) {
+        if (!open) {
+            return;
+        }
+        if (valueBufferLength == VALUE_BUFFER_SIZE) {
+            truncated[count] = true;
+            return;
+        }
+        valueBuffer[valueBufferLength++] = b;
+        valueLengths[count]++;
+    }
+
+    void endAttribute() {
+        if (open) {
+            count++;
+            open = false;
+        }
+    }
+}
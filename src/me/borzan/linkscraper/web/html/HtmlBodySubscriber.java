@@ -0,0 +1,98 @@
+package me.borzan.linkscraper.web.html;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/*
+ * Feeds a response body into an HtmlTokenizer chunk by chunk as it is downloaded, so listeners see tokens
+ * (and e.g. hyperlinks) long before the last byte arrived, and the body itself is never buffered.
+ *
+ * Chunks are requested one at a time, which keeps the client from reading further ahead than the tokenizer can follow.
+ *
+ * The subscriber keeps count of the bytes it tokenized and of the time that took, including the time the listener took.
+ * Both are final once the body completed.
+ */
+public final class HtmlBodySubscriber implements HttpResponse.BodySubscriber<Void> {
+    private final HtmlTokenizer tokenizer;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    // only touched by onNext, which is never called concurrently
+    private long bytesTokenized;
+    private long tokenizingNanos;
+
+    public HtmlBodySubscriber(HtmlTokenListener listener) {
+        this(listener, HtmlTagNames.HTML);
+    }
+
+    public HtmlBodySubscriber(HtmlTokenListener listener, HtmlTagNames knownTagNames) {
+        this.tokenizer = new HtmlTokenizer(listener, knownTagNames);
+    }
+
+    public static HttpResponse.BodyHandler<Void> handler(HtmlTokenListener listener) {
+        return responseInfo -> new HtmlBodySubscriber(listener);
+    }
+
+    public long getBytesTokenized() {
+        return bytesTokenized;
+    }
+
+    public long getTokenizingNanos() {
+        return tokenizingNanos;
+    }
+
+    @Override
+    public CompletionStage<Void> getBody() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (completion.isDone()) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            for (ByteBuffer buffer : buffers) {
+                bytesTokenized += buffer.remaining();
+                tokenizer.feed(buffer);
+            }
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        } finally {
+            tokenizingNanos += System.nanoTime() - startedAt;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (completion.isDone()) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            tokenizer.finish();
+            tokenizingNanos += System.nanoTime() - startedAt;
+            completion.complete(null);
+        } catch (RuntimeException e) {
+            completion.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package me.borzan.linkscraper.web.html;
+
+import java.util.Map;
+
+/*
+ * Decodes character references in attribute values and text: numeric references and the named entities that are
+ * common in real documents, which includes the five entities of XML. Anything else, including references without
+ * the closing semicolon, is left as it is.
+ */
+public final class HtmlEntities {
+    // longer than any name below or any valid numeric reference, so a stray '&' does not make us scan the whole text
+    private static final int MAX_REFERENCE_LENGTH = 32;
+
+    private static final Map<String, String> NAMED_ENTITIES = Map.ofEntries(
+            Map.entry("amp", "&"), Map.entry("lt", "<"), Map.entry("gt", ">"), Map.entry("quot", "\""),
+            Map.entry("apos", "'"), Map.entry("nbsp", "\u00A0"), Map.entry("shy", "\u00AD"),
+            Map.entry("copy", "©"), Map.entry("reg", "®"), Map.entry("trade", "™"),
+            Map.entry("laquo", "«"), Map.entry("raquo", "»"), Map.entry("lsquo", "‘"),
+            Map.entry("rsquo", "’"), Map.entry("ldquo", "“"), Map.entry("rdquo", "”"),
+            Map.entry("ndash", "–"), Map.entry("mdash", "—"), Map.entry("hellip", "…"),
+            Map.entry("middot", "·"), Map.entry("bull", "•"), Map.entry("times", "×"),
+            Map.entry("euro", "€"), Map.entry("pound", "£"), Map.entry("yen", "¥"),
+            Map.entry("cent", "¢"), Map.entry("sect", "§"), Map.entry("deg", "°"),
+            Map.entry("para", "¶"), Map.entry("larr", "←"), Map.entry("rarr", "→")
+    );
+
+    private HtmlEntities() {}
+
+    public static String decode(String text) {
+        int ampersand = text.indexOf('&');
+        if (ampersand < 0) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        int position = 0;
+        while (ampersand >= 0) {
+            int semicolon = text.indexOf(';', ampersand);
+            if (semicolon < 0) {
+                break;
+            }
+            String replacement = semicolon - ampersand <= MAX_REFERENCE_LENGTH ? decodeReference(text.substring(ampersand + 1, semicolon)) : null;
+            if (replacement != null) {
+                decoded.append(text, position, ampersand).append(replacement);
+                position = semicolon + 1;
+            }
+            ampersand = text.indexOf('&', replacement != null ? position : ampersand + 1);
+        }
+        return decoded.append(text, position, text.length()).toString();
+    }
+
+    /*
+     * Where a character reference starts that the text was cut off in the middle of, e.g. the "&am" of a truncated "&amp;",
+     * or the length of the text if it does not end in one. The text is UTF-8, before any decoding.
+     */
+    public static int cutOffReferenceStart(byte[] text, int length) {
+        for (int i = length - 1; i >= 0 && length - i <= MAX_REFERENCE_LENGTH; i--) {
+            byte b = text[i];
+            if (b == '&') {
+                return i;
+            }
+            if (b != '#' && !(b >= 'a' && b <= 'z') && !(b >= 'A' && b <= 'Z') && !(b >= '0' && b <= '9')) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    private static String decodeReference(String reference) {
+        if (!reference.startsWith("#")) {
+            return NAMED_ENTITIES.get(reference);
+        }
+        if (reference.length() < 2) {
+            return null;
+        }
+        try {
+            int codePoint = reference.charAt(1) == 'x' || reference.charAt(1) == 'X'
+                    ? Integer.parseInt(reference.substring(2), 16)
+                    : Integer.parseInt(reference.substring(1));
+            return Character.isValidCodePoint(codePoint) && codePoint != 0 ? Character.toString(codePoint) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
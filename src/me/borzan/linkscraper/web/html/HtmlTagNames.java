@@ -0,0 +1,50 @@
+package me.borzan.linkscraper.web.html;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+ * The tag names a tokenizer hands out without allocating a new String for every tag, since it compares the bytes of a tag
+ * against them first. Names that are not in here still work, they just cost a String each time.
+ *
+ * HTML covers the tags the extractors of a crawl look at. A listener that is interested in other tags, e.g. the elements
+ * of a sitemap, brings its own names with, so the tokenizer of a page does not compare against them.
+ */
+public final class HtmlTagNames {
+    public static final HtmlTagNames HTML = new HtmlTagNames(new String[]{
+            "a", "base", "img", "link", "meta", "script", "style", "title", "p", "div", "span", "li", "ul", "br",
+            "html", "head", "body"
+    });
+
+    private final String[] names;
+    private final byte[][] nameBytes;
+
+    private HtmlTagNames(String[] names) {
+        this.names = names;
+        this.nameBytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public HtmlTagNames with(String... additionalNames) {
+        String[] extendedNames = Arrays.copyOf(names, names.length + additionalNames.length);
+        for (int i = 0; i < additionalNames.length; i++) {
+            extendedNames[names.length + i] = additionalNames[i].toLowerCase(Locale.ROOT);
+        }
+        return new HtmlTagNames(extendedNames);
+    }
+
+    /*
+     * The known name that equals the first length bytes of the (lower case) buffer, or null if there is none.
+     */
+    String find(byte[] buffer, int length) {
+        for (int i = 0; i < nameBytes.length; i++) {
+            if (Arrays.equals(nameBytes[i], 0, nameBytes[i].length, buffer, 0, length)) {
+                return names[i];
+            }
+        }
+        return null;
+    }
+}
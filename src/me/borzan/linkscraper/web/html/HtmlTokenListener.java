@@ -0,0 +1,52 @@
+package me.borzan.linkscraper.web.html;
+
+/*
+ * Receives the tokens of a document from the HtmlTokenizer as they are read.
+ *
+ * The attributes and the text buffer are re-used by the tokenizer for the next token, so anything that should outlive
+ * the call has to be copied.
+ */
+public interface HtmlTokenListener {
+    default void startTag(String tagName, HtmlAttributes attributes) {}
+
+    default void endTag(String tagName) {}
+
+    /*
+     * Text between tags, as raw bytes. A single text node may arrive in several chunks.
+     */
+    default void text(byte[] buffer, int offset, int length) {}
+
+    default void endOfDocument() {}
+
+    /*
+     * A listener that hands every token to this listener first and then to the next one.
+     */
+    default HtmlTokenListener andThen(HtmlTokenListener next) {
+        HtmlTokenListener first = this;
+        return new HtmlTokenListener() {
+            @Override
+            public void startTag(String tagName, HtmlAttributes attributes) {
+                first.startTag(tagName, attributes);
+                next.startTag(tagName, attributes);
+            }
+
+            @Override
+            public void endTag(String tagName) {
+                first.endTag(tagName);
+                next.endTag(tagName);
+            }
+
+            @Override
+            public void text(byte[] buffer, int offset, int length) {
+                first.text(buffer, offset, length);
+                next.text(buffer, offset, length);
+            }
+
+            @Override
+            public void endOfDocument() {
+                first.endOfDocument();
+                next.endOfDocument();
+            }
+        };
+    }
+}
@@ -0,0 +1,357 @@
+package me.borzan.linkscraper.web.html;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A small, forgiving HTML tokenizer that works on raw bytes as they arrive, so a document never has to be held in memory
+ * as a whole. It is a plain state machine loosely following the tokenization rules of the HTML spec, with only the parts
+ * that matter for scraping: tags with their attributes, text, comments, and the raw text of <script> and <style>,
+ * which is skipped so that markup inside scripts is not mistaken for tags.
+ *
+ * Working on bytes is fine for any ASCII compatible encoding (which includes UTF-8), since markup characters can never
+ * be part of a multibyte sequence. Everything is kept in fixed-size buffers, so memory does not grow with the document.
+ *
+ * An instance is not thread-safe and reads exactly one document.
+ */
+public final class HtmlTokenizer {
+    private static final int TAG_NAME_BUFFER_SIZE = 32;
+    private static final int TEXT_BUFFER_SIZE = 4096;
+
+    private static final byte[] SCRIPT_TAG_NAME = "script".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STYLE_TAG_NAME = "style".getBytes(StandardCharsets.US_ASCII);
+
+    private enum State {
+        DATA, TAG_OPEN, TAG_NAME, END_TAG_OPEN, END_TAG_NAME, AFTER_END_TAG_NAME,
+        BEFORE_ATTRIBUTE_NAME, ATTRIBUTE_NAME, AFTER_ATTRIBUTE_NAME, BEFORE_ATTRIBUTE_VALUE,
+        ATTRIBUTE_VALUE_DOUBLE_QUOTED, ATTRIBUTE_VALUE_SINGLE_QUOTED, ATTRIBUTE_VALUE_UNQUOTED, SELF_CLOSING_START_TAG,
+        MARKUP_DECLARATION_OPEN, COMMENT, BOGUS_COMMENT, RAW_TEXT
+    }
+
+    private final HtmlTokenListener listener;
+    private final HtmlTagNames knownTagNames;
+    private final HtmlAttributes attributes = new HtmlAttributes();
+    private final byte[] tagNameBuffer = new byte[TAG_NAME_BUFFER_SIZE];
+    private final byte[] textBuffer = new byte[TEXT_BUFFER_SIZE];
+
+    private State state = State.DATA;
+    private int tagNameLength;
+    private boolean tagNameOverflow;
+    private int textLength;
+    // counts trailing dashes inside a comment, so "-->" can be recognized across buffer boundaries
+    private int commentDashes;
+    // the tag whose end tag closes the raw text section we are in, and how much of "</name" has been matched so far
+    private byte[] rawTextEndTag;
+    private int rawTextMatched;
+    private boolean finished;
+
+    public HtmlTokenizer(HtmlTokenListener listener) {
+        this(listener, HtmlTagNames.HTML);
+    }
+
+    public HtmlTokenizer(HtmlTokenListener listener, HtmlTagNames knownTagNames) {
+        if (listener == null) {
+            throw new IllegalStateException("HtmlTokenListener is null. Tokenizing without it would be pointless.");
+        }
+        if (knownTagNames == null) {
+            throw new IllegalStateException("HtmlTagNames are null. Use HtmlTagNames.HTML if in doubt.");
+        }
+        this.listener = listener;
+        this.knownTagNames = knownTagNames;
+    }
+
+    public void feed(ByteBuffer buffer) {
+        if (finished) {
+            throw new IllegalStateException("This tokenizer already finished its document.");
+        }
+        while (buffer.hasRemaining()) {
+            consume(buffer.get());
+        }
+    }
+
+    public void feed(byte[] bytes, int offset, int length) {
+        feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        flushText();
+        listener.endOfDocument();
+    }
+
+    private void consume(byte b) {
+        switch (state) {
+            case DATA -> {
+                if (b == '<') {
+                    state = State.TAG_OPEN;
+                } else {
+                    appendText(b);
+                }
+            }
+            case TAG_OPEN -> {
+                if (isAsciiLetter(b)) {
+                    flushText();
+                    startTagName(b);
+                    attributes.clear();
+                    state = State.TAG_NAME;
+                } else if (b == '/') {
+                    state = State.END_TAG_OPEN;
+                } else if (b == '!') {
+                    flushText();
+                    state = State.MARKUP_DECLARATION_OPEN;
+                } else if (b == '?') {
+                    flushText();
+                    state = State.BOGUS_COMMENT;
+                } else {
+                    // a lone '<' is just text
+                    appendText((byte) '<');
+                    state = State.DATA;
+                    consume(b);
+                }
+            }
+            case TAG_NAME -> {
+                if (isWhitespace(b)) {
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else if (b == '/') {
+                    state = State.SELF_CLOSING_START_TAG;
+                } else if (b == '>') {
+                    emitStartTag();
+                } else {
+                    appendToTagName(b);
+                }
+            }
+            case END_TAG_OPEN -> {
+                if (isAsciiLetter(b)) {
+                    flushText();
+                    startTagName(b);
+                    state = State.END_TAG_NAME;
+                } else if (b == '>') {
+                    state = State.DATA;
+                } else {
+                    flushText();
+                    state = State.BOGUS_COMMENT;
+                }
+            }
+            case END_TAG_NAME -> {
+                if (b == '>') {
+                    emitEndTag();
+                } else if (isWhitespace(b) || b == '/') {
+                    state = State.AFTER_END_TAG_NAME;
+                } else {
+                    appendToTagName(b);
+                }
+            }
+            case AFTER_END_TAG_NAME -> {
+                if (b == '>') {
+                    emitEndTag();
+                }
+            }
+            case BEFORE_ATTRIBUTE_NAME -> {
+                if (b == '>') {
+                    emitStartTag();
+                } else if (b == '/') {
+                    state = State.SELF_CLOSING_START_TAG;
+                } else if (!isWhitespace(b)) {
+                    attributes.startAttribute();
+                    attributes.appendToName(toLowerAscii(b));
+                    state = State.ATTRIBUTE_NAME;
+                }
+            }
+            case ATTRIBUTE_NAME -> {
+                if (isWhitespace(b)) {
+                    state = State.AFTER_ATTRIBUTE_NAME;
+                } else if (b == '=') {
+                    state = State.BEFORE_ATTRIBUTE_VALUE;
+                } else if (b == '>') {
+                    attributes.endAttribute();
+                    emitStartTag();
+                } else if (b == '/') {
+                    attributes.endAttribute();
+                    state = State.SELF_CLOSING_START_TAG;
+                } else {
+                    attributes.appendToName(toLowerAscii(b));
+                }
+            }
+            case AFTER_ATTRIBUTE_NAME -> {
+                if (b == '=') {
+                    state = State.BEFORE_ATTRIBUTE_VALUE;
+                } else if (b == '>') {
+                    attributes.endAttribute();
+                    emitStartTag();
+                } else if (b == '/') {
+                    attributes.endAttribute();
+                    state = State.SELF_CLOSING_START_TAG;
+                } else if (!isWhitespace(b)) {
+                    attributes.endAttribute();
+                    attributes.startAttribute();
+                    attributes.appendToName(toLowerAscii(b));
+                    state = State.ATTRIBUTE_NAME;
+                }
+            }
+            case BEFORE_ATTRIBUTE_VALUE -> {
+                if (b == '"') {
+                    state = State.ATTRIBUTE_VALUE_DOUBLE_QUOTED;
+                } else if (b == '\'') {
+                    state = State.ATTRIBUTE_VALUE_SINGLE_QUOTED;
+                } else if (b == '>') {
+                    attributes.endAttribute();
+                    emitStartTag();
+                } else if (!isWhitespace(b)) {
+                    attributes.appendToValue(b);
+                    state = State.ATTRIBUTE_VALUE_UNQUOTED;
+                }
+            }
+            case ATTRIBUTE_VALUE_DOUBLE_QUOTED -> consumeQuotedAttributeValue(b, (byte) '"');
+            case ATTRIBUTE_VALUE_SINGLE_QUOTED -> consumeQuotedAttributeValue(b, (byte) '\'');
+            case ATTRIBUTE_VALUE_UNQUOTED -> {
+                if (isWhitespace(b)) {
+                    attributes.endAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else if (b == '>') {
+                    attributes.endAttribute();
+                    emitStartTag();
+                } else {
+                    attributes.appendToValue(b);
+                }
+            }
+            case SELF_CLOSING_START_TAG -> {
+                if (b == '>') {
+                    emitStartTag();
+                } else {
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                    consume(b);
+                }
+            }
+            case MARKUP_DECLARATION_OPEN -> {
+                if (b == '-') {
+                    // "<!-" is treated as the start of a comment, which only costs exactness for broken documents
+                    commentDashes = -1;
+                    state = State.COMMENT;
+                } else {
+                    state = b == '>' ? State.DATA : State.BOGUS_COMMENT;
+                }
+            }
+            case COMMENT -> {
+                if (b == '-') {
+                    commentDashes++;
+                } else if (b == '>' && commentDashes >= 2) {
+                    state = State.DATA;
+                } else {
+                    commentDashes = 0;
+                }
+            }
+            case BOGUS_COMMENT -> {
+                if (b == '>') {
+                    state = State.DATA;
+                }
+            }
+            case RAW_TEXT -> consumeRawText(b);
+        }
+    }
+
+    private void consumeQuotedAttributeValue(byte b, byte quote) {
+        if (b == quote) {
+            attributes.endAttribute();
+            state = State.BEFORE_ATTRIBUTE_NAME;
+        } else {
+            attributes.appendToValue(b);
+        }
+    }
+
+    /*
+     * Skips everything up to the matching end tag, e.g. "</script".
+     */
+    private void consumeRawText(byte b) {
+        if (rawTextMatched == 0) {
+            rawTextMatched = b == '<' ? 1 : 0;
+        } else if (rawTextMatched == 1) {
+            rawTextMatched = b == '/' ? 2 : (b == '<' ? 1 : 0);
+        } else if (rawTextMatched - 2 < rawTextEndTag.length) {
+            if (toLowerAscii(b) == rawTextEndTag[rawTextMatched - 2]) {
+                rawTextMatched++;
+            } else {
+                rawTextMatched = b == '<' ? 1 : 0;
+            }
+        } else if (isWhitespace(b) || b == '>' || b == '/') {
+            byte[] endTag = rawTextEndTag;
+            rawTextEndTag = null;
+            rawTextMatched = 0;
+            tagNameLength = endTag.length;
+            tagNameOverflow = false;
+            System.arraycopy(endTag, 0, tagNameBuffer, 0, endTag.length);
+            if (b == '>') {
+                emitEndTag();
+            } else {
+                state = State.AFTER_END_TAG_NAME;
+            }
+        } else {
+            rawTextMatched = b == '<' ? 1 : 0;
+        }
+    }
+
+    private void emitStartTag() {
+        attributes.endAttribute();
+        String tagName = tagName();
+        state = State.DATA;
+        listener.startTag(tagName, attributes);
+
+        if (!tagNameOverflow && ("script".equals(tagName) || "style".equals(tagName))) {
+            rawTextEndTag = "script".equals(tagName) ? SCRIPT_TAG_NAME : STYLE_TAG_NAME;
+            rawTextMatched = 0;
+            state = State.RAW_TEXT;
+        }
+    }
+
+    private void emitEndTag() {
+        state = State.DATA;
+        listener.endTag(tagName());
+    }
+
+    private void startTagName(byte b) {
+        tagNameLength = 0;
+        tagNameOverflow = false;
+        appendToTagName(b);
+    }
+
+    private void appendToTagName(byte b) {
+        if (tagNameLength == TAG_NAME_BUFFER_SIZE) {
+            tagNameOverflow = true;
+            return;
+        }
+        tagNameBuffer[tagNameLength++] = toLowerAscii(b);
+    }
+
+    private String tagName() {
+        String knownTagName = tagNameOverflow ? null : knownTagNames.find(tagNameBuffer, tagNameLength);
+        return knownTagName != null ? knownTagName : new String(tagNameBuffer, 0, tagNameLength, StandardCharsets.ISO_8859_1);
+    }
+
+    private void appendText(byte b) {
+        if (textLength == TEXT_BUFFER_SIZE) {
+            flushText();
+        }
+        textBuffer[textLength++] = b;
+    }
+
+    private void flushText() {
+        if (textLength > 0) {
+            listener.text(textBuffer, 0, textLength);
+            textLength = 0;
+        }
+    }
+
+    static byte toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isAsciiLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+}
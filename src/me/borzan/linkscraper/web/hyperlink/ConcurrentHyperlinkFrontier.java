@@ -0,0 +1,47 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * A lock-free, unbounded in-memory frontier.
+ * Hyperlinks are visited in the order they were discovered, which makes the crawl roughly breadth-first.
+ *
+ * The size is tracked separately since ConcurrentLinkedDeque::size has to traverse the whole deque.
+ */
+public final class ConcurrentHyperlinkFrontier implements HyperlinkFrontier {
+    private final ConcurrentLinkedDeque<Hyperlink> pendingHyperlinks = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public void offer(Hyperlink hyperlink) {
+        pendingHyperlinks.offerLast(hyperlink);
+        size.incrementAndGet();
+    }
+
+    @Override
+    public Hyperlink poll() {
+        Hyperlink hyperlink = pendingHyperlinks.pollFirst();
+        if (hyperlink != null) {
+            size.decrementAndGet();
+        }
+        return hyperlink;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pendingHyperlinks.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // drain one by one to keep the size counter consistent
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.persistence.CrawlCheckpointStore;
+import me.borzan.linkscraper.web.persistence.HyperlinkRecordLog;
+import me.borzan.linkscraper.web.persistence.SpillingHyperlinkFrontier;
+import me.borzan.linkscraper.web.visited.FingerprintVisitedUriSet;
+import me.borzan.linkscraper.web.visited.VisitedUriSet;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Writes the checkpoints of a crawl into its checkpoint directory, and resumes the crawl from the last one found there.
+ * See CrawlCheckpointStore for what a checkpoint consists of.
+ *
+ * The visited set, the frontier and the hyperlinks in flight are captured while no hyperlink moves between them,
+ * so every visited hyperlink is either done, pending or in flight in the checkpoint. Whatever moves hyperlinks does so
+ * between beginMove and endMove, and hyperlinks that are neither in the frontier nor done, like those whose page is
+ * being visited, are marked in flight meanwhile. Pages in flight are fetched again on resume, which rediscovers anything
+ * they had not found yet. The crawl only stands still while the parts are copied in memory, they are written to disk afterwards.
+ *
+ * Without a checkpoint directory, none of this does anything, so the crawl does not have to ask.
+ */
+final class CrawlCheckpointer implements Closeable {
+    private final Hyperlink seed;
+    // all of them are null unless the crawl is checkpointed
+    private final CrawlCheckpointStore store;
+    private final CrawlCheckpointStore.Checkpoint resumeFrom;
+    private final FingerprintVisitedUriSet visitedUris;
+    private final SpillingHyperlinkFrontier frontier;
+    private final Duration interval;
+    // hyperlinks that are neither pending in the frontier nor done, they are pending from the point of view of a checkpoint
+    private final Set<Hyperlink> hyperlinksInFlight;
+    // taken shared by everything that moves a hyperlink between visited set, frontier and in flight, and exclusively by checkpoints
+    private final ReadWriteLock progressLock;
+    private final Logger logger;
+
+    CrawlCheckpointer(Hyperlink seed, VisitedUriSet visitedUris, HyperlinkCrawlSettings settings) {
+        this.seed = seed;
+        this.interval = settings.checkpointInterval();
+        this.logger = Logger.getLogger(this.getClass().getName());
+        if (settings.checkpointDirectory() == null) {
+            this.store = null;
+            this.resumeFrom = null;
+            this.visitedUris = null;
+            this.frontier = null;
+            this.hyperlinksInFlight = null;
+            this.progressLock = null;
+            return;
+        }
+
+        if (!(visitedUris instanceof FingerprintVisitedUriSet fingerprintVisitedUris)) {
+            throw new IllegalStateException("Checkpoints can only be written for a FingerprintVisitedUriSet.");
+        }
+        this.store = new CrawlCheckpointStore(settings.checkpointDirectory());
+        this.resumeFrom = store.load().orElse(null);
+        if (resumeFrom != null && !resumeFrom.seed().equals(seed.getUri())) {
+            throw new IllegalStateException("The checkpoint in '%s' belongs to a crawl of '%s', not of '%s'."
+                    .formatted(settings.checkpointDirectory(), resumeFrom.seed(), seed.getUri()));
+        }
+        this.visitedUris = fingerprintVisitedUris;
+        HyperlinkRecordLog.Cursor resumeAt = resumeFrom == null ? null : resumeFrom.frontierCursor();
+        this.frontier = new SpillingHyperlinkFrontier(store.frontierDirectory(), settings.frontierHeapBudgetBytes(), resumeAt, true);
+        this.hyperlinksInFlight = ConcurrentHashMap.newKeySet();
+        this.progressLock = new ReentrantReadWriteLock();
+    }
+
+    boolean isEnabled() {
+        return store != null;
+    }
+
+    Duration interval() {
+        return interval;
+    }
+
+    /*
+     * The frontier of a checkpointed crawl, which spills to the checkpoint directory. Null unless the crawl is checkpointed.
+     */
+    SpillingHyperlinkFrontier frontier() {
+        return frontier;
+    }
+
+    /*
+     * Restores the visited set, the frontier and the results of the last checkpoint. The results are replayed to the
+     * sink, and the hyperlinks that were pending outside the spilled frontier are handed to the intake, since some of
+     * them may have been waiting for their robots.txt. Returns false if there is nothing to resume from, the crawl then
+     * starts from its seed.
+     */
+    boolean resume(HyperlinkSink resultSink, Consumer<Hyperlink> pendingIntake) {
+        if (store == null) {
+            return false;
+        }
+        if (resumeFrom == null) {
+            store.openResults(null, ignored -> {});
+            return false;
+        }
+
+        store.loadVisitedInto(resumeFrom, visitedUris);
+        long previousResults = store.openResults(resumeFrom, resultSink::accept);
+        resumeFrom.pendingHyperlinks().forEach(pendingIntake);
+        logger.log(Level.INFO, "Resuming the crawl of '%s' with %d known uris, %d hyperlinks found and %d hyperlinks pending."
+                .formatted(seed.getUri(), visitedUris.size(), previousResults, frontier.size()));
+        return true;
+    }
+
+    void beginMove() {
+        if (progressLock != null) {
+            progressLock.readLock().lock();
+        }
+    }
+
+    void endMove() {
+        if (progressLock != null) {
+            progressLock.readLock().unlock();
+        }
+    }
+
+    Hyperlink poll(HyperlinkFrontier frontier) {
+        if (progressLock == null) {
+            return frontier.poll();
+        }
+        progressLock.readLock().lock();
+        try {
+            Hyperlink next = frontier.poll();
+            if (next != null) {
+                hyperlinksInFlight.add(next);
+            }
+            return next;
+        } finally {
+            progressLock.readLock().unlock();
+        }
+    }
+
+    void markInFlight(Hyperlink hyperlink) {
+        if (hyperlinksInFlight != null) {
+            hyperlinksInFlight.add(hyperlink);
+        }
+    }
+
+    void markDone(Hyperlink hyperlink) {
+        if (hyperlinksInFlight != null) {
+            hyperlinksInFlight.remove(hyperlink);
+        }
+    }
+
+    void appendResult(Hyperlink hyperlink) {
+        if (store != null) {
+            store.appendResult(hyperlink);
+        }
+    }
+
+    void checkpoint() {
+        if (store == null) {
+            return;
+        }
+        long[] visitedFingerprints;
+        List<Hyperlink> pendingHyperlinks;
+        SpillingHyperlinkFrontier.Snapshot frontierSnapshot;
+        long resultsLength;
+
+        progressLock.writeLock().lock();
+        try {
+            visitedFingerprints = visitedUris.fingerprints();
+            frontierSnapshot = frontier.snapshot();
+            pendingHyperlinks = new ArrayList<>(hyperlinksInFlight);
+            pendingHyperlinks.addAll(frontierSnapshot.inMemory());
+            resultsLength = store.resultsLength();
+        } finally {
+            progressLock.writeLock().unlock();
+        }
+
+        try {
+            store.write(seed.getUri(), visitedFingerprints, pendingHyperlinks, frontierSnapshot.spillCursor(), resultsLength);
+            frontier.onCheckpointWritten(frontierSnapshot.spillCursor());
+        } catch (UncheckedIOException e) {
+            logger.log(Level.SEVERE, "Writing a checkpoint failed, the crawl continues regardless: %s".formatted(e.getMessage()));
+        }
+    }
+
+    /*
+     * Closes the store, the frontier is closed by the crawl along with any other frontier.
+     */
+    @Override
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+/*
+ * Budgets of a crawl besides its duration. Hyperlinks deeper than maxDepth are reported, but not visited.
+ * Once maxPages pages were requested or maxBytes bytes of page bodies (after decompression) were read,
+ * no further pages are requested. Pages that are in flight by then are finished, so both may be exceeded
+ * by about what is in flight at once.
+ */
+public record CrawlLimits(int maxDepth, long maxPages, long maxBytes) {
+    public static final CrawlLimits UNLIMITED = new CrawlLimits(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    public CrawlLimits {
+        if (maxDepth < 0) {
+            throw new IllegalStateException("The maximum depth must not be negative, 0 only visits the seed.");
+        }
+        if (maxPages < 1 || maxBytes < 1) {
+            throw new IllegalStateException("At least one page and one byte are needed to crawl anything.");
+        }
+    }
+
+    public CrawlLimits withMaxDepth(int maxDepth) {
+        return new CrawlLimits(maxDepth, maxPages, maxBytes);
+    }
+
+    public CrawlLimits withMaxPages(long maxPages) {
+        return new CrawlLimits(maxDepth, maxPages, maxBytes);
+    }
+
+    public CrawlLimits withMaxBytes(long maxBytes) {
+        return new CrawlLimits(maxDepth, maxPages, maxBytes);
+    }
+}
@@ -0,0 +1,136 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/*
+ * Hands the hyperlinks of a crawl's frontier out to free slots, and knows when the crawl is over.
+ *
+ * A slot is reserved before the frontier is polled. Hyperlinks are only ever added to the frontier by pages holding a
+ * slot, or by pending work that is counted until it added whatever it had to add, like a hyperlink waiting for the
+ * robots.txt of its host. So the crawl is over exactly when no slot is taken, no work is pending and the frontier is
+ * empty, or nothing may be visited anymore. Pending work is read before the frontier, as it adds to the frontier before
+ * it stops being pending.
+ *
+ * There is no dispatcher thread. dispatch is called once to start the crawl, and then by whoever adds to the frontier,
+ * finishes a page or finishes pending work.
+ */
+final class CrawlProgress {
+    /*
+     * What the crawl does with the hyperlinks it is handed. Every visit has to end with onPageFinished, from any thread.
+     */
+    interface Pages {
+        boolean canPropagate();
+
+        /*
+         * False if no request would be accepted right now, dispatch then has to be called again once one would be.
+         */
+        boolean canSendRequest();
+
+        Hyperlink poll();
+
+        void visit(Hyperlink hyperlink);
+
+        /*
+         * False while hyperlinks may still arrive from elsewhere, e.g. from other nodes of a cluster, which then decide
+         * themselves when the crawl is over.
+         */
+        boolean mayEndWhenIdle();
+    }
+
+    private final HyperlinkFrontier frontier;
+    private final int maxConcurrentRequests;
+    // null means no further cap than maxConcurrentRequests
+    private final IntSupplier concurrencyShare;
+    private final Pages pages;
+    // counts the pages being visited plus any slots currently being reserved
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+    private final AtomicInteger pendingWork = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    CrawlProgress(HyperlinkFrontier frontier, int maxConcurrentRequests, IntSupplier concurrencyShare, Pages pages) {
+        this.frontier = frontier;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.concurrencyShare = concurrencyShare;
+        this.pages = pages;
+    }
+
+    /*
+     * Takes hyperlinks from the frontier for as long as there are free slots, and visits each of them.
+     * A poll that comes back empty is not retried, whoever adds to the frontier next dispatches again.
+     */
+    void dispatch() {
+        while (true) {
+            int current = pagesInFlight.get();
+            if (current >= maxConcurrentRequests || (concurrencyShare != null && current >= Math.max(1, concurrencyShare.getAsInt()))) {
+                return;
+            }
+            if (!pagesInFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            Hyperlink next = null;
+            boolean polled = false;
+            if (pages.canPropagate() && !frontier.isEmpty()) {
+                if (!pages.canSendRequest()) {
+                    pagesInFlight.decrementAndGet();
+                    return;
+                }
+                next = pages.poll();
+                polled = true;
+            }
+            if (next != null) {
+                pages.visit(next);
+                continue;
+            }
+
+            if (pagesInFlight.decrementAndGet() == 0 && pendingWork.get() == 0 && (frontier.isEmpty() || !pages.canPropagate())) {
+                if (pages.mayEndWhenIdle()) {
+                    completion.complete(null);
+                }
+                return;
+            }
+            if (polled || frontier.isEmpty() || !pages.canPropagate()) {
+                return;
+            }
+        }
+    }
+
+    void onPageFinished() {
+        pagesInFlight.decrementAndGet();
+        dispatch();
+    }
+
+    void beginPendingWork() {
+        pendingWork.incrementAndGet();
+    }
+
+    void endPendingWork() {
+        pendingWork.decrementAndGet();
+        dispatch();
+    }
+
+    boolean isIdle() {
+        return pagesInFlight.get() == 0 && pendingWork.get() == 0 && (frontier.isEmpty() || !pages.canPropagate());
+    }
+
+    int getPagesInFlight() {
+        return pagesInFlight.get();
+    }
+
+    /*
+     * Ends the crawl no matter what is still in flight, e.g. once the cluster found itself idle.
+     */
+    void end() {
+        completion.complete(null);
+    }
+
+    boolean isOver() {
+        return completion.isDone();
+    }
+
+    CompletableFuture<Void> completion() {
+        return completion;
+    }
+}
@@ -0,0 +1,41 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/*
+ * Decides which of the hyperlinks found on a page the crawl follows. The default is SAME_REGISTRABLE_DOMAIN,
+ * so a crawl of www.example.co.uk also visits shop.example.co.uk, but not other.co.uk.
+ *
+ * Scopes are asked for every hyperlink found and should not allocate.
+ */
+@FunctionalInterface
+public interface CrawlScope {
+    CrawlScope SAME_HOST = (page, found) -> Objects.equals(page.getUri().getHost(), found.getUri().getHost());
+    CrawlScope SAME_REGISTRABLE_DOMAIN = Hyperlink::sharesDomainWith;
+
+    boolean includes(Hyperlink page, Hyperlink found);
+
+    /*
+     * Follows hyperlinks to the given hosts and their subdomains, from whichever page they were found on.
+     */
+    static CrawlScope allowList(List<String> allowedDomains) {
+        if (allowedDomains == null || allowedDomains.isEmpty()) {
+            throw new IllegalStateException("An allow-list without any domains would not crawl anything.");
+        }
+        List<String> domains = allowedDomains.stream().map(domain -> domain.toLowerCase(Locale.ROOT)).toList();
+        return (page, found) -> {
+            String host = found.getUri().getHost();
+            if (host == null) {
+                return false;
+            }
+            for (String domain : domains) {
+                if (host.endsWith(domain) && (host.length() == domain.length() || host.charAt(host.length() - domain.length() - 1) == '.')) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
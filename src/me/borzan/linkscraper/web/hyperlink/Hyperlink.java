@@ -1,23 +1,84 @@
 package me.borzan.linkscraper.web.hyperlink;
 
+import me.borzan.linkscraper.util.HashUtils;
+import me.borzan.linkscraper.web.domain.PublicSuffixList;
+
 import java.net.URI;
-import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/*
+ * Two hyperlinks are equal if they lead to the same page, no matter their labels. The page is identified by the
+ * identity key of the UriCanonicalizer, which is computed once per hyperlink, along with its 64-bit fingerprint that
+ * the visited set works with. Hyperlinks are expected to carry canonical URIs, the key alone does not canonicalize.
+ * Keys are remembered in a small lock-free cache, so the many hyperlinks to a popular page share one key string.
+ *
+ * Hyperlinks are ordered by their labels, and hyperlinks of the same label by their keys. Only among hyperlinks of the
+ * same label is this order consistent with equality: two equal hyperlinks with different labels do not compare as 0,
+ * so a sorted set keeps one of them per label, while a hash set keeps one per page.
+ *
+ * The domain of a hyperlink is the registrable domain of its host according to the Public Suffix List,
+ * and hyperlinks of the same host share the same domain string.
+ *
+ * The depth is how many pages away from the seed the hyperlink was found, the seed itself has depth 0.
+ * Like the label, it is no part of equality.
+ */
 public final class Hyperlink implements Comparable<Hyperlink> {
+    private static final int KEY_CACHE_SIZE = 1 << 14;
+    private static final AtomicReferenceArray<String> KEY_CACHE = new AtomicReferenceArray<>(KEY_CACHE_SIZE);
+
     private final URI uri;
     private final String label;
     private final String domain;
+    private final String key;
+    private final long fingerprint;
+    private final int depth;
 
     public Hyperlink(URI uri, String label) {
+        this(uri, label, 0);
+    }
+
+    public Hyperlink(URI uri, String label, int depth) {
         this.uri = uri;
         this.label = label;
         this.domain = extractDomain();
+        String identityKey = UriCanonicalizer.identityKey(uri);
+        this.fingerprint = HashUtils.fingerprint64(identityKey);
+        this.key = sharedKey(identityKey, fingerprint);
+        this.depth = depth;
+    }
+
+    private Hyperlink(Hyperlink hyperlink, int depth) {
+        this.uri = hyperlink.uri;
+        this.label = hyperlink.label;
+        this.domain = hyperlink.domain;
+        this.key = hyperlink.key;
+        this.fingerprint = hyperlink.fingerprint;
+        this.depth = depth;
+    }
+
+    /*
+     * The same hyperlink at another depth, without computing domain, key and fingerprint again.
+     */
+    public Hyperlink withDepth(int depth) {
+        return depth == this.depth ? this : new Hyperlink(this, depth);
     }
 
     @Override
     public int compareTo(Hyperlink other) {
-        return this.label.compareTo(other.label);
+        int byLabel = this.label.compareTo(other.label);
+        return byLabel != 0 ? byLabel : this.key.compareTo(other.key);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof Hyperlink otherHyperlink
+                && this.fingerprint == otherHyperlink.fingerprint && this.key.equals(otherHyperlink.key));
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint);
     }
 
     @Override
@@ -29,16 +90,21 @@ public final class Hyperlink implements Comparable<Hyperlink> {
         return Objects.equals(this.domain, other.domain);
     }
 
+    private static String sharedKey(String key, long fingerprint) {
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & (KEY_CACHE_SIZE - 1);
+        String cached = KEY_CACHE.get(slot);
+        if (cached != null && cached.equals(key)) {
+            return cached;
+        }
+        KEY_CACHE.set(slot, key);
+        return key;
+    }
+
     private String extractDomain() {
         if (this.uri.getHost() == null) {
             return uri.toString();
         }
-
-        String[] domainParts = uri.getHost().split("\\.");
-        return Arrays.stream(domainParts)
-                .skip(Math.max(0, domainParts.length - 2))
-                .reduce((secondLevelDomain, topLevelDomain) -> secondLevelDomain + "." + topLevelDomain)
-                .orElse(uri.getHost());
+        return PublicSuffixList.getDefault().registrableDomain(uri.getHost());
     }
 
     public URI getUri() {
@@ -48,4 +114,20 @@ public final class Hyperlink implements Comparable<Hyperlink> {
     public String getLabel() {
         return this.label;
     }
+
+    public String getDomain() {
+        return this.domain;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
 }
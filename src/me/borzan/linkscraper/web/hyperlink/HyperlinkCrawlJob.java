@@ -0,0 +1,124 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * One crawl submitted to a HyperlinkCrawlJobScheduler. A job waits in the queue of the scheduler until it may run,
+ * then crawls from its seed, and ends up succeeded, failed or cancelled.
+ *
+ * Everything about a job that changes is read through snapshot(), which is consistent in itself.
+ * A finished job lets go of its worker, so the scheduler can remember thousands of jobs without their visited sets.
+ */
+public final class HyperlinkCrawlJob {
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    /*
+     * startedAt and finishedAt are null until the job got that far, failureMessage is null unless the job failed.
+     */
+    public record Snapshot(long id, URI seed, State state, Instant submittedAt, Instant startedAt, Instant finishedAt,
+                           long pagesRequested, long hyperlinksFound, String failureMessage) {}
+
+    private final long id;
+    private final URI seed;
+    private final Instant submittedAt;
+    private final LongAdder hyperlinksFound;
+    private final CompletableFuture<State> completion;
+
+    // all guarded by this
+    private State state;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private PropagatingHyperlinkWebScraperWorker worker;
+    private long pagesRequested;
+    private boolean cancelRequested;
+    private String failureMessage;
+
+    HyperlinkCrawlJob(long id, URI seed) {
+        this.id = id;
+        this.seed = seed;
+        this.submittedAt = Instant.now();
+        this.hyperlinksFound = new LongAdder();
+        this.completion = new CompletableFuture<>();
+        this.state = State.QUEUED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public URI getSeed() {
+        return seed;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(id, seed, state, submittedAt, startedAt, finishedAt,
+                worker == null ? pagesRequested : worker.getPagesRequested(), hyperlinksFound.sum(), failureMessage);
+    }
+
+    /*
+     * Completes with the final state of the job once it is finished. Completing the returned future has no effect on the job.
+     */
+    public CompletableFuture<State> completion() {
+        return completion.copy();
+    }
+
+    void onHyperlinkFound() {
+        hyperlinksFound.increment();
+    }
+
+    /*
+     * Returns false if the job was cancelled before it could start, it is then up to the scheduler to finish it.
+     */
+    synchronized boolean start(PropagatingHyperlinkWebScraperWorker worker) {
+        if (cancelRequested) {
+            return false;
+        }
+        this.worker = worker;
+        this.state = State.RUNNING;
+        this.startedAt = Instant.now();
+        return true;
+    }
+
+    /*
+     * Returns true if the job was queued, then the scheduler has to take it out of its queue.
+     */
+    synchronized boolean requestCancel() {
+        if (state.isFinished() || cancelRequested) {
+            return false;
+        }
+        cancelRequested = true;
+        if (worker != null) {
+            worker.cancel();
+        }
+        return worker == null;
+    }
+
+    synchronized boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void finish(State finalState, String failureMessage) {
+        synchronized (this) {
+            if (state.isFinished()) {
+                return;
+            }
+            if (worker != null) {
+                pagesRequested = worker.getPagesRequested();
+                worker = null;
+            }
+            this.state = finalState;
+            this.finishedAt = Instant.now();
+            this.failureMessage = failureMessage;
+        }
+        completion.complete(finalState);
+    }
+}
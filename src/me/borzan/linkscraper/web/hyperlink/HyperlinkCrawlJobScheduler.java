@@ -0,0 +1,208 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Runs crawls of one service as jobs, at most maxRunningJobs at the same time and the rest in the order they were submitted.
+ * All jobs share the HttpClient of the service with its connection pool, the executor and the politeness scheduler,
+ * so a crawl of a small site costs little more than its requests, instead of a service and a connection pool of its own.
+ *
+ * The pages in flight of the service are split evenly between the running jobs: every job may have its share of
+ * maxConcurrentRequests in flight, but at least one page, and the shares of the others grow as soon as a job finishes.
+ * Once queued, requests of different hosts take turns in the politeness scheduler anyway, so a job with many pages
+ * of one host cannot crowd out the jobs of other hosts.
+ *
+ * Every job gets its own result sink from the factory when it starts, which is closed when the job is over.
+ * Checkpoints and clusters belong to a single crawl per service, so a scheduler refuses services configured with them.
+ */
+public final class HyperlinkCrawlJobScheduler implements AutoCloseable {
+    /*
+     * Opens the sink the hyperlinks of a job are passed to, called on the job's own thread when it starts.
+     */
+    @FunctionalInterface
+    public interface ResultSinkFactory {
+        HyperlinkSink open(HyperlinkCrawlJob job) throws IOException;
+    }
+
+    private final PropagatingHyperlinkWebScraperService service;
+    private final int maxRunningJobs;
+    private final int maxConcurrentRequests;
+    private final ResultSinkFactory resultSinks;
+
+    private final ConcurrentSkipListMap<Long, HyperlinkCrawlJob> jobs;
+    // guarded by this, as is closed
+    private final Queue<HyperlinkCrawlJob> queuedJobs;
+    private boolean closed;
+    private final AtomicInteger runningJobs;
+    // the workers of the running jobs, to hand out the pages in flight of a job that finished
+    private final Set<PropagatingHyperlinkWebScraperWorker> runningWorkers;
+    private final AtomicLong lastJobId;
+    private final ExecutorService jobThreads;
+    private final Logger logger;
+
+    public HyperlinkCrawlJobScheduler(PropagatingHyperlinkWebScraperService service, int maxRunningJobs, ResultSinkFactory resultSinks) {
+        if (service == null || resultSinks == null) {
+            throw new IllegalStateException("The service and the factory of result sinks are needed to run any jobs.");
+        }
+        if (maxRunningJobs < 1) {
+            throw new IllegalStateException("At least one job has to be allowed to run at a time.");
+        }
+        if (service.getSettings().checkpointDirectory() != null || service.getSettings().cluster() != null) {
+            throw new IllegalStateException("Crawls run as jobs can neither be checkpointed nor be part of a cluster.");
+        }
+
+        this.service = service;
+        this.maxRunningJobs = maxRunningJobs;
+        this.maxConcurrentRequests = service.getSettings().maxConcurrentRequests();
+        this.resultSinks = resultSinks;
+        this.jobs = new ConcurrentSkipListMap<>();
+        this.queuedJobs = new ArrayDeque<>();
+        this.runningJobs = new AtomicInteger();
+        this.runningWorkers = ConcurrentHashMap.newKeySet();
+        this.lastJobId = new AtomicLong();
+        // every running job blocks one thread until its crawl is over
+        this.jobThreads = Executors.newVirtualThreadPerTaskExecutor();
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /*
+     * Whether a crawl can start from the seed, which is the case for absolute http(s) URIs.
+     */
+    public boolean canCrawlFrom(URI seed) {
+        return seed != null && service.getSettings().uriCanonicalizer().canonicalize(seed) != null;
+    }
+
+    /*
+     * Queues a crawl from the given seed. Throws if the seed is no absolute http(s) URI or the scheduler is closed.
+     */
+    public HyperlinkCrawlJob submit(URI seed) {
+        if (!canCrawlFrom(seed)) {
+            throw new IllegalStateException("Cannot crawl from '%s', only absolute http(s) URIs can be crawled.".formatted(seed));
+        }
+        HyperlinkCrawlJob job = new HyperlinkCrawlJob(lastJobId.incrementAndGet(), seed);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The job scheduler is closed. Cannot submit a crawl of '%s'.".formatted(seed));
+            }
+            jobs.put(job.getId(), job);
+            queuedJobs.add(job);
+        }
+        startQueuedJobs();
+        return job;
+    }
+
+    public Optional<HyperlinkCrawlJob> getJob(long id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    // in the order they were submitted
+    public List<HyperlinkCrawlJob> getJobs() {
+        return List.copyOf(jobs.values());
+    }
+
+    /*
+     * A queued job is finished as cancelled right away, a running one ends its crawl as if its deadline was up.
+     * Returns false if there is no such job.
+     */
+    public boolean cancel(long id) {
+        HyperlinkCrawlJob job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.requestCancel()) {
+            synchronized (this) {
+                queuedJobs.remove(job);
+            }
+            job.finish(HyperlinkCrawlJob.State.CANCELLED, null);
+        }
+        return true;
+    }
+
+    public int getRunningJobs() {
+        return runningJobs.get();
+    }
+
+    public synchronized int getQueuedJobs() {
+        return queuedJobs.size();
+    }
+
+    private void startQueuedJobs() {
+        synchronized (this) {
+            while (!closed && runningJobs.get() < maxRunningJobs && !queuedJobs.isEmpty()) {
+                HyperlinkCrawlJob job = queuedJobs.poll();
+                runningJobs.incrementAndGet();
+                jobThreads.execute(() -> run(job));
+            }
+        }
+    }
+
+    private int concurrencyShare() {
+        return maxConcurrentRequests / Math.max(1, runningJobs.get());
+    }
+
+    private void run(HyperlinkCrawlJob job) {
+        PropagatingHyperlinkWebScraperWorker worker = null;
+        try {
+            HyperlinkCrawlJob.State finalState;
+            String failureMessage = null;
+            try (HyperlinkSink resultSink = resultSinks.open(job)) {
+                worker = service.createWorker(job.getSeed(), hyperlink -> {
+                    job.onHyperlinkFound();
+                    resultSink.accept(hyperlink);
+                }, this::concurrencyShare);
+                if (!job.start(worker)) {
+                    finalState = HyperlinkCrawlJob.State.CANCELLED;
+                } else {
+                    runningWorkers.add(worker);
+                    service.run(worker);
+                    if (worker.getFailure() != null) {
+                        finalState = HyperlinkCrawlJob.State.FAILED;
+                        failureMessage = worker.getFailure().getMessage();
+                    } else {
+                        finalState = job.isCancelRequested() ? HyperlinkCrawlJob.State.CANCELLED : HyperlinkCrawlJob.State.SUCCEEDED;
+                    }
+                }
+            }
+            // only now that the sink is closed, so whoever waits for the job finds all of its results written
+            job.finish(finalState, failureMessage);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Job %d crawling from '%s' failed: %s".formatted(job.getId(), job.getSeed(), e.getMessage()));
+            job.finish(HyperlinkCrawlJob.State.FAILED, e.getMessage());
+        } finally {
+            if (worker != null) {
+                runningWorkers.remove(worker);
+            }
+            runningJobs.decrementAndGet();
+            runningWorkers.forEach(PropagatingHyperlinkWebScraperWorker::onConcurrencyShareGrown);
+            startQueuedJobs();
+        }
+    }
+
+    /*
+     * Cancels every job that is queued or running and waits for the running ones to end.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (HyperlinkCrawlJob job : jobs.values()) {
+            cancel(job.getId());
+        }
+        jobThreads.close();
+    }
+}
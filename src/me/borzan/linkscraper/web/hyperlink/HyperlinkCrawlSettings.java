@@ -0,0 +1,282 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.WebScraperService;
+import me.borzan.linkscraper.web.cluster.ClusterSettings;
+import me.borzan.linkscraper.web.duplicate.NearDuplicatePolicy;
+import me.borzan.linkscraper.web.extract.PageExtractors;
+import me.borzan.linkscraper.web.persistence.HyperlinkPageCache;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import me.borzan.linkscraper.web.robots.RobotsPolicy;
+import me.borzan.linkscraper.web.visited.FingerprintVisitedUriSet;
+import me.borzan.linkscraper.web.visited.VisitedUriSet;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/*
+ * Everything a PropagatingHyperlinkWebScraperService can be tuned with, in one place.
+ * Start from builder(...), which holds the defaults, or from toBuilder() of existing settings, and adjust single settings
+ * with the methods of the Builder. The request defaults are those of the WebScraperService.
+ */
+public record HyperlinkCrawlSettings(int connectionTimeoutSeconds,
+                                     int maxScrapingPropagationDurationMinutes,
+                                     int maxConcurrentRequests,
+                                     int maxQueuedRequests,
+                                     HostPolitenessPolicy politenessPolicy,
+                                     Supplier<VisitedUriSet> visitedUriSetFactory,
+                                     HyperlinkLabelSink labelSink,
+                                     long frontierHeapBudgetBytes,
+                                     Path checkpointDirectory,
+                                     Duration checkpointInterval,
+                                     HyperlinkPageCache pageCache,
+                                     long maxResponseBodyBytes,
+                                     UriCanonicalizer uriCanonicalizer,
+                                     CrawlScope crawlScope,
+                                     ClusterSettings cluster,
+                                     NearDuplicatePolicy nearDuplicatePolicy,
+                                     HyperlinkScorer scorer,
+                                     CrawlLimits limits,
+                                     PageExtractors extractors,
+                                     RobotsPolicy robotsPolicy) {
+    private static final Duration DEFAULT_CHECKPOINT_INTERVAL = Duration.ofMinutes(1);
+
+    public static final long UNLIMITED_FRONTIER_HEAP_BUDGET = Long.MAX_VALUE;
+
+    public HyperlinkCrawlSettings {
+        if (maxScrapingPropagationDurationMinutes < 0) {
+            throw new IllegalStateException("Time duration must not be negative.");
+        }
+        if (maxConcurrentRequests < 1 || maxQueuedRequests < 1) {
+            throw new IllegalStateException("At least one concurrent and one queued request are needed to scrape anything.");
+        }
+        if (politenessPolicy == null || visitedUriSetFactory == null || labelSink == null) {
+            throw new IllegalStateException("The politeness policy, visited set factory and label sink must not be null, use HyperlinkLabelSink.NONE to ignore labels.");
+        }
+        if (frontierHeapBudgetBytes < 1) {
+            throw new IllegalStateException("The heap budget of the frontier must be positive.");
+        }
+        if (maxResponseBodyBytes < 1) {
+            throw new IllegalStateException("The maximum size of a response body must be positive.");
+        }
+        if (checkpointInterval == null || checkpointInterval.isNegative() || checkpointInterval.isZero()) {
+            throw new IllegalStateException("The checkpoint interval must be positive.");
+        }
+        if (uriCanonicalizer == null) {
+            throw new IllegalStateException("The URI canonicalizer must not be null, use UriCanonicalizer.KEEP_QUERY to only normalize URIs.");
+        }
+        if (crawlScope == null) {
+            throw new IllegalStateException("The crawl scope must not be null, use CrawlScope.SAME_REGISTRABLE_DOMAIN if in doubt.");
+        }
+        if (extractors == null) {
+            throw new IllegalStateException("The page extractors must not be null, use PageExtractors.NONE to only extract hyperlinks.");
+        }
+        if (limits == null) {
+            throw new IllegalStateException("The crawl limits must not be null, use CrawlLimits.UNLIMITED to only limit the duration.");
+        }
+        if (scorer != null && (checkpointDirectory != null || frontierHeapBudgetBytes != UNLIMITED_FRONTIER_HEAP_BUDGET)) {
+            throw new IllegalStateException("A prioritized frontier is kept in memory as a whole, it cannot be spilled to disk or checkpointed.");
+        }
+        if (cluster != null && checkpointDirectory != null) {
+            throw new IllegalStateException("A crawl cannot be checkpointed while it is part of a cluster, the other nodes would not resume with it.");
+        }
+    }
+
+    public static HyperlinkCrawlSettings defaults(int connectionTimeoutSeconds, int maxScrapingPropagationDurationMinutes) {
+        return builder(connectionTimeoutSeconds, maxScrapingPropagationDurationMinutes).build();
+    }
+
+    public static Builder builder(int connectionTimeoutSeconds, int maxScrapingPropagationDurationMinutes) {
+        return new Builder(connectionTimeoutSeconds, maxScrapingPropagationDurationMinutes);
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /*
+     * Every setting is validated once build() is called, so settings that only work together can be set in any order.
+     */
+    public static final class Builder {
+        private final int connectionTimeoutSeconds;
+        private final int maxScrapingPropagationDurationMinutes;
+        private int maxConcurrentRequests = WebScraperService.DEFAULT_MAX_CONCURRENT_REQUESTS;
+        private int maxQueuedRequests = WebScraperService.DEFAULT_MAX_QUEUED_REQUESTS;
+        private HostPolitenessPolicy politenessPolicy = HostPolitenessPolicy.DEFAULT;
+        private Supplier<VisitedUriSet> visitedUriSetFactory = FingerprintVisitedUriSet::new;
+        private HyperlinkLabelSink labelSink = HyperlinkLabelSink.NONE;
+        private long frontierHeapBudgetBytes = UNLIMITED_FRONTIER_HEAP_BUDGET;
+        private Path checkpointDirectory;
+        private Duration checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        private HyperlinkPageCache pageCache;
+        private long maxResponseBodyBytes = WebScraperService.DEFAULT_MAX_RESPONSE_BODY_BYTES;
+        private UriCanonicalizer uriCanonicalizer = UriCanonicalizer.DEFAULT;
+        private CrawlScope crawlScope = CrawlScope.SAME_REGISTRABLE_DOMAIN;
+        private ClusterSettings cluster;
+        private NearDuplicatePolicy nearDuplicatePolicy;
+        private HyperlinkScorer scorer;
+        private CrawlLimits limits = CrawlLimits.UNLIMITED;
+        private PageExtractors extractors = PageExtractors.NONE;
+        private RobotsPolicy robotsPolicy;
+
+        private Builder(int connectionTimeoutSeconds, int maxScrapingPropagationDurationMinutes) {
+            this.connectionTimeoutSeconds = connectionTimeoutSeconds;
+            this.maxScrapingPropagationDurationMinutes = maxScrapingPropagationDurationMinutes;
+        }
+
+        private Builder(HyperlinkCrawlSettings settings) {
+            this(settings.connectionTimeoutSeconds, settings.maxScrapingPropagationDurationMinutes);
+            this.maxConcurrentRequests = settings.maxConcurrentRequests;
+            this.maxQueuedRequests = settings.maxQueuedRequests;
+            this.politenessPolicy = settings.politenessPolicy;
+            this.visitedUriSetFactory = settings.visitedUriSetFactory;
+            this.labelSink = settings.labelSink;
+            this.frontierHeapBudgetBytes = settings.frontierHeapBudgetBytes;
+            this.checkpointDirectory = settings.checkpointDirectory;
+            this.checkpointInterval = settings.checkpointInterval;
+            this.pageCache = settings.pageCache;
+            this.maxResponseBodyBytes = settings.maxResponseBodyBytes;
+            this.uriCanonicalizer = settings.uriCanonicalizer;
+            this.crawlScope = settings.crawlScope;
+            this.cluster = settings.cluster;
+            this.nearDuplicatePolicy = settings.nearDuplicatePolicy;
+            this.scorer = settings.scorer;
+            this.limits = settings.limits;
+            this.extractors = settings.extractors;
+            this.robotsPolicy = settings.robotsPolicy;
+        }
+
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Builder maxQueuedRequests(int maxQueuedRequests) {
+            this.maxQueuedRequests = maxQueuedRequests;
+            return this;
+        }
+
+        public Builder politenessPolicy(HostPolitenessPolicy politenessPolicy) {
+            this.politenessPolicy = politenessPolicy;
+            return this;
+        }
+
+        public Builder visitedUriSetFactory(Supplier<VisitedUriSet> visitedUriSetFactory) {
+            this.visitedUriSetFactory = visitedUriSetFactory;
+            return this;
+        }
+
+        public Builder labelSink(HyperlinkLabelSink labelSink) {
+            this.labelSink = labelSink;
+            return this;
+        }
+
+        /*
+         * Keeps at most roughly this many bytes of pending hyperlinks on the heap and spills the rest to disk.
+         */
+        public Builder frontierHeapBudget(long frontierHeapBudgetBytes) {
+            this.frontierHeapBudgetBytes = frontierHeapBudgetBytes;
+            return this;
+        }
+
+        /*
+         * Writes a checkpoint of the crawl to the directory at every interval and at the end, and resumes from the
+         * checkpoint found there when a crawl of the same seed is started again.
+         */
+        public Builder checkpointing(Path checkpointDirectory, Duration checkpointInterval) {
+            this.checkpointDirectory = checkpointDirectory;
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /*
+         * Asks the server whether pages in the cache changed, and takes their hyperlinks from the cache if they did not.
+         * The cache may be shared by many crawls.
+         */
+        public Builder pageCache(HyperlinkPageCache pageCache) {
+            this.pageCache = pageCache;
+            return this;
+        }
+
+        /*
+         * Pages bigger than this, after decompression, are aborted. Hyperlinks found up to that point are kept.
+         */
+        public Builder maxResponseBodyBytes(long maxResponseBodyBytes) {
+            this.maxResponseBodyBytes = maxResponseBodyBytes;
+            return this;
+        }
+
+        /*
+         * Decides which hrefs count as the same page, in particular which query parameters are dropped or sorted.
+         */
+        public Builder uriCanonicalizer(UriCanonicalizer uriCanonicalizer) {
+            this.uriCanonicalizer = uriCanonicalizer;
+            return this;
+        }
+
+        /*
+         * Decides which of the hyperlinks found on a page are followed, by default those of the same registrable domain.
+         */
+        public Builder crawlScope(CrawlScope crawlScope) {
+            this.crawlScope = crawlScope;
+            return this;
+        }
+
+        /*
+         * Makes the crawl one node of a cluster: only the hosts this node owns are crawled here, hyperlinks to any other host
+         * are forwarded to their owner. Every node has to be started with the same seed and the same cluster, and null
+         * crawls everything in this process.
+         */
+        public Builder cluster(ClusterSettings cluster) {
+            this.cluster = cluster;
+            return this;
+        }
+
+        /*
+         * Fingerprints the content of every page, and does not follow the hyperlinks of pages that nearly duplicate a page
+         * fetched before. URL patterns that keep producing near-duplicates are throttled. Null compares URIs only.
+         */
+        public Builder nearDuplicateDetection(NearDuplicatePolicy nearDuplicatePolicy) {
+            this.nearDuplicatePolicy = nearDuplicatePolicy;
+            return this;
+        }
+
+        /*
+         * Visits the pending hyperlink with the highest score first, instead of in the order they were found. Null keeps that order.
+         */
+        public Builder scorer(HyperlinkScorer scorer) {
+            this.scorer = scorer;
+            return this;
+        }
+
+        public Builder limits(CrawlLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /*
+         * Runs the extractors on every page fetched, on the same tokens the hyperlinks are extracted from.
+         * Pages answered with 304 Not Modified have no body, so nothing is extracted from them.
+         */
+        public Builder extractors(PageExtractors extractors) {
+            this.extractors = extractors;
+            return this;
+        }
+
+        /*
+         * Obeys the robots.txt of every host, keeps its Crawl-delay, and seeds every crawl with the pages of the sitemaps of
+         * its seed's host. Null requests whatever the hyperlinks lead to, and seeds with the seed only.
+         */
+        public Builder robotsPolicy(RobotsPolicy robotsPolicy) {
+            this.robotsPolicy = robotsPolicy;
+            return this;
+        }
+
+        public HyperlinkCrawlSettings build() {
+            return new HyperlinkCrawlSettings(connectionTimeoutSeconds, maxScrapingPropagationDurationMinutes,
+                    maxConcurrentRequests, maxQueuedRequests, politenessPolicy, visitedUriSetFactory, labelSink,
+                    frontierHeapBudgetBytes, checkpointDirectory, checkpointInterval, pageCache, maxResponseBodyBytes,
+                    uriCanonicalizer, crawlScope, cluster, nearDuplicatePolicy, scorer, limits, extractors, robotsPolicy);
+        }
+    }
+}
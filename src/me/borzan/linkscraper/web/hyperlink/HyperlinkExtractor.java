@@ -0,0 +1,158 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlEntities;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/*
+ * Builds hyperlinks out of <a href="..."> tags while a document is being tokenized, and hands each one out as soon as
+ * its closing </a> was read.
+ * The label is the text inside the tag with nested tags left out, whitespace collapsed and character references decoded,
+ * capped at a fixed number of bytes. A label that is cut there ends with the last character and the last character
+ * reference that were complete, so it never ends in half a UTF-8 sequence or in a reference that cannot be decoded.
+ *
+ * Hrefs are resolved against the URI of the document, or against the first <base href> of the document, and canonicalized,
+ * so every hyperlink carries the canonical URI of the page it leads to. Without a document URI, relative hrefs are ignored.
+ * Redirects are not known to the extractor, so relative links of a redirected page are resolved against the URI that was requested.
+ */
+public final class HyperlinkExtractor implements HtmlTokenListener {
+    private static final int MAX_LABEL_LENGTH = 512;
+
+    private final Consumer<Hyperlink> hyperlinkConsumer;
+    private final UriCanonicalizer canonicalizer;
+    private final byte[] labelBuffer = new byte[MAX_LABEL_LENGTH];
+
+    private URI baseUri;
+    private boolean baseHrefSeen;
+    private URI currentUri;
+    private int labelLength;
+    private boolean labelTruncated;
+    private boolean pendingWhitespace;
+
+    public HyperlinkExtractor(Consumer<Hyperlink> hyperlinkConsumer) {
+        this(null, UriCanonicalizer.DEFAULT, hyperlinkConsumer);
+    }
+
+    public HyperlinkExtractor(URI documentUri, UriCanonicalizer canonicalizer, Consumer<Hyperlink> hyperlinkConsumer) {
+        if (hyperlinkConsumer == null) {
+            throw new IllegalStateException("Hyperlink consumer is null. Extracted hyperlinks would be lost.");
+        }
+        if (canonicalizer == null) {
+            throw new IllegalStateException("UriCanonicalizer is null. Use UriCanonicalizer.DEFAULT if in doubt.");
+        }
+        this.hyperlinkConsumer = hyperlinkConsumer;
+        this.canonicalizer = canonicalizer;
+        // resolving against a URI without a path would glue the href onto the host
+        this.baseUri = documentUri == null ? null : canonicalizer.canonicalize(documentUri);
+    }
+
+    @Override
+    public void startTag(String tagName, HtmlAttributes attributes) {
+        if ("base".equals(tagName)) {
+            updateBaseUri(attributes.get("href"));
+            return;
+        }
+        if (!"a".equals(tagName)) {
+            return;
+        }
+        // an unclosed <a> ends where the next one starts
+        emitCurrentHyperlink();
+
+        String href = attributes.get("href");
+        if (href != null) {
+            currentUri = canonicalizer.resolve(baseUri, href);
+            labelLength = 0;
+            labelTruncated = false;
+            pendingWhitespace = false;
+        }
+    }
+
+    /*
+     * Only the first <base href> counts, like in browsers. It may itself be relative to the document URI.
+     */
+    private void updateBaseUri(String href) {
+        if (href == null || baseHrefSeen) {
+            return;
+        }
+        baseHrefSeen = true;
+        URI resolvedBaseUri = canonicalizer.resolve(baseUri, href);
+        if (resolvedBaseUri != null) {
+            baseUri = resolvedBaseUri;
+        }
+    }
+
+    @Override
+    public void endTag(String tagName) {
+        if ("a".equals(tagName)) {
+            emitCurrentHyperlink();
+        }
+    }
+
+    @Override
+    public void text(byte[] buffer, int offset, int length) {
+        if (currentUri == null) {
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            appendToLabel(buffer[i]);
+        }
+    }
+
+    @Override
+    public void endOfDocument() {
+        emitCurrentHyperlink();
+    }
+
+    private void appendToLabel(byte b) {
+        if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+            pendingWhitespace = labelLength > 0;
+            return;
+        }
+        if (labelLength + (pendingWhitespace ? 2 : 1) > MAX_LABEL_LENGTH) {
+            labelTruncated = true;
+            return;
+        }
+        if (pendingWhitespace) {
+            labelBuffer[labelLength++] = ' ';
+            pendingWhitespace = false;
+        }
+        labelBuffer[labelLength++] = b;
+    }
+
+    private void emitCurrentHyperlink() {
+        if (currentUri == null) {
+            return;
+        }
+        URI uri = currentUri;
+        currentUri = null;
+
+        int length = labelTruncated ? completeLabelLength() : labelLength;
+        hyperlinkConsumer.accept(new Hyperlink(uri, HtmlEntities.decode(new String(labelBuffer, 0, length, StandardCharsets.UTF_8))));
+    }
+
+    /*
+     * Backs off from the cut to the end of the last complete character, then to the start of a reference cut in half.
+     */
+    private int completeLabelLength() {
+        int length = labelLength;
+        int lead = length - 1;
+        while (lead > 0 && length - lead < 4 && (labelBuffer[lead] & 0xc0) == 0x80) {
+            lead--;
+        }
+        int leadByte = labelBuffer[lead] & 0xff;
+        int sequenceLength = leadByte >= 0xf0 ? 4 : leadByte >= 0xe0 ? 3 : leadByte >= 0xc0 ? 2 : 1;
+        if (length - lead < sequenceLength) {
+            length = lead;
+        }
+
+        length = HtmlEntities.cutOffReferenceStart(labelBuffer, length);
+        while (length > 0 && labelBuffer[length - 1] == ' ') {
+            length--;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,29 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+/*
+ * The frontier holds all hyperlinks that were discovered but not yet visited by a crawl.
+ * It is shared between every page a crawl is currently processing, so any page that finishes simply takes the next
+ * pending hyperlink from here instead of each page waiting on the pages it discovered.
+ *
+ * Implementations must be safe to use from many threads at once.
+ */
+public interface HyperlinkFrontier {
+    void offer(Hyperlink hyperlink);
+
+    /*
+     * Returns null if there is currently nothing to visit.
+     */
+    Hyperlink poll();
+
+    /*
+     * Called for a hyperlink that was found again after it had been offered already, whether it is still pending or not.
+     * Frontiers that do not care how often a hyperlink is linked to ignore it.
+     */
+    default void onRediscovered(Hyperlink hyperlink) {}
+
+    boolean isEmpty();
+
+    int size();
+
+    void clear();
+}
@@ -0,0 +1,27 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * A label sink that keeps all labels per URI in memory.
+ * It costs what the old visited map cost, so it should only be used when the labels are actually needed.
+ */
+public final class HyperlinkLabelIndex implements HyperlinkLabelSink {
+    private final Map<URI, Set<String>> labelsByUri = new ConcurrentHashMap<>();
+
+    @Override
+    public void accept(Hyperlink hyperlink) {
+        labelsByUri.computeIfAbsent(hyperlink.getUri(), uri -> ConcurrentHashMap.newKeySet()).add(hyperlink.getLabel());
+    }
+
+    public Set<String> getLabels(URI uri) {
+        return Set.copyOf(labelsByUri.getOrDefault(uri, Set.of()));
+    }
+
+    public Map<URI, Set<String>> getLabelsByUri() {
+        return Map.copyOf(labelsByUri);
+    }
+}
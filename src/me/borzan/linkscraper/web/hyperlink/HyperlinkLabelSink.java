@@ -0,0 +1,13 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+/*
+ * Receives every in-scope hyperlink a crawl comes across, including the ones pointing to an already visited URI.
+ * A URI may be linked with many different labels, and this is the place to collect them if they are of interest,
+ * the visited set itself only remembers the URIs.
+ */
+@FunctionalInterface
+public interface HyperlinkLabelSink {
+    HyperlinkLabelSink NONE = hyperlink -> {};
+
+    void accept(Hyperlink hyperlink);
+}
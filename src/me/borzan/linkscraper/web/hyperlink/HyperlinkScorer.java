@@ -0,0 +1,36 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.util.regex.Pattern;
+
+/*
+ * Decides which pending hyperlink of a prioritized crawl is visited next: the one with the highest score.
+ * inLinks is how often the hyperlink has been found so far, counting the first time, and grows while it waits in the
+ * frontier, so a page that many pages link to moves up.
+ *
+ * Scorers are combined with plus and weighted with times, e.g. BREADTH_FIRST.plus(IN_LINKS.times(0.5)).
+ * Equal scores are visited in the order they were found.
+ */
+@FunctionalInterface
+public interface HyperlinkScorer {
+    HyperlinkScorer BREADTH_FIRST = (hyperlink, inLinks) -> -hyperlink.getDepth();
+    HyperlinkScorer IN_LINKS = (hyperlink, inLinks) -> inLinks;
+
+    double score(Hyperlink hyperlink, int inLinks);
+
+    /*
+     * Adds the weight to the score of every hyperlink whose URI matches the regular expression somewhere,
+     * e.g. matching("/(product|category)/", 5.0) or matching("[?&](sort|page)=", -5.0).
+     */
+    static HyperlinkScorer matching(String regex, double weight) {
+        Pattern pattern = Pattern.compile(regex);
+        return (hyperlink, inLinks) -> pattern.matcher(hyperlink.getUri().toString()).find() ? weight : 0.0;
+    }
+
+    default HyperlinkScorer plus(HyperlinkScorer other) {
+        return (hyperlink, inLinks) -> score(hyperlink, inLinks) + other.score(hyperlink, inLinks);
+    }
+
+    default HyperlinkScorer times(double weight) {
+        return (hyperlink, inLinks) -> weight * score(hyperlink, inLinks);
+    }
+}
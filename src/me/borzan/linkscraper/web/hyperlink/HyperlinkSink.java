@@ -0,0 +1,17 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * Receives every new hyperlink a crawl finds, exactly once and as soon as it was found, so results never have to be
+ * collected in memory. accept is called from many threads at once, so implementations have to be thread-safe.
+ * The sink is not closed by the crawl, but by whoever created it once the crawl is done.
+ */
+@FunctionalInterface
+public interface HyperlinkSink extends Closeable {
+    void accept(Hyperlink hyperlink);
+
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,58 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Writes every hyperlink as one line in the format '<label>' ('<URL>').
+ * Standard output is flushed after every line so the results show up while the crawl is running, a file only once in a while.
+ */
+public final class PrintingHyperlinkSink implements HyperlinkSink {
+    private final Writer writer;
+    private final boolean flushEveryLine;
+    private final boolean closeWriter;
+
+    private PrintingHyperlinkSink(Writer writer, boolean flushEveryLine, boolean closeWriter) {
+        this.writer = writer;
+        this.flushEveryLine = flushEveryLine;
+        this.closeWriter = closeWriter;
+    }
+
+    /*
+     * Standard output is only flushed on close, never closed.
+     */
+    public static PrintingHyperlinkSink toStandardOutput() {
+        return new PrintingHyperlinkSink(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)), true, false);
+    }
+
+    public static PrintingHyperlinkSink toFile(Path file) throws IOException {
+        return new PrintingHyperlinkSink(Files.newBufferedWriter(file, StandardCharsets.UTF_8), false, true);
+    }
+
+    @Override
+    public synchronized void accept(Hyperlink hyperlink) {
+        try {
+            writer.write(hyperlink.toString());
+            writer.write(System.lineSeparator());
+            if (flushEveryLine) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write hyperlink '%s'".formatted(hyperlink.getUri()), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.flush();
+        if (closeWriter) {
+            writer.close();
+        }
+    }
+}
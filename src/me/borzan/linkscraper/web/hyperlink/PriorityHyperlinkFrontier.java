@@ -0,0 +1,189 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A best-first in-memory frontier: poll returns the pending hyperlink with the highest score of its HyperlinkScorer.
+ *
+ * The pending hyperlinks form a binary heap in which every entry knows its own position, so a hyperlink that is found
+ * again while it waits can be scored again with its new in-link count and moved to its new place in O(log n),
+ * instead of being added a second time. Ties go to the hyperlink that was found first.
+ *
+ * A single lock guards the heap. Offering and polling are a few comparisons each, which is nothing next to the request
+ * every polled hyperlink is about to cause.
+ */
+public final class PriorityHyperlinkFrontier implements HyperlinkFrontier {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final HyperlinkScorer scorer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Hyperlink, Entry> pendingEntries = new HashMap<>();
+    private Entry[] heap = new Entry[INITIAL_CAPACITY];
+    private int size;
+    private long offered;
+
+    public PriorityHyperlinkFrontier(HyperlinkScorer scorer) {
+        if (scorer == null) {
+            throw new IllegalStateException("HyperlinkScorer is null. Use HyperlinkScorer.BREADTH_FIRST if in doubt.");
+        }
+        this.scorer = scorer;
+    }
+
+    private static final class Entry {
+        private final Hyperlink hyperlink;
+        private final long sequence;
+        private int inLinks;
+        private double score;
+        private int heapIndex;
+
+        private Entry(Hyperlink hyperlink, long sequence) {
+            this.hyperlink = hyperlink;
+            this.sequence = sequence;
+        }
+    }
+
+    @Override
+    public void offer(Hyperlink hyperlink) {
+        lock.lock();
+        try {
+            Entry entry = pendingEntries.get(hyperlink);
+            if (entry != null) {
+                rescore(entry);
+                return;
+            }
+            entry = new Entry(hyperlink, offered++);
+            entry.inLinks = 1;
+            entry.score = scorer.score(hyperlink, 1);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            entry.heapIndex = size;
+            heap[size++] = entry;
+            pendingEntries.put(hyperlink, entry);
+            siftUp(entry.heapIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Counts another in-link for the hyperlink if it is still pending, and does nothing otherwise.
+     */
+    @Override
+    public void onRediscovered(Hyperlink hyperlink) {
+        lock.lock();
+        try {
+            Entry entry = pendingEntries.get(hyperlink);
+            if (entry != null) {
+                rescore(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Hyperlink poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            Entry first = heap[0];
+            Entry last = heap[--size];
+            heap[size] = null;
+            if (size > 0) {
+                last.heapIndex = 0;
+                heap[0] = last;
+                siftDown(0);
+            }
+            pendingEntries.remove(first.hyperlink);
+            return first.hyperlink;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            Arrays.fill(heap, 0, size, null);
+            size = 0;
+            pendingEntries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rescore(Entry entry) {
+        entry.inLinks++;
+        double previousScore = entry.score;
+        entry.score = scorer.score(entry.hyperlink, entry.inLinks);
+        if (entry.score > previousScore) {
+            siftUp(entry.heapIndex);
+        } else if (entry.score < previousScore) {
+            siftDown(entry.heapIndex);
+        }
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            Entry parent = heap[parentIndex];
+            if (!comesBefore(entry, parent)) {
+                break;
+            }
+            place(parent, index);
+            index = parentIndex;
+        }
+        place(entry, index);
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int childIndex = 2 * index + 1;
+            if (childIndex >= size) {
+                break;
+            }
+            if (childIndex + 1 < size && comesBefore(heap[childIndex + 1], heap[childIndex])) {
+                childIndex++;
+            }
+            if (!comesBefore(heap[childIndex], entry)) {
+                break;
+            }
+            place(heap[childIndex], index);
+            index = childIndex;
+        }
+        place(entry, index);
+    }
+
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private static boolean comesBefore(Entry entry, Entry other) {
+        return entry.score > other.score || (entry.score == other.score && entry.sequence < other.sequence);
+    }
+}
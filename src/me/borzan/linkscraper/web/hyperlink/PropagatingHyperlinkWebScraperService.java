@@ -1,31 +1,127 @@
 package me.borzan.linkscraper.web.hyperlink;
 
+import me.borzan.linkscraper.web.RequestSettings;
 import me.borzan.linkscraper.web.WebScraperService;
 import me.borzan.linkscraper.web.WebScraperWorker;
+import me.borzan.linkscraper.web.robots.RobotsTxtCache;
 
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 
 /*
- * This service's purpose is to facilitate recursive scraping and limit the recursion by time.
- * An implementation that limits the recursion by depth or by number of results for example would be trivial to adapt in a similar manner.
+ * This service's purpose is to facilitate recursive scraping and limit the recursion by time, which is a hard deadline.
+ * The CrawlLimits of the settings limit it further by depth, by number of pages requested and by bytes read.
+ *
+ * The number of pages that a single crawl processes at the same time is limited by maxConcurrentRequests,
+ * which is also the number of requests this service keeps in flight at once, spread over hosts by the politeness policy.
+ *
+ * The seed and every href found are canonicalized with the configured UriCanonicalizer, so each page is visited once
+ * no matter how it was linked to. Every crawl gets its own visited set from the configured factory. Labels of hyperlinks are only collected if a label sink is configured.
+ *
+ * scrapeUri(URI) collects all hyperlinks found into one list. For crawls too big for that, scrapeUri(URI, HyperlinkSink)
+ * hands each hyperlink to the sink as soon as it is found and keeps nothing itself.
+ *
+ * Given a WarcRecordingHttpClient, a service records every exchange of its crawls into WARC files, and given a
+ * WarcReplayHttpClient, it crawls those files again instead of the web, e.g. to run new extractors over an old crawl.
+ *
+ * With a robots policy, the service keeps the robots.txt of every host it crawled, so each one is fetched once
+ * for all of its crawls, and its Crawl-delay holds for all of them as well.
+ *
+ * A service can run any number of crawls at the same time, which then share its HttpClient with its connection pool,
+ * its executor and the politeness scheduler of its dispatcher. HyperlinkCrawlJobScheduler runs crawls as jobs that way.
  *
  * It is final as it serves a specific purpose, with the same reasoning as to why the PropagatingHyperlinkWebScraperWorker is final.
  * I could not think of a reason to extend this class instead of extending the abstract WebScraperService
  */
 public final class PropagatingHyperlinkWebScraperService extends WebScraperService<HyperlinkWebScrapingResult> {
-    private final int maxScrapingDurationMinutes;
+    private final HyperlinkCrawlSettings settings;
+    // null unless robots.txt is obeyed
+    private final RobotsTxtCache robotsTxtCache;
 
     public PropagatingHyperlinkWebScraperService(int connectionTimeoutSeconds, int maxScrapingPropagationDurationMinutes) {
-        super(connectionTimeoutSeconds);
-        this.maxScrapingDurationMinutes = maxScrapingPropagationDurationMinutes;
+        this(HyperlinkCrawlSettings.defaults(connectionTimeoutSeconds, maxScrapingPropagationDurationMinutes));
+    }
+
+    public PropagatingHyperlinkWebScraperService(int connectionTimeoutSeconds, int maxScrapingPropagationDurationMinutes, int maxConcurrentRequests) {
+        this(HyperlinkCrawlSettings.builder(connectionTimeoutSeconds, maxScrapingPropagationDurationMinutes).maxConcurrentRequests(maxConcurrentRequests).build());
+    }
+
+    public PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings settings) {
+        super(settings.connectionTimeoutSeconds(), requestSettings(settings));
+        this.settings = settings;
+        this.robotsTxtCache = settings.robotsPolicy() == null ? null : new RobotsTxtCache(settings.robotsPolicy(), this);
+    }
+
+    /*
+     * Sends every request through the given client instead of one of its own, e.g. a WarcRecordingHttpClient or a
+     * WarcReplayHttpClient. The connection timeout of the settings is then up to the client.
+     */
+    public PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings settings, HttpClient httpClient, ExecutorService executorService) {
+        super(httpClient, executorService, requestSettings(settings));
+        this.settings = settings;
+        this.robotsTxtCache = settings.robotsPolicy() == null ? null : new RobotsTxtCache(settings.robotsPolicy(), this);
+    }
+
+    private static RequestSettings requestSettings(HyperlinkCrawlSettings settings) {
+        return RequestSettings.builder()
+                .maxConcurrentRequests(settings.maxConcurrentRequests())
+                .maxQueuedRequests(settings.maxQueuedRequests())
+                .politenessPolicy(settings.politenessPolicy())
+                .maxResponseBodyBytes(settings.maxResponseBodyBytes())
+                // the crawler introduces itself with the token whose robots.txt rules it obeys
+                .productToken(settings.robotsPolicy() == null ? DEFAULT_PRODUCT_TOKEN : settings.robotsPolicy().userAgent())
+                .build();
     }
 
     WebScraperWorker<HyperlinkWebScrapingResult> createNewRootScraperForHyperlink(Hyperlink hyperlink) {
-        return new PropagatingHyperlinkWebScraperWorker(hyperlink, this, this.maxScrapingDurationMinutes);
+        return new PropagatingHyperlinkWebScraperWorker(hyperlink, this, this.settings);
+    }
+
+    /*
+     * Crawls from the given URI and passes every hyperlink found to the sink, returns how many there were.
+     * The sink is not closed by this method.
+     */
+    public long scrapeUri(URI websiteUri, HyperlinkSink resultSink) {
+        if (resultSink == null) {
+            throw new IllegalStateException("HyperlinkSink is null. Use scrapeUri(URI) to collect the results into a list instead.");
+        }
+        LongAdder hyperlinksFound = new LongAdder();
+        scrape(new PropagatingHyperlinkWebScraperWorker(createSeedHyperlink(websiteUri), this, this.settings, hyperlink -> {
+            hyperlinksFound.increment();
+            resultSink.accept(hyperlink);
+        }));
+        return hyperlinksFound.sum();
+    }
+
+    HyperlinkCrawlSettings getSettings() {
+        return settings;
+    }
+
+    RobotsTxtCache getRobotsTxtCache() {
+        return robotsTxtCache;
+    }
+
+    PropagatingHyperlinkWebScraperWorker createWorker(URI websiteUri, HyperlinkSink resultSink, IntSupplier concurrencyShare) {
+        return new PropagatingHyperlinkWebScraperWorker(createSeedHyperlink(websiteUri), this, this.settings, resultSink, concurrencyShare);
+    }
+
+    void run(PropagatingHyperlinkWebScraperWorker worker) {
+        scrape(worker);
     }
 
     @Override
     protected WebScraperWorker<HyperlinkWebScrapingResult> createScraperForUri(URI websiteUri) {
-        return createNewRootScraperForHyperlink(new Hyperlink(websiteUri, ""));
+        return createNewRootScraperForHyperlink(createSeedHyperlink(websiteUri));
+    }
+
+    private Hyperlink createSeedHyperlink(URI websiteUri) {
+        URI canonicalUri = settings.uriCanonicalizer().canonicalize(websiteUri);
+        if (canonicalUri == null) {
+            throw new IllegalStateException("Cannot crawl from '%s', only absolute http(s) URIs can be crawled.".formatted(websiteUri));
+        }
+        return new Hyperlink(canonicalUri, "");
     }
 }
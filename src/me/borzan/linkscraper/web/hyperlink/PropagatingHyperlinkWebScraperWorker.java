@@ -1,121 +1,545 @@
 package me.borzan.linkscraper.web.hyperlink;
 
 import me.borzan.linkscraper.web.WebScraperWorker;
-import me.borzan.linkscraper.util.UriUtils;
+import me.borzan.linkscraper.web.cluster.ClusterCoordinator;
+import me.borzan.linkscraper.web.duplicate.NearDuplicateDetector;
+import me.borzan.linkscraper.web.duplicate.SimHashFingerprinter;
+import me.borzan.linkscraper.web.duplicate.UrlPatternStatistics;
+import me.borzan.linkscraper.web.extract.PageExtractors;
+import me.borzan.linkscraper.web.html.HtmlBodySubscriber;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+import me.borzan.linkscraper.web.metrics.CrawlCounter;
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.metrics.CrawlStage;
+import me.borzan.linkscraper.web.persistence.HyperlinkPageCache;
+import me.borzan.linkscraper.web.persistence.SpillingHyperlinkFrontier;
+import me.borzan.linkscraper.web.visited.VisitedUriSet;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 /*
  * This class is final because it is a specific implementation with a specific intent.
  * Any desired changes to the behavior of this class should warrant a separate WebScraperWorker child class.
+ *
+ * One worker drives one whole crawl. Hyperlinks found are reported to the result sink once, the moment they are found
+ * (without a sink of its own, the worker collects them into the list of its result), and new ones are put into the
+ * frontier, from which the CrawlProgress hands them out to up to maxConcurrentRequests pages at once.
+ * Requests are sent asynchronously and every page is tokenized while its body downloads, so no thread is parked per
+ * request. Only the thread that runs the worker itself waits, for the crawl as a whole.
+ *
+ * The worker itself visits pages and decides which of their hyperlinks to follow: within the crawl scope, the limits
+ * of CrawlLimits, not from near-duplicate pages (whose new hyperlinks are held back until the page is complete),
+ * and, in a cluster, only on the hosts this node owns. Everything else is up to its collaborators: the RobotsGate lets
+ * hyperlinks into the frontier and seeds the crawl from sitemaps, the CrawlCheckpointer writes checkpoints and resumes
+ * from them, and the ClusterCoordinator exchanges hyperlinks with the other nodes.
+ *
+ * The maximum duration is a hard deadline: when it is up, all requests that are still queued or in flight are cancelled,
+ * which also stops parsing their bodies, and the crawl ends with what was found until then. Cancelling the worker ends
+ * the crawl the same way right away.
  */
 public final class PropagatingHyperlinkWebScraperWorker extends WebScraperWorker<HyperlinkWebScrapingResult> {
-    /*
-     * This should be replaced with a DOM parser library, `org.w3c.dom` is too strict with modern html responses
-     * Also, this does not handle relative links, although it would be possible to implement that as well,
-     * but I hope this is enough as a proof of concept since a DOM parser would be the proper way to go anyway.
-     */
-    private static final Pattern ABSOLUTE_HYPERLINK_REGEX =
-            Pattern.compile("<a\\s+[^>]*href=\"(https?[^\"\\s]*)\"[^>]*>(.*?)</a>", Pattern.CASE_INSENSITIVE);
+    private static final long DEADLINE_GRACE_MILLIS = 1_000;
 
-    private final Map<URI, Set<String>> knownUris;
+    private final VisitedUriSet visitedUris;
+    private final HyperlinkLabelSink labelSink;
+    private final HyperlinkPageCache pageCache;
+    private final UriCanonicalizer uriCanonicalizer;
+    private final CrawlScope crawlScope;
     private final Hyperlink hyperlink;
 
+    private final HyperlinkFrontier frontier;
+    // null unless the frontier spills to disk, which is also the case for a checkpointed crawl
+    private final SpillingHyperlinkFrontier spillingFrontier;
+    private final HyperlinkSink resultSink;
+    // only used if the results are collected instead of streamed
+    private final Queue<Hyperlink> hyperlinksFound;
+    private final CrawlProgress progress;
+    private final CrawlCheckpointer checkpointer;
+    private final RobotsGate robotsGate;
+    private final AtomicBoolean propagationStopped;
+    private final CrawlLimits limits;
+    private final AtomicLong pagesRequested;
+    private final AtomicLong bytesRead;
+    private final AtomicBoolean budgetExhausted;
+    // the raw request futures of all pages in flight, to cancel them at the deadline or on cancellation
+    private final Set<CompletableFuture<?>> requestsInFlight;
+    private volatile boolean requestsCancelled;
+    private final CompletableFuture<Void> cancellation;
+    private volatile Exception failure;
+
     private Instant scrapingStartTime;
     private final Duration maxPropagationDuration;
 
+    // null unless this crawl is one node of a cluster
+    private final ClusterCoordinator cluster;
+    // the hyperlinks of other nodes' hosts that were forwarded already, each of them is sent to its owner only once
+    private final VisitedUriSet forwardedUris;
+    // null unless pages are compared by content
+    private final NearDuplicateDetector nearDuplicateDetector;
+    private final PageExtractors extractors;
+
+    private final CrawlMetrics metrics;
     private final Logger logger;
 
-    public PropagatingHyperlinkWebScraperWorker(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, int maxPropagationDurationMinutes) {
-        this(new ConcurrentHashMap<>(), hyperlink, service, null, maxPropagationDurationMinutes);
+    public PropagatingHyperlinkWebScraperWorker(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, HyperlinkCrawlSettings settings) {
+        this(hyperlink, service, settings, null);
+    }
+
+    /*
+     * If resultSink is null, the hyperlinks found are collected and returned as the result, otherwise the result is empty.
+     */
+    public PropagatingHyperlinkWebScraperWorker(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, HyperlinkCrawlSettings settings, HyperlinkSink resultSink) {
+        this(hyperlink, service, settings, resultSink, null);
     }
 
-    private PropagatingHyperlinkWebScraperWorker(Map<URI, Set<String>> knownUris, Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, Instant scrapingStartTime, long maxScrapingPropagationDurationMinutes) {
+    /*
+     * concurrencyShare caps the pages in flight below maxConcurrentRequests of the settings, null means no further cap.
+     * It is read anew for every page dispatched, so a service can split its slots between however many crawls are running.
+     */
+    public PropagatingHyperlinkWebScraperWorker(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, HyperlinkCrawlSettings settings, HyperlinkSink resultSink, IntSupplier concurrencyShare) {
         super(service);
-        validateRequiredParameters(hyperlink, service, maxScrapingPropagationDurationMinutes);
+        validateRequiredParameters(hyperlink, service, settings);
 
-        this.knownUris = knownUris;
+        this.visitedUris = settings.visitedUriSetFactory().get();
+        this.labelSink = settings.labelSink();
+        this.pageCache = settings.pageCache();
+        this.uriCanonicalizer = settings.uriCanonicalizer();
+        this.crawlScope = settings.crawlScope();
         this.hyperlink = hyperlink;
 
-        this.scrapingStartTime = scrapingStartTime;
-        this.maxPropagationDuration = Duration.ofMinutes(maxScrapingPropagationDurationMinutes);
+        this.checkpointer = new CrawlCheckpointer(hyperlink, visitedUris, settings);
+        this.spillingFrontier = checkpointer.isEnabled() ? checkpointer.frontier() : createSpillingFrontier(settings);
+        this.frontier = spillingFrontier != null ? spillingFrontier
+                : settings.scorer() != null ? new PriorityHyperlinkFrontier(settings.scorer())
+                : new ConcurrentHyperlinkFrontier();
+        this.hyperlinksFound = resultSink == null ? new ConcurrentLinkedQueue<>() : null;
+        this.resultSink = resultSink == null ? hyperlinksFound::add : resultSink;
+        this.progress = new CrawlProgress(frontier, settings.maxConcurrentRequests(), concurrencyShare, new CrawlProgress.Pages() {
+            @Override
+            public boolean canPropagate() {
+                return PropagatingHyperlinkWebScraperWorker.this.canPropagate();
+            }
 
+            @Override
+            public boolean canSendRequest() {
+                if (webScraperService.canAcceptRequests()) {
+                    return true;
+                }
+                webScraperService.whenRequestCapacityAvailable(progress::dispatch);
+                return false;
+            }
+
+            @Override
+            public Hyperlink poll() {
+                return checkpointer.poll(frontier);
+            }
+
+            @Override
+            public void visit(Hyperlink next) {
+                pagesRequested.incrementAndGet();
+                scrapeSingleHyperlink(next);
+            }
+
+            @Override
+            public boolean mayEndWhenIdle() {
+                // in a cluster, other nodes may still send hyperlinks, the coordinator decides when the crawl is over
+                return cluster == null || cancellation.isDone() || !hasPropagationTimeLeft();
+            }
+        });
+        this.robotsGate = new RobotsGate(service, progress, checkpointer, this::offer, this::acceptSitemapPage);
+        this.propagationStopped = new AtomicBoolean();
+        this.limits = settings.limits();
+        this.pagesRequested = new AtomicLong();
+        this.bytesRead = new AtomicLong();
+        this.budgetExhausted = new AtomicBoolean();
+        this.requestsInFlight = ConcurrentHashMap.newKeySet();
+        this.cancellation = new CompletableFuture<>();
+
+        this.maxPropagationDuration = Duration.ofMinutes(settings.maxScrapingPropagationDurationMinutes());
+        this.cluster = settings.cluster() == null ? null : new ClusterCoordinator(settings.cluster());
+        this.forwardedUris = cluster == null ? null : settings.visitedUriSetFactory().get();
+        this.nearDuplicateDetector = settings.nearDuplicatePolicy() == null ? null : new NearDuplicateDetector(settings.nearDuplicatePolicy());
+        this.extractors = settings.extractors();
+
+        this.metrics = service.getMetrics();
         this.logger = Logger.getLogger(this.getClass().getName());
     }
 
-    /*
-     * This factory method is intended to be used for recursive propagation, hence it's private as the initial state of its resulting worker depends on the caller worker.
-     */
-    private PropagatingHyperlinkWebScraperWorker propagateToNewScraperForHyperlink(Hyperlink hyperlink) {
-        Instant scrapingEndTime = Instant.now();
-        if(Duration.between(this.scrapingStartTime, scrapingEndTime).compareTo(this.maxPropagationDuration) > 0) {
-            // return no new scraper worker as the max duration of minutes has passed
-            logger.log(Level.INFO, "The maximum duration of %d minutes is up. Propagation stopped.".formatted(maxPropagationDuration.toMinutes()));
+    private static SpillingHyperlinkFrontier createSpillingFrontier(HyperlinkCrawlSettings settings) {
+        if (settings.frontierHeapBudgetBytes() == HyperlinkCrawlSettings.UNLIMITED_FRONTIER_HEAP_BUDGET) {
             return null;
         }
-        return new PropagatingHyperlinkWebScraperWorker(this.knownUris, hyperlink, (PropagatingHyperlinkWebScraperService) this.webScraperService, this.scrapingStartTime, this.maxPropagationDuration.toMinutes());
+        try {
+            return new SpillingHyperlinkFrontier(settings.frontierHeapBudgetBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a directory to spill the frontier to.", e);
+        }
     }
 
     @Override
-    public HyperlinkWebScrapingResult call() {
-        if(this.scrapingStartTime == null) {
-            this.scrapingStartTime = Instant.now();
+    public HyperlinkWebScrapingResult call() throws InterruptedException, ExecutionException {
+        this.scrapingStartTime = Instant.now();
+        CrawlMetrics.Registration frontierGauge = metrics.registerGauge(CrawlMetrics.FRONTIER_SIZE, frontier::size);
+        CrawlMetrics.Registration pagesInFlightGauge = metrics.registerGauge(CrawlMetrics.PAGES_IN_FLIGHT, progress::getPagesInFlight);
+        try {
+            startOrResumeCrawl();
+            if (cluster != null) {
+                cluster.start(this::acceptForwardedHyperlinks, progress::isIdle);
+                cluster.termination().whenComplete((ignored, exception) -> progress.end());
+            }
+            progress.dispatch();
+
+            // the only blocking wait of the whole crawl, every page itself is processed without waiting on others
+            awaitCrawlCompletion();
+            return new HyperlinkWebScrapingResult(hyperlinksFound == null ? List.of() : List.copyOf(hyperlinksFound));
+        } finally {
+            pagesInFlightGauge.close();
+            frontierGauge.close();
+            robotsGate.stopSeeding();
+            if (cluster != null) {
+                cluster.close();
+                logger.log(Level.INFO, "This node sent %d hyperlinks to other nodes of the cluster and received %d."
+                        .formatted(cluster.getHyperlinksSent(), cluster.getHyperlinksReceived()));
+            }
+            logThrottledPatterns();
+            closeFrontierAndCheckpointer();
         }
+    }
 
-        HttpResponse<String> response = visitUri();
-        String responseBody = extractBodyWithoutNewLines(response);
-        Set<Hyperlink> urisFound = parseHyperlinksFromResponse(responseBody);
+    private void startOrResumeCrawl() {
+        if (checkpointer.resume(resultSink, robotsGate::admit)) {
+            return;
+        }
+        // every node of a cluster is started with the same seed, only its owner crawls it
+        if (cluster == null || cluster.owns(hyperlink)) {
+            visitedUris.markVisited(hyperlink);
+            robotsGate.admitSeed(hyperlink);
+            robotsGate.seedFromSitemaps(hyperlink.getUri());
+        }
+    }
 
-        return new HyperlinkWebScrapingResult(propagateLinkScraping(urisFound));
+    /*
+     * Ends the crawl as if its deadline was up, with the hyperlinks found until now. Can be called from any thread,
+     * also before the crawl started, and more than once.
+     */
+    public void cancel() {
+        cancellation.complete(null);
     }
 
-    private HttpResponse<String> visitUri() {
-        logger.log(Level.INFO, "%s - # of known uris: %6d - uri: '%s' - label: '%s'".formatted(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd:hh-mm-ss")), knownUris.size(), hyperlink.getUri(), hyperlink.getLabel()));
+    /*
+     * Takes more pages in flight if the concurrency share grew, e.g. because another job of the scheduler finished.
+     * Before the crawl started and once nothing is in flight, the share holds nothing back, so there is nothing to do.
+     */
+    void onConcurrencyShareGrown() {
+        if (progress.getPagesInFlight() > 0) {
+            progress.dispatch();
+        }
+    }
 
-        HttpResponse<String> response = null;
+    long getPagesRequested() {
+        return pagesRequested.get();
+    }
+
+    // the exception that ended the crawl early, null if it was not ended by one
+    Exception getFailure() {
+        return failure;
+    }
+
+    private void awaitCrawlCompletion() throws InterruptedException, ExecutionException {
+        Instant deadline = scrapingStartTime.plus(maxPropagationDuration);
+        CompletableFuture<Object> completionOrCancellation = CompletableFuture.anyOf(progress.completion(), cancellation);
+        while (!progress.isOver()) {
+            long millisUntilDeadline = Duration.between(Instant.now(), deadline).toMillis();
+            if (millisUntilDeadline <= 0) {
+                hasPropagationTimeLeft();
+                cancelRequestsInFlight("at the deadline");
+                break;
+            }
+            if (cancellation.isDone()) {
+                logger.log(Level.INFO, "The crawl of '%s' was cancelled.".formatted(hyperlink.getUri()));
+                cancelRequestsInFlight("on cancellation");
+                break;
+            }
+            try {
+                completionOrCancellation.get(!checkpointer.isEnabled() ? millisUntilDeadline : Math.min(millisUntilDeadline, checkpointer.interval().toMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (Instant.now().isBefore(deadline)) {
+                    checkpointer.checkpoint();
+                }
+            }
+        }
+        checkpointer.checkpoint();
+    }
+
+    /*
+     * Cancels every request that is still queued or in flight. Each cancelled page finishes right away, so the crawl
+     * completes within moments. Should a page still hang on after DEADLINE_GRACE_MILLIS, the crawl ends without it.
+     * Pages cancelled during a checkpointed crawl go back into the frontier, so a resumed crawl fetches them again.
+     */
+    private void cancelRequestsInFlight(String occasion) throws InterruptedException {
+        requestsCancelled = true;
+        robotsGate.stopSeeding();
+        int cancelledRequests = 0;
+        for (CompletableFuture<?> request : requestsInFlight) {
+            if (request.cancel(true)) {
+                cancelledRequests++;
+            }
+        }
+        if (cancelledRequests > 0) {
+            logger.log(Level.INFO, "Cancelled %d requests that were still queued or in flight %s.".formatted(cancelledRequests, occasion));
+        }
         try {
-            response = webScraperService.sendHttpRequest(hyperlink.getUri());
-        } catch (InterruptedException | IOException e) {
-            logger.log(Level.SEVERE, ("An error (%s) occurred when visiting '%s': %s. " +
-                    "Link is marked as visited, but it will not propagate the search.")
-                    .formatted(e.getClass().getSimpleName(), hyperlink.getUri(), e.getMessage()));
+            progress.completion().get(DEADLINE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            logger.log(Level.WARNING, "%d pages were still being processed %d ms after the requests were cancelled, the crawl ends without them."
+                    .formatted(progress.getPagesInFlight(), DEADLINE_GRACE_MILLIS));
         }
-        return response;
     }
 
-    private String extractBodyWithoutNewLines(HttpResponse<String> response) {
-        /*
-         * Ideally, this would be done with some sort of DOM parser library.
-         * I tried parsing the responses into a DocumentBuilder via a DocumentBuilderFactory using the hyperlink uris,
-         * however the `org.w3c.dom` API is too strict and can't handle unassigned html attributes, which most websites seem to deploy
-         *
-         * I have to admit here, my knowledge of HTML and what options the JVM has to interact with it is limited as I've never had to do
-         * this sort of parsing in pure JVM before, so maybe there is another way I have not come across while researching this issue.
-         */
+    private void logThrottledPatterns() {
+        if (nearDuplicateDetector == null) {
+            return;
+        }
+        List<UrlPatternStatistics.PatternSummary> throttledPatterns = nearDuplicateDetector.throttledPatterns();
+        logger.log(Level.INFO, "%d pages had distinct content, %d URL patterns were throttled as crawler traps."
+                .formatted(nearDuplicateDetector.getDistinctPages(), throttledPatterns.size()));
+        throttledPatterns.stream().limit(10).forEach(pattern -> logger.log(Level.INFO, "  '%s': %d of %d pages near-duplicates, %d hyperlinks throttled"
+                .formatted(pattern.pattern(), pattern.nearDuplicates(), pattern.pages(), pattern.throttledUris())));
+    }
 
-        if (response == null) {
-            return null;
+    private void closeFrontierAndCheckpointer() {
+        try {
+            if (spillingFrontier != null) {
+                spillingFrontier.close();
+            }
+            checkpointer.close();
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.WARNING, "Could not close the files of the crawl: %s".formatted(e.getMessage()));
+        }
+    }
+
+    /*
+     * Hyperlinks of this node's hosts that another node of the cluster found. They were in scope where they were found,
+     * so they are only deduplicated here.
+     */
+    private void acceptForwardedHyperlinks(List<Hyperlink> forwardedHyperlinks) {
+        metrics.add(CrawlCounter.HYPERLINKS_RECEIVED, forwardedHyperlinks.size());
+        for (Hyperlink forwardedHyperlink : forwardedHyperlinks) {
+            if (markVisited(forwardedHyperlink)) {
+                resultSink.accept(forwardedHyperlink);
+                enqueue(forwardedHyperlink);
+            }
         }
+    }
 
-        String responseStringToParse = response.body();
-        if (responseStringToParse == null) {
-            responseStringToParse = "";
+    private void onHyperlinkScraped(Hyperlink scrapedHyperlink, Throwable exception) {
+        if (exception != null) {
+            logger.log(Level.SEVERE, "An error occurred while scraping '%s': %s".formatted(scrapedHyperlink.getUri(), exception.getMessage()));
         }
-        if(response.statusCode() < 200 || response.statusCode() >= 300) {
-            logger.log(Level.INFO, "Received response with unexpected status code: %d".formatted(response.statusCode()));
+        // everything the page found was propagated by now, so it is done without taking part in any move
+        checkpointer.markDone(scrapedHyperlink);
+        progress.onPageFinished();
+    }
+
+    private boolean canPropagate() {
+        return !cancellation.isDone() && hasPropagationTimeLeft() && hasBudgetLeft();
+    }
+
+    private boolean hasBudgetLeft() {
+        if (pagesRequested.get() < limits.maxPages() && bytesRead.get() < limits.maxBytes()) {
+            return true;
+        }
+        if (budgetExhausted.compareAndSet(false, true)) {
+            logger.log(Level.INFO, "The budget of the crawl is used up with %d pages requested and %d bytes read. Propagation stopped."
+                    .formatted(pagesRequested.get(), bytesRead.get()));
+            if (!checkpointer.isEnabled()) {
+                frontier.clear();
+            }
+        }
+        return false;
+    }
+
+    private boolean hasPropagationTimeLeft() {
+        if (Duration.between(this.scrapingStartTime, Instant.now()).compareTo(this.maxPropagationDuration) <= 0) {
+            return true;
+        }
+        if (propagationStopped.compareAndSet(false, true)) {
+            logger.log(Level.INFO, "The maximum duration of %d minutes is up. Propagation stopped.".formatted(maxPropagationDuration.toMinutes()));
+            if (!checkpointer.isEnabled()) {
+                frontier.clear();
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Hyperlinks are extracted and reported while the body is still being downloaded, and each new one is put into
+     * the frontier right away, unless near-duplicates are detected, which needs the whole page first.
+     * If the page is cached, the hyperlinks extracted are also remembered to update the cache with.
+     */
+    private void scrapeSingleHyperlink(Hyperlink hyperlinkToScrape) {
+        HyperlinkPageCache.CachedPage cachedPage = pageCache == null ? null : pageCache.get(hyperlinkToScrape.getUri()).orElse(null);
+        SimHashFingerprinter fingerprinter = nearDuplicateDetector == null ? null : nearDuplicateDetector.newFingerprinter();
+        // the body subscriber delivers one chunk after the other, so the lists are never touched by two threads at once
+        List<Hyperlink> extractedHyperlinks = pageCache == null ? null : new ArrayList<>();
+        List<Hyperlink> heldBackHyperlinks = fingerprinter == null ? null : new ArrayList<>();
+
+        HtmlTokenListener tokenListener = new HyperlinkExtractor(hyperlinkToScrape.getUri(), uriCanonicalizer, foundHyperlink -> {
+            if (extractedHyperlinks != null) {
+                extractedHyperlinks.add(foundHyperlink);
+            }
+            propagateLinkScraping(hyperlinkToScrape, foundHyperlink, heldBackHyperlinks);
+        });
+        if (fingerprinter != null) {
+            tokenListener = tokenListener.andThen(fingerprinter);
+        }
+        if (!extractors.isEmpty()) {
+            tokenListener = tokenListener.andThen(extractors.newPageListener(hyperlinkToScrape.getUri()));
+        }
+        visitUri(hyperlinkToScrape, cachedPage, tokenListener)
+                .thenAccept(response -> {
+                    if (followUnlessNearDuplicate(hyperlinkToScrape, fingerprinter, response, heldBackHyperlinks)) {
+                        updateOrReplayCachedPage(hyperlinkToScrape, cachedPage, response, extractedHyperlinks);
+                    }
+                })
+                .whenComplete((ignored, exception) -> onHyperlinkScraped(hyperlinkToScrape, exception));
+    }
+
+    /*
+     * Follows the new hyperlinks held back for the page, unless the page turns out to be a near-duplicate. They were
+     * reported already either way. Returns false for a near-duplicate, whose hyperlinks are not cached either,
+     * so a 304 later does not follow them. Pages that failed are not compared, since only part of their content is known.
+     */
+    private boolean followUnlessNearDuplicate(Hyperlink scrapedHyperlink, SimHashFingerprinter fingerprinter, HttpResponse<Void> response, List<Hyperlink> heldBackHyperlinks) {
+        if (fingerprinter == null) {
+            return true;
+        }
+        boolean nearDuplicate = response != null && nearDuplicateDetector.isNearDuplicate(scrapedHyperlink.getUri(), fingerprinter);
+        if (nearDuplicate) {
+            metrics.increment(CrawlCounter.NEAR_DUPLICATE_PAGES);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "'%s' nearly duplicates a page fetched before, its %d new hyperlinks are not followed."
+                        .formatted(scrapedHyperlink.getUri(), heldBackHyperlinks.size()));
+            }
+        }
+
+        checkpointer.beginMove();
+        try {
+            for (Hyperlink heldBackHyperlink : heldBackHyperlinks) {
+                if (!nearDuplicate) {
+                    follow(heldBackHyperlink);
+                }
+                checkpointer.markDone(heldBackHyperlink);
+            }
+        } finally {
+            checkpointer.endMove();
+        }
+        return !nearDuplicate;
+    }
+
+    private void updateOrReplayCachedPage(Hyperlink scrapedHyperlink, HyperlinkPageCache.CachedPage cachedPage, HttpResponse<Void> response, List<Hyperlink> extractedHyperlinks) {
+        if (pageCache == null || response == null) {
+            return;
+        }
+        if (response.statusCode() == 304 && cachedPage != null) {
+            cachedPage.hyperlinks().forEach(foundHyperlink -> propagateLinkScraping(scrapedHyperlink, foundHyperlink, null));
+            return;
+        }
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            pageCache.put(new HyperlinkPageCache.CachedPage(scrapedHyperlink.getUri(),
+                    response.headers().firstValue("ETag").orElse(""),
+                    response.headers().firstValue("Last-Modified").orElse(""),
+                    List.copyOf(extractedHyperlinks)));
+        }
+    }
+
+    private CompletableFuture<HttpResponse<Void>> visitUri(Hyperlink hyperlink, HyperlinkPageCache.CachedPage cachedPage, HtmlTokenListener tokenListener) {
+        // the log handler adds the time itself, and nothing is formatted at all unless somebody listens
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "# of known uris: %6d - uri: '%s' - label: '%s'".formatted(visitedUris.size(), hyperlink.getUri(), hyperlink.getLabel()));
+        }
+
+        String entityTag = cachedPage == null ? null : cachedPage.entityTag();
+        String lastModified = cachedPage == null ? null : cachedPage.lastModified();
+        CompletableFuture<HttpResponse<Void>> request = webScraperService.sendConditionalHttpRequestAsync(hyperlink.getUri(), entityTag, lastModified,
+                responseInfo -> createBodySubscriber(hyperlink.getUri(), responseInfo, tokenListener));
+        requestsInFlight.add(request);
+        request.whenComplete((ignored, exception) -> requestsInFlight.remove(request));
+        if (requestsCancelled) {
+            request.cancel(true);
+        }
+
+        return request
+                .exceptionally(exception -> {
+                    Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+                    if (cause instanceof CancellationException) {
+                        returnToFrontierForResume(hyperlink);
+                        return null;
+                    }
+                    if (cause instanceof RejectedExecutionException) {
+                        // the request queue filled up since the capacity was checked, the page waits in the frontier until there is room
+                        pagesRequested.decrementAndGet();
+                        returnToFrontier(hyperlink);
+                        webScraperService.whenRequestCapacityAvailable(progress::dispatch);
+                        return null;
+                    }
+                    logger.log(Level.SEVERE, ("An error (%s) occurred when visiting '%s': %s. " +
+                            "Link is marked as visited, but it will not propagate the search.")
+                            .formatted(cause.getClass().getSimpleName(), hyperlink.getUri(), cause.getMessage()));
+                    return null;
+                });
+    }
+
+    private void returnToFrontierForResume(Hyperlink cancelledHyperlink) {
+        if (checkpointer.isEnabled()) {
+            returnToFrontier(cancelledHyperlink);
+        }
+    }
+
+    /*
+     * Puts a hyperlink that was taken from the frontier but not visited back. It is still in flight until its page is
+     * finished, so a checkpoint in between captures it at least once.
+     */
+    private void returnToFrontier(Hyperlink hyperlink) {
+        checkpointer.beginMove();
+        try {
+            frontier.offer(hyperlink);
+        } finally {
+            checkpointer.endMove();
+        }
+    }
+
+    private HttpResponse.BodySubscriber<Void> createBodySubscriber(URI uri, HttpResponse.ResponseInfo responseInfo, HtmlTokenListener tokenListener) {
+        if (responseInfo.statusCode() == 304) {
+            // not modified, the hyperlinks come from the page cache
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        if(responseInfo.statusCode() < 200 || responseInfo.statusCode() >= 300) {
+            logger.log(Level.INFO, "Received response with unexpected status code: %d".formatted(responseInfo.statusCode()));
         }
         /*
          * I have omitted error handling of the response here.
@@ -124,87 +548,134 @@ public final class PropagatingHyperlinkWebScraperWorker extends WebScraperWorker
          * Regarding redirects, the scraper will rely on the http client to handle redirects as configured.
          * Just looking at the location header and blindly redirecting seems like a security risk upon closer inspection.
          * Especially when a redirect happens from https to http.
-         * 
-         * This also means, the content of the redirection links will be counted as the content of the original link. 
-         * This might not be the desired behavior but it seems arbitrary to me which rule to follow. 
+         *
+         * This also means, the content of the redirection links will be counted as the content of the original link.
+         * This might not be the desired behavior but it seems arbitrary to me which rule to follow.
          * Perhaps both should be counted so as not to visit the link potentially twice but this again seems to devolve into too much complexity for the demo application.
          */
+        HtmlBodySubscriber bodySubscriber = new HtmlBodySubscriber(tokenListener);
+        bodySubscriber.getBody().whenComplete((ignored, exception) -> {
+            bytesRead.addAndGet(bodySubscriber.getBytesTokenized());
+            metrics.recordParse(uri, bodySubscriber.getBytesTokenized(), bodySubscriber.getTokenizingNanos());
+        });
+        return bodySubscriber;
+    }
 
-        // flatten response to one line so the regex can match originally-multi-line <a> tags
-        return responseStringToParse.replaceAll("[\n\r]", "");
+    /*
+     * Reports a hyperlink found on the scraped page and, if it is new, follows it. With a list of held back hyperlinks,
+     * a new hyperlink is only added to that list, to be followed once the page is known not to be a near-duplicate.
+     * In a checkpointed crawl it counts as in flight meanwhile, so a checkpoint keeps it pending.
+     */
+    private void propagateLinkScraping(Hyperlink scrapedHyperlink, Hyperlink foundHyperlink, List<Hyperlink> heldBackHyperlinks) {
+        metrics.increment(CrawlCounter.HYPERLINKS_EXTRACTED);
+        if (!crawlScope.includes(scrapedHyperlink, foundHyperlink)) {
+            return;
+        }
+        labelSink.accept(foundHyperlink);
+        if (cluster != null && !cluster.owns(foundHyperlink)) {
+            if (forwardedUris.markVisited(foundHyperlink)) {
+                followOrHoldBack(foundHyperlink.withDepth(scrapedHyperlink.getDepth() + 1), heldBackHyperlinks);
+            }
+            return;
+        }
+        checkpointer.beginMove();
+        try {
+            if (markVisited(foundHyperlink)) {
+                Hyperlink newHyperlink = foundHyperlink.withDepth(scrapedHyperlink.getDepth() + 1);
+                resultSink.accept(newHyperlink);
+                checkpointer.appendResult(newHyperlink);
+                followOrHoldBack(newHyperlink, heldBackHyperlinks);
+            } else {
+                frontier.onRediscovered(foundHyperlink);
+            }
+        } finally {
+            checkpointer.endMove();
+        }
+    }
+
+    private void followOrHoldBack(Hyperlink newHyperlink, List<Hyperlink> heldBackHyperlinks) {
+        if (heldBackHyperlinks == null) {
+            follow(newHyperlink);
+            return;
+        }
+        heldBackHyperlinks.add(newHyperlink);
+        checkpointer.markInFlight(newHyperlink);
     }
 
     /*
-     * Just a regex matcher parsing the response body looking for hyperlink html tags.
+     * Hyperlinks of hosts another node of the cluster owns are forwarded to it, all others are enqueued here.
      */
-    private Set<Hyperlink> parseHyperlinksFromResponse(String responseBody) {
-        Matcher regexMatcher = ABSOLUTE_HYPERLINK_REGEX.matcher(responseBody);
+    private void follow(Hyperlink newHyperlink) {
+        if (cluster != null && !cluster.owns(newHyperlink)) {
+            cluster.forward(newHyperlink);
+            metrics.increment(CrawlCounter.HYPERLINKS_FORWARDED);
+            return;
+        }
+        enqueue(newHyperlink);
+    }
 
-        Set<Hyperlink> parsedLinks = new HashSet<>();
-        while (regexMatcher.find()) {
-            String hrefMatch = regexMatcher.group(1).trim();
-            String labelMatch = regexMatcher.group(2).replaceAll("\\s+", " ").trim();
+    private boolean markVisited(Hyperlink foundHyperlink) {
+        long startedAt = System.nanoTime();
+        boolean isNew = visitedUris.markVisited(foundHyperlink);
+        metrics.recordStage(CrawlStage.DEDUP, System.nanoTime() - startedAt);
+        return isNew;
+    }
 
-            URI parsedUri = UriUtils.tryParseUri(hrefMatch);
-            if (parsedUri != null) {
-                parsedLinks.add(new Hyperlink(parsedUri, labelMatch));
-            }
+    private void enqueue(Hyperlink newHyperlink) {
+        if (newHyperlink.getDepth() > limits.maxDepth()) {
+            return;
+        }
+        if (nearDuplicateDetector != null && nearDuplicateDetector.isThrottled(newHyperlink.getUri())) {
+            metrics.increment(CrawlCounter.THROTTLED_HYPERLINKS);
+            return;
         }
+        robotsGate.admit(newHyperlink);
+    }
 
-        return parsedLinks;
+    /*
+     * Every hyperlink enters the frontier here, and is dispatched right away if there is a free slot. So the hyperlinks
+     * of a page are requested while its body is still being read, instead of once the page is done.
+     */
+    private void offer(Hyperlink newHyperlink) {
+        long startedAt = System.nanoTime();
+        frontier.offer(newHyperlink);
+        metrics.recordStage(CrawlStage.ENQUEUE, System.nanoTime() - startedAt);
+        metrics.increment(CrawlCounter.HYPERLINKS_NEW);
+        progress.dispatch();
     }
 
     /*
-     * this method will wait for all created scrapers to finish and then collect all hyperlinks found by all of them
+     * Every page of a sitemap takes the way of a hyperlink found on the seed page, so it is scoped, deduplicated,
+     * reported and checked against robots.txt like one, and is dispatched right away if there is a free slot.
+     * Once nothing is requested anymore, the rest of the sitemaps is not read.
      */
-    private List<Hyperlink> propagateLinkScraping(Set<Hyperlink> urisFound) {
-        var newUrisFound = urisFound
-                .stream()
-                .filter(hyperlink::sharesDomainWith)
-                .filter(this::isNew)
-                .toList();
-
-        var propagatedUris = newUrisFound
-                .stream()
-                .map(this::propagateToNewScraperForHyperlink)
-                .filter(Objects::nonNull)
-                .map(PropagatingHyperlinkWebScraperWorker::scrape)
-                .map(HyperlinkWebScrapingResult::result)
-                .flatMap(Collection::stream);
-
-        return Stream.concat(newUrisFound.stream(), propagatedUris).toList();
-    }
-
-    private boolean isNew(Hyperlink hyperlink) {
-        synchronized (knownUris) {
-            if(knownUris.isEmpty()) {
-                knownUris.computeIfAbsent(this.hyperlink.getUri(), uri -> new HashSet<>()).add(this.hyperlink.getLabel());
-            }
-            if (knownUris.containsKey(hyperlink.getUri())) {
-                // The url could have multiple different labels
-                knownUris.get(hyperlink.getUri()).add(hyperlink.getLabel());
-                // Prevent visiting the URI again
-                return false;
-            }
-            knownUris.computeIfAbsent(hyperlink.getUri(), uri -> new HashSet<>()).add(hyperlink.getLabel());
-            return true;
+    private void acceptSitemapPage(String location) {
+        if (!canPropagate()) {
+            robotsGate.stopSeeding();
+            return;
+        }
+        URI pageUri = uriCanonicalizer.resolve(null, location);
+        if (pageUri == null) {
+            return;
         }
+        propagateLinkScraping(hyperlink, new Hyperlink(pageUri, ""), null);
     }
 
-    private void validateRequiredParameters(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, long maxScrapingPropagationDurationMinutes) {
+    private void validateRequiredParameters(Hyperlink hyperlink, PropagatingHyperlinkWebScraperService service, HyperlinkCrawlSettings settings) {
         if(service == null) {
             throw new IllegalStateException("WebScraperService is null. Cannot send web requests or schedule workers without it.");
         }
         if(hyperlink == null) {
             throw new IllegalStateException("Hyperlink is null. Cannot scrape web address 'null'.");
         }
-        if(maxScrapingPropagationDurationMinutes < 0) {
-            throw new IllegalStateException("Time duration must not be negative.");
+        if(settings == null) {
+            throw new IllegalStateException("HyperlinkCrawlSettings are null. Use HyperlinkCrawlSettings.defaults if in doubt.");
         }
     }
 
     @Override
     public HyperlinkWebScrapingResult handleExecutionException(Exception exception) {
+        this.failure = exception;
         logger.log(Level.SEVERE, ("An error occurred during multi-thread execution: %s. " +
                 "Resulting list might be incomplete.").formatted(exception.getMessage()));
 
@@ -0,0 +1,127 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.metrics.CrawlCounter;
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.robots.RobotsRules;
+import me.borzan.linkscraper.web.robots.RobotsTxtCache;
+import me.borzan.linkscraper.web.robots.SitemapReader;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Lets hyperlinks into the frontier of a crawl only if the robots.txt of their host allows them, and seeds the crawl
+ * with the pages of the sitemaps of its seed's host. Without a RobotsTxtCache, every hyperlink is let in right away.
+ *
+ * Once the robots.txt of a host is known, the check is one of the compiled rules and nothing more. Until then, the
+ * hyperlink waits for it outside the frontier as pending work of the crawl's progress, so the crawl is not over before
+ * the hyperlink was either let in or dropped, and it is in flight for checkpoints meanwhile. Reading the sitemaps is
+ * pending work as well. Disallowed hyperlinks were reported as found already, they are only not visited.
+ */
+final class RobotsGate {
+    // both null unless robots.txt is obeyed, the reader is also null unless the crawl is seeded from sitemaps
+    private final RobotsTxtCache robotsTxtCache;
+    private final SitemapReader sitemapReader;
+    private final CrawlProgress progress;
+    private final CrawlCheckpointer checkpointer;
+    private final Consumer<Hyperlink> frontierIntake;
+    private final CrawlMetrics metrics;
+    private final Logger logger;
+
+    RobotsGate(PropagatingHyperlinkWebScraperService service, CrawlProgress progress, CrawlCheckpointer checkpointer,
+               Consumer<Hyperlink> frontierIntake, Consumer<String> sitemapPageFound) {
+        this.robotsTxtCache = service.getRobotsTxtCache();
+        int maxSitemaps = robotsTxtCache == null ? 0 : service.getSettings().robotsPolicy().maxSitemaps();
+        this.sitemapReader = maxSitemaps == 0 ? null : new SitemapReader(service, maxSitemaps, sitemapPageFound);
+        this.progress = progress;
+        this.checkpointer = checkpointer;
+        this.frontierIntake = frontierIntake;
+        this.metrics = service.getMetrics();
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    void admit(Hyperlink newHyperlink) {
+        admit(newHyperlink, false);
+    }
+
+    /*
+     * Like admit, but warns if the seed is kept out, since the crawl then ends without a single page and the reason
+     * would otherwise only show in the log of the RobotsTxtCache.
+     */
+    void admitSeed(Hyperlink seed) {
+        admit(seed, true);
+    }
+
+    private void admit(Hyperlink newHyperlink, boolean seed) {
+        if (robotsTxtCache == null) {
+            frontierIntake.accept(newHyperlink);
+            return;
+        }
+        CompletableFuture<RobotsRules> rules = robotsTxtCache.rulesFor(newHyperlink.getUri());
+        RobotsRules knownRules = rules.getNow(null);
+        if (knownRules != null) {
+            admitIfAllowed(knownRules, newHyperlink, seed);
+            return;
+        }
+
+        progress.beginPendingWork();
+        checkpointer.markInFlight(newHyperlink);
+        rules.thenAccept(fetchedRules -> {
+            // once the crawl ended, the frontier may be closed already
+            if (!progress.isOver()) {
+                checkpointer.beginMove();
+                try {
+                    admitIfAllowed(fetchedRules, newHyperlink, seed);
+                    checkpointer.markDone(newHyperlink);
+                } finally {
+                    checkpointer.endMove();
+                }
+            }
+            progress.endPendingWork();
+        });
+    }
+
+    private void admitIfAllowed(RobotsRules rules, Hyperlink newHyperlink, boolean seed) {
+        if (!rules.isAllowed(newHyperlink.getUri())) {
+            metrics.increment(CrawlCounter.ROBOTS_DISALLOWED_HYPERLINKS);
+            if (seed) {
+                logger.log(Level.WARNING, rules == RobotsRules.DISALLOW_ALL
+                        ? "The robots.txt of the seed '%s' could not be fetched, which disallows its whole host for now, so the seed is not crawled. Try again later, or crawl without obeying robots.txt.".formatted(newHyperlink.getUri())
+                        : "The robots.txt of its host disallows the seed '%s', so it is not crawled.".formatted(newHyperlink.getUri()));
+            }
+            return;
+        }
+        frontierIntake.accept(newHyperlink);
+    }
+
+    /*
+     * Reads the sitemaps the robots.txt of the seed's host lists, or its /sitemap.xml if it lists none, unless the
+     * crawl is not seeded from sitemaps. Every page found is handed to the sitemapPageFound consumer.
+     */
+    void seedFromSitemaps(URI seed) {
+        if (sitemapReader == null) {
+            return;
+        }
+        progress.beginPendingWork();
+        robotsTxtCache.rulesFor(seed)
+                .thenCompose(rules -> sitemapReader.read(rules.sitemaps().isEmpty() ? List.of(seed.resolve("/sitemap.xml")) : rules.sitemaps()))
+                .whenComplete((ignored, exception) -> {
+                    logger.log(Level.INFO, "Seeded the crawl of '%s' with %d pages from %d sitemaps."
+                            .formatted(seed, sitemapReader.getPagesFound(), sitemapReader.getSitemapsRequested()));
+                    progress.endPendingWork();
+                });
+    }
+
+    /*
+     * Stops reading sitemaps, the sitemaps still in flight are cancelled.
+     */
+    void stopSeeding() {
+        if (sitemapReader != null) {
+            sitemapReader.cancel();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * Turns the hrefs found on a page into one canonical absolute URI per page, so the same page is only fetched once,
+ * no matter how it was linked to.
+ *
+ * Hrefs are resolved against the URI of the page (or its <base href>). Of the result, scheme and host are lower-cased,
+ * default ports, empty query parameters and the fragment are removed, and dot segments of the path are resolved.
+ * Query parameters are then filtered and sorted by the rules of this canonicalizer, by default tracking parameters such as
+ * utm_source are removed and the rest is sorted by name. Anything that is not http(s) in the end, e.g. mailto: or javascript:,
+ * is not a page to crawl and yields null.
+ *
+ * Canonical URIs are still what is requested, so they keep scheme and trailing slash. The identity key goes further and
+ * treats http and https as well as a path with and without a trailing slash as the same page, which is what
+ * Hyperlink equality and the visited set are built on.
+ */
+public record UriCanonicalizer(boolean sortQueryParameters,
+                               Set<String> removedQueryParameters,
+                               List<String> removedQueryParameterPrefixes) {
+    public static final UriCanonicalizer DEFAULT = new UriCanonicalizer(true,
+            Set.of("fbclid", "gclid", "dclid", "gbraid", "wbraid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga", "_gl", "igshid"),
+            List.of("utm_"));
+    // only normalizes, the query is kept exactly as it was
+    public static final UriCanonicalizer KEEP_QUERY = new UriCanonicalizer(false, Set.of(), List.of());
+
+    public UriCanonicalizer {
+        if (removedQueryParameters == null || removedQueryParameterPrefixes == null) {
+            throw new IllegalStateException("The removed query parameters must not be null, use empty collections to keep every parameter.");
+        }
+        removedQueryParameters = Set.copyOf(removedQueryParameters.stream().map(name -> name.toLowerCase(Locale.ROOT)).toList());
+        removedQueryParameterPrefixes = removedQueryParameterPrefixes.stream().map(prefix -> prefix.toLowerCase(Locale.ROOT)).toList();
+    }
+
+    public UriCanonicalizer withSortedQueryParameters(boolean sortQueryParameters) {
+        return new UriCanonicalizer(sortQueryParameters, removedQueryParameters, removedQueryParameterPrefixes);
+    }
+
+    /*
+     * Parameter names are compared case-insensitively, a prefix removes every parameter whose name starts with it.
+     */
+    public UriCanonicalizer withRemovedQueryParameters(Set<String> removedQueryParameters, List<String> removedQueryParameterPrefixes) {
+        return new UriCanonicalizer(sortQueryParameters, removedQueryParameters, removedQueryParameterPrefixes);
+    }
+
+    /*
+     * Resolves an href as found in a document against the document's base URI, which may be null if only absolute hrefs
+     * are of interest. Returns null if the href does not lead to an http(s) page.
+     * The href must already have its character references decoded (see HtmlEntities), otherwise the "amp;" of an
+     * "&amp;" would be taken for a query parameter of its own and sorted away from where it belongs.
+     */
+    public URI resolve(URI baseUri, String href) {
+        String cleanedHref = cleanHref(href);
+        if (cleanedHref.isEmpty() || cleanedHref.charAt(0) == '#') {
+            // a link to the document itself
+            return null;
+        }
+
+        if (cleanedHref.charAt(0) == '?' && baseUri != null) {
+            // java.net.URI resolves by the older RFC 2396, which would drop the last segment of the base path here
+            cleanedHref = withoutQueryAndFragment(baseUri.toString()) + cleanedHref;
+        }
+
+        URI parsedUri;
+        try {
+            parsedUri = new URI(cleanedHref);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        if (!parsedUri.isAbsolute()) {
+            if (baseUri == null) {
+                return null;
+            }
+            parsedUri = baseUri.resolve(parsedUri);
+        }
+        return canonicalize(parsedUri);
+    }
+
+    /*
+     * Returns the canonical form of an absolute http(s) URI, or null for anything else.
+     * A URI that already is canonical is returned as it is.
+     */
+    public URI canonicalize(URI uri) {
+        if (uri == null || uri.isOpaque() || uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        int defaultPort;
+        if (scheme.equals("http")) {
+            defaultPort = 80;
+        } else if (scheme.equals("https")) {
+            defaultPort = 443;
+        } else {
+            return null;
+        }
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = uri.getPort() == defaultPort ? -1 : uri.getPort();
+        String path = canonicalPath(uri.getRawPath());
+        String query = canonicalQuery(uri.getRawQuery());
+
+        StringBuilder canonical = new StringBuilder(uri.toString().length()).append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            canonical.append(uri.getRawUserInfo()).append('@');
+        }
+        canonical.append(host);
+        if (port != -1) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(path);
+        if (query != null) {
+            canonical.append('?').append(query);
+        }
+
+        String canonicalUri = canonical.toString();
+        if (canonicalUri.equals(uri.toString())) {
+            return uri;
+        }
+        try {
+            return new URI(canonicalUri);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /*
+     * The identity of the page behind a canonical URI: host, port, path without trailing slash and query.
+     */
+    public static String identityKey(URI uri) {
+        if (uri.getHost() == null) {
+            // not a page of any host, there is nothing to be lenient about
+            return uri.toString();
+        }
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        int pathLength = path.endsWith("/") ? path.length() - 1 : path.length();
+        String query = uri.getRawQuery();
+
+        StringBuilder key = new StringBuilder(uri.getHost().length() + pathLength + (query == null ? 0 : query.length() + 1) + 6);
+        key.append(uri.getHost());
+        if (uri.getPort() != -1) {
+            key.append(':').append(uri.getPort());
+        }
+        key.append(path, 0, pathLength);
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    /*
+     * Browsers drop leading and trailing whitespace and any tabs and newlines inside of an href, and encode spaces.
+     */
+    private static String cleanHref(String href) {
+        String trimmed = href.strip();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                return trimmed.replace("\t", "").replace("\n", "").replace("\r", "").replace(" ", "%20");
+            }
+        }
+        return trimmed;
+    }
+
+    private static String withoutQueryAndFragment(String uri) {
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                return uri.substring(0, i);
+            }
+        }
+        return uri;
+    }
+
+    private static String canonicalPath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        if (!rawPath.contains("/.") && !rawPath.contains("//")) {
+            return rawPath;
+        }
+
+        // resolves . and .. segments, where .. never goes above the root
+        String[] segments = rawPath.split("/", -1);
+        List<String> canonicalSegments = new ArrayList<>(segments.length);
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (segment.equals(".")) {
+                if (last) {
+                    canonicalSegments.add("");
+                }
+            } else if (segment.equals("..")) {
+                if (!canonicalSegments.isEmpty()) {
+                    canonicalSegments.remove(canonicalSegments.size() - 1);
+                }
+                if (last) {
+                    canonicalSegments.add("");
+                }
+            } else if (!segment.isEmpty() || last) {
+                canonicalSegments.add(segment);
+            }
+        }
+        return "/" + String.join("/", canonicalSegments);
+    }
+
+    private String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        if (!sortQueryParameters && removedQueryParameters.isEmpty() && removedQueryParameterPrefixes.isEmpty()) {
+            return rawQuery;
+        }
+
+        String[] parameters = rawQuery.split("&");
+        int kept = 0;
+        for (String parameter : parameters) {
+            if (!parameter.isEmpty() && !isRemoved(parameterName(parameter))) {
+                parameters[kept++] = parameter;
+            }
+        }
+        if (kept == 0) {
+            return null;
+        }
+
+        String[] keptParameters = Arrays.copyOf(parameters, kept);
+        if (sortQueryParameters) {
+            // a stable sort by name only, repeated parameters keep their order since it may carry meaning
+            Arrays.sort(keptParameters, Comparator.comparing(UriCanonicalizer::parameterName));
+        }
+        return String.join("&", keptParameters);
+    }
+
+    private boolean isRemoved(String parameterName) {
+        String name = parameterName.toLowerCase(Locale.ROOT);
+        if (removedQueryParameters.contains(name)) {
+            return true;
+        }
+        for (String prefix : removedQueryParameterPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String parameterName(String parameter) {
+        int separator = parameter.indexOf('=');
+        return separator == -1 ? parameter : parameter.substring(0, separator);
+    }
+}
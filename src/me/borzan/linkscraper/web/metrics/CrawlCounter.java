@@ -0,0 +1,25 @@
+package me.borzan.linkscraper.web.metrics;
+
+public enum CrawlCounter {
+    RESPONSES_RECEIVED,
+    // responses with a 4xx or 5xx status, they are also counted as received
+    ERROR_RESPONSES,
+    NOT_MODIFIED_RESPONSES,
+    // requests that failed without any response, e.g. on a timeout
+    FAILED_REQUESTS,
+    // requests whose future was cancelled before they were sent
+    CANCELLED_REQUESTS,
+    BYTES_PARSED,
+    HYPERLINKS_EXTRACTED,
+    // hyperlinks that had not been seen before and were put into the frontier
+    HYPERLINKS_NEW,
+    // hyperlinks sent to and received from the other nodes of a cluster
+    HYPERLINKS_FORWARDED,
+    HYPERLINKS_RECEIVED,
+    // pages whose hyperlinks were not followed since the content nearly duplicates a page fetched before
+    NEAR_DUPLICATE_PAGES,
+    // new hyperlinks that were not put into the frontier since their URL pattern looks like a crawler trap
+    THROTTLED_HYPERLINKS,
+    // new hyperlinks that were not put into the frontier since the robots.txt of their host disallows them
+    ROBOTS_DISALLOWED_HYPERLINKS
+}
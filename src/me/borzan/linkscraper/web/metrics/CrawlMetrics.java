@@ -0,0 +1,232 @@
+package me.borzan.linkscraper.web.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Counters, a latency histogram per CrawlStage, statistics per host and gauges of everything a service crawls.
+ * Counters and latency histograms never allocate, never lock and format nothing, strings are only built for a snapshot.
+ * What a page does allocate is small and short-lived: a FetchTimer per request, the flight recorder event objects
+ * of its fetch and its parse, and the statistics of its host if it is the first page of that host.
+ * So this is always on, and a crawl that nobody looks at pays a handful of atomic increments and allocations per page.
+ *
+ * Statistics are kept for the first MAX_TRACKED_HOSTS hosts of a service, every host after those is added up under OTHER_HOSTS.
+ * A crawl of the open web finds millions of hosts, and a service that runs for days must not keep an entry for each of them.
+ * Hosts that race for the last free entries may take a few more, the bound is only kept roughly.
+ *
+ * Gauges are read at snapshot time from whoever registered them. Gauges of the same name are summed up,
+ * e.g. the frontiers of two crawls running on the same service at once.
+ *
+ * The same figures are available to JDK Flight Recorder, as an event per page fetched and per page parsed and as periodic
+ * statistics of every service. They only cost anything while a recording has them enabled.
+ */
+public final class CrawlMetrics {
+    public static final String FRONTIER_SIZE = "frontier.size";
+    public static final String PAGES_IN_FLIGHT = "pages.inFlight";
+    public static final String REQUESTS_IN_FLIGHT = "requests.inFlight";
+    public static final String REQUESTS_QUEUED = "requests.queued";
+    public static final int MAX_TRACKED_HOSTS = 10_000;
+    public static final String OTHER_HOSTS = "(other hosts)";
+
+    // every live instance, for the periodic flight recorder event, without keeping any of them alive
+    private static final Set<CrawlMetrics> LIVE_METRICS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        FlightRecorder.addPeriodicEvent(CrawlStatisticsEvent.class, CrawlMetrics::emitStatisticsEvents);
+    }
+
+    private final long createdAt;
+    private final LongAdder[] counters;
+    private final LatencyHistogram[] stages;
+    private final int maxTrackedHosts;
+    private final ConcurrentHashMap<String, HostStatistics> hosts;
+    private final HostStatistics otherHosts;
+    private final Queue<Gauge> gauges;
+
+    public CrawlMetrics() {
+        this(MAX_TRACKED_HOSTS);
+    }
+
+    CrawlMetrics(int maxTrackedHosts) {
+        this.createdAt = System.nanoTime();
+        this.counters = new LongAdder[CrawlCounter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        this.stages = new LatencyHistogram[CrawlStage.values().length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        this.maxTrackedHosts = maxTrackedHosts;
+        this.hosts = new ConcurrentHashMap<>();
+        this.otherHosts = new HostStatistics(OTHER_HOSTS);
+        this.gauges = new ConcurrentLinkedQueue<>();
+
+        LIVE_METRICS.add(this);
+    }
+
+    public void increment(CrawlCounter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(CrawlCounter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public void recordStage(CrawlStage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /*
+     * To be told about every step of a request as it happens, see FetchTimer.
+     */
+    public FetchTimer startFetch(String host, URI uri) {
+        return new FetchTimer(this, host, uri);
+    }
+
+    public void recordParse(URI uri, long bytesParsed, long parseNanos) {
+        recordStage(CrawlStage.PARSE, parseNanos);
+        add(CrawlCounter.BYTES_PARSED, bytesParsed);
+
+        PageParseEvent event = new PageParseEvent();
+        if (event.isEnabled()) {
+            event.uri = uri.toString();
+            event.bytesParsed = bytesParsed;
+            event.parseTime = parseNanos;
+            event.commit();
+        }
+    }
+
+    void recordResponse(String host, int statusCode, long fetchNanos) {
+        if (statusCode < 0) {
+            increment(CrawlCounter.FAILED_REQUESTS);
+        } else {
+            increment(CrawlCounter.RESPONSES_RECEIVED);
+            if (statusCode == 304) {
+                increment(CrawlCounter.NOT_MODIFIED_RESPONSES);
+            } else if (statusCode >= 400) {
+                increment(CrawlCounter.ERROR_RESPONSES);
+            }
+        }
+        hostStatistics(host).record(fetchNanos, statusCode < 0 || statusCode >= 400);
+    }
+
+    private HostStatistics hostStatistics(String host) {
+        HostStatistics statistics = hosts.get(host);
+        if (statistics != null) {
+            return statistics;
+        }
+        return hosts.size() < maxTrackedHosts ? hosts.computeIfAbsent(host, HostStatistics::new) : otherHosts;
+    }
+
+    public Registration registerGauge(String name, LongSupplier value) {
+        Gauge gauge = new Gauge(name, value);
+        gauges.add(gauge);
+        return () -> gauges.remove(gauge);
+    }
+
+    public CrawlMetricsSnapshot snapshot() {
+        Map<CrawlCounter, Long> counterValues = new EnumMap<>(CrawlCounter.class);
+        for (CrawlCounter counter : CrawlCounter.values()) {
+            counterValues.put(counter, counters[counter.ordinal()].sum());
+        }
+
+        Map<CrawlStage, LatencyHistogram.Snapshot> stageSnapshots = new EnumMap<>(CrawlStage.class);
+        for (CrawlStage stage : CrawlStage.values()) {
+            stageSnapshots.put(stage, stages[stage.ordinal()].snapshot());
+        }
+
+        Map<String, Long> gaugeValues = new HashMap<>();
+        for (Gauge gauge : gauges) {
+            gaugeValues.merge(gauge.name, gauge.value.getAsLong(), Long::sum);
+        }
+
+        // the hosts that took the most time in total first, that is where the crawl spends its time
+        List<HostStatistics.Snapshot> hostSnapshots = new ArrayList<>(hosts.size());
+        hosts.values().forEach(host -> hostSnapshots.add(host.snapshot()));
+        HostStatistics.Snapshot otherHostsSnapshot = otherHosts.snapshot();
+        if (otherHostsSnapshot.requests() > 0) {
+            hostSnapshots.add(otherHostsSnapshot);
+        }
+        hostSnapshots.sort(Comparator.comparingLong(HostStatistics.Snapshot::totalFetchNanos).reversed());
+
+        return new CrawlMetricsSnapshot(Duration.ofNanos(System.nanoTime() - createdAt), counterValues, stageSnapshots,
+                gaugeValues, hostSnapshots);
+    }
+
+    /*
+     * Logs the summary line of a snapshot at every interval on a thread of its own, until the registration is closed.
+     */
+    public Registration logSummaryEvery(Duration interval, Logger logger) {
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalStateException("The interval of the summary must be positive.");
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-metrics-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> logger.log(Level.INFO, snapshot().summaryLine()),
+                interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+        return timer::shutdownNow;
+    }
+
+    private static void emitStatisticsEvents() {
+        List<CrawlMetrics> liveMetrics;
+        synchronized (LIVE_METRICS) {
+            liveMetrics = new ArrayList<>(LIVE_METRICS);
+        }
+        for (CrawlMetrics metrics : liveMetrics) {
+            CrawlMetricsSnapshot snapshot = metrics.snapshot();
+            CrawlStatisticsEvent event = new CrawlStatisticsEvent();
+            event.responsesReceived = snapshot.counter(CrawlCounter.RESPONSES_RECEIVED);
+            event.failedRequests = snapshot.counter(CrawlCounter.FAILED_REQUESTS);
+            event.hyperlinksNew = snapshot.counter(CrawlCounter.HYPERLINKS_NEW);
+            event.frontierSize = snapshot.gauge(FRONTIER_SIZE);
+            event.requestsInFlight = snapshot.gauge(REQUESTS_IN_FLIGHT);
+            event.requestsQueued = snapshot.gauge(REQUESTS_QUEUED);
+            event.commit();
+        }
+    }
+
+    /*
+     * Closing stops whatever was registered, closing it twice does no harm.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // identity matters here, two registrations of the same supplier are two gauges
+    private static final class Gauge {
+        private final String name;
+        private final LongSupplier value;
+
+        private Gauge(String name, LongSupplier value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
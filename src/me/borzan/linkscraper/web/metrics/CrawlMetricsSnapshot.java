@@ -0,0 +1,65 @@
+package me.borzan.linkscraper.web.metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The figures of a CrawlMetrics at one point in time. Elapsed is the time since the metrics were created,
+ * which is when their service was created.
+ */
+public record CrawlMetricsSnapshot(Duration elapsed,
+                                   Map<CrawlCounter, Long> counters,
+                                   Map<CrawlStage, LatencyHistogram.Snapshot> stages,
+                                   Map<String, Long> gauges,
+                                   List<HostStatistics.Snapshot> hostsBySlowest) {
+    public long counter(CrawlCounter counter) {
+        return counters.getOrDefault(counter, 0L);
+    }
+
+    public long gauge(String name) {
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    /*
+     * One line for a log, e.g.
+     * 12s: 1034 responses (86.2/s), 3 failed, 0 not modified, 4211 new of 9120 hyperlinks, 21.5 MB parsed | frontier 3177, ...
+     */
+    public String summaryLine() {
+        double seconds = Math.max(1, elapsed.toMillis()) / 1000.0;
+        StringBuilder line = new StringBuilder("%ds: %d responses (%.1f/s), %d failed, %d not modified, %d new of %d hyperlinks, %.1f MB parsed".formatted(
+                elapsed.toSeconds(), counter(CrawlCounter.RESPONSES_RECEIVED), counter(CrawlCounter.RESPONSES_RECEIVED) / seconds,
+                counter(CrawlCounter.FAILED_REQUESTS) + counter(CrawlCounter.ERROR_RESPONSES), counter(CrawlCounter.NOT_MODIFIED_RESPONSES),
+                counter(CrawlCounter.HYPERLINKS_NEW), counter(CrawlCounter.HYPERLINKS_EXTRACTED), counter(CrawlCounter.BYTES_PARSED) / (1024.0 * 1024.0)));
+
+        line.append(" | frontier %d, pages in flight %d, requests in flight %d, queued %d".formatted(
+                gauge(CrawlMetrics.FRONTIER_SIZE), gauge(CrawlMetrics.PAGES_IN_FLIGHT), gauge(CrawlMetrics.REQUESTS_IN_FLIGHT), gauge(CrawlMetrics.REQUESTS_QUEUED)));
+
+        for (Map.Entry<CrawlStage, LatencyHistogram.Snapshot> stage : stages.entrySet()) {
+            LatencyHistogram.Snapshot histogram = stage.getValue();
+            if (histogram.getCount() > 0) {
+                line.append(" | %s p50 %s p99 %s max %s".formatted(stage.getKey().getShortName(),
+                        formatNanos(histogram.getPercentileNanos(50)), formatNanos(histogram.getPercentileNanos(99)), formatNanos(histogram.getMaxNanos())));
+            }
+        }
+
+        if (!hostsBySlowest.isEmpty()) {
+            HostStatistics.Snapshot slowest = hostsBySlowest.get(0);
+            line.append(" | most time on %s: %d requests, mean %s".formatted(slowest.host(), slowest.requests(), formatNanos(slowest.meanFetchNanos())));
+        }
+        return line.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return "%.1fus".formatted(nanos / 1_000.0);
+        }
+        if (nanos < 1_000_000_000) {
+            return "%.1fms".formatted(nanos / 1_000_000.0);
+        }
+        return "%.2fs".formatted(nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,29 @@
+package me.borzan.linkscraper.web.metrics;
+
+/*
+ * The stages a page goes through, each with a latency histogram of its own.
+ *
+ * The http client does not tell when name resolution or connecting is done, so CONNECT_AND_FIRST_BYTE covers everything
+ * from sending the request to the response headers, including a new connection where one had to be opened.
+ * The body is parsed while it is downloaded, so BODY_DOWNLOAD includes PARSE, and PARSE in turn includes the DEDUP and ENQUEUE
+ * of every hyperlink the page yields.
+ */
+public enum CrawlStage {
+    // waiting in the request queue for a free slot and a polite moment to contact the host
+    QUEUED("queued"),
+    CONNECT_AND_FIRST_BYTE("ttfb"),
+    BODY_DOWNLOAD("download"),
+    PARSE("parse"),
+    DEDUP("dedup"),
+    ENQUEUE("enqueue");
+
+    private final String shortName;
+
+    CrawlStage(String shortName) {
+        this.shortName = shortName;
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+}
@@ -0,0 +1,35 @@
+package me.borzan.linkscraper.web.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name("me.borzan.linkscraper.CrawlStatistics")
+@Label("Crawl Statistics")
+@Category({"LinkScraper", "Crawl"})
+@Description("The counters and gauges of one service, taken periodically")
+@Period("1 s")
+@StackTrace(false)
+final class CrawlStatisticsEvent extends Event {
+    @Label("Responses Received")
+    long responsesReceived;
+
+    @Label("Failed Requests")
+    long failedRequests;
+
+    @Label("New Hyperlinks")
+    long hyperlinksNew;
+
+    @Label("Frontier Size")
+    long frontierSize;
+
+    @Label("Requests in Flight")
+    long requestsInFlight;
+
+    @Label("Requests Queued")
+    long requestsQueued;
+}
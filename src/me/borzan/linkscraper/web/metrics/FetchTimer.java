@@ -0,0 +1,76 @@
+package me.borzan.linkscraper.web.metrics;
+
+import java.net.URI;
+
+/*
+ * Follows one request through the stages of the dispatcher, from being queued to its body being complete.
+ * Whoever sends the request reports each step as it happens, every step records into the metrics right away.
+ *
+ * The steps happen on different threads, but always one after the other, handed over by the http client's futures.
+ */
+public final class FetchTimer {
+    private final CrawlMetrics metrics;
+    private final String host;
+    private final URI uri;
+    private final long queuedAt;
+    private long sentAt;
+    private volatile long headersReceivedAt;
+    private PageFetchEvent event;
+
+    FetchTimer(CrawlMetrics metrics, String host, URI uri) {
+        this.metrics = metrics;
+        this.host = host;
+        this.uri = uri;
+        this.queuedAt = System.nanoTime();
+    }
+
+    public void onSent() {
+        sentAt = System.nanoTime();
+        metrics.recordStage(CrawlStage.QUEUED, sentAt - queuedAt);
+
+        PageFetchEvent fetchEvent = new PageFetchEvent();
+        if (fetchEvent.isEnabled()) {
+            fetchEvent.begin();
+            event = fetchEvent;
+        }
+    }
+
+    /*
+     * Instead of onSent, if the request is dropped before it was ever sent.
+     */
+    public void onCancelled() {
+        metrics.recordStage(CrawlStage.QUEUED, System.nanoTime() - queuedAt);
+        metrics.increment(CrawlCounter.CANCELLED_REQUESTS);
+    }
+
+    public void onHeadersReceived() {
+        long now = System.nanoTime();
+        headersReceivedAt = now;
+        metrics.recordStage(CrawlStage.CONNECT_AND_FIRST_BYTE, now - sentAt);
+    }
+
+    /*
+     * statusCode is -1 if the request failed without a response.
+     */
+    public void onCompleted(int statusCode) {
+        long now = System.nanoTime();
+        long headersAt = headersReceivedAt;
+        if (headersAt != 0) {
+            metrics.recordStage(CrawlStage.BODY_DOWNLOAD, now - headersAt);
+        }
+        metrics.recordResponse(host, statusCode, now - sentAt);
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.uri = uri.toString();
+                event.host = host;
+                event.statusCode = statusCode;
+                event.queued = sentAt - queuedAt;
+                event.timeToFirstByte = headersAt == 0 ? 0 : headersAt - sentAt;
+                event.bodyDownload = headersAt == 0 ? 0 : now - headersAt;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package me.borzan.linkscraper.web.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * What one host cost the crawl. There are no histograms per host, they would take kilobytes for every host of a big crawl,
+ * the mean and maximum are enough to tell which hosts are the slow ones.
+ */
+public final class HostStatistics {
+    private final String host;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalFetchNanos = new LongAdder();
+    private final LongAccumulator maxFetchNanos = new LongAccumulator(Math::max, 0);
+
+    HostStatistics(String host) {
+        this.host = host;
+    }
+
+    void record(long fetchNanos, boolean failed) {
+        requests.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalFetchNanos.add(fetchNanos);
+        maxFetchNanos.accumulate(fetchNanos);
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(host, requests.sum(), failures.sum(), totalFetchNanos.sum(), maxFetchNanos.get());
+    }
+
+    /*
+     * Failures are requests without a response as well as responses with an error status.
+     */
+    public record Snapshot(String host, long requests, long failures, long totalFetchNanos, long maxFetchNanos) {
+        public long meanFetchNanos() {
+            return requests == 0 ? 0 : totalFetchNanos / requests;
+        }
+    }
+}
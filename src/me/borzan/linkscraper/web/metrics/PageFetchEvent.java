@@ -0,0 +1,38 @@
+package me.borzan.linkscraper.web.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("me.borzan.linkscraper.PageFetch")
+@Label("Page Fetch")
+@Category({"LinkScraper", "Crawl"})
+@Description("One request, from the moment it was sent until its body was downloaded and parsed")
+@StackTrace(false)
+final class PageFetchEvent extends Event {
+    @Label("URI")
+    String uri;
+
+    @Label("Host")
+    String host;
+
+    @Label("Status Code")
+    @Description("-1 if the request failed without a response")
+    int statusCode;
+
+    @Label("Queued")
+    @Timespan
+    long queued;
+
+    @Label("Time to First Byte")
+    @Timespan
+    long timeToFirstByte;
+
+    @Label("Body Download")
+    @Timespan
+    long bodyDownload;
+}
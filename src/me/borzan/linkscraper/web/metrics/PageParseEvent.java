@@ -0,0 +1,32 @@
+package me.borzan.linkscraper.web.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * Committed once the body is parsed. Parsing is spread over the chunks of the download, so the time spent on it is a field
+ * instead of the duration of the event.
+ */
+@Name("me.borzan.linkscraper.PageParse")
+@Label("Page Parse")
+@Category({"LinkScraper", "Crawl"})
+@Description("Tokenizing one page and handling the hyperlinks found in it")
+@StackTrace(false)
+final class PageParseEvent extends Event {
+    @Label("URI")
+    String uri;
+
+    @Label("Bytes Parsed")
+    @DataAmount
+    long bytesParsed;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseTime;
+}
@@ -0,0 +1,262 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.visited.FingerprintVisitedUriSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/*
+ * Keeps the state of one crawl in a directory, so that it can be resumed after the crawl ran out of time or the JVM died.
+ *
+ * A checkpoint consists of
+ *  - the fingerprints of all visited URIs,
+ *  - the hyperlinks that were pending in memory or being processed at that moment,
+ *  - the read cursor of the frontier's spill log, which lives in the "frontier" sub-directory,
+ *  - and how much of the append-only results log belonged to the crawl at that moment.
+ * The files of a checkpoint carry its generation number, and "checkpoint.properties" is replaced atomically last,
+ * so a crash while writing a checkpoint leaves the previous one intact. Files of older generations are removed afterwards.
+ */
+public final class CrawlCheckpointStore {
+    private static final String PROPERTIES_FILE = "checkpoint.properties";
+    private static final String RESULTS_FILE = "results.records";
+    private static final String FRONTIER_DIRECTORY = "frontier";
+    private static final int RESULTS_BUFFER_SIZE = 64 * 1024;
+
+    public record Checkpoint(URI seed, long generation, List<Hyperlink> pendingHyperlinks, HyperlinkRecordLog.Cursor frontierCursor, long resultsLength) {}
+
+    private final Path directory;
+    private final ByteBuffer resultsBuffer = ByteBuffer.allocate(RESULTS_BUFFER_SIZE);
+    private FileChannel resultsChannel;
+    private long generation;
+
+    public CrawlCheckpointStore(Path directory) {
+        if (directory == null) {
+            throw new IllegalStateException("The checkpoint directory must not be null.");
+        }
+        this.directory = directory;
+    }
+
+    public Path frontierDirectory() {
+        return directory.resolve(FRONTIER_DIRECTORY);
+    }
+
+    /*
+     * Returns the latest checkpoint in the directory, if there is one.
+     */
+    public Optional<Checkpoint> load() {
+        Path propertiesFile = directory.resolve(PROPERTIES_FILE);
+        if (!Files.exists(propertiesFile)) {
+            return Optional.empty();
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(propertiesFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            long checkpointGeneration = Long.parseLong(properties.getProperty("generation"));
+            List<Hyperlink> pendingHyperlinks = new ArrayList<>();
+            readRecords(pendingFile(checkpointGeneration), pendingHyperlinks::add);
+
+            generation = checkpointGeneration;
+            return Optional.of(new Checkpoint(
+                    URI.create(properties.getProperty("seed")),
+                    checkpointGeneration,
+                    pendingHyperlinks,
+                    new HyperlinkRecordLog.Cursor(Integer.parseInt(properties.getProperty("frontierSegment")), Long.parseLong(properties.getProperty("frontierOffset"))),
+                    Long.parseLong(properties.getProperty("resultsLength"))));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("The checkpoint in '%s' cannot be read: %s".formatted(directory, e.getMessage()), e);
+        }
+    }
+
+    public void loadVisitedInto(Checkpoint checkpoint, FingerprintVisitedUriSet visitedUris) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(visitedFile(checkpoint.generation()))))) {
+            while (true) {
+                visitedUris.markVisited(input.readLong());
+            }
+        } catch (EOFException e) {
+            // all fingerprints read
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the visited fingerprints in '%s'".formatted(directory), e);
+        }
+    }
+
+    /*
+     * Opens the results log for appending. When resuming, anything written after the checkpoint is cut off first,
+     * since those hyperlinks will be found again, and the results of the checkpoint are replayed to the consumer.
+     * Returns the number of results replayed.
+     */
+    public long openResults(Checkpoint resumeFrom, Consumer<Hyperlink> previousResultsConsumer) {
+        try {
+            Files.createDirectories(directory);
+            resultsChannel = FileChannel.open(directory.resolve(RESULTS_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long resultsLength = resumeFrom == null ? 0 : Math.min(resumeFrom.resultsLength(), resultsChannel.size());
+            resultsChannel.truncate(resultsLength);
+            resultsChannel.position(resultsLength);
+            return resumeFrom == null ? 0 : readRecords(directory.resolve(RESULTS_FILE), previousResultsConsumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the results in '%s'".formatted(directory), e);
+        }
+    }
+
+    public synchronized void appendResult(Hyperlink hyperlink) {
+        byte[] record = HyperlinkRecords.encode(hyperlink);
+        try {
+            if (record.length > resultsBuffer.remaining()) {
+                flushResults();
+            }
+            if (record.length > resultsBuffer.capacity()) {
+                writeFully(ByteBuffer.wrap(record));
+            } else {
+                resultsBuffer.put(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the results in '%s'".formatted(directory), e);
+        }
+    }
+
+    /*
+     * How much of the results log belongs to the crawl right now. Everything up to there is written out before returning.
+     */
+    public synchronized long resultsLength() {
+        try {
+            flushResults();
+            return resultsChannel.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not flush the results in '%s'".formatted(directory), e);
+        }
+    }
+
+    /*
+     * Writes a new checkpoint. The parts have to be captured at one consistent moment of the crawl,
+     * see PropagatingHyperlinkWebScraperWorker::checkpoint.
+     */
+    public void write(URI seed, long[] visitedFingerprints, Collection<Hyperlink> pendingHyperlinks, HyperlinkRecordLog.Cursor frontierCursor, long resultsLength) {
+        try {
+            Files.createDirectories(directory);
+            long newGeneration = generation + 1;
+
+            writeAtomically(visitedFile(newGeneration), output -> {
+                DataOutputStream dataOutput = new DataOutputStream(output);
+                for (long fingerprint : visitedFingerprints) {
+                    dataOutput.writeLong(fingerprint);
+                }
+                dataOutput.flush();
+            });
+            writeAtomically(pendingFile(newGeneration), output -> {
+                for (Hyperlink hyperlink : pendingHyperlinks) {
+                    output.write(HyperlinkRecords.encode(hyperlink));
+                }
+            });
+            synchronized (this) {
+                resultsChannel.force(false);
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty("seed", seed.toString());
+            properties.setProperty("generation", Long.toString(newGeneration));
+            properties.setProperty("frontierSegment", Integer.toString(frontierCursor.segment()));
+            properties.setProperty("frontierOffset", Long.toString(frontierCursor.offset()));
+            properties.setProperty("resultsLength", Long.toString(resultsLength));
+            properties.setProperty("visitedUris", Integer.toString(visitedFingerprints.length));
+            properties.setProperty("pendingHyperlinks", Integer.toString(pendingHyperlinks.size()));
+            writeAtomically(directory.resolve(PROPERTIES_FILE), output -> {
+                Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+                properties.store(writer, "link scraper crawl checkpoint");
+                writer.flush();
+            });
+
+            Files.deleteIfExists(visitedFile(generation));
+            Files.deleteIfExists(pendingFile(generation));
+            generation = newGeneration;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write a checkpoint to '%s'".formatted(directory), e);
+        }
+    }
+
+    public synchronized void close() {
+        if (resultsChannel == null) {
+            return;
+        }
+        try {
+            flushResults();
+            resultsChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the results in '%s'".formatted(directory), e);
+        }
+    }
+
+    private void flushResults() throws IOException {
+        resultsBuffer.flip();
+        writeFully(resultsBuffer);
+        resultsBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            resultsChannel.write(buffer);
+        }
+    }
+
+    private interface OutputWriter {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    private void writeAtomically(Path target, OutputWriter outputWriter) throws IOException {
+        Path temporaryFile = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+            outputWriter.writeTo(output);
+        }
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long readRecords(Path file, Consumer<Hyperlink> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long count = 0;
+            Hyperlink hyperlink;
+            while ((hyperlink = HyperlinkRecords.decode(records)) != null) {
+                consumer.accept(hyperlink);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private Path visitedFile(long checkpointGeneration) {
+        return directory.resolve("visited-%d.fingerprints".formatted(checkpointGeneration));
+    }
+
+    private Path pendingFile(long checkpointGeneration) {
+        return directory.resolve("pending-%d.records".formatted(checkpointGeneration));
+    }
+}
@@ -0,0 +1,211 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.util.HashUtils;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Remembers, per page, the validators of the last response (ETag and Last-Modified) and the hyperlinks extracted from it.
+ * A re-crawl can then ask the server whether the page changed, and if the answer is 304 Not Modified,
+ * take the hyperlinks from here instead of downloading and parsing the page again.
+ *
+ * Every page is stored in its own file, named after the fingerprint of its URI and spread over 256 sub-directories.
+ * The URI is stored in the file as well, so a fingerprint collision is noticed and treated as a miss.
+ * Files are replaced atomically, so a page is never read half-written. Losing pages is harmless, they are downloaded again.
+ *
+ * In front of the disk sits an LRU tier in memory, bounded by an estimate of its size in bytes, for pages that
+ * are looked up over and over, e.g. by several crawls through the same service.
+ */
+public final class HyperlinkPageCache {
+    private static final int FORMAT_VERSION = 2;
+    private static final int PAGE_OVERHEAD_BYTES = 256;
+
+    /*
+     * entityTag and lastModified are empty if the server did not send them.
+     */
+    public record CachedPage(URI uri, String entityTag, String lastModified, List<Hyperlink> hyperlinks) {
+        public boolean hasValidators() {
+            return !entityTag.isEmpty() || !lastModified.isEmpty();
+        }
+    }
+
+    private final Path directory;
+    private final long memoryBudgetBytes;
+    private final LinkedHashMap<URI, CachedPage> memoryTier = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryTierBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final Logger logger = Logger.getLogger(HyperlinkPageCache.class.getName());
+
+    public HyperlinkPageCache(Path directory, long memoryBudgetBytes) {
+        if (directory == null) {
+            throw new IllegalStateException("The page cache directory must not be null.");
+        }
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalStateException("The memory budget of the page cache must not be negative.");
+        }
+        this.directory = directory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the page cache in '%s'".formatted(directory), e);
+        }
+    }
+
+    public Optional<CachedPage> get(URI uri) {
+        synchronized (memoryTier) {
+            CachedPage page = memoryTier.get(uri);
+            if (page != null) {
+                memoryHits.increment();
+                return Optional.of(page);
+            }
+        }
+
+        CachedPage page = readFromDisk(uri);
+        if (page == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        diskHits.increment();
+        addToMemory(page);
+        return Optional.of(page);
+    }
+
+    /*
+     * Pages without validators are not worth keeping, as there is no way to ask whether they changed.
+     */
+    public void put(CachedPage page) {
+        if (!page.hasValidators()) {
+            return;
+        }
+        addToMemory(page);
+        writeToDisk(page);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void addToMemory(CachedPage page) {
+        long pageBytes = estimateHeapBytes(page);
+        if (pageBytes > memoryBudgetBytes) {
+            return;
+        }
+        synchronized (memoryTier) {
+            CachedPage previous = memoryTier.put(page.uri(), page);
+            memoryTierBytes += pageBytes - (previous == null ? 0 : estimateHeapBytes(previous));
+
+            Iterator<Map.Entry<URI, CachedPage>> leastRecentlyUsed = memoryTier.entrySet().iterator();
+            while (memoryTierBytes > memoryBudgetBytes && leastRecentlyUsed.hasNext()) {
+                memoryTierBytes -= estimateHeapBytes(leastRecentlyUsed.next().getValue());
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private CachedPage readFromDisk(URI uri) {
+        Path pageFile = pageFile(uri);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(pageFile)))) {
+            if (input.readInt() != FORMAT_VERSION || !HyperlinkRecords.readString(input).equals(uri.toString())) {
+                return null;
+            }
+            String entityTag = HyperlinkRecords.readString(input);
+            String lastModified = HyperlinkRecords.readString(input);
+            int hyperlinkCount = input.readInt();
+            List<Hyperlink> hyperlinks = new ArrayList<>(Math.min(hyperlinkCount, 1024));
+            for (int i = 0; i < hyperlinkCount; i++) {
+                Hyperlink hyperlink = HyperlinkRecords.read(input);
+                if (hyperlink == null) {
+                    return null;
+                }
+                hyperlinks.add(hyperlink);
+            }
+            return new CachedPage(uri, entityTag, lastModified, List.copyOf(hyperlinks));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Ignoring the unreadable cache entry '%s' for '%s': %s".formatted(pageFile, uri, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void writeToDisk(CachedPage page) {
+        Path pageFile = pageFile(page.uri());
+        Path temporaryFile = null;
+        try {
+            Files.createDirectories(pageFile.getParent());
+            temporaryFile = Files.createTempFile(pageFile.getParent(), pageFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(FORMAT_VERSION);
+                HyperlinkRecords.writeString(output, page.uri().toString());
+                HyperlinkRecords.writeString(output, page.entityTag());
+                HyperlinkRecords.writeString(output, page.lastModified());
+                output.writeInt(page.hyperlinks().size());
+                for (Hyperlink hyperlink : page.hyperlinks()) {
+                    output.write(HyperlinkRecords.encode(hyperlink));
+                }
+            }
+            Files.move(temporaryFile, pageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the page is simply downloaded again next time
+            logger.log(Level.WARNING, "Could not cache '%s': %s".formatted(page.uri(), e.getMessage()));
+            deleteQuietly(temporaryFile);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // nothing left to do about it
+        }
+    }
+
+    private Path pageFile(URI uri) {
+        String fingerprint = "%016x".formatted(HashUtils.fingerprint64(uri.toString()));
+        return directory.resolve(fingerprint.substring(0, 2)).resolve(fingerprint + ".page");
+    }
+
+    private static long estimateHeapBytes(CachedPage page) {
+        long bytes = PAGE_OVERHEAD_BYTES + 2L * (page.entityTag().length() + page.lastModified().length());
+        for (Hyperlink hyperlink : page.hyperlinks()) {
+            bytes += HyperlinkRecords.estimateHeapBytes(hyperlink);
+        }
+        return bytes;
+    }
+}
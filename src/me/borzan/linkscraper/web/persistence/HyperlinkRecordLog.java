@@ -0,0 +1,331 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/*
+ * An append-only log of hyperlink records, split into segment files of a fixed size, with a read cursor that consumes
+ * records in the order they were appended. It is the disk part of the SpillingHyperlinkFrontier.
+ *
+ * Appends go through a small write buffer. Sealed segments are read through a memory mapping, and the segment that is
+ * still being written is read with positional reads, so reading never has to wait for a segment to fill up.
+ * Segments are deleted once they were read completely. If the log is used for checkpoints, segments are kept until
+ * no checkpoint refers to them any more (see retainSegmentsFrom).
+ * A record that was cut off at the end of the last segment, e.g. by a crash, is truncated when the log is opened,
+ * so that new records are appended right after the last complete one.
+ *
+ * All methods are synchronized. This log is only touched once the in-memory part of the frontier overflowed,
+ * so it is not on the hot path of a crawl.
+ */
+public final class HyperlinkRecordLog implements Closeable {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public record Cursor(int segment, long offset) {}
+
+    private final Path directory;
+    private final String segmentPrefix;
+    private final long segmentSizeBytes;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private int writeSegment;
+    private FileChannel writeChannel;
+    private long writeChannelSize;
+
+    private int readSegment;
+    private long readOffset;
+    private MappedByteBuffer readMapping;
+
+    private final boolean retainForCheckpoints;
+    private int retainSegmentsFrom;
+    private long pendingRecords;
+
+    /*
+     * Opens the log in the directory and continues reading at the given cursor, or at the very beginning if it is null.
+     */
+    public HyperlinkRecordLog(Path directory, String segmentPrefix, long segmentSizeBytes, Cursor startAt, boolean retainForCheckpoints) {
+        this.directory = directory;
+        this.retainForCheckpoints = retainForCheckpoints;
+        this.segmentPrefix = segmentPrefix;
+        this.segmentSizeBytes = segmentSizeBytes;
+
+        try {
+            Files.createDirectories(directory);
+            this.writeSegment = Math.max(lastExistingSegment(), startAt == null ? 0 : startAt.segment());
+            this.readSegment = startAt == null ? firstExistingSegment() : startAt.segment();
+            this.readOffset = startAt == null ? 0 : startAt.offset();
+            this.retainSegmentsFrom = readSegment;
+            openWriteSegment();
+            truncateCutOffRecord();
+            this.pendingRecords = countPendingRecords();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the record log in '%s'".formatted(directory), e);
+        }
+    }
+
+    public synchronized void append(Hyperlink hyperlink) {
+        byte[] record = HyperlinkRecords.encode(hyperlink);
+        try {
+            if (writeChannelSize + writeBuffer.position() + record.length > segmentSizeBytes && writeChannelSize + writeBuffer.position() > 0) {
+                flushWriteBuffer();
+                writeChannel.close();
+                writeSegment++;
+                openWriteSegment();
+            }
+            if (record.length > writeBuffer.remaining()) {
+                flushWriteBuffer();
+            }
+            if (record.length > writeBuffer.capacity()) {
+                writeChannelSize += writeChannel.write(ByteBuffer.wrap(record), writeChannelSize);
+            } else {
+                writeBuffer.put(record);
+            }
+            pendingRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the record log in '%s'".formatted(directory), e);
+        }
+    }
+
+    /*
+     * Returns the next unread record, or null if everything was read.
+     */
+    public synchronized Hyperlink poll() {
+        try {
+            while (true) {
+                if (readSegment < writeSegment) {
+                    Hyperlink hyperlink = readFromSealedSegment();
+                    if (hyperlink != null) {
+                        return consumed(hyperlink);
+                    }
+                    finishReadSegment();
+                    continue;
+                }
+
+                flushWriteBuffer();
+                if (readOffset >= writeChannelSize) {
+                    return null;
+                }
+                Hyperlink hyperlink = readFromWriteSegment();
+                if (hyperlink == null) {
+                    // a cut-off record at the end, left over from a crash
+                    readOffset = writeChannelSize;
+                    return null;
+                }
+                return consumed(hyperlink);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read from the record log in '%s'".formatted(directory), e);
+        }
+    }
+
+    public synchronized long size() {
+        return pendingRecords;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingRecords == 0;
+    }
+
+    public synchronized Cursor readCursor() {
+        return new Cursor(readSegment, readOffset);
+    }
+
+    public synchronized void flush() {
+        try {
+            flushWriteBuffer();
+            writeChannel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not flush the record log in '%s'".formatted(directory), e);
+        }
+    }
+
+    /*
+     * Segments before this one are no longer needed by any checkpoint and may be deleted as soon as they were read.
+     */
+    public synchronized void retainSegmentsFrom(int segment) {
+        for (int obsoleteSegment = retainSegmentsFrom; obsoleteSegment < Math.min(segment, readSegment); obsoleteSegment++) {
+            deleteSegment(obsoleteSegment);
+        }
+        retainSegmentsFrom = Math.max(retainSegmentsFrom, Math.min(segment, readSegment));
+    }
+
+    /*
+     * Drops all unread records, e.g. when a crawl is stopped early.
+     */
+    public synchronized void clear() {
+        flush();
+        readMapping = null;
+        if (!retainForCheckpoints) {
+            for (int segment = readSegment; segment < writeSegment; segment++) {
+                deleteSegment(segment);
+            }
+        }
+        readSegment = writeSegment;
+        readOffset = writeChannelSize;
+        pendingRecords = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flushWriteBuffer();
+        writeChannel.close();
+        readMapping = null;
+    }
+
+    private Hyperlink consumed(Hyperlink hyperlink) {
+        pendingRecords = Math.max(0, pendingRecords - 1);
+        return hyperlink;
+    }
+
+    private Hyperlink readFromSealedSegment() throws IOException {
+        if (readMapping == null) {
+            Path segmentPath = segmentPath(readSegment);
+            if (!Files.exists(segmentPath)) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                readMapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        if (readOffset >= readMapping.limit()) {
+            return null;
+        }
+        readMapping.position((int) readOffset);
+        Hyperlink hyperlink = HyperlinkRecords.decode(readMapping);
+        readOffset = readMapping.position();
+        return hyperlink;
+    }
+
+    private Hyperlink readFromWriteSegment() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        long recordSize = HyperlinkRecords.FIXED_RECORD_SIZE;
+        long position = readOffset;
+        // a record consists of two length-prefixed strings and the depth
+        for (int part = 0; part < 2; part++) {
+            header.clear();
+            if (writeChannel.read(header, position) < Integer.BYTES) {
+                return null;
+            }
+            int length = header.flip().getInt();
+            if (length < 0 || length > HyperlinkRecords.MAX_RECORD_SIZE) {
+                return null;
+            }
+            recordSize += length;
+            position += Integer.BYTES + length;
+        }
+        if (readOffset + recordSize > writeChannelSize) {
+            return null;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+        writeChannel.read(record, readOffset);
+        Hyperlink hyperlink = HyperlinkRecords.decode(record.flip());
+        readOffset += recordSize;
+        return hyperlink;
+    }
+
+    private void finishReadSegment() {
+        readMapping = null;
+        if (retainForCheckpoints && readSegment >= retainSegmentsFrom) {
+            // still referenced by the latest checkpoint, deleted by retainSegmentsFrom later on
+            readSegment++;
+            readOffset = 0;
+            return;
+        }
+        deleteSegment(readSegment);
+        readSegment++;
+        readOffset = 0;
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            writeChannelSize += writeChannel.write(writeBuffer, writeChannelSize);
+        }
+        writeBuffer.clear();
+    }
+
+    private void openWriteSegment() throws IOException {
+        writeChannel = FileChannel.open(segmentPath(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeChannelSize = writeChannel.size();
+    }
+
+    private void truncateCutOffRecord() throws IOException {
+        if (writeChannelSize == 0) {
+            return;
+        }
+        MappedByteBuffer mapping = writeChannel.map(FileChannel.MapMode.READ_ONLY, 0, writeChannelSize);
+        while (HyperlinkRecords.decode(mapping) != null) {
+            // skipping over the complete records
+        }
+        if (mapping.position() < writeChannelSize) {
+            writeChannel.truncate(mapping.position());
+            writeChannelSize = mapping.position();
+            if (readSegment == writeSegment) {
+                readOffset = Math.min(readOffset, writeChannelSize);
+            }
+        }
+    }
+
+    private void deleteSegment(int segment) {
+        if (segment == writeSegment) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException e) {
+            // not being able to clean up is not a reason to stop the crawl
+        }
+    }
+
+    private long countPendingRecords() throws IOException {
+        long count = 0;
+        for (int segment = readSegment; segment <= writeSegment; segment++) {
+            Path segmentPath = segmentPath(segment);
+            if (!Files.exists(segmentPath)) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                mapping.position(segment == readSegment ? (int) Math.min(readOffset, mapping.limit()) : 0);
+                while (HyperlinkRecords.decode(mapping) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int firstExistingSegment() throws IOException {
+        return Arrays.stream(existingSegments()).min().orElse(0);
+    }
+
+    private int lastExistingSegment() throws IOException {
+        return Arrays.stream(existingSegments()).max().orElse(0);
+    }
+
+    private int[] existingSegments() throws IOException {
+        String suffix = ".segment";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(segmentPrefix + "-") && name.endsWith(suffix))
+                    .mapToInt(name -> Integer.parseInt(name.substring(segmentPrefix.length() + 1, name.length() - suffix.length())))
+                    .toArray();
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve("%s-%06d.segment".formatted(segmentPrefix, segment));
+    }
+}
@@ -0,0 +1,123 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.util.UriUtils;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * The on-disk format of a single hyperlink: the URI and the label, each as a length-prefixed UTF-8 string,
+ * followed by the depth of the hyperlink.
+ * Records that were cut off (e.g. because the JVM died while writing them) are detected and reported as absent.
+ */
+final class HyperlinkRecords {
+    static final int MAX_RECORD_SIZE = 1 << 20;
+    // the size of a record besides its two strings: both length prefixes and the depth
+    static final int FIXED_RECORD_SIZE = 3 * Integer.BYTES;
+
+    private HyperlinkRecords() {}
+
+    static byte[] encode(Hyperlink hyperlink) {
+        byte[] uri = hyperlink.getUri().toString().getBytes(StandardCharsets.UTF_8);
+        byte[] label = hyperlink.getLabel().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(FIXED_RECORD_SIZE + uri.length + label.length);
+        record.putInt(uri.length).put(uri).putInt(label.length).put(label).putInt(hyperlink.getDepth());
+        return record.array();
+    }
+
+    /*
+     * Reads the record at the buffer's position and moves past it, or returns null and leaves the position as is
+     * if there is no complete record left. Records whose URI cannot be parsed any more are skipped.
+     */
+    static Hyperlink decode(ByteBuffer buffer) {
+        while (true) {
+            int start = buffer.position();
+            String uri = readString(buffer);
+            String label = uri != null ? readString(buffer) : null;
+            if (label == null || buffer.remaining() < Integer.BYTES) {
+                buffer.position(start);
+                return null;
+            }
+            int depth = buffer.getInt();
+
+            URI parsedUri = UriUtils.tryParseUri(uri);
+            if (parsedUri != null) {
+                return new Hyperlink(parsedUri, label, depth);
+            }
+        }
+    }
+
+    /*
+     * The stream variant of decode, for files that are read sequentially. Returns null at the end of the stream.
+     */
+    static Hyperlink read(DataInput input) throws IOException {
+        while (true) {
+            int uriLength;
+            try {
+                uriLength = input.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            String uri = readString(input, uriLength);
+            String label = readString(input);
+            int depth = input.readInt();
+
+            URI parsedUri = UriUtils.tryParseUri(uri);
+            if (parsedUri != null) {
+                return new Hyperlink(parsedUri, label, depth);
+            }
+        }
+    }
+
+    /*
+     * A rough estimate of how much heap a hyperlink takes. A URI keeps its full string plus most of its components
+     * as separate strings, hence the factor for the URI.
+     */
+    static long estimateHeapBytes(Hyperlink hyperlink) {
+        return 160 + 4L * hyperlink.getUri().toString().length() + 2L * hyperlink.getKey().length() + 2L * hyperlink.getLabel().length();
+    }
+
+    static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInput input) throws IOException {
+        return readString(input, input.readInt());
+    }
+
+    private static String readString(DataInput input, int length) throws IOException {
+        if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Corrupt hyperlink record of length %d".formatted(length));
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) {
+            return null;
+        }
+        return readString(buffer, buffer.getInt());
+    }
+
+    /*
+     * Reads a string of the given length at the buffer's position, its length prefix was read already.
+     */
+    private static String readString(ByteBuffer buffer, int length) {
+        if (length < 0 || length > MAX_RECORD_SIZE || buffer.remaining() < length) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,228 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ * Collects hyperlinks and passes them on to another sink in their natural order once it is closed, that is by label,
+ * and hyperlinks with the same label by the page they lead to. The order in which they were found is not kept.
+ *
+ * This is an external merge sort: hyperlinks are kept in memory up to a heap budget, and each full batch is sorted
+ * and written to a run file in a temporary directory. On close, the runs are merged with a priority queue,
+ * at most MAX_MERGE_FAN_IN at a time, so the memory needed does not depend on how many hyperlinks there are.
+ * If everything fit into the budget, nothing touches the disk at all.
+ *
+ * Full batches are sorted and written by whichever thread filled them up, outside of the lock, so the other threads
+ * of the crawl can keep adding hyperlinks meanwhile. Close must only be called once nothing is added any more.
+ * A run that could not be written is lost, so close then fails instead of passing on an incomplete result.
+ * Either way, the temporary directory is deleted on close.
+ */
+public final class SortingHyperlinkSink implements HyperlinkSink {
+    private static final int MAX_MERGE_FAN_IN = 64;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String RUN_DIRECTORY_PREFIX = "link-scraper-sort";
+
+    private final HyperlinkSink downstream;
+    private final long heapBudgetBytes;
+    private final Path runDirectory;
+    private final List<Path> runs = new ArrayList<>();
+
+    private List<Hyperlink> currentRun = new ArrayList<>();
+    private long currentRunBytes;
+    // run files are named by this count, not by the size of runs, which shrinks again when a run fails
+    private int runFilesCreated;
+    private IOException runFailure;
+    private boolean closed;
+
+    public SortingHyperlinkSink(HyperlinkSink downstream, long heapBudgetBytes) throws IOException {
+        this(downstream, heapBudgetBytes, null);
+    }
+
+    /*
+     * The runs are written to a new directory in tempDirectory, or in the default temporary directory if it is null.
+     */
+    SortingHyperlinkSink(HyperlinkSink downstream, long heapBudgetBytes, Path tempDirectory) throws IOException {
+        if (downstream == null) {
+            throw new IllegalStateException("The sink to pass the sorted hyperlinks on to must not be null.");
+        }
+        if (heapBudgetBytes < 1) {
+            throw new IllegalStateException("The heap budget for sorting must be positive.");
+        }
+        this.downstream = downstream;
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.runDirectory = tempDirectory == null
+                ? Files.createTempDirectory(RUN_DIRECTORY_PREFIX)
+                : Files.createTempDirectory(tempDirectory, RUN_DIRECTORY_PREFIX);
+    }
+
+    @Override
+    public void accept(Hyperlink hyperlink) {
+        List<Hyperlink> fullRun;
+        Path runFile;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The sink is closed already.");
+            }
+            currentRun.add(hyperlink);
+            currentRunBytes += HyperlinkRecords.estimateHeapBytes(hyperlink);
+            if (currentRunBytes < heapBudgetBytes) {
+                return;
+            }
+            fullRun = currentRun;
+            runFile = nextRunFile();
+            currentRun = new ArrayList<>();
+            currentRunBytes = 0;
+        }
+
+        try {
+            fullRun.sort(null);
+            writeRun(runFile, fullRun::forEach);
+        } catch (IOException e) {
+            discardRun(runFile, e);
+            throw new UncheckedIOException("Could not write a sorted run to '%s'".formatted(runFile), e);
+        }
+    }
+
+    /*
+     * Keeps a half-written run out of the merge, and remembers that close has to fail.
+     */
+    private void discardRun(Path runFile, IOException failure) {
+        synchronized (this) {
+            runs.remove(runFile);
+            if (runFailure == null) {
+                runFailure = failure;
+            }
+        }
+        try {
+            Files.deleteIfExists(runFile);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (runFailure != null) {
+                throw new IOException("A sorted run could not be written, so not all hyperlinks could be sorted.", runFailure);
+            }
+            currentRun.sort(null);
+            if (runs.isEmpty()) {
+                currentRun.forEach(downstream::accept);
+                return;
+            }
+            if (!currentRun.isEmpty()) {
+                writeRun(nextRunFile(), currentRun::forEach);
+            }
+            currentRun = List.of();
+
+            List<Path> remainingRuns = new ArrayList<>(runs);
+            while (remainingRuns.size() > MAX_MERGE_FAN_IN) {
+                remainingRuns = mergeIntoFewerRuns(remainingRuns);
+            }
+            merge(remainingRuns, downstream::accept);
+        } finally {
+            deleteRunDirectory();
+            downstream.close();
+        }
+    }
+
+    /*
+     * Merges groups of at most MAX_MERGE_FAN_IN runs into one run each.
+     */
+    private List<Path> mergeIntoFewerRuns(List<Path> runsToMerge) throws IOException {
+        List<Path> mergedRuns = new ArrayList<>();
+        for (int start = 0; start < runsToMerge.size(); start += MAX_MERGE_FAN_IN) {
+            List<Path> group = runsToMerge.subList(start, Math.min(runsToMerge.size(), start + MAX_MERGE_FAN_IN));
+            Path mergedRun = nextRunFile();
+            writeRun(mergedRun, consumer -> merge(group, consumer));
+            for (Path run : group) {
+                Files.deleteIfExists(run);
+            }
+            mergedRuns.add(mergedRun);
+        }
+        return mergedRuns;
+    }
+
+    private void merge(List<Path> runsToMerge, Consumer<Hyperlink> consumer) throws IOException {
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            PriorityQueue<RunHead> heads = new PriorityQueue<>(Comparator.comparing(RunHead::hyperlink));
+            for (int runIndex = 0; runIndex < runsToMerge.size(); runIndex++) {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runsToMerge.get(runIndex)), STREAM_BUFFER_SIZE));
+                inputs.add(input);
+                Hyperlink first = HyperlinkRecords.read(input);
+                if (first != null) {
+                    heads.add(new RunHead(first, runIndex));
+                }
+            }
+
+            RunHead head;
+            while ((head = heads.poll()) != null) {
+                consumer.accept(head.hyperlink());
+                Hyperlink next = HyperlinkRecords.read(inputs.get(head.runIndex()));
+                if (next != null) {
+                    heads.add(new RunHead(next, head.runIndex()));
+                }
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                input.close();
+            }
+        }
+    }
+
+    private record RunHead(Hyperlink hyperlink, int runIndex) {}
+
+    private interface RunSource {
+        void forEach(Consumer<Hyperlink> consumer) throws IOException;
+    }
+
+    private void writeRun(Path runFile, RunSource source) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(runFile), STREAM_BUFFER_SIZE)) {
+            source.forEach(hyperlink -> {
+                try {
+                    output.write(HyperlinkRecords.encode(hyperlink));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private synchronized Path nextRunFile() {
+        Path runFile = runDirectory.resolve("run-%06d.records".formatted(runFilesCreated++));
+        runs.add(runFile);
+        return runFile;
+    }
+
+    private void deleteRunDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(runDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
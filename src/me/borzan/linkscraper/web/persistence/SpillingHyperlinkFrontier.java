@@ -0,0 +1,180 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkFrontier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+ * A frontier that keeps hyperlinks in memory up to a heap budget, and appends everything beyond that to a HyperlinkRecordLog.
+ * Once something was spilled, new hyperlinks go to disk as well until the disk part was read back, so hyperlinks are
+ * still visited roughly in the order they were discovered. Whenever the in-memory part runs dry, it is refilled from disk
+ * in one go, up to half of the budget.
+ *
+ * The heap size of a hyperlink is only estimated, which is good enough to keep the frontier from growing without bounds.
+ */
+public final class SpillingHyperlinkFrontier implements HyperlinkFrontier, Closeable {
+    private static final long SEGMENT_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "frontier";
+
+    public record Snapshot(List<Hyperlink> inMemory, HyperlinkRecordLog.Cursor spillCursor) {}
+
+    private final ConcurrentLinkedDeque<Hyperlink> inMemory = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger inMemorySize = new AtomicInteger();
+    private final AtomicLong inMemoryBytes = new AtomicLong();
+    private final long heapBudgetBytes;
+    private final Path spillDirectory;
+    private final boolean deleteOnClose;
+    private final HyperlinkRecordLog spillLog;
+
+    private volatile boolean spilling;
+
+    /*
+     * Spills into a temporary directory that is deleted again on close.
+     */
+    public SpillingHyperlinkFrontier(long heapBudgetBytes) throws IOException {
+        this(Files.createTempDirectory("link-scraper-frontier"), heapBudgetBytes, null, false, true);
+    }
+
+    /*
+     * Spills into the given directory. If resumeAt is given, the hyperlinks still on disk from there on are part of this frontier.
+     */
+    public SpillingHyperlinkFrontier(Path spillDirectory, long heapBudgetBytes, HyperlinkRecordLog.Cursor resumeAt, boolean retainForCheckpoints) {
+        this(spillDirectory, heapBudgetBytes, resumeAt, retainForCheckpoints, false);
+    }
+
+    private SpillingHyperlinkFrontier(Path spillDirectory, long heapBudgetBytes, HyperlinkRecordLog.Cursor resumeAt, boolean retainForCheckpoints, boolean deleteOnClose) {
+        if (heapBudgetBytes < 1) {
+            throw new IllegalStateException("The heap budget of the frontier must be positive.");
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        this.deleteOnClose = deleteOnClose;
+        this.spillLog = new HyperlinkRecordLog(spillDirectory, SEGMENT_PREFIX, SEGMENT_SIZE_BYTES, resumeAt, retainForCheckpoints);
+        this.spilling = !spillLog.isEmpty();
+    }
+
+    @Override
+    public void offer(Hyperlink hyperlink) {
+        long estimatedBytes = HyperlinkRecords.estimateHeapBytes(hyperlink);
+        if (!spilling && inMemoryBytes.get() + estimatedBytes <= heapBudgetBytes) {
+            addToMemory(hyperlink, estimatedBytes);
+            return;
+        }
+        synchronized (spillLog) {
+            spilling = true;
+            spillLog.append(hyperlink);
+        }
+    }
+
+    @Override
+    public Hyperlink poll() {
+        Hyperlink hyperlink = pollFromMemory();
+        if (hyperlink != null || !spilling) {
+            return hyperlink;
+        }
+        refillFromDisk();
+        return pollFromMemory();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return inMemory.isEmpty() && (!spilling || spillLog.isEmpty());
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, inMemorySize.get()) + spillLog.size());
+    }
+
+    @Override
+    public void clear() {
+        synchronized (spillLog) {
+            spillLog.clear();
+            spilling = false;
+        }
+        while (pollFromMemory() != null) {
+            // drain one by one to keep the counters consistent
+        }
+    }
+
+    /*
+     * Captures what is needed to rebuild this frontier later: the hyperlinks in memory and where reading from disk stands.
+     * The cursor is taken first, so a hyperlink that moves from disk to memory in the meantime is captured at least once.
+     */
+    public Snapshot snapshot() {
+        HyperlinkRecordLog.Cursor cursor;
+        synchronized (spillLog) {
+            spillLog.flush();
+            cursor = spillLog.readCursor();
+        }
+        return new Snapshot(new ArrayList<>(inMemory), cursor);
+    }
+
+    /*
+     * Called once a checkpoint referring to the cursor was safely written, older spill segments are not needed any more.
+     */
+    public void onCheckpointWritten(HyperlinkRecordLog.Cursor cursor) {
+        synchronized (spillLog) {
+            spillLog.retainSegmentsFrom(cursor.segment());
+        }
+    }
+
+    public long getInMemoryBytes() {
+        return inMemoryBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (spillLog) {
+            spillLog.close();
+        }
+        if (deleteOnClose) {
+            try (Stream<Path> files = Files.walk(spillDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void refillFromDisk() {
+        synchronized (spillLog) {
+            long refilledBytes = 0;
+            Hyperlink hyperlink;
+            while (refilledBytes < heapBudgetBytes / 2 && (hyperlink = spillLog.poll()) != null) {
+                long estimatedBytes = HyperlinkRecords.estimateHeapBytes(hyperlink);
+                addToMemory(hyperlink, estimatedBytes);
+                refilledBytes += estimatedBytes;
+            }
+            if (spillLog.isEmpty()) {
+                spilling = false;
+            }
+        }
+    }
+
+    private void addToMemory(Hyperlink hyperlink, long estimatedBytes) {
+        inMemory.offerLast(hyperlink);
+        inMemorySize.incrementAndGet();
+        inMemoryBytes.addAndGet(estimatedBytes);
+    }
+
+    private Hyperlink pollFromMemory() {
+        Hyperlink hyperlink = inMemory.pollFirst();
+        if (hyperlink != null) {
+            inMemorySize.decrementAndGet();
+            inMemoryBytes.addAndGet(-HyperlinkRecords.estimateHeapBytes(hyperlink));
+        }
+        return hyperlink;
+    }
+}
@@ -0,0 +1,34 @@
+package me.borzan.linkscraper.web.politeness;
+
+import java.time.Duration;
+
+/*
+ * How gently a single host is treated.
+ *
+ * The delay between two requests to the same host starts at 1 / maxRequestsPerSecondPerHost and grows with the host's
+ * observed latency (times latencyFactor), so a struggling server automatically gets more time.
+ * A 429 or 503 response doubles the delay until the host recovers, and a Retry-After header is always honoured.
+ * No delay ever exceeds maxDelay, except for an explicit Retry-After.
+ */
+public record HostPolitenessPolicy(int maxConnectionsPerHost, double maxRequestsPerSecondPerHost, double latencyFactor, Duration maxDelay) {
+    public static final HostPolitenessPolicy DEFAULT = new HostPolitenessPolicy(4, 8.0, 1.0, Duration.ofSeconds(30));
+
+    public HostPolitenessPolicy {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalStateException("At least one connection per host is needed to scrape anything.");
+        }
+        if (maxRequestsPerSecondPerHost <= 0) {
+            throw new IllegalStateException("The number of requests per second per host must be positive.");
+        }
+        if (latencyFactor < 0) {
+            throw new IllegalStateException("The latency factor must not be negative.");
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalStateException("The maximum delay must be given and must not be negative.");
+        }
+    }
+
+    public long minDelayNanos() {
+        return (long) (1_000_000_000L / maxRequestsPerSecondPerHost);
+    }
+}
@@ -0,0 +1,267 @@
+package me.borzan.linkscraper.web.politeness;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Keeps one queue of pending requests per host and decides which host may be contacted next.
+ * A host is ready when it has fewer than maxConnectionsPerHost requests in flight and its delay since the last request
+ * started has passed. Hosts with queued requests take turns, so a single host with thousands of pending requests
+ * cannot starve the others, and throughput comes from talking to many hosts at once.
+ *
+ * Every host is guarded by its own lock, and the rotation of hosts with pending requests is a lock-free queue,
+ * so requests for different hosts never contend with each other.
+ *
+ * The scheduler only decides, it never sends anything itself. Whoever sends the requests has to report back with
+ * onRequestFinished, which is what frees the connection and adapts the host's delay.
+ */
+public final class HostPolitenessScheduler<R> {
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double MAX_BACKOFF = 64;
+    private static final double BACKOFF_RECOVERY = 0.75;
+
+    private final HostPolitenessPolicy policy;
+    private final ConcurrentHashMap<String, HostState<R>> hosts = new ConcurrentHashMap<>();
+    private final Queue<HostState<R>> hostRotation = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hostsInRotation = new AtomicInteger();
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+
+    private volatile long nanosUntilNextReady = Long.MAX_VALUE;
+
+    public HostPolitenessScheduler(HostPolitenessPolicy policy) {
+        if (policy == null) {
+            throw new IllegalStateException("HostPolitenessPolicy is null. Use HostPolitenessPolicy.DEFAULT if in doubt.");
+        }
+        this.policy = policy;
+    }
+
+    public void offer(String host, R request) {
+        HostState<R> hostState = hostState(host);
+        queuedRequests.incrementAndGet();
+        synchronized (hostState) {
+            hostState.queue.add(request);
+            addToRotation(hostState);
+        }
+    }
+
+    /*
+     * Takes a request that is still queued back out, e.g. since it was cancelled, without touching the host's connections or delay.
+     * Returns false if it is not queued (any more), it was then either never offered or has been polled already.
+     */
+    public boolean remove(String host, R request) {
+        HostState<R> hostState = hosts.get(host);
+        if (hostState == null) {
+            return false;
+        }
+        synchronized (hostState) {
+            if (!hostState.queue.removeIf(queued -> queued == request)) {
+                return false;
+            }
+            queuedRequests.decrementAndGet();
+            // an empty host stays in the rotation until pollReady comes across it
+            return true;
+        }
+    }
+
+    /*
+     * Takes every request that is still queued back out, e.g. since whoever sends them is shutting down, in no particular order.
+     */
+    public List<R> removeAll() {
+        List<R> removed = new ArrayList<>();
+        for (HostState<R> hostState : hosts.values()) {
+            synchronized (hostState) {
+                queuedRequests.addAndGet(-hostState.queue.size());
+                removed.addAll(hostState.queue);
+                hostState.queue.clear();
+            }
+        }
+        return removed;
+    }
+
+    /*
+     * Takes the next request of a host that is ready, and counts it as in flight for that host.
+     * Returns null if no host is ready right now, nanosUntilNextReady then tells when to try again at the latest.
+     */
+    public R pollReady() {
+        long now = System.nanoTime();
+        long earliestReadyAt = Long.MAX_VALUE;
+
+        for (int checkedHosts = hostsInRotation.get(); checkedHosts > 0; checkedHosts--) {
+            HostState<R> hostState = hostRotation.poll();
+            if (hostState == null) {
+                break;
+            }
+
+            synchronized (hostState) {
+                if (hostState.queue.isEmpty()) {
+                    removeFromRotation(hostState);
+                    continue;
+                }
+                if (hostState.inFlight < policy.maxConnectionsPerHost() && now - hostState.nextAllowedAt >= 0) {
+                    R request = hostState.queue.poll();
+                    hostState.inFlight++;
+                    hostState.nextAllowedAt = now + hostState.currentDelayNanos(policy);
+                    queuedRequests.decrementAndGet();
+
+                    if (hostState.queue.isEmpty()) {
+                        removeFromRotation(hostState);
+                    } else {
+                        hostRotation.add(hostState);
+                    }
+                    return request;
+                }
+
+                if (hostState.inFlight < policy.maxConnectionsPerHost()) {
+                    // only waiting for its delay, hosts waiting for a free connection are woken up by onRequestFinished
+                    earliestReadyAt = earliestReadyAt == Long.MAX_VALUE ? hostState.nextAllowedAt : earliest(earliestReadyAt, hostState.nextAllowedAt);
+                }
+                hostRotation.add(hostState);
+            }
+        }
+
+        nanosUntilNextReady = earliestReadyAt == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, earliestReadyAt - now);
+        return null;
+    }
+
+    /*
+     * The status code is -1 if the request failed without a response, retryAfter is the raw Retry-After header or null.
+     */
+    public void onRequestFinished(String host, long latencyNanos, int statusCode, String retryAfter) {
+        HostState<R> hostState = hostState(host);
+        long now = System.nanoTime();
+
+        synchronized (hostState) {
+            hostState.inFlight = Math.max(0, hostState.inFlight - 1);
+            if (latencyNanos >= 0) {
+                hostState.latencyEwmaNanos = hostState.latencyEwmaNanos == 0
+                        ? latencyNanos
+                        : (1 - LATENCY_SMOOTHING) * hostState.latencyEwmaNanos + LATENCY_SMOOTHING * latencyNanos;
+            }
+
+            if (statusCode == 429 || statusCode == 503) {
+                // the host asked us to slow down, so the (now longer) delay counts from this response onwards
+                hostState.backoff = Math.min(MAX_BACKOFF, hostState.backoff * 2);
+                hostState.nextAllowedAt = latest(hostState.nextAllowedAt, now + hostState.currentDelayNanos(policy));
+            } else if (statusCode > 0) {
+                hostState.backoff = Math.max(1, hostState.backoff * BACKOFF_RECOVERY);
+            }
+
+            long retryAfterNanos = parseRetryAfterNanos(retryAfter);
+            if (retryAfterNanos > 0) {
+                hostState.nextAllowedAt = latest(hostState.nextAllowedAt, now + retryAfterNanos);
+            }
+        }
+    }
+
+    /*
+     * Raises the delay of a host to at least the given duration, e.g. for a Crawl-delay from robots.txt.
+     */
+    public void setMinimumDelay(String host, Duration minimumDelay) {
+        HostState<R> hostState = hostState(host);
+        synchronized (hostState) {
+            hostState.minimumDelayNanos = minimumDelay.toNanos();
+        }
+    }
+
+    public boolean hasQueuedRequests() {
+        return queuedRequests.get() > 0;
+    }
+
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    public long getNanosUntilNextReady() {
+        return nanosUntilNextReady;
+    }
+
+    public int getKnownHosts() {
+        return hosts.size();
+    }
+
+    public static String hostKey(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    private HostState<R> hostState(String host) {
+        return hosts.computeIfAbsent(host, HostState::new);
+    }
+
+    private void addToRotation(HostState<R> hostState) {
+        if (!hostState.inRotation) {
+            hostState.inRotation = true;
+            hostsInRotation.incrementAndGet();
+            hostRotation.add(hostState);
+        }
+    }
+
+    private void removeFromRotation(HostState<R> hostState) {
+        hostState.inRotation = false;
+        hostsInRotation.decrementAndGet();
+    }
+
+    private static long earliest(long first, long second) {
+        return second - first < 0 ? second : first;
+    }
+
+    private static long latest(long first, long second) {
+        return second - first > 0 ? second : first;
+    }
+
+    /*
+     * Retry-After is either a number of seconds or an HTTP date.
+     */
+    static long parseRetryAfterNanos(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim())).toNanos();
+        } catch (NumberFormatException e) {
+            // not a number, so it should be a date
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toNanos());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    private static final class HostState<R> {
+        private final String host;
+        private final ArrayDeque<R> queue = new ArrayDeque<>();
+        private boolean inRotation;
+        private int inFlight;
+        private long nextAllowedAt = System.nanoTime();
+        private double latencyEwmaNanos;
+        private double backoff = 1;
+        private long minimumDelayNanos;
+
+        private HostState(String host) {
+            this.host = host;
+        }
+
+        private long currentDelayNanos(HostPolitenessPolicy policy) {
+            long baseDelay = Math.max(policy.minDelayNanos(), minimumDelayNanos);
+            double adaptiveDelay = Math.max(baseDelay, latencyEwmaNanos * policy.latencyFactor()) * backoff;
+            return (long) Math.min(adaptiveDelay, Math.max(policy.maxDelay().toNanos(), baseDelay));
+        }
+
+        @Override
+        public String toString() {
+            return host;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package me.borzan.linkscraper.web.robots;
+
+import me.borzan.linkscraper.web.WebScraperService;
+
+import java.time.Duration;
+
+/*
+ * How a crawl deals with robots.txt (RFC 9309) and the sitemaps it points to.
+ *
+ * The rules of the group for userAgent are obeyed, or those of the * group if there is none. The crawler also sends userAgent
+ * as the product token of the User-Agent header of every request, so servers know which group applies to it. Every host's robots.txt is
+ * fetched once and kept for timeToLive. A Crawl-delay is kept between the requests to the host, up to maxCrawlDelay.
+ * Up to maxSitemaps sitemaps (sitemap indexes included) are read to seed every crawl with, 0 reads none.
+ */
+public record RobotsPolicy(String userAgent, Duration timeToLive, Duration maxCrawlDelay, int maxSitemaps) {
+    public static final RobotsPolicy DEFAULT = new RobotsPolicy(WebScraperService.DEFAULT_PRODUCT_TOKEN, Duration.ofHours(24), Duration.ofSeconds(60), 1000);
+
+    public RobotsPolicy {
+        if (userAgent == null || userAgent.isBlank() || !userAgent.chars().allMatch(c -> Character.isLetter(c) || c == '-' || c == '_')) {
+            throw new IllegalStateException("The user agent must be a product token of letters, '-' and '_' only, e.g. 'linkscraper'.");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalStateException("A robots.txt must be kept for a positive duration.");
+        }
+        if (maxCrawlDelay == null || maxCrawlDelay.isNegative()) {
+            throw new IllegalStateException("The maximum crawl delay must not be negative, 0 ignores Crawl-delay.");
+        }
+        if (maxSitemaps < 0) {
+            throw new IllegalStateException("The number of sitemaps must not be negative, 0 does not read any.");
+        }
+    }
+
+    public RobotsPolicy withMaxCrawlDelay(Duration maxCrawlDelay) {
+        return new RobotsPolicy(userAgent, timeToLive, maxCrawlDelay, maxSitemaps);
+    }
+
+    public RobotsPolicy withMaxSitemaps(int maxSitemaps) {
+        return new RobotsPolicy(userAgent, timeToLive, maxCrawlDelay, maxSitemaps);
+    }
+}
@@ -0,0 +1,266 @@
+package me.borzan.linkscraper.web.robots;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * The rules of one robots.txt for one user agent, compiled once so every check is a handful of string comparisons.
+ *
+ * The rules that apply are those of every group naming the user agent, or else those of every * group (RFC 9309).
+ * Of all rules matching a path, the most specific one decides, which is the one with the longest pattern, and an allow
+ * beats a disallow of the same length. The rules are sorted that way when compiled, so the first rule that matches
+ * decides and the rest are never looked at. Patterns without wildcards are plain prefixes, * matches any run of
+ * characters and a trailing $ anchors the pattern at the end of the path.
+ *
+ * Paths are matched as they appear in the (canonicalized) URI, with percent-encoding. Patterns are percent-encoded the
+ * same way when compiled, so a pattern with e.g. an umlaut still matches.
+ *
+ * Sitemap lines are collected no matter which group they are in, as they are not part of any group.
+ */
+public final class RobotsRules {
+    // RFC 9309 asks to parse at least 500 KiB, anything beyond is ignored
+    private static final int MAX_PARSED_BYTES = 500 * 1024;
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new Rule[0], null, List.of());
+    // what an unreachable robots.txt means until it can be fetched
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(new Rule[] { Rule.compile(false, "/") }, null, List.of());
+
+    private final Rule[] rules;
+    private final Duration crawlDelay;
+    private final List<URI> sitemaps;
+
+    private RobotsRules(Rule[] rules, Duration crawlDelay, List<URI> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /*
+     * Relative sitemap URIs are resolved against the URI of the robots.txt. Lines that cannot be parsed are skipped.
+     */
+    public static RobotsRules parse(URI robotsTxtUri, byte[] body, String userAgent) {
+        String text = new String(body, 0, Math.min(body.length, MAX_PARSED_BYTES), StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+
+        List<Rule> agentRules = new ArrayList<>();
+        List<Rule> anyAgentRules = new ArrayList<>();
+        Duration agentCrawlDelay = null;
+        Duration anyAgentCrawlDelay = null;
+        boolean agentGroupFound = false;
+        Set<URI> sitemaps = new LinkedHashSet<>();
+
+        // the user-agent lines at the start of a group say who the rules after them are for
+        boolean groupForAgent = false;
+        boolean groupForAnyAgent = false;
+        boolean inUserAgentLines = false;
+        for (String line : (Iterable<String>) text.lines()::iterator) {
+            int commentStart = line.indexOf('#');
+            if (commentStart >= 0) {
+                line = line.substring(0, commentStart);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).strip();
+
+            switch (key) {
+                case "user-agent" -> {
+                    if (!inUserAgentLines) {
+                        groupForAgent = false;
+                        groupForAnyAgent = false;
+                        inUserAgentLines = true;
+                    }
+                    String productToken = productToken(value);
+                    if (productToken.equalsIgnoreCase(userAgent)) {
+                        groupForAgent = true;
+                        agentGroupFound = true;
+                    } else if (productToken.equals("*")) {
+                        groupForAnyAgent = true;
+                    }
+                }
+                case "allow", "disallow" -> {
+                    inUserAgentLines = false;
+                    // an empty disallow allows everything, which it does without a rule as well
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    Rule rule = Rule.compile(key.equals("allow"), value);
+                    if (groupForAgent) {
+                        agentRules.add(rule);
+                    } else if (groupForAnyAgent) {
+                        anyAgentRules.add(rule);
+                    }
+                }
+                case "crawl-delay" -> {
+                    inUserAgentLines = false;
+                    Duration crawlDelay = parseCrawlDelay(value);
+                    if (crawlDelay != null && groupForAgent) {
+                        agentCrawlDelay = crawlDelay;
+                    } else if (crawlDelay != null && groupForAnyAgent) {
+                        anyAgentCrawlDelay = crawlDelay;
+                    }
+                }
+                case "sitemap" -> {
+                    URI sitemap = parseSitemapUri(robotsTxtUri, value);
+                    if (sitemap != null) {
+                        sitemaps.add(sitemap);
+                    }
+                }
+                default -> {
+                    // e.g. Host or Clean-param, which do not end a group
+                }
+            }
+        }
+
+        List<Rule> rules = agentGroupFound ? agentRules : anyAgentRules;
+        rules.sort(Comparator.comparingInt((Rule rule) -> rule.specificity).reversed().thenComparing(rule -> !rule.allow));
+        return new RobotsRules(rules.toArray(Rule[]::new), agentGroupFound ? agentCrawlDelay : anyAgentCrawlDelay, List.copyOf(sitemaps));
+    }
+
+    public boolean isAllowed(URI uri) {
+        if (rules.length == 0) {
+            return true;
+        }
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path = path + "?" + uri.getRawQuery();
+        }
+        // the robots.txt itself is always allowed
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(path)) {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    // null if there is none
+    public Duration crawlDelay() {
+        return crawlDelay;
+    }
+
+    public List<URI> sitemaps() {
+        return sitemaps;
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    private static String productToken(String userAgent) {
+        int end = 0;
+        while (end < userAgent.length() && userAgent.charAt(end) != '/' && !Character.isWhitespace(userAgent.charAt(end))) {
+            end++;
+        }
+        return userAgent.substring(0, end);
+    }
+
+    private static Duration parseCrawlDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (!Double.isFinite(seconds) || seconds < 0) {
+                return null;
+            }
+            return Duration.ofMillis((long) (seconds * 1000));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static URI parseSitemapUri(URI robotsTxtUri, String value) {
+        try {
+            URI sitemap = robotsTxtUri.resolve(value);
+            String scheme = sitemap.getScheme();
+            return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme) ? sitemap : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /*
+     * The pattern split at its wildcards. The first segment has to be a prefix of the path, every other one has to
+     * follow somewhere after the one before, and the last one has to end the path if the pattern is anchored.
+     * Taking the first occurrence of every segment leaves the most room for the ones after it, so there is no backtracking.
+     */
+    private static final class Rule {
+        private final boolean allow;
+        private final int specificity;
+        private final String[] segments;
+        private final boolean anchored;
+
+        private Rule(boolean allow, int specificity, String[] segments, boolean anchored) {
+            this.allow = allow;
+            this.specificity = specificity;
+            this.segments = segments;
+            this.anchored = anchored;
+        }
+
+        static Rule compile(boolean allow, String pattern) {
+            String normalizedPattern = percentEncode(pattern.startsWith("/") || pattern.startsWith("*") ? pattern : "/" + pattern);
+            boolean anchored = normalizedPattern.endsWith("$");
+            String withoutAnchor = anchored ? normalizedPattern.substring(0, normalizedPattern.length() - 1) : normalizedPattern;
+            return new Rule(allow, normalizedPattern.length(), withoutAnchor.split("\\*", -1), anchored);
+        }
+
+        boolean matches(String path) {
+            String first = segments[0];
+            if (!path.startsWith(first)) {
+                return false;
+            }
+            int position = first.length();
+            int last = segments.length - 1;
+            if (last == 0) {
+                return !anchored || path.length() == position;
+            }
+            for (int i = 1; i < last; i++) {
+                int found = path.indexOf(segments[i], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + segments[i].length();
+            }
+            if (!anchored) {
+                return path.indexOf(segments[last], position) >= 0;
+            }
+            return path.length() - segments[last].length() >= position && path.endsWith(segments[last]);
+        }
+
+        /*
+         * Encodes what a URI would have encoded, and upper-cases existing escapes the way the canonicalizer does.
+         */
+        private static String percentEncode(String pattern) {
+            StringBuilder encoded = new StringBuilder(pattern.length());
+            byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i++) {
+                int b = bytes[i] & 0xff;
+                if (b == '%' && i + 2 < bytes.length && isHexDigit(bytes[i + 1]) && isHexDigit(bytes[i + 2])) {
+                    encoded.append('%').append(Character.toUpperCase((char) bytes[i + 1])).append(Character.toUpperCase((char) bytes[i + 2]));
+                    i += 2;
+                } else if (b <= 0x20 || b >= 0x7f || b == '"' || b == '<' || b == '>' || b == '\\' || b == '^' || b == '`' || b == '{' || b == '|' || b == '}') {
+                    encoded.append('%').append(Character.toUpperCase(Character.forDigit(b >> 4, 16))).append(Character.toUpperCase(Character.forDigit(b & 0x0f, 16)));
+                } else {
+                    encoded.append((char) b);
+                }
+            }
+            return encoded.toString();
+        }
+
+        private static boolean isHexDigit(byte b) {
+            return Character.digit(b, 16) >= 0;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package me.borzan.linkscraper.web.robots;
+
+import me.borzan.linkscraper.web.WebScraperService;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The compiled robots.txt rules of every host a service crawled, fetched once per host and kept for the time to live
+ * of the policy. All crawls of the service share them.
+ *
+ * The first caller for a host starts the fetch, everybody asking while it runs gets the same future, so a host's
+ * robots.txt is never requested twice at once. Once fetched, rulesFor returns a completed future, and callers that
+ * check it with getNow never wait. The future never fails, every outcome maps to rules (RFC 9309):
+ * - 2xx: the rules of the file
+ * - 4xx: there are no rules, everything is allowed
+ * - 429, 5xx or no response at all: the robots.txt is unreachable, which disallows everything. That is only kept for
+ *   a minute, then the robots.txt is tried again.
+ *
+ * The robots.txt is requested through the service like any page, so it queues up behind the politeness of its host.
+ * A Crawl-delay is set as the minimum delay of the host on the service, capped at maxCrawlDelay of the policy.
+ */
+public final class RobotsTxtCache {
+    private static final Duration UNREACHABLE_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private final RobotsPolicy policy;
+    private final WebScraperService<?> service;
+    private final ConcurrentHashMap<String, Entry> hosts;
+    private final Logger logger;
+
+    public RobotsTxtCache(RobotsPolicy policy, WebScraperService<?> service) {
+        if (policy == null || service == null) {
+            throw new IllegalStateException("A robots policy and a service to fetch robots.txt files with are needed.");
+        }
+        this.policy = policy;
+        this.service = service;
+        this.hosts = new ConcurrentHashMap<>();
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /*
+     * The rules for the scheme, host and port of the uri.
+     */
+    public CompletableFuture<RobotsRules> rulesFor(URI uri) {
+        String origin = origin(uri);
+        Entry entry = hosts.get(origin);
+        if (entry != null && !entry.isExpired()) {
+            return entry.rules;
+        }
+
+        Entry[] created = new Entry[1];
+        entry = hosts.compute(origin, (ignored, current) -> {
+            if (current != null && !current.isExpired()) {
+                return current;
+            }
+            created[0] = new Entry();
+            return created[0];
+        });
+        if (entry == created[0]) {
+            fetch(URI.create(origin + "/robots.txt"), entry);
+        }
+        return entry.rules;
+    }
+
+    public int size() {
+        return hosts.size();
+    }
+
+    private void fetch(URI robotsTxtUri, Entry entry) {
+        service.sendHttpRequestAsync(robotsTxtUri, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, exception) -> {
+                    Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+                    if (cause instanceof RejectedExecutionException) {
+                        // the request queue is full, which says nothing about the host
+                        service.whenRequestCapacityAvailable(() -> fetch(robotsTxtUri, entry));
+                        return;
+                    }
+                    complete(robotsTxtUri, entry, response, cause);
+                });
+    }
+
+    private void complete(URI robotsTxtUri, Entry entry, HttpResponse<byte[]> response, Throwable exception) {
+        RobotsRules rules;
+        Duration timeToLive = policy.timeToLive();
+        if (response != null && response.statusCode() >= 200 && response.statusCode() < 300) {
+            rules = RobotsRules.parse(robotsTxtUri, response.body(), policy.userAgent());
+        } else if (response != null && response.statusCode() >= 400 && response.statusCode() < 500 && response.statusCode() != 429) {
+            rules = RobotsRules.ALLOW_ALL;
+        } else if (response != null && response.statusCode() < 400 && response.statusCode() != 429) {
+            // still a redirect after as many as the client follows
+            rules = RobotsRules.ALLOW_ALL;
+        } else {
+            rules = RobotsRules.DISALLOW_ALL;
+            timeToLive = UNREACHABLE_TIME_TO_LIVE;
+            logger.log(Level.INFO, "'%s' is unreachable (%s), nothing of its host is crawled for the next %d seconds."
+                    .formatted(robotsTxtUri, response != null ? "status " + response.statusCode() : exception.getMessage(), timeToLive.toSeconds()));
+        }
+
+        if (rules.crawlDelay() != null && !policy.maxCrawlDelay().isZero()) {
+            Duration crawlDelay = rules.crawlDelay().compareTo(policy.maxCrawlDelay()) > 0 ? policy.maxCrawlDelay() : rules.crawlDelay();
+            service.setMinimumHostDelay(robotsTxtUri, crawlDelay);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "'%s' has %d rules for '%s', a crawl delay of %s and %d sitemaps."
+                    .formatted(robotsTxtUri, rules.ruleCount(), policy.userAgent(), rules.crawlDelay(), rules.sitemaps().size()));
+        }
+        entry.expiresAtNanos = System.nanoTime() + timeToLive.toNanos();
+        entry.rules.complete(rules);
+    }
+
+    private static String origin(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.indexOf(':') >= 0 && !host.startsWith("[")) {
+            host = "[" + host + "]";
+        }
+        return uri.getPort() == -1 ? scheme + "://" + host : scheme + "://" + host + ":" + uri.getPort();
+    }
+
+    /*
+     * Does not expire while its robots.txt is being fetched.
+     */
+    private static final class Entry {
+        private final CompletableFuture<RobotsRules> rules = new CompletableFuture<>();
+        private volatile long expiresAtNanos = Long.MAX_VALUE;
+
+        private boolean isExpired() {
+            return expiresAtNanos != Long.MAX_VALUE && System.nanoTime() - expiresAtNanos > 0;
+        }
+    }
+}
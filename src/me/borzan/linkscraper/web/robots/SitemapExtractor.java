@@ -0,0 +1,93 @@
+package me.borzan.linkscraper.web.robots;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlEntities;
+import me.borzan.linkscraper.web.html.HtmlTagNames;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/*
+ * Finds the <loc> of every <url> of a sitemap and of every <sitemap> of a sitemap index (sitemaps.org) while the document
+ * is being tokenized, and hands each one out as soon as its </loc> was read. Page locations go to one consumer,
+ * locations of further sitemaps to the other.
+ *
+ * Locations come as they are written in the document, with the entities of XML decoded and surrounding whitespace
+ * stripped, it is up to the consumers to parse them. Elements of extensions, e.g. <image:loc>, are not locations.
+ */
+public final class SitemapExtractor implements HtmlTokenListener {
+    // the elements of sitemaps, for the tokenizer of a sitemap to hand out without allocating
+    public static final HtmlTagNames TAG_NAMES = HtmlTagNames.HTML.with("loc", "url", "sitemap", "urlset", "sitemapindex");
+
+    // the protocol allows 2048 characters, anything longer is not a location
+    private static final int MAX_LOCATION_BYTES = 4096;
+
+    private final Consumer<String> pageFound;
+    private final Consumer<String> sitemapFound;
+    private final byte[] locationBuffer = new byte[MAX_LOCATION_BYTES];
+
+    // the consumer of the <url> or <sitemap> the tokenizer is in, null outside of both
+    private Consumer<String> currentConsumer;
+    private boolean inLocation;
+    private int locationLength;
+    private boolean locationOverflow;
+
+    public SitemapExtractor(Consumer<String> pageFound, Consumer<String> sitemapFound) {
+        if (pageFound == null || sitemapFound == null) {
+            throw new IllegalStateException("Consumers for pages and for sitemaps are needed, the locations found would be lost.");
+        }
+        this.pageFound = pageFound;
+        this.sitemapFound = sitemapFound;
+    }
+
+    @Override
+    public void startTag(String tagName, HtmlAttributes attributes) {
+        switch (tagName) {
+            case "url" -> currentConsumer = pageFound;
+            case "sitemap" -> currentConsumer = sitemapFound;
+            case "loc" -> {
+                inLocation = currentConsumer != null;
+                locationLength = 0;
+                locationOverflow = false;
+            }
+            default -> {}
+        }
+    }
+
+    @Override
+    public void endTag(String tagName) {
+        switch (tagName) {
+            case "loc" -> emitLocation();
+            case "url", "sitemap" -> currentConsumer = null;
+            default -> {}
+        }
+    }
+
+    @Override
+    public void text(byte[] buffer, int offset, int length) {
+        if (!inLocation) {
+            return;
+        }
+        if (locationLength + length > MAX_LOCATION_BYTES) {
+            locationOverflow = true;
+            return;
+        }
+        System.arraycopy(buffer, offset, locationBuffer, locationLength, length);
+        locationLength += length;
+    }
+
+    private void emitLocation() {
+        if (!inLocation) {
+            return;
+        }
+        inLocation = false;
+        if (locationOverflow) {
+            return;
+        }
+        String location = HtmlEntities.decode(new String(locationBuffer, 0, locationLength, StandardCharsets.UTF_8).strip());
+        if (!location.isEmpty()) {
+            currentConsumer.accept(location);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package me.borzan.linkscraper.web.robots;
+
+import me.borzan.linkscraper.web.WebScraperService;
+import me.borzan.linkscraper.web.html.HtmlBodySubscriber;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Reads the sitemaps of one crawl, follows sitemap indexes to the sitemaps they list, and hands out the location of
+ * every page the moment it was read. Each sitemap is streamed through the tokenizer while it downloads, and gzip
+ * compressed ones (sitemap.xml.gz) are inflated on the way, so not even a sitemap of 50,000 URLs is held in memory.
+ * All sitemaps listed by an index are requested at once, the dispatcher spreads them out as politely as any page.
+ *
+ * Every sitemap is read once, and no more than maxSitemaps in total, since an index may list tens of thousands.
+ * Sitemaps that cannot be read are skipped. The future of read completes once every sitemap was read,
+ * after cancel, no more locations are handed out and the requests still in flight are cancelled.
+ * Locations are handed out from the threads of the HttpClient, from several sitemaps at the same time.
+ */
+public final class SitemapReader {
+    private final WebScraperService<?> service;
+    private final int maxSitemaps;
+    private final Consumer<String> pageFound;
+    private final Set<URI> sitemapsRequested;
+    private final AtomicInteger sitemapsRequestedCount;
+    private final AtomicBoolean limitLogged;
+    // the sitemaps being read, plus one while read is still requesting the first ones
+    private final AtomicInteger sitemapsPending;
+    private final Set<CompletableFuture<?>> requestsInFlight;
+    private final CompletableFuture<Void> completion;
+    private final AtomicLong pagesFound;
+    private volatile boolean cancelled;
+    private final Logger logger;
+
+    public SitemapReader(WebScraperService<?> service, int maxSitemaps, Consumer<String> pageFound) {
+        if (service == null || pageFound == null) {
+            throw new IllegalStateException("A service to request sitemaps with and a consumer for the pages found are needed.");
+        }
+        if (maxSitemaps < 1) {
+            throw new IllegalStateException("At least one sitemap has to be allowed to read anything.");
+        }
+        this.service = service;
+        this.maxSitemaps = maxSitemaps;
+        this.pageFound = pageFound;
+        this.sitemapsRequested = ConcurrentHashMap.newKeySet();
+        this.sitemapsRequestedCount = new AtomicInteger();
+        this.limitLogged = new AtomicBoolean();
+        this.sitemapsPending = new AtomicInteger();
+        this.requestsInFlight = ConcurrentHashMap.newKeySet();
+        this.completion = new CompletableFuture<>();
+        this.pagesFound = new AtomicLong();
+        this.logger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /*
+     * To be called once, with the sitemaps to start from, e.g. those of a robots.txt.
+     */
+    public CompletableFuture<Void> read(Collection<URI> sitemaps) {
+        sitemapsPending.incrementAndGet();
+        sitemaps.forEach(this::readSitemap);
+        finishOne();
+        return completion;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> request : requestsInFlight) {
+            request.cancel(true);
+        }
+    }
+
+    public int getSitemapsRequested() {
+        return Math.min(sitemapsRequestedCount.get(), maxSitemaps);
+    }
+
+    public long getPagesFound() {
+        return pagesFound.get();
+    }
+
+    private void readSitemap(URI sitemap) {
+        if (cancelled || !sitemapsRequested.add(sitemap)) {
+            return;
+        }
+        if (sitemapsRequestedCount.incrementAndGet() > maxSitemaps) {
+            if (limitLogged.compareAndSet(false, true)) {
+                logger.log(Level.INFO, "Read the first %d sitemaps, '%s' and any further ones are skipped.".formatted(maxSitemaps, sitemap));
+            }
+            return;
+        }
+
+        sitemapsPending.incrementAndGet();
+        CompletableFuture<HttpResponse<Void>> request = service.sendHttpRequestForCompressedFileAsync(sitemap, responseInfo -> {
+            if (responseInfo.statusCode() < 200 || responseInfo.statusCode() >= 300) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return new HtmlBodySubscriber(new SitemapExtractor(this::acceptPage, location -> acceptSitemap(sitemap, location)),
+                    SitemapExtractor.TAG_NAMES);
+        });
+        requestsInFlight.add(request);
+        request.whenComplete((response, exception) -> {
+            requestsInFlight.remove(request);
+            if (exception != null && !cancelled) {
+                logger.log(Level.INFO, "Could not read the sitemap '%s': %s".formatted(sitemap, exception.getMessage()));
+            } else if (response != null && (response.statusCode() < 200 || response.statusCode() >= 300)) {
+                logger.log(Level.INFO, "The sitemap '%s' was answered with status %d.".formatted(sitemap, response.statusCode()));
+            }
+            finishOne();
+        });
+        if (cancelled) {
+            request.cancel(true);
+        }
+    }
+
+    private void acceptPage(String location) {
+        if (!cancelled) {
+            pagesFound.incrementAndGet();
+            pageFound.accept(location);
+        }
+    }
+
+    // the sitemaps of an index may be given relative to it, although the protocol asks for absolute ones
+    private void acceptSitemap(URI index, String location) {
+        URI sitemap;
+        try {
+            sitemap = index.resolve(location);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if ("http".equalsIgnoreCase(sitemap.getScheme()) || "https".equalsIgnoreCase(sitemap.getScheme())) {
+            readSitemap(sitemap);
+        }
+    }
+
+    private void finishOne() {
+        if (sitemapsPending.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+}
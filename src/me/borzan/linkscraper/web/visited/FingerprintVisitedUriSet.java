@@ -0,0 +1,255 @@
+package me.borzan.linkscraper.web.visited;
+
+import me.borzan.linkscraper.util.HashUtils;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.UriCanonicalizer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+/*
+ * A visited set that only keeps a 64-bit fingerprint per URI in open-addressed tables of primitive longs,
+ * which comes down to roughly 10-20 bytes per URI instead of a URI object, its String and a map entry.
+ * With 64 bits, the chance of two different URIs colliding stays below one in a million for crawls of a few million URIs,
+ * a collision only means that one page is skipped.
+ *
+ * Inserting is lock-free: a fingerprint is claimed with a single compare-and-set on an empty slot.
+ * When a table fills up, a twice as large one is added on top instead of rehashing in place, so no insert ever has to wait
+ * for a resize. Once tables reach the largest size an array or a direct buffer can hold, further ones keep that size. Older tables stay readable and are checked before inserting into the newest one.
+ * The only lock is taken when adding a new table, which happens a handful of times per crawl.
+ * In the short window in which a new table is added, the same URI discovered at the same moment by two threads could
+ * land in both tables, which at worst means visiting a page twice.
+ *
+ * Tables can be allocated off-heap, which keeps large visited sets out of the garbage collector's way.
+ *
+ * The fingerprint is the one of the URI's identity key (see UriCanonicalizer), so URIs that only differ in scheme or
+ * a trailing slash count as the same. Hyperlinks bring their fingerprint along, it is not computed again.
+ */
+public final class FingerprintVisitedUriSet implements VisitedUriSet {
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    // the largest powers of two that fit an int index, of the slots on the heap and of their bytes off-heap
+    private static final int MAX_HEAP_TABLE_CAPACITY = 1 << 30;
+    private static final int MAX_OFF_HEAP_TABLE_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / Long.BYTES);
+
+    private final boolean offHeap;
+    private final LongAdder size = new LongAdder();
+    private volatile FingerprintTable[] tables;
+
+    public FingerprintVisitedUriSet() {
+        this(DEFAULT_INITIAL_CAPACITY, false);
+    }
+
+    public FingerprintVisitedUriSet(int initialCapacity, boolean offHeap) {
+        if (initialCapacity < 2) {
+            throw new IllegalStateException("The initial capacity must be at least 2.");
+        }
+        this.offHeap = offHeap;
+        int capacity = Math.min(Integer.highestOneBit(initialCapacity - 1), maxTableCapacity() / 2) << 1;
+        this.tables = new FingerprintTable[] { createTable(capacity) };
+    }
+
+    @Override
+    public boolean markVisited(URI uri) {
+        return markVisited(HashUtils.fingerprint64(UriCanonicalizer.identityKey(uri)));
+    }
+
+    @Override
+    public boolean markVisited(Hyperlink hyperlink) {
+        return markVisited(hyperlink.getFingerprint());
+    }
+
+    public boolean markVisited(long fingerprint) {
+        while (true) {
+            FingerprintTable[] currentTables = this.tables;
+            FingerprintTable newestTable = currentTables[currentTables.length - 1];
+
+            for (int i = 0; i < currentTables.length - 1; i++) {
+                if (currentTables[i].contains(fingerprint)) {
+                    return false;
+                }
+            }
+
+            switch (newestTable.insert(fingerprint)) {
+                case INSERTED -> {
+                    size.increment();
+                    return true;
+                }
+                case PRESENT -> {
+                    return false;
+                }
+                case FULL -> addTable(newestTable);
+            }
+        }
+    }
+
+    public boolean contains(URI uri) {
+        long fingerprint = HashUtils.fingerprint64(UriCanonicalizer.identityKey(uri));
+        for (FingerprintTable table : this.tables) {
+            if (table.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    /*
+     * Copies all fingerprints in the set, e.g. to persist them. Fingerprints added while this runs may or may not be included.
+     */
+    public long[] fingerprints() {
+        LongStream.Builder fingerprints = LongStream.builder();
+        for (FingerprintTable table : this.tables) {
+            for (int i = 0; i < table.capacity(); i++) {
+                long fingerprint = table.get(i);
+                if (fingerprint != 0) {
+                    fingerprints.add(fingerprint);
+                }
+            }
+        }
+        return fingerprints.build().toArray();
+    }
+
+    /*
+     * The memory taken by the tables themselves, on- or off-heap.
+     */
+    public long sizeInBytes() {
+        return Arrays.stream(this.tables).mapToLong(table -> (long) table.capacity() * Long.BYTES).sum();
+    }
+
+    private synchronized void addTable(FingerprintTable fullTable) {
+        FingerprintTable[] currentTables = this.tables;
+        if (currentTables[currentTables.length - 1] != fullTable) {
+            // someone else already added a new table
+            return;
+        }
+        FingerprintTable[] newTables = Arrays.copyOf(currentTables, currentTables.length + 1);
+        newTables[currentTables.length] = createTable(Math.min(fullTable.capacity(), maxTableCapacity() / 2) * 2);
+        this.tables = newTables;
+    }
+
+    private int maxTableCapacity() {
+        return offHeap ? MAX_OFF_HEAP_TABLE_CAPACITY : MAX_HEAP_TABLE_CAPACITY;
+    }
+
+    private FingerprintTable createTable(int capacity) {
+        return offHeap ? new OffHeapFingerprintTable(capacity) : new HeapFingerprintTable(capacity);
+    }
+
+    private enum InsertResult { INSERTED, PRESENT, FULL }
+
+    /*
+     * An open-addressed table with linear probing, in which 0 marks an empty slot.
+     */
+    private abstract static class FingerprintTable {
+        private final int capacity;
+        private final int mask;
+        private final int maxFingerprints;
+        private final AtomicInteger fingerprints = new AtomicInteger();
+
+        FingerprintTable(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.maxFingerprints = (int) (capacity * MAX_LOAD_FACTOR);
+        }
+
+        abstract long get(int index);
+
+        abstract boolean compareAndSet(int index, long expected, long fingerprint);
+
+        int capacity() {
+            return capacity;
+        }
+
+        boolean contains(long fingerprint) {
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                long slot = get(index);
+                if (slot == fingerprint) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        InsertResult insert(long fingerprint) {
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                long slot = get(index);
+                if (slot == fingerprint) {
+                    return InsertResult.PRESENT;
+                }
+                if (slot == 0) {
+                    if (fingerprints.get() >= maxFingerprints) {
+                        return InsertResult.FULL;
+                    }
+                    if (compareAndSet(index, 0, fingerprint)) {
+                        fingerprints.incrementAndGet();
+                        return InsertResult.INSERTED;
+                    }
+                    // lost the slot to another thread, which might have inserted the same fingerprint, so look again
+                    continue;
+                }
+                index = (index + 1) & mask;
+            }
+            return InsertResult.FULL;
+        }
+    }
+
+    private static final class HeapFingerprintTable extends FingerprintTable {
+        private final AtomicLongArray slots;
+
+        HeapFingerprintTable(int capacity) {
+            super(capacity);
+            this.slots = new AtomicLongArray(capacity);
+        }
+
+        @Override
+        long get(int index) {
+            return slots.get(index);
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long fingerprint) {
+            return slots.compareAndSet(index, expected, fingerprint);
+        }
+    }
+
+    private static final class OffHeapFingerprintTable extends FingerprintTable {
+        private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        private final ByteBuffer slots;
+
+        OffHeapFingerprintTable(int capacity) {
+            super(capacity);
+            // direct buffers are zeroed on allocation, which conveniently means every slot starts out empty
+            this.slots = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        }
+
+        @Override
+        long get(int index) {
+            return (long) LONG_VIEW.getVolatile(slots, index * Long.BYTES);
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long fingerprint) {
+            return LONG_VIEW.compareAndSet(slots, index * Long.BYTES, expected, fingerprint);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package me.borzan.linkscraper.web.visited;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+
+import java.net.URI;
+
+/*
+ * Remembers which URIs a crawl has already seen, so that every URI is only visited once.
+ * Implementations must be safe to use from many threads at once.
+ */
+public interface VisitedUriSet {
+    /*
+     * Returns true if the URI was not known before, i.e. the caller is the one who should visit it.
+     */
+    boolean markVisited(URI uri);
+
+    /*
+     * Same as for the hyperlink's URI, but implementations may use the identity the hyperlink already computed.
+     */
+    default boolean markVisited(Hyperlink hyperlink) {
+        return markVisited(hyperlink.getUri());
+    }
+
+    long size();
+}
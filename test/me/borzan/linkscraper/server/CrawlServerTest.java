@@ -0,0 +1,116 @@
+package me.borzan.linkscraper.server;
+
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlSettings;
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlServerTest {
+    private static final Pattern JOB_ID = Pattern.compile("\"id\":(\\d+)");
+
+    @Test
+    void submittedJobStreamsItsHyperlinksUntilItIsOver(@TempDir Path outputDirectory) throws Exception {
+        Map<String, String> pages = Map.of(
+                "/", "<a href=\"/a\">A</a><a href=\"/b\">B \"quoted\"</a>",
+                "/a", "<a href=\"/c\">C</a>");
+        HttpServer site = serve(pages);
+        URI seed = URI.create("http://127.0.0.1:%d/".formatted(site.getAddress().getPort()));
+
+        try (PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings.defaults(5, 1));
+             CrawlServer server = new CrawlServer(service, 2, outputDirectory, 0);
+             HttpClient client = HttpClient.newHttpClient()) {
+            server.start();
+            URI api = URI.create("http://127.0.0.1:%d".formatted(server.getPort()));
+
+            HttpResponse<String> submission = client.send(HttpRequest.newBuilder(api.resolve("/jobs"))
+                    .header("Content-Type", "text/uri-list; charset=utf-8")
+                    .POST(HttpRequest.BodyPublishers.ofString("# one seed\n\n" + seed + "\n")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(201, submission.statusCode());
+            Matcher id = JOB_ID.matcher(submission.body());
+            assertTrue(id.find(), submission.body());
+            long jobId = Long.parseLong(id.group(1));
+
+            // the stream only ends once the job is over, whenever it was opened
+            HttpResponse<String> stream = get(client, api.resolve("/jobs/%d/hyperlinks".formatted(jobId)));
+            assertEquals(200, stream.statusCode());
+            assertEquals("application/x-ndjson; charset=utf-8", stream.headers().firstValue("Content-Type").orElseThrow());
+            List<String> lines = stream.body().lines().toList();
+            assertEquals(Set.of(
+                    "{\"uri\":\"%sa\",\"label\":\"A\",\"depth\":1}".formatted(seed),
+                    "{\"uri\":\"%sb\",\"label\":\"B \\\"quoted\\\"\",\"depth\":1}".formatted(seed),
+                    "{\"uri\":\"%sc\",\"label\":\"C\",\"depth\":2}".formatted(seed)), Set.copyOf(lines));
+            assertEquals(3, lines.size());
+
+            String job = get(client, api.resolve("/jobs/" + jobId)).body();
+            assertTrue(job.contains("\"state\":\"SUCCEEDED\"") && job.contains("\"hyperlinksFound\":3"), job);
+            assertTrue(get(client, api.resolve("/jobs?state=succeeded")).body().contains("\"id\":" + jobId));
+            assertEquals("[]\n", get(client, api.resolve("/jobs?state=running")).body());
+            assertTrue(get(client, api.resolve("/status")).body().contains("\"succeeded\":1"));
+        } finally {
+            site.stop(0);
+        }
+    }
+
+    @Test
+    void requestsThatCannotBeServedAreRejected(@TempDir Path outputDirectory) throws Exception {
+        try (PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings.defaults(5, 1));
+             CrawlServer server = new CrawlServer(service, 1, outputDirectory, 0);
+             HttpClient client = HttpClient.newHttpClient()) {
+            server.start();
+            URI api = URI.create("http://127.0.0.1:%d".formatted(server.getPort()));
+
+            assertEquals(415, post(client, api.resolve("/jobs"), "application/x-www-form-urlencoded", "https://example.com/").statusCode());
+            assertEquals(400, post(client, api.resolve("/jobs"), "text/uri-list", "https://example.com/\nftp://example.com/").statusCode());
+            assertEquals(400, post(client, api.resolve("/jobs"), "text/uri-list", "# nothing\n").statusCode());
+            assertEquals(404, get(client, api.resolve("/jobs/17")).statusCode());
+            assertEquals(404, get(client, api.resolve("/jobs/abc/hyperlinks")).statusCode());
+            assertEquals(400, get(client, api.resolve("/jobs?state=sleeping")).statusCode());
+            assertEquals(405, client.send(HttpRequest.newBuilder(api.resolve("/status")).DELETE().build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+            // nothing was submitted by any of them
+            assertEquals(List.of(), server.getScheduler().getJobs());
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient client, URI uri) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(HttpClient client, URI uri, String contentType, String body) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri).header("Content-Type", contentType).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpServer serve(Map<String, String> pages) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String page = pages.get(exchange.getRequestURI().getPath());
+            byte[] body = page == null ? new byte[0] : page.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(page == null ? 404 : 200, page == null ? -1 : body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,239 @@
+package me.borzan.linkscraper.web;
+
+import me.borzan.linkscraper.web.metrics.CrawlCounter;
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedRequestDispatcherTest {
+    // one connection and one request per second per host, independent of latency
+    private static final HostPolitenessPolicy ONE_PER_SECOND = new HostPolitenessPolicy(1, 1.0, 0, Duration.ofSeconds(30));
+
+    @Test
+    void requestsBeyondTheQueueBoundAreRejected() {
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        BoundedRequestDispatcher dispatcher = new BoundedRequestDispatcher(httpClient, 1, 2, ONE_PER_SECOND);
+
+        dispatcher.dispatch(request("https://example.com/sent"), HttpResponse.BodyHandlers.discarding());
+        dispatcher.dispatch(request("https://example.com/queued/1"), HttpResponse.BodyHandlers.discarding());
+        dispatcher.dispatch(request("https://example.com/queued/2"), HttpResponse.BodyHandlers.discarding());
+        CompletableFuture<HttpResponse<Void>> rejected = dispatcher.dispatch(request("https://example.com/rejected"), HttpResponse.BodyHandlers.discarding());
+
+        assertEquals(List.of(URI.create("https://example.com/sent")), httpClient.sentUris);
+        assertEquals(1, dispatcher.getRequestsInFlight());
+        assertEquals(2, dispatcher.getQueuedRequests());
+        assertFalse(dispatcher.hasCapacity());
+        ExecutionException exception = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+    }
+
+    @Test
+    void queueBoundHoldsForRequestsDispatchedAtOnce() throws Exception {
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        BoundedRequestDispatcher dispatcher = new BoundedRequestDispatcher(httpClient, 1, 10, ONE_PER_SECOND);
+        dispatcher.dispatch(request("https://example.com/sent"), HttpResponse.BodyHandlers.discarding());
+
+        List<CompletableFuture<HttpResponse<Void>>> responses = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService threads = Executors.newFixedThreadPool(64)) {
+            for (int thread = 0; thread < 64; thread++) {
+                int first = thread * 20;
+                threads.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = first; i < first + 20; i++) {
+                        responses.add(dispatcher.dispatch(request("https://example.com/" + i), HttpResponse.BodyHandlers.discarding()));
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertEquals(1280, responses.size());
+        assertEquals(10, responses.stream().filter(response -> !response.isDone()).count());
+        assertEquals(10, dispatcher.getQueuedRequests());
+        assertFalse(dispatcher.hasCapacity());
+        dispatcher.close();
+    }
+
+    @Test
+    void cancelledQueuedRequestLeavesTheQueueWithoutCostingItsHostADelay() throws Exception {
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        CrawlMetrics metrics = new CrawlMetrics();
+        BoundedRequestDispatcher dispatcher = new BoundedRequestDispatcher(httpClient, 4, 2, ONE_PER_SECOND, metrics);
+
+        long firstSentAt = System.nanoTime();
+        dispatcher.dispatch(request("https://example.com/first"), HttpResponse.BodyHandlers.discarding());
+        CompletableFuture<HttpResponse<Void>> cancelled = dispatcher.dispatch(request("https://example.com/cancelled"), HttpResponse.BodyHandlers.discarding());
+        dispatcher.dispatch(request("https://example.com/last"), HttpResponse.BodyHandlers.discarding());
+        assertFalse(dispatcher.hasCapacity());
+
+        CompletableFuture<Void> capacityAvailable = new CompletableFuture<>();
+        dispatcher.whenCapacityAvailable(() -> capacityAvailable.complete(null));
+        cancelled.cancel(true);
+
+        assertTrue(capacityAvailable.isDone());
+        assertEquals(1, dispatcher.getQueuedRequests());
+        assertEquals(1, metrics.snapshot().counter(CrawlCounter.CANCELLED_REQUESTS));
+
+        httpClient.responses.get(URI.create("https://example.com/first")).completeExceptionally(new IOException("connection reset"));
+        httpClient.awaitSent(URI.create("https://example.com/last"));
+        long lastSentAfterNanos = System.nanoTime() - firstSentAt;
+
+        // a single delay of the host for the first request, none for the cancelled one
+        assertTrue(lastSentAfterNanos < TimeUnit.MILLISECONDS.toNanos(1700), "Sent after " + lastSentAfterNanos + "ns");
+        assertEquals(List.of(URI.create("https://example.com/first"), URI.create("https://example.com/last")), httpClient.sentUris);
+        assertEquals(0, dispatcher.getQueuedRequests());
+    }
+
+    @Test
+    void closedDispatcherRejectsRequestsAndLeavesTheMetrics() throws Exception {
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        CrawlMetrics metrics = new CrawlMetrics();
+        BoundedRequestDispatcher dispatcher = new BoundedRequestDispatcher(httpClient, 4, 2, ONE_PER_SECOND, metrics);
+        dispatcher.dispatch(request("https://example.com/first"), HttpResponse.BodyHandlers.discarding());
+        CompletableFuture<HttpResponse<Void>> waiting = dispatcher.dispatch(request("https://example.com/waiting"), HttpResponse.BodyHandlers.discarding());
+        assertEquals(1, metrics.snapshot().gauge(CrawlMetrics.REQUESTS_QUEUED));
+
+        dispatcher.close();
+        dispatcher.close();
+
+        assertTrue(dispatcher.isClosed());
+        assertEquals(0, metrics.snapshot().gauge(CrawlMetrics.REQUESTS_IN_FLIGHT));
+        assertEquals(0, metrics.snapshot().gauge(CrawlMetrics.REQUESTS_QUEUED));
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> dispatcher.dispatch(request("https://example.com/late"), HttpResponse.BodyHandlers.discarding()).get());
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+
+        // the waiting request is never sent, and nobody waits for it
+        exception = assertThrows(ExecutionException.class, () -> waiting.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertEquals(0, dispatcher.getQueuedRequests());
+        assertEquals(1, metrics.snapshot().counter(CrawlCounter.CANCELLED_REQUESTS));
+
+        // the request in flight still completes
+        httpClient.responses.get(URI.create("https://example.com/first")).completeExceptionally(new IOException("connection reset"));
+        assertEquals(0, dispatcher.getRequestsInFlight());
+        assertEquals(List.of(URI.create("https://example.com/first")), httpClient.sentUris);
+    }
+
+    private static HttpRequest request(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).build();
+    }
+
+    /*
+     * Never sends anything, every response is completed by the test itself.
+     */
+    private static final class RecordingHttpClient extends HttpClient {
+        private final List<URI> sentUris = new CopyOnWriteArrayList<>();
+        private final Map<URI, CompletableFuture<HttpResponse<?>>> responses = new ConcurrentHashMap<>();
+
+        private void awaitSent(URI uri) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!sentUris.contains(uri) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(sentUris.contains(uri), "Never sent " + uri);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            CompletableFuture<HttpResponse<?>> response = new CompletableFuture<>();
+            responses.put(request.uri(), response);
+            sentUris.add(request.uri());
+            return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) response;
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                                                HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+            return sendAsync(request, responseBodyHandler);
+        }
+
+        @Override
+        public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<CookieHandler> cookieHandler() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Duration> connectTimeout() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Redirect followRedirects() {
+            return Redirect.NEVER;
+        }
+
+        @Override
+        public Optional<ProxySelector> proxy() {
+            return Optional.empty();
+        }
+
+        @Override
+        public SSLContext sslContext() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SSLParameters sslParameters() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<Authenticator> authenticator() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Version version() {
+            return Version.HTTP_1_1;
+        }
+
+        @Override
+        public Optional<Executor> executor() {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package me.borzan.linkscraper.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecompressingBodySubscriberTest {
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+    private static final byte[] PAGE = "<html><body>%s</body></html>".formatted("<a href=\"/page\">Page</a>".repeat(500)).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void gzipSplitIntoSingleBytesIsDecoded() throws Exception {
+        assertArrayEquals(PAGE, decode("gzip", null, NO_LIMIT, chunks(gzip(PAGE), 1)));
+    }
+
+    @Test
+    void optionalGzipHeaderFieldsSplitAcrossChunksAreSkipped() throws Exception {
+        byte[] compressed = gzip(PAGE);
+        byte[] fileName = "sitemap.xml\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] withFileName = concat(concat(Arrays.copyOf(compressed, 10), fileName), Arrays.copyOfRange(compressed, 10, compressed.length));
+        // FNAME
+        withFileName[3] = 0x08;
+
+        assertArrayEquals(PAGE, decode("gzip", null, NO_LIMIT, chunks(withFileName, 3)));
+    }
+
+    @Test
+    void everyMemberOfAMultiMemberGzipBodyIsDecoded() throws Exception {
+        byte[] first = "first member, ".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second member".getBytes(StandardCharsets.UTF_8);
+
+        byte[] decoded = decode("gzip", null, NO_LIMIT, chunks(concat(gzip(first), gzip(second)), 7));
+
+        assertEquals("first member, second member", new String(decoded, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void zlibWrappedAndRawDeflateAreBothDecoded() throws Exception {
+        assertArrayEquals(PAGE, decode("deflate", null, NO_LIMIT, chunks(deflate(PAGE, false), 1)));
+        assertArrayEquals(PAGE, decode("deflate", null, NO_LIMIT, chunks(deflate(PAGE, true), 1)));
+        assertArrayEquals(PAGE, decode("deflate", null, NO_LIMIT, chunks(deflate(PAGE, true), 100)));
+    }
+
+    @Test
+    void uncompressedBodyIsPassedOnUntouched() throws Exception {
+        assertArrayEquals(PAGE, decode(null, null, NO_LIMIT, chunks(PAGE, 1000)));
+    }
+
+    @Test
+    void responsesWithoutABodyKeepTheirContentEncodingWithoutFailing() throws Exception {
+        assertArrayEquals(new byte[0], decode(304, "gzip", null, NO_LIMIT, new RecordingSubscription(), List.of()));
+        assertArrayEquals(new byte[0], decode(204, "deflate", null, NO_LIMIT, new RecordingSubscription(), List.of()));
+        // e.g. the answer to a HEAD request
+        assertArrayEquals(new byte[0], decode("gzip", null, NO_LIMIT, List.of()));
+        assertArrayEquals(new byte[0], decode("deflate", null, NO_LIMIT, List.of(ByteBuffer.allocate(0))));
+    }
+
+    @Test
+    void compressedBodyBeyondTheLimitFailsWhileInflating() {
+        // a few kilobytes on the wire, a megabyte once inflated
+        byte[] zeroes = new byte[1 << 20];
+        RecordingSubscription subscription = new RecordingSubscription();
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> decode("gzip", null, 64 * 1024, subscription, chunks(gzip(zeroes), 4096)));
+
+        assertInstanceOf(IOException.class, exception.getCause());
+        assertTrue(subscription.cancelled);
+    }
+
+    @Test
+    void contentLengthBeyondTheLimitFailsBeforeAnythingIsRead() {
+        RecordingSubscription subscription = new RecordingSubscription();
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> decode(null, 2048L, 1024, subscription, List.of()));
+
+        assertInstanceOf(IOException.class, exception.getCause());
+        assertTrue(subscription.cancelled);
+    }
+
+    @Test
+    void gzipBodyThatStopsMidwayFails() {
+        byte[] compressed = gzip(PAGE);
+        byte[] cutOff = Arrays.copyOf(compressed, compressed.length / 2);
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> decode("gzip", null, NO_LIMIT, chunks(cutOff, 64)));
+
+        assertInstanceOf(IOException.class, exception.getCause());
+    }
+
+    @Test
+    void unsupportedContentEncodingFails() {
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> decode("br", null, NO_LIMIT, chunks(PAGE, 1000)));
+
+        assertInstanceOf(IOException.class, exception.getCause());
+    }
+
+    private static byte[] decode(String contentEncoding, Long contentLength, long maxBodyBytes, List<ByteBuffer> chunks) throws Exception {
+        return decode(contentEncoding, contentLength, maxBodyBytes, new RecordingSubscription(), chunks);
+    }
+
+    private static byte[] decode(String contentEncoding, Long contentLength, long maxBodyBytes,
+                                 RecordingSubscription subscription, List<ByteBuffer> chunks) throws Exception {
+        return decode(200, contentEncoding, contentLength, maxBodyBytes, subscription, chunks);
+    }
+
+    private static byte[] decode(int statusCode, String contentEncoding, Long contentLength, long maxBodyBytes,
+                                 RecordingSubscription subscription, List<ByteBuffer> chunks) throws Exception {
+        Map<String, List<String>> headers = new HashMap<>();
+        if (contentEncoding != null) {
+            headers.put("Content-Encoding", List.of(contentEncoding));
+        }
+        if (contentLength != null) {
+            headers.put("Content-Length", List.of(contentLength.toString()));
+        }
+        HttpResponse.ResponseInfo responseInfo = new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(headers, (name, value) -> true);
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        };
+
+        HttpResponse.BodySubscriber<byte[]> subscriber = DecompressingBodySubscriber
+                .wrap(HttpResponse.BodyHandlers.ofByteArray(), maxBodyBytes)
+                .apply(responseInfo);
+        subscriber.onSubscribe(subscription);
+        for (ByteBuffer chunk : chunks) {
+            if (subscription.cancelled) {
+                break;
+            }
+            subscriber.onNext(List.of(chunk));
+        }
+        if (!subscription.cancelled) {
+            subscriber.onComplete();
+        }
+        return subscriber.getBody().toCompletableFuture().get();
+    }
+
+    private static List<ByteBuffer> chunks(byte[] body, int chunkSize) {
+        return IntStream.range(0, (body.length + chunkSize - 1) / chunkSize)
+                .mapToObj(i -> ByteBuffer.wrap(Arrays.copyOfRange(body, i * chunkSize, Math.min(body.length, (i + 1) * chunkSize))))
+                .toList();
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(data);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream output = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            output.write(data);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {}
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
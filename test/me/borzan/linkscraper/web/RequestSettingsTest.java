@@ -0,0 +1,33 @@
+package me.borzan.linkscraper.web;
+
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestSettingsTest {
+    @Test
+    void defaultsAreThoseOfTheWebScraperService() {
+        assertEquals(new RequestSettings(WebScraperService.DEFAULT_MAX_CONCURRENT_REQUESTS, WebScraperService.DEFAULT_MAX_QUEUED_REQUESTS,
+                HostPolitenessPolicy.DEFAULT, WebScraperService.DEFAULT_MAX_RESPONSE_BODY_BYTES, WebScraperService.DEFAULT_PRODUCT_TOKEN),
+                RequestSettings.DEFAULT);
+    }
+
+    @Test
+    void toBuilderKeepsEverySettingButTheOneChanged() {
+        RequestSettings settings = RequestSettings.builder().maxConcurrentRequests(8).productToken("examplebot").build();
+
+        assertEquals(settings, settings.toBuilder().build());
+        assertEquals(new RequestSettings(8, WebScraperService.DEFAULT_MAX_QUEUED_REQUESTS, HostPolitenessPolicy.DEFAULT, 1_024, "examplebot"),
+                settings.toBuilder().maxResponseBodyBytes(1_024).build());
+    }
+
+    @Test
+    void invalidSettingsAreRejectedOnBuild() {
+        assertThrows(IllegalStateException.class, () -> RequestSettings.builder().maxQueuedRequests(0).build());
+        assertThrows(IllegalStateException.class, () -> RequestSettings.builder().politenessPolicy(null).build());
+        assertThrows(IllegalStateException.class, () -> RequestSettings.builder().maxResponseBodyBytes(0).build());
+        assertThrows(IllegalStateException.class, () -> RequestSettings.builder().productToken(" ").build());
+    }
+}
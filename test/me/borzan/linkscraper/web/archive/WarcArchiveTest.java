@@ -0,0 +1,136 @@
+package me.borzan.linkscraper.web.archive;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarcArchiveTest {
+    private static final String PAGE = "<html><body><a href=\"/other\">Other</a></body></html>";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordedCrawlIsReplayedWithoutTheNetwork() throws Exception {
+        byte[] compressedPage = gzip(PAGE.getBytes(StandardCharsets.UTF_8));
+        URI base = record(server -> {
+            server.createContext("/page", exchange -> {
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, compressedPage.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(compressedPage);
+                }
+            });
+            server.createContext("/moved", exchange -> {
+                exchange.getResponseHeaders().add("Location", "/page");
+                exchange.sendResponseHeaders(301, -1);
+                exchange.close();
+            });
+        }, "/page", "/moved");
+
+        WarcArchive archive = WarcArchive.open(directory);
+        assertTrue(archive.contains(base.resolve("/page")));
+        assertTrue(archive.contains(base.resolve("/moved")));
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            HttpClient replay = new WarcReplayHttpClient(archive, executor);
+
+            HttpResponse<byte[]> page = replay.send(HttpRequest.newBuilder(base.resolve("/page")).build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, page.statusCode());
+            assertEquals("gzip", page.headers().firstValue("Content-Encoding").orElseThrow());
+            // recorded the way it came off the wire
+            assertArrayEquals(compressedPage, page.body());
+
+            HttpResponse<byte[]> redirected = replay.send(HttpRequest.newBuilder(base.resolve("/moved")).build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, redirected.statusCode());
+            assertEquals(base.resolve("/page"), redirected.uri());
+
+            ExecutionException missing = assertThrows(ExecutionException.class,
+                    () -> replay.sendAsync(HttpRequest.newBuilder(base.resolve("/never-recorded")).build(), HttpResponse.BodyHandlers.ofByteArray()).get());
+            assertInstanceOf(IOException.class, missing.getCause());
+        }
+    }
+
+    @Test
+    void filesWithoutAnIndexAreScannedRecordByRecord() throws Exception {
+        URI base = record(server -> server.createContext("/", exchange -> {
+            byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }), "/first", "/second", "/third");
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path indexFile : files.filter(file -> file.toString().endsWith(".idx")).toList()) {
+                Files.delete(indexFile);
+            }
+        }
+
+        WarcArchive archive = WarcArchive.open(directory);
+
+        assertEquals(3, archive.size());
+        WarcArchive.ArchivedResponse second = archive.find(base.resolve("/second"));
+        assertEquals(200, second.statusCode());
+        assertEquals("/second", StandardCharsets.UTF_8.decode(second.body()).toString());
+        assertFalse(archive.contains(base.resolve("/fourth")));
+    }
+
+    private interface ServerSetup {
+        void setUp(HttpServer server);
+    }
+
+    /*
+     * Fetches the paths from a local server through a recording client, and returns the server's base URI.
+     */
+    private URI record(ServerSetup serverSetup, String... paths) throws IOException, InterruptedException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverSetup.setUp(server);
+        server.start();
+        URI base = URI.create("http://127.0.0.1:%d/".formatted(server.getAddress().getPort()));
+        try (WarcWriter writer = new WarcWriter(directory)) {
+            HttpClient recording = new WarcRecordingHttpClient(
+                    HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build(), writer);
+            for (String path : paths) {
+                recording.send(HttpRequest.newBuilder(base.resolve(path)).build(), HttpResponse.BodyHandlers.ofByteArray());
+            }
+            assertEquals(paths.length, writer.getExchangesWritten());
+        } finally {
+            server.stop(0);
+        }
+        return base;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
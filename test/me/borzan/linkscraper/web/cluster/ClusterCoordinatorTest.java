@@ -0,0 +1,177 @@
+package me.borzan.linkscraper.web.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.hyperlink.CrawlScope;
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkCrawlSettings;
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperService;
+import me.borzan.linkscraper.web.metrics.HostStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterCoordinatorTest {
+    private static final Duration IDLE_POLL_INTERVAL = Duration.ofMillis(50);
+
+    @Test
+    void everyNodeAgreesOnTheOwnerOfAHostAndEveryNodeOwnsAShare() {
+        List<ClusterNode> nodes = List.of(new ClusterNode("a", "127.0.0.1", 7401), new ClusterNode("b", "127.0.0.1", 7402),
+                new ClusterNode("c", "127.0.0.1", 7403));
+        HostPartitioner partitioner = new HostPartitioner(nodes);
+        HostPartitioner inOtherOrder = new HostPartitioner(List.of(nodes.get(2), nodes.get(0), nodes.get(1)));
+
+        Map<String, Integer> hostsPerNode = new HashMap<>();
+        for (int i = 0; i < 3_000; i++) {
+            String host = "host-%d.example.com".formatted(i);
+            ClusterNode owner = partitioner.ownerOf(host);
+            assertEquals(owner, inOtherOrder.ownerOf(host));
+            hostsPerNode.merge(owner.id(), 1, Integer::sum);
+        }
+
+        assertEquals(Set.of("a", "b", "c"), hostsPerNode.keySet());
+        hostsPerNode.values().forEach(hosts -> assertTrue(hosts > 500, "a node owns only %d of 3000 hosts".formatted(hosts)));
+    }
+
+    @Test
+    void forwardedHyperlinksReachTheirOwnerAndTheClusterEndsOnceEveryNodeIsIdle() throws Exception {
+        List<ClusterNode> nodes = loopbackNodes(3);
+        HostPartitioner partitioner = new HostPartitioner(nodes);
+        Map<String, Queue<Hyperlink>> received = new HashMap<>();
+        Map<String, AtomicBoolean> idle = new HashMap<>();
+        List<ClusterCoordinator> coordinators = new ArrayList<>();
+        try {
+            for (ClusterNode node : nodes) {
+                Queue<Hyperlink> intake = new ConcurrentLinkedQueue<>();
+                AtomicBoolean locallyIdle = new AtomicBoolean(false);
+                ClusterCoordinator coordinator = new ClusterCoordinator(ClusterSettings.of(node.id(), nodes).withIdlePollInterval(IDLE_POLL_INTERVAL));
+                coordinator.start(intake::addAll, locallyIdle::get);
+                coordinators.add(coordinator);
+                received.put(node.id(), intake);
+                idle.put(node.id(), locallyIdle);
+            }
+
+            ClusterCoordinator first = coordinators.get(0);
+            Map<String, Set<Hyperlink>> forwarded = new HashMap<>();
+            for (int i = 0; i < 200; i++) {
+                Hyperlink hyperlink = new Hyperlink(URI.create("https://host-%d.example.com/".formatted(i)), "");
+                if (!first.owns(hyperlink)) {
+                    first.forward(hyperlink);
+                    forwarded.computeIfAbsent(partitioner.ownerOf(hyperlink.getUri().getHost()).id(), id -> new HashSet<>()).add(hyperlink);
+                }
+            }
+            idle.get("a").set(true);
+            idle.get("b").set(true);
+
+            // one busy node keeps the whole cluster going
+            Thread.sleep(IDLE_POLL_INTERVAL.toMillis() * 10);
+            coordinators.forEach(coordinator -> assertFalse(coordinator.termination().isDone()));
+
+            idle.get("c").set(true);
+            for (ClusterCoordinator coordinator : coordinators) {
+                coordinator.termination().get(10, TimeUnit.SECONDS);
+            }
+
+            assertEquals(Set.of("b", "c"), forwarded.keySet());
+            assertTrue(received.get("a").isEmpty());
+            assertEquals(forwarded.get("b"), Set.copyOf(received.get("b")));
+            assertEquals(forwarded.get("c"), Set.copyOf(received.get("c")));
+            assertEquals(forwarded.get("b").size() + forwarded.get("c").size(), first.getHyperlinksSent());
+            assertEquals(first.getHyperlinksSent(), coordinators.get(1).getHyperlinksReceived() + coordinators.get(2).getHyperlinksReceived());
+        } finally {
+            coordinators.forEach(ClusterCoordinator::close);
+        }
+    }
+
+    @Test
+    void crawlOfAClusterVisitsEveryPageOnceOnTheNodeThatOwnsItsHost() throws Exception {
+        // four hosts on one port, every page links to a page of another host
+        List<String> hosts = List.of("127.0.0.1", "127.0.0.2", "127.0.0.3", "127.0.0.4");
+        Queue<String> requested = new ConcurrentLinkedQueue<>();
+        try (ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+            server.setExecutor(handlers);
+            server.createContext("/", exchange -> {
+                String host = exchange.getRequestHeaders().getFirst("Host").replaceFirst(":\\d+$", "");
+                String path = exchange.getRequestURI().getPath();
+                requested.add(host + path);
+                int next = (hosts.indexOf(host) + (path.equals("/") ? 1 : 2)) % hosts.size();
+                String page = "<a href=\"/page\">Page</a><a href=\"http://%s:%d/\">Next</a>"
+                        .formatted(hosts.get(next), server.getAddress().getPort());
+                byte[] body = page.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.start();
+
+            List<ClusterNode> nodes = loopbackNodes(3);
+            HostPartitioner partitioner = new HostPartitioner(nodes);
+            URI seed = URI.create("http://127.0.0.1:%d/".formatted(server.getAddress().getPort()));
+            List<PropagatingHyperlinkWebScraperService> services = new ArrayList<>();
+            try {
+                List<Future<Long>> crawls = new ArrayList<>();
+                for (ClusterNode node : nodes) {
+                    HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1)
+                            .crawlScope(CrawlScope.allowList(hosts))
+                            .cluster(ClusterSettings.of(node.id(), nodes).withIdlePollInterval(IDLE_POLL_INTERVAL))
+                            .build();
+                    PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings);
+                    services.add(service);
+                    crawls.add(CompletableFuture.supplyAsync(() -> service.scrapeUri(seed, hyperlink -> {}), handlers));
+                }
+                for (Future<Long> crawl : crawls) {
+                    crawl.get(30, TimeUnit.SECONDS);
+                }
+
+                Set<String> expected = new HashSet<>();
+                hosts.forEach(host -> expected.addAll(List.of(host + "/", host + "/page")));
+                assertEquals(expected, Set.copyOf(requested));
+                assertEquals(expected.size(), requested.size());
+                for (int i = 0; i < nodes.size(); i++) {
+                    ClusterNode node = nodes.get(i);
+                    for (HostStatistics.Snapshot host : services.get(i).getMetrics().snapshot().hostsBySlowest()) {
+                        assertEquals(node, partitioner.ownerOf(host.host()), "node '%s' fetched pages of '%s'".formatted(node.id(), host.host()));
+                    }
+                }
+            } finally {
+                services.forEach(PropagatingHyperlinkWebScraperService::close);
+                server.stop(0);
+            }
+        }
+    }
+
+    private static List<ClusterNode> loopbackNodes(int count) throws IOException {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                nodes.add(new ClusterNode(String.valueOf((char) ('a' + i)), "127.0.0.1", socket.getLocalPort()));
+            }
+        }
+        return nodes;
+    }
+}
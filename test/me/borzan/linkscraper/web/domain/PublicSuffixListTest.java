@@ -0,0 +1,87 @@
+package me.borzan.linkscraper.web.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PublicSuffixListTest {
+    private static final String RULES = """
+            // a comment
+            com
+            uk
+            co.uk
+            jp
+            *.kawasaki.jp
+            !city.kawasaki.jp
+            *.ck
+            !www.ck
+            """;
+
+    @Test
+    void registrableDomainIsOneLabelMoreThanTheLongestMatchingRule() throws IOException {
+        PublicSuffixList list = load(RULES);
+
+        assertEquals("example.com", list.registrableDomain("example.com"));
+        assertEquals("example.com", list.registrableDomain("www.example.com"));
+        assertEquals("example.co.uk", list.registrableDomain("www.example.co.uk"));
+        assertEquals("co.uk", list.registrableDomain("co.uk"));
+        assertEquals(4, list.registrableDomainStart("www.example.co.uk"));
+        assertEquals(-1, list.registrableDomainStart("co.uk"));
+    }
+
+    @Test
+    void wildcardRuleMakesEveryLabelBelowItAPublicSuffix() throws IOException {
+        PublicSuffixList list = load(RULES);
+
+        assertEquals(-1, list.registrableDomainStart("test.ck"));
+        assertEquals("b.test.ck", list.registrableDomain("b.test.ck"));
+        assertEquals("b.test.ck", list.registrableDomain("a.b.test.ck"));
+        assertEquals(-1, list.registrableDomainStart("test.kawasaki.jp"));
+        assertEquals("b.test.kawasaki.jp", list.registrableDomain("a.b.test.kawasaki.jp"));
+        // the wildcard needs a label to match, kawasaki.jp itself only matches jp
+        assertEquals("kawasaki.jp", list.registrableDomain("kawasaki.jp"));
+    }
+
+    @Test
+    void exceptionRuleMakesTheLabelItNamesRegistrableAgain() throws IOException {
+        PublicSuffixList list = load(RULES);
+
+        assertEquals("www.ck", list.registrableDomain("www.ck"));
+        assertEquals("www.ck", list.registrableDomain("www.www.ck"));
+        assertEquals("city.kawasaki.jp", list.registrableDomain("city.kawasaki.jp"));
+        assertEquals("city.kawasaki.jp", list.registrableDomain("www.city.kawasaki.jp"));
+    }
+
+    @Test
+    void unlistedTopLevelDomainIsAPublicSuffixByItself() throws IOException {
+        PublicSuffixList list = load(RULES);
+
+        assertEquals("example.example", list.registrableDomain("www.example.example"));
+        assertEquals(-1, list.registrableDomainStart("example"));
+    }
+
+    @Test
+    void ipAddressesAreTheirOwnDomain() throws IOException {
+        PublicSuffixList list = load(RULES);
+
+        assertEquals("192.168.0.1", list.registrableDomain("192.168.0.1"));
+        assertEquals("[::1]", list.registrableDomain("[::1]"));
+    }
+
+    @Test
+    void bundledListHasTheIcannAndPrivateSections() {
+        PublicSuffixList list = PublicSuffixList.getDefault();
+
+        assertEquals("example.co.uk", list.registrableDomain("www.example.co.uk"));
+        assertEquals("www.ck", list.registrableDomain("www.www.ck"));
+        assertEquals("someone.github.io", list.registrableDomain("docs.someone.github.io"));
+    }
+
+    private static PublicSuffixList load(String rules) throws IOException {
+        return PublicSuffixList.load(new ByteArrayInputStream(rules.getBytes(StandardCharsets.UTF_8)));
+    }
+}
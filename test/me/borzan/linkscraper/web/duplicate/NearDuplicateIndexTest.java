@@ -0,0 +1,53 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NearDuplicateIndexTest {
+    private static final long FINGERPRINT = 0x0123_4567_89ab_cdefL;
+
+    @Test
+    void fingerprintsWithinTheHammingDistanceAreFoundWhicheverBandsTheyDifferIn() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        assertFalse(index.containsNearDuplicateOrAdd(FINGERPRINT));
+
+        assertTrue(index.containsNearDuplicateOrAdd(FINGERPRINT));
+        // three bits in three bands, only the fourth band still agrees
+        assertTrue(index.containsNearDuplicateOrAdd(FINGERPRINT ^ (1L | 1L << 16 | 1L << 32)));
+        // three bits in one band
+        assertTrue(index.containsNearDuplicateOrAdd(FINGERPRINT ^ (1L << 60 | 1L << 55 | 1L << 48)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void fingerprintsBeyondTheHammingDistanceAreAddedAsDistinctPages() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        index.containsNearDuplicateOrAdd(FINGERPRINT);
+
+        // four bits in four bands, no band agrees
+        assertFalse(index.containsNearDuplicateOrAdd(FINGERPRINT ^ (1L | 1L << 16 | 1L << 32 | 1L << 48)));
+        // four bits in one band, the other bands make it a candidate, the comparison rules it out
+        long sharingThreeBands = FINGERPRINT ^ 0xfL;
+        assertFalse(index.containsNearDuplicateOrAdd(sharingThreeBands));
+        assertEquals(3, index.size());
+
+        assertTrue(index.containsNearDuplicateOrAdd(sharingThreeBands ^ 1L << 63));
+    }
+
+    @Test
+    void bucketsGrowBeyondTheirInitialCapacity() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        // all of them share the lowest band, and differ in 8 bits from each other elsewhere
+        for (long i = 1; i <= 100; i++) {
+            assertFalse(index.containsNearDuplicateOrAdd(i * 0x0101_0101_0000L & 0xffff_ffff_ffff_0000L | 0xbeefL));
+        }
+
+        assertEquals(100, index.size());
+        for (long i = 1; i <= 100; i++) {
+            assertTrue(index.containsNearDuplicateOrAdd(i * 0x0101_0101_0000L & 0xffff_ffff_ffff_0000L | 0xbeefL));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimHashFingerprinterTest {
+    private static final String[] VOCABULARY = ("the a crawler page link frontier host robots sitemap request response body "
+            + "label domain queue visit fetch parse token shingle hash bit band index pattern trap calendar session "
+            + "cache metric latency budget depth score node cluster").split(" ");
+
+    @Test
+    void pagesThatDifferInADateOrAWordAreNearDuplicates() {
+        List<String> words = article(new Random(1), 1000);
+        List<String> edited = new ArrayList<>(words);
+        edited.set(500, "session");
+
+        SimHashFingerprinter original = fingerprint("<html><body><div>Updated 2024-05-17</div><p>"
+                + String.join(" ", words) + "</p></body></html>");
+        SimHashFingerprinter nearDuplicate = fingerprint("<html><body><div>Updated 2024-05-18</div><p>"
+                + String.join(" ", edited) + "</p><script>var sid = 'abc';</script></body></html>");
+
+        assertTrue(distance(original, nearDuplicate) <= NearDuplicateIndex.MAX_HAMMING_DISTANCE,
+                "the fingerprints differ in %d bits".formatted(distance(original, nearDuplicate)));
+    }
+
+    @Test
+    void differentPagesAreFarApart() {
+        SimHashFingerprinter first = fingerprint("<p>" + String.join(" ", article(new Random(1), 1000)) + "</p>");
+        SimHashFingerprinter second = fingerprint("<p>" + String.join(" ", article(new Random(2), 1000)) + "</p>");
+
+        // unrelated fingerprints differ in about half of their bits
+        assertTrue(distance(first, second) > 16, "the fingerprints differ in only %d bits".formatted(distance(first, second)));
+    }
+
+    @Test
+    void markupCaseAndScriptsDoNotChangeTheFingerprint() {
+        SimHashFingerprinter plain = fingerprint("<p>one two three four five six</p>");
+        SimHashFingerprinter marked = fingerprint("<div class=\"x\">One <b>two</b>\nTHREE, four;</div><script>seven eight</script><p>five six</p>");
+
+        assertEquals(3, plain.getShingleCount());
+        assertEquals(plain.getShingleCount(), marked.getShingleCount());
+        assertEquals(plain.fingerprint(), marked.fingerprint());
+    }
+
+    @Test
+    void wordsSplitAcrossBuffersAreStillOneWord() {
+        byte[] html = "<p>alpha beta gamma delta epsilon</p>".getBytes(StandardCharsets.UTF_8);
+        SimHashFingerprinter whole = fingerprint("<p>alpha beta gamma delta epsilon</p>");
+
+        SimHashFingerprinter split = new SimHashFingerprinter();
+        HtmlTokenizer tokenizer = new HtmlTokenizer(split);
+        for (int i = 0; i < html.length; i++) {
+            tokenizer.feed(html, i, 1);
+        }
+        tokenizer.finish();
+
+        assertEquals(2, split.getShingleCount());
+        assertEquals(whole.fingerprint(), split.fingerprint());
+    }
+
+    private static List<String> article(Random random, int words) {
+        List<String> article = new ArrayList<>();
+        for (int i = 0; i < words; i++) {
+            article.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return article;
+    }
+
+    private static SimHashFingerprinter fingerprint(String html) {
+        SimHashFingerprinter fingerprinter = new SimHashFingerprinter();
+        HtmlTokenizer tokenizer = new HtmlTokenizer(fingerprinter);
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        tokenizer.feed(bytes, 0, bytes.length);
+        tokenizer.finish();
+        return fingerprinter;
+    }
+
+    private static int distance(SimHashFingerprinter first, SimHashFingerprinter second) {
+        return Long.bitCount(first.fingerprint() ^ second.fingerprint());
+    }
+}
@@ -0,0 +1,74 @@
+package me.borzan.linkscraper.web.duplicate;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlPatternStatisticsTest {
+    private static final NearDuplicatePolicy POLICY = new NearDuplicatePolicy(1, 4, 0.5);
+
+    @Test
+    void variableSegmentsAndQueryValuesShareAPattern() {
+        assertEquals("example.com/calendar/*/*?sid&view",
+                UrlPatternStatistics.patternOf(URI.create("https://example.com/calendar/2024/05?view=week&sid=abc")));
+        assertEquals("example.com/calendar/*/*?sid&view",
+                UrlPatternStatistics.patternOf(URI.create("https://example.com/calendar/2031/11?sid=xyz&view=day&view=month")));
+        assertEquals("example.com:8080/blog/*", UrlPatternStatistics.patternOf(URI.create("http://example.com:8080/blog/" + "x".repeat(33))));
+        assertEquals("example.com/about", UrlPatternStatistics.patternOf(URI.create("https://example.com/about")));
+    }
+
+    @Test
+    void patternIsThrottledOnceEnoughOfItsPagesWereNearDuplicates() {
+        UrlPatternStatistics statistics = new UrlPatternStatistics(POLICY);
+        for (int day = 1; day <= 3; day++) {
+            statistics.recordPage(calendar(day), day > 1);
+        }
+        // two of three near-duplicates, but too few pages to tell yet
+        assertFalse(statistics.isThrottled(calendar(10)));
+
+        statistics.recordPage(calendar(4), false);
+        assertTrue(statistics.isThrottled(calendar(11)));
+        assertFalse(statistics.isThrottled(URI.create("https://example.com/about")));
+        assertEquals(List.of(new UrlPatternStatistics.PatternSummary("example.com/calendar/*", 4, 2, 1)), statistics.throttledPatterns());
+    }
+
+    @Test
+    void throttledPatternStillLetsEverySixteenthUrlThrough() {
+        UrlPatternStatistics statistics = new UrlPatternStatistics(POLICY);
+        for (int day = 1; day <= 4; day++) {
+            statistics.recordPage(calendar(day), true);
+        }
+
+        int letThrough = 0;
+        for (int day = 100; day < 164; day++) {
+            if (!statistics.isThrottled(calendar(day))) {
+                letThrough++;
+            }
+        }
+        assertEquals(4, letThrough);
+    }
+
+    @Test
+    void patternRecoversOnceItsSampledPagesTurnOutDistinct() {
+        UrlPatternStatistics statistics = new UrlPatternStatistics(POLICY);
+        for (int day = 1; day <= 4; day++) {
+            statistics.recordPage(calendar(day), true);
+        }
+        assertEquals(1, statistics.throttledPatterns().size());
+
+        for (int day = 5; day <= 9; day++) {
+            statistics.recordPage(calendar(day), false);
+        }
+        assertFalse(statistics.isThrottled(calendar(10)));
+        assertEquals(List.of(), statistics.throttledPatterns());
+    }
+
+    private static URI calendar(int day) {
+        return URI.create("https://example.com/calendar/" + day);
+    }
+}
@@ -0,0 +1,113 @@
+package me.borzan.linkscraper.web.extract;
+
+import me.borzan.linkscraper.web.html.HtmlAttributes;
+import me.borzan.linkscraper.web.html.HtmlTokenListener;
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageExtractorsTest {
+    private static final URI PAGE = URI.create("https://example.com/articles/");
+    private static final String HTML = """
+            <html><head><link rel="canonical" href="/articles/latest"></head>
+            <body><p>Hello</p><img src="cat.png" alt=" A cat "><img data-src="/dog.png"></body></html>""";
+
+    @Test
+    void everyExtractorSeesEveryTokenOfOnePassAndFillsItsOwnSink() {
+        CollectingExtractionSink<URI> canonicalLinks = new CollectingExtractionSink<>();
+        CollectingExtractionSink<ImageExtractor.Image> images = new CollectingExtractionSink<>();
+        CollectingExtractionSink<String> firstTokens = new CollectingExtractionSink<>();
+        CollectingExtractionSink<String> secondTokens = new CollectingExtractionSink<>();
+        PageExtractors extractors = PageExtractors.NONE
+                .with(new CanonicalLinkExtractor(), canonicalLinks)
+                .with(new TokenRecordingExtractor(), firstTokens)
+                .with(new ImageExtractor(), images)
+                .with(new TokenRecordingExtractor(), secondTokens);
+
+        tokenize(extractors.newPageListener(PAGE));
+
+        assertEquals(List.of(new Extraction<>(PAGE, URI.create("https://example.com/articles/latest"))), canonicalLinks.result().result());
+        assertEquals(List.of(new Extraction<>(PAGE, new ImageExtractor.Image(URI.create("https://example.com/articles/cat.png"), "A cat")),
+                new Extraction<>(PAGE, new ImageExtractor.Image(URI.create("https://example.com/dog.png"), ""))), images.result().result());
+        List<String> tokens = firstTokens.result().result().stream().map(Extraction::value).toList();
+        assertTrue(tokens.contains("text Hello"));
+        assertEquals("end of document", tokens.get(tokens.size() - 1));
+        // both see the text out of the same buffer, which must not have been overwritten in between
+        assertEquals(tokens, secondTokens.result().result().stream().map(Extraction::value).toList());
+    }
+
+    @Test
+    void singleExtractorGetsItsListenerWithoutAFanOut() {
+        CollectingExtractionSink<String> tokens = new CollectingExtractionSink<>();
+        List<HtmlTokenListener> created = new ArrayList<>();
+        PageExtractors extractors = PageExtractors.NONE.with((pageUri, found) -> {
+            HtmlTokenListener listener = new TokenRecordingExtractor().newListener(pageUri, found);
+            created.add(listener);
+            return listener;
+        }, tokens);
+
+        assertEquals(List.of(), created);
+        HtmlTokenListener listener = extractors.newPageListener(PAGE);
+        assertEquals(List.of(listener), created);
+    }
+
+    @Test
+    void addingAnExtractorLeavesTheOriginalUnchanged() {
+        PageExtractors one = PageExtractors.NONE.with(new ImageExtractor(), new CollectingExtractionSink<>());
+        PageExtractors two = one.with(new CanonicalLinkExtractor(), new CollectingExtractionSink<>());
+
+        assertTrue(PageExtractors.NONE.isEmpty());
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertThrows(IllegalStateException.class, () -> one.with(new ImageExtractor(), null));
+    }
+
+    private static void tokenize(HtmlTokenListener listener) {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(listener);
+        byte[] bytes = HTML.getBytes(StandardCharsets.UTF_8);
+        // in small chunks, the way a body arrives from the network
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            tokenizer.feed(bytes, offset, Math.min(7, bytes.length - offset));
+        }
+        tokenizer.finish();
+    }
+
+    private static final class TokenRecordingExtractor implements PageExtractor<String> {
+        @Override
+        public HtmlTokenListener newListener(URI pageUri, Consumer<String> found) {
+            return new HtmlTokenListener() {
+                @Override
+                public void startTag(String tagName, HtmlAttributes attributes) {
+                    found.accept("start " + tagName);
+                }
+
+                @Override
+                public void endTag(String tagName) {
+                    found.accept("end " + tagName);
+                }
+
+                @Override
+                public void text(byte[] buffer, int offset, int length) {
+                    String text = new String(buffer, offset, length, StandardCharsets.UTF_8).strip();
+                    if (!text.isEmpty()) {
+                        found.accept("text " + text);
+                    }
+                }
+
+                @Override
+                public void endOfDocument() {
+                    found.accept("end of document");
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.borzan.linkscraper.web.html;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlTagNamesTest {
+    @Test
+    void knownNamesAreFoundRegardlessOfWhatFollowsInTheBuffer() {
+        byte[] buffer = "linkstuff".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals("link", HtmlTagNames.HTML.find(buffer, 4));
+        assertEquals("li", HtmlTagNames.HTML.find(buffer, 2));
+        assertNull(HtmlTagNames.HTML.find(buffer, 3));
+        assertNull(HtmlTagNames.HTML.find(buffer, 9));
+    }
+
+    @Test
+    void addedNamesAreOnlyKnownToTheTokenizersThatAreGivenThem() {
+        HtmlTagNames sitemapNames = HtmlTagNames.HTML.with("loc", "URL");
+        byte[] loc = "loc".getBytes(StandardCharsets.US_ASCII);
+
+        assertNull(HtmlTagNames.HTML.find(loc, 3));
+        assertEquals("loc", sitemapNames.find(loc, 3));
+        assertEquals("url", sitemapNames.find("url".getBytes(StandardCharsets.US_ASCII), 3));
+        assertEquals("a", sitemapNames.find("a".getBytes(StandardCharsets.US_ASCII), 1));
+
+        // a known name is the same String for every tag, an unknown one a new String each time
+        List<String> withSitemapNames = startTags("<loc></loc><LOC>", sitemapNames);
+        List<String> withHtmlNames = startTags("<loc></loc><LOC>", HtmlTagNames.HTML);
+        assertEquals(List.of("loc", "loc"), withSitemapNames);
+        assertEquals(List.of("loc", "loc"), withHtmlNames);
+        assertTrue(withSitemapNames.get(0) == withSitemapNames.get(1));
+        assertFalse(withHtmlNames.get(0) == withHtmlNames.get(1));
+    }
+
+    private static List<String> startTags(String document, HtmlTagNames tagNames) {
+        List<String> startTags = new ArrayList<>();
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlTokenListener() {
+            @Override
+            public void startTag(String tagName, HtmlAttributes attributes) {
+                startTags.add(tagName);
+            }
+        }, tagNames);
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        tokenizer.feed(bytes, 0, bytes.length);
+        tokenizer.finish();
+        return startTags;
+    }
+}
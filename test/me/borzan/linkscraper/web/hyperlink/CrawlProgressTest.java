@@ -0,0 +1,203 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlProgressTest {
+    @Test
+    void crawlIsOverOnceTheLastPageFinishedAndTheFrontierIsEmpty() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(4);
+        pages.offer("/");
+
+        progress.dispatch();
+        assertEquals(List.of("/"), pages.visited());
+        assertFalse(progress.isOver());
+
+        // the seed finds two pages while it is still being visited
+        pages.offer("/a");
+        pages.offer("/b");
+        assertEquals(List.of("/", "/a", "/b"), pages.visited());
+
+        progress.onPageFinished();
+        progress.onPageFinished();
+        assertFalse(progress.isOver());
+        assertFalse(progress.isIdle());
+
+        progress.onPageFinished();
+        assertTrue(progress.isOver());
+    }
+
+    @Test
+    void pendingWorkKeepsAnIdleCrawlGoingUntilItFinished() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(4);
+
+        // e.g. the seed waiting for its robots.txt
+        progress.beginPendingWork();
+        progress.dispatch();
+        assertFalse(progress.isOver());
+
+        pages.frontier.offer(hyperlink("/"));
+        progress.endPendingWork();
+        assertEquals(List.of("/"), pages.visited());
+        assertFalse(progress.isOver());
+
+        progress.beginPendingWork();
+        progress.onPageFinished();
+        assertFalse(progress.isOver());
+
+        // pending work that ends up adding nothing, like a disallowed hyperlink
+        progress.endPendingWork();
+        assertTrue(progress.isOver());
+    }
+
+    @Test
+    void noMorePagesThanSlotsAreVisitedAtOnce() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(2);
+        pages.frontier.offer(hyperlink("/1"));
+        pages.frontier.offer(hyperlink("/2"));
+        pages.frontier.offer(hyperlink("/3"));
+
+        progress.dispatch();
+        assertEquals(List.of("/1", "/2"), pages.visited());
+        assertEquals(2, progress.getPagesInFlight());
+
+        progress.onPageFinished();
+        assertEquals(List.of("/1", "/2", "/3"), pages.visited());
+        progress.onPageFinished();
+        progress.onPageFinished();
+        assertTrue(progress.isOver());
+    }
+
+    @Test
+    void concurrencyShareCapsTheSlotsBelowTheMaximum() {
+        RecordingPages pages = new RecordingPages();
+        int[] share = {1};
+        CrawlProgress progress = new CrawlProgress(pages.frontier, 8, () -> share[0], pages);
+        pages.progress = progress;
+        for (int i = 0; i < 4; i++) {
+            pages.frontier.offer(hyperlink("/" + i));
+        }
+
+        progress.dispatch();
+        assertEquals(1, progress.getPagesInFlight());
+
+        share[0] = 3;
+        progress.dispatch();
+        assertEquals(3, progress.getPagesInFlight());
+    }
+
+    @Test
+    void fullServiceLeavesHyperlinksInTheFrontierUntilItAcceptsRequestsAgain() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(4);
+        pages.acceptsRequests = false;
+        pages.frontier.offer(hyperlink("/"));
+
+        progress.dispatch();
+        assertEquals(List.of(), pages.visited());
+        assertEquals(0, progress.getPagesInFlight());
+        assertFalse(progress.isOver());
+
+        pages.acceptsRequests = true;
+        progress.dispatch();
+        assertEquals(List.of("/"), pages.visited());
+    }
+
+    @Test
+    void crawlThatMayNotPropagateIsOverDespiteItsFrontier() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(4);
+        pages.frontier.offer(hyperlink("/"));
+        pages.frontier.offer(hyperlink("/a"));
+        progress.dispatch();
+        progress.dispatch();
+
+        // e.g. the budget is used up while pages are in flight
+        pages.canPropagate = false;
+        progress.onPageFinished();
+        assertFalse(progress.isOver());
+        progress.onPageFinished();
+        assertTrue(progress.isOver());
+        assertEquals(List.of("/", "/a"), pages.visited());
+    }
+
+    @Test
+    void idleNodeOfAClusterOnlyEndsWhenTold() {
+        RecordingPages pages = new RecordingPages();
+        CrawlProgress progress = pages.progress(4);
+        pages.mayEndWhenIdle = false;
+
+        progress.dispatch();
+        assertTrue(progress.isIdle());
+        assertFalse(progress.isOver());
+
+        progress.end();
+        assertTrue(progress.isOver());
+    }
+
+    private static Hyperlink hyperlink(String path) {
+        return new Hyperlink(URI.create("https://example.com").resolve(path), "");
+    }
+
+    /*
+     * Visits are only recorded, each one is finished by the test calling onPageFinished.
+     */
+    private static final class RecordingPages implements CrawlProgress.Pages {
+        private final HyperlinkFrontier frontier = new ConcurrentHyperlinkFrontier();
+        private final List<Hyperlink> visits = new ArrayList<>();
+        private CrawlProgress progress;
+        private boolean canPropagate = true;
+        private boolean acceptsRequests = true;
+        private boolean mayEndWhenIdle = true;
+
+        private CrawlProgress progress(int maxConcurrentRequests) {
+            progress = new CrawlProgress(frontier, maxConcurrentRequests, null, this);
+            return progress;
+        }
+
+        // the way a page adds what it found
+        private void offer(String path) {
+            frontier.offer(hyperlink(path));
+            progress.dispatch();
+        }
+
+        private List<String> visited() {
+            return visits.stream().map(hyperlink -> hyperlink.getUri().getPath()).toList();
+        }
+
+        @Override
+        public boolean canPropagate() {
+            return canPropagate;
+        }
+
+        @Override
+        public boolean canSendRequest() {
+            return acceptsRequests;
+        }
+
+        @Override
+        public Hyperlink poll() {
+            return frontier.poll();
+        }
+
+        @Override
+        public void visit(Hyperlink hyperlink) {
+            visits.add(hyperlink);
+        }
+
+        @Override
+        public boolean mayEndWhenIdle() {
+            return mayEndWhenIdle;
+        }
+    }
+}
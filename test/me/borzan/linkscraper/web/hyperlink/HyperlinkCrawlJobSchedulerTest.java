@@ -0,0 +1,146 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.hyperlink.PropagatingHyperlinkWebScraperWorkerTest.Site;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperlinkCrawlJobSchedulerTest {
+    // many connections per host without delays, so only the shares of the jobs limit what is in flight
+    private static final HostPolitenessPolicy IMPATIENT = new HostPolitenessPolicy(16, 1000.0, 0.0, Duration.ofSeconds(1));
+
+    @Test
+    void jobsWaitForTheirTurnAndEndUpSucceededOrCancelled() throws Exception {
+        Site site = new Site(Map.of(
+                "/", "<a href=\"/slow\">Slow</a><a href=\"/fast\">Fast</a>",
+                "/slow", "nothing to follow",
+                "/fast", "nothing to follow"));
+        site.hold("/slow");
+        RecordingSinks sinks = new RecordingSinks();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(HyperlinkCrawlSettings.defaults(5, 1));
+             HyperlinkCrawlJobScheduler scheduler = new HyperlinkCrawlJobScheduler(service, 1, sinks)) {
+            HyperlinkCrawlJob first = scheduler.submit(site.uri("/"));
+            HyperlinkCrawlJob second = scheduler.submit(site.uri("/fast"));
+            site.awaitRequest("/slow");
+
+            assertEquals(HyperlinkCrawlJob.State.RUNNING, first.snapshot().state());
+            assertEquals(HyperlinkCrawlJob.State.QUEUED, second.snapshot().state());
+            assertEquals(1, scheduler.getRunningJobs());
+            assertEquals(1, scheduler.getQueuedJobs());
+
+            // a queued job is over right away, without ever opening a sink
+            assertTrue(scheduler.cancel(second.getId()));
+            assertEquals(HyperlinkCrawlJob.State.CANCELLED, second.completion().getNow(null));
+            assertNull(second.snapshot().startedAt());
+            assertEquals(0, scheduler.getQueuedJobs());
+
+            site.release();
+            assertEquals(HyperlinkCrawlJob.State.SUCCEEDED, first.completion().get(10, TimeUnit.SECONDS));
+            HyperlinkCrawlJob.Snapshot snapshot = first.snapshot();
+            assertEquals(3, snapshot.pagesRequested());
+            assertEquals(2, snapshot.hyperlinksFound());
+            assertTrue(snapshot.finishedAt() != null && !snapshot.finishedAt().isBefore(snapshot.startedAt()));
+            // the results are complete once the job is over
+            assertTrue(sinks.closed.contains(first.getId()));
+            assertEquals(Set.of(site.uri("/slow"), site.uri("/fast")), Set.copyOf(sinks.hyperlinks.get(first.getId())));
+            assertEquals(Set.of(first.getId()), sinks.hyperlinks.keySet());
+
+            assertEquals(List.of(first, second), scheduler.getJobs());
+            assertFalse(scheduler.cancel(42));
+            assertThrows(IllegalStateException.class, () -> scheduler.submit(URI.create("mailto:someone@example.com")));
+            scheduler.close();
+            assertThrows(IllegalStateException.class, () -> scheduler.submit(site.uri("/")));
+        }
+    }
+
+    @Test
+    void runningJobsShareThePagesInFlightAndTakeOverTheShareOfAJobThatEnded() throws Exception {
+        Map<String, String> pages = new HashMap<>();
+        pages.put("/a", links("/a/", 8));
+        pages.put("/b", links("/b/", 8));
+        Site site = new Site(pages);
+        for (int i = 0; i < 8; i++) {
+            site.hold("/a/" + i);
+            site.hold("/b/" + i);
+        }
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1).maxConcurrentRequests(4).politenessPolicy(IMPATIENT).build();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings);
+             HyperlinkCrawlJobScheduler scheduler = new HyperlinkCrawlJobScheduler(service, 2, new RecordingSinks())) {
+            scheduler.submit(site.uri("/a"));
+            HyperlinkCrawlJob second = scheduler.submit(site.uri("/b"));
+
+            // two jobs, four pages in flight at most, so two each
+            awaitRequests(site, "/a/", 2);
+            awaitRequests(site, "/b/", 2);
+            Thread.sleep(300);
+            assertEquals(2, requests(site, "/a/"));
+            assertEquals(2, requests(site, "/b/"));
+
+            scheduler.cancel(second.getId());
+            assertEquals(HyperlinkCrawlJob.State.CANCELLED, second.completion().get(10, TimeUnit.SECONDS));
+            awaitRequests(site, "/a/", 4);
+            Thread.sleep(300);
+            assertEquals(4, requests(site, "/a/"));
+        }
+    }
+
+    private static String links(String prefix, int count) {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            page.append("<a href=\"%s%d\">%d</a>".formatted(prefix, i, i));
+        }
+        return page.toString();
+    }
+
+    private static long requests(Site site, String prefix) {
+        return site.requestedPaths.stream().filter(path -> path.startsWith(prefix)).count();
+    }
+
+    private static void awaitRequests(Site site, String prefix, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requests(site, prefix) < count) {
+            assertTrue(System.nanoTime() < deadline, "only %d pages of '%s' were requested".formatted(requests(site, prefix), prefix));
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class RecordingSinks implements HyperlinkCrawlJobScheduler.ResultSinkFactory {
+        private final Map<Long, Queue<URI>> hyperlinks = new ConcurrentHashMap<>();
+        private final Set<Long> closed = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public HyperlinkSink open(HyperlinkCrawlJob job) {
+            Queue<URI> found = new ConcurrentLinkedQueue<>();
+            hyperlinks.put(job.getId(), found);
+            return new HyperlinkSink() {
+                @Override
+                public void accept(Hyperlink hyperlink) {
+                    found.add(hyperlink.getUri());
+                }
+
+                @Override
+                public void close() {
+                    closed.add(job.getId());
+                }
+            };
+        }
+    }
+}
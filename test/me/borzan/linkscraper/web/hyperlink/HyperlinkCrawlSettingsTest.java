@@ -0,0 +1,68 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.WebScraperService;
+import me.borzan.linkscraper.web.extract.PageExtractors;
+import me.borzan.linkscraper.web.politeness.HostPolitenessPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HyperlinkCrawlSettingsTest {
+    @Test
+    void defaultsAreThoseOfTheWebScraperService() {
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.defaults(5, 10);
+
+        assertEquals(5, settings.connectionTimeoutSeconds());
+        assertEquals(10, settings.maxScrapingPropagationDurationMinutes());
+        assertEquals(WebScraperService.DEFAULT_MAX_CONCURRENT_REQUESTS, settings.maxConcurrentRequests());
+        assertEquals(WebScraperService.DEFAULT_MAX_QUEUED_REQUESTS, settings.maxQueuedRequests());
+        assertEquals(WebScraperService.DEFAULT_MAX_RESPONSE_BODY_BYTES, settings.maxResponseBodyBytes());
+        assertEquals(HostPolitenessPolicy.DEFAULT, settings.politenessPolicy());
+        assertEquals(HyperlinkCrawlSettings.UNLIMITED_FRONTIER_HEAP_BUDGET, settings.frontierHeapBudgetBytes());
+        assertEquals(CrawlScope.SAME_REGISTRABLE_DOMAIN, settings.crawlScope());
+        assertEquals(CrawlLimits.UNLIMITED, settings.limits());
+        assertEquals(PageExtractors.NONE, settings.extractors());
+        assertNull(settings.checkpointDirectory());
+        assertNull(settings.scorer());
+    }
+
+    @Test
+    void toBuilderKeepsEverySettingAndLeavesTheOriginalUnchanged() {
+        HyperlinkCrawlSettings original = HyperlinkCrawlSettings.builder(5, 10)
+                .maxConcurrentRequests(7)
+                .maxQueuedRequests(70)
+                .frontierHeapBudget(1_000)
+                .checkpointing(Path.of("checkpoints"), Duration.ofSeconds(30))
+                .maxResponseBodyBytes(4_096)
+                .uriCanonicalizer(UriCanonicalizer.KEEP_QUERY)
+                .build();
+
+        assertEquals(original, original.toBuilder().build());
+
+        HyperlinkCrawlSettings changed = original.toBuilder().maxConcurrentRequests(3).build();
+        assertEquals(3, changed.maxConcurrentRequests());
+        assertEquals(7, original.maxConcurrentRequests());
+        assertEquals(original.checkpointDirectory(), changed.checkpointDirectory());
+        assertEquals(original.uriCanonicalizer(), changed.uriCanonicalizer());
+    }
+
+    @Test
+    void settingsThatOnlyWorkTogetherAreValidatedOnBuild() {
+        HyperlinkCrawlSettings.Builder builder = HyperlinkCrawlSettings.builder(5, 10)
+                .scorer((hyperlink, inLinks) -> inLinks)
+                .checkpointing(Path.of("checkpoints"), Duration.ofSeconds(30));
+        assertThrows(IllegalStateException.class, builder::build);
+
+        // the conflict is gone again before build, so the order they were set in does not matter
+        builder.checkpointing(null, Duration.ofSeconds(30));
+        assertNull(builder.build().checkpointDirectory());
+
+        assertThrows(IllegalStateException.class, () -> HyperlinkCrawlSettings.builder(5, 10).maxQueuedRequests(0).build());
+        assertThrows(IllegalStateException.class, () -> HyperlinkCrawlSettings.builder(5, -1).build());
+    }
+}
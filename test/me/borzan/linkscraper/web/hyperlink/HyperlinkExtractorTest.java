@@ -0,0 +1,49 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HyperlinkExtractorTest {
+    @Test
+    void decodesCharacterReferencesInHrefsAndLabels() {
+        List<Hyperlink> hyperlinks = extract("<a href=\"/search?x=1&amp;y=2\">Search &amp; find</a>"
+                + "<a href='/a&#x2F;b?q=1&#38;r=2'>Caf&#233; &copy; &bogus; &amp</a>");
+
+        assertEquals(2, hyperlinks.size());
+        assertEquals(URI.create("https://example.com/search?x=1&y=2"), hyperlinks.get(0).getUri());
+        assertEquals("Search & find", hyperlinks.get(0).getLabel());
+        assertEquals(URI.create("https://example.com/a/b?q=1&r=2"), hyperlinks.get(1).getUri());
+        assertEquals("Café © &bogus; &amp", hyperlinks.get(1).getLabel());
+    }
+
+    @Test
+    void longLabelIsCutAfterTheLastCompleteCharacterAndReference() {
+        String prefix = "a".repeat(511);
+        List<Hyperlink> hyperlinks = extract("<a href=\"/1\">" + prefix + "é and more</a>"
+                + "<a href=\"/2\">" + "a".repeat(509) + "&amp; more</a>"
+                + "<a href=\"/3\">" + "a".repeat(508) + "&amp; more</a>"
+                + "<a href=\"/4\">" + "a".repeat(502) + "&copy;&amp;</a>");
+
+        assertEquals(prefix, hyperlinks.get(0).getLabel());
+        assertEquals("a".repeat(509), hyperlinks.get(1).getLabel());
+        // "&amp" fits, but without its semicolon it would not be decoded
+        assertEquals("a".repeat(508), hyperlinks.get(2).getLabel());
+        assertEquals("a".repeat(502) + "©", hyperlinks.get(3).getLabel());
+    }
+
+    private static List<Hyperlink> extract(String html) {
+        List<Hyperlink> hyperlinks = new ArrayList<>();
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HyperlinkExtractor(URI.create("https://example.com/"), UriCanonicalizer.DEFAULT, hyperlinks::add));
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        tokenizer.feed(bytes, 0, bytes.length);
+        tokenizer.finish();
+        return hyperlinks;
+    }
+}
@@ -0,0 +1,51 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperlinkTest {
+    @Test
+    void hyperlinksToTheSamePageAreEqualWhateverTheirLabel() {
+        Hyperlink first = new Hyperlink(URI.create("https://example.com/page"), "Page");
+        Hyperlink second = new Hyperlink(URI.create("http://example.com/page/"), "Another label", 3);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertSame(first.getKey(), second.getKey());
+    }
+
+    @Test
+    void orderIsConsistentWithEqualityAmongHyperlinksOfTheSameLabel() {
+        Hyperlink first = new Hyperlink(URI.create("https://example.com/first"), "Read more");
+        Hyperlink second = new Hyperlink(URI.create("https://example.com/second"), "Read more");
+        Hyperlink sameAsFirst = new Hyperlink(URI.create("https://example.com/first/"), "Read more");
+
+        assertNotEquals(first, second);
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(second.compareTo(first) > 0);
+        assertEquals(0, first.compareTo(sameAsFirst));
+
+        TreeSet<Hyperlink> sorted = new TreeSet<>(List.of(second, new Hyperlink(URI.create("https://example.com/about"), "About"), first, sameAsFirst));
+        assertEquals(List.of("https://example.com/about", "https://example.com/first", "https://example.com/second"),
+                sorted.stream().map(hyperlink -> hyperlink.getUri().toString()).toList());
+    }
+
+    @Test
+    void equalHyperlinksWithDifferentLabelsAreOrderedByLabel() {
+        Hyperlink readMore = new Hyperlink(URI.create("https://example.com/first"), "Read more");
+        Hyperlink about = new Hyperlink(URI.create("https://example.com/first"), "About");
+
+        assertEquals(readMore, about);
+        assertTrue(about.compareTo(readMore) < 0);
+        assertTrue(readMore.compareTo(about) > 0);
+        assertEquals(2, new TreeSet<>(List.of(readMore, about)).size());
+    }
+}
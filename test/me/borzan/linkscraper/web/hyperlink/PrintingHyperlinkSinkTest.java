@@ -0,0 +1,28 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrintingHyperlinkSinkTest {
+    @Test
+    void everyHyperlinkIsOneLineOfTheFile(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("hyperlinks.txt");
+
+        try (PrintingHyperlinkSink sink = PrintingHyperlinkSink.toFile(file)) {
+            sink.accept(new Hyperlink(URI.create("https://example.com/über"), "Über uns"));
+            sink.accept(new Hyperlink(URI.create("https://example.com/blank"), " "));
+        }
+
+        assertEquals(List.of("'Über uns' ('https://example.com/über')", "'<no label>' ('https://example.com/blank')"),
+                Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,112 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityHyperlinkFrontierTest {
+    @Test
+    void breadthFirstVisitsShallowHyperlinksFirstAndEqualDepthsInTheOrderFound() {
+        PriorityHyperlinkFrontier frontier = new PriorityHyperlinkFrontier(HyperlinkScorer.BREADTH_FIRST);
+        frontier.offer(hyperlink("/deep", 3));
+        frontier.offer(hyperlink("/first", 1));
+        frontier.offer(hyperlink("/middle", 2));
+        frontier.offer(hyperlink("/second", 1));
+
+        assertEquals(List.of("/first", "/second", "/middle", "/deep"), pollAll(frontier));
+        assertNull(frontier.poll());
+        assertTrue(frontier.isEmpty());
+    }
+
+    @Test
+    void rediscoveredHyperlinksMoveUpWithTheirInLinks() {
+        PriorityHyperlinkFrontier frontier = new PriorityHyperlinkFrontier(HyperlinkScorer.IN_LINKS);
+        frontier.offer(hyperlink("/a", 1));
+        frontier.offer(hyperlink("/b", 1));
+        frontier.offer(hyperlink("/c", 1));
+
+        frontier.onRediscovered(hyperlink("/c", 2));
+        // offering a pending hyperlink again counts as an in-link instead of adding it twice
+        frontier.offer(hyperlink("/b", 1));
+        frontier.offer(hyperlink("/c", 1));
+        // no longer pending, so nothing to count
+        frontier.onRediscovered(hyperlink("/visited", 1));
+
+        assertEquals(3, frontier.size());
+        assertEquals(List.of("/c", "/b", "/a"), pollAll(frontier));
+    }
+
+    @Test
+    void combinedScorersWeighTheirParts() {
+        HyperlinkScorer scorer = HyperlinkScorer.BREADTH_FIRST.plus(HyperlinkScorer.matching("/product/", 5.0))
+                .plus(HyperlinkScorer.matching("[?&]sort=", -5.0).times(2));
+        PriorityHyperlinkFrontier frontier = new PriorityHyperlinkFrontier(scorer);
+        frontier.offer(hyperlink("/about", 1));
+        frontier.offer(hyperlink("/product/1?sort=price", 1));
+        frontier.offer(hyperlink("/product/2", 4));
+
+        assertEquals(List.of("/product/2", "/about", "/product/1"), pollAll(frontier));
+    }
+
+    @Test
+    void heapKeepsItsOrderThroughManyOffersAndRescores() {
+        PriorityHyperlinkFrontier frontier = new PriorityHyperlinkFrontier(HyperlinkScorer.IN_LINKS.plus(HyperlinkScorer.BREADTH_FIRST));
+        Random random = new Random(7);
+        int[] inLinks = new int[500];
+        int[] depths = new int[500];
+        for (int i = 0; i < 500; i++) {
+            depths[i] = random.nextInt(5);
+            frontier.offer(hyperlink("/page/" + i, depths[i]));
+            inLinks[i] = 1;
+        }
+        for (int i = 0; i < 2_000; i++) {
+            int page = random.nextInt(500);
+            frontier.onRediscovered(hyperlink("/page/" + page, 0));
+            inLinks[page]++;
+        }
+
+        double previousScore = Double.MAX_VALUE;
+        Hyperlink next;
+        int polled = 0;
+        while ((next = frontier.poll()) != null) {
+            int page = Integer.parseInt(next.getUri().getPath().substring("/page/".length()));
+            double score = inLinks[page] - depths[page];
+            assertTrue(score <= previousScore, "'%s' scored %s after a score of %s".formatted(next.getUri(), score, previousScore));
+            previousScore = score;
+            polled++;
+        }
+        assertEquals(500, polled);
+    }
+
+    @Test
+    void clearedFrontierForgetsItsHyperlinks() {
+        PriorityHyperlinkFrontier frontier = new PriorityHyperlinkFrontier(HyperlinkScorer.IN_LINKS);
+        frontier.offer(hyperlink("/a", 1));
+        frontier.offer(hyperlink("/b", 1));
+
+        frontier.clear();
+        frontier.offer(hyperlink("/b", 1));
+
+        assertEquals(List.of("/b"), pollAll(frontier));
+    }
+
+    private static Hyperlink hyperlink(String path, int depth) {
+        return new Hyperlink(URI.create("https://example.com").resolve(path), "", depth);
+    }
+
+    private static List<String> pollAll(HyperlinkFrontier frontier) {
+        List<String> paths = new ArrayList<>();
+        Hyperlink next;
+        while ((next = frontier.poll()) != null) {
+            paths.add(next.getUri().getPath());
+        }
+        return paths;
+    }
+}
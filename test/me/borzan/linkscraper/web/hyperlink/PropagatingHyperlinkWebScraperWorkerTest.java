@@ -0,0 +1,352 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import com.sun.net.httpserver.HttpServer;
+import me.borzan.linkscraper.web.metrics.CrawlMetrics;
+import me.borzan.linkscraper.web.persistence.CrawlCheckpointStore;
+import me.borzan.linkscraper.web.persistence.HyperlinkPageCache;
+import me.borzan.linkscraper.web.robots.RobotsPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PropagatingHyperlinkWebScraperWorkerTest {
+    @Test
+    void hyperlinksAreRequestedWhileTheBodyOfTheirPageIsStillBeingRead() throws Exception {
+        CountDownLatch childRequested = new CountDownLatch(1);
+        boolean[] childRequestedBeforeParentEnded = new boolean[1];
+
+        try (ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(handlers);
+            server.createContext("/", exchange -> {
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write("<html><body><a href=\"/child\">Child</a>".getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                    // the rest of the page only follows once its hyperlink was requested
+                    childRequestedBeforeParentEnded[0] = await(childRequested);
+                    body.write("</body></html>".getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            server.createContext("/child", exchange -> {
+                childRequested.countDown();
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            });
+            server.start();
+
+            try (PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(5, 1)) {
+                ConcurrentLinkedQueue<Hyperlink> found = new ConcurrentLinkedQueue<>();
+                URI seed = URI.create("http://127.0.0.1:%d/".formatted(server.getAddress().getPort()));
+
+                long hyperlinksFound = service.scrapeUri(seed, found::add);
+
+                assertEquals(1, hyperlinksFound);
+                assertEquals(List.of(seed.resolve("/child")), found.stream().map(Hyperlink::getUri).toList());
+                assertTrue(childRequestedBeforeParentEnded[0]);
+            } finally {
+                server.stop(0);
+            }
+        }
+    }
+
+    @Test
+    void crawlEndsOnceEveryAllowedPageOfTheSiteAndItsSitemapWasVisited() throws Exception {
+        Site site = new Site(Map.of(
+                "/robots.txt", "User-agent: *\nDisallow: /private\nSitemap: /sitemap.xml\n",
+                "/sitemap.xml", "<urlset><url><loc>{origin}/from-sitemap</loc></url></urlset>",
+                "/", "<a href=\"/a\">A</a><a href=\"/private\">Private</a>",
+                "/a", "<a href=\"/b\">B</a><a href=\"/\">Home</a>",
+                "/b", "nothing to follow",
+                "/from-sitemap", "<a href=\"/b\">B</a>",
+                "/private", "<a href=\"/never\">Never</a>"));
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1).robotsPolicy(RobotsPolicy.DEFAULT).build();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+            Set<String> found = ConcurrentHashMap.newKeySet();
+
+            service.scrapeUri(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()));
+
+            // disallowed pages are reported, but not visited
+            assertEquals(Set.of("/a", "/b", "/private", "/from-sitemap"), found);
+            assertEquals(Set.of("/robots.txt", "/sitemap.xml", "/", "/a", "/b", "/from-sitemap"), Set.copyOf(site.requestedPaths));
+            assertEquals(site.requestedPaths.size(), Set.copyOf(site.requestedPaths).size());
+        }
+    }
+
+    @Test
+    void seedWhoseRobotsTxtIsUnreachableIsNotCrawledAndSaysSo() throws Exception {
+        Site site = new Site(Map.of(
+                "/robots.txt", "User-agent: *\nAllow: /\n",
+                "/", "<a href=\"/a\">A</a>"));
+        site.fail("/robots.txt");
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1).robotsPolicy(RobotsPolicy.DEFAULT).build();
+        Logger gateLogger = Logger.getLogger(RobotsGate.class.getName());
+        Queue<LogRecord> warnings = new ConcurrentLinkedQueue<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        gateLogger.addHandler(handler);
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+            Set<String> found = ConcurrentHashMap.newKeySet();
+
+            service.scrapeUri(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()));
+
+            assertEquals(Set.of(), found);
+            assertFalse(site.requestedPaths.contains("/"));
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.peek().getMessage().contains("'%s' could not be fetched".formatted(site.uri("/"))), warnings.peek().getMessage());
+        } finally {
+            gateLogger.removeHandler(handler);
+        }
+    }
+
+    @Test
+    void hyperlinksDeeperThanTheMaximumDepthAreReportedButNotVisited() throws Exception {
+        Site site = new Site(Map.of(
+                "/", "<a href=\"/a\">A</a>",
+                "/a", "<a href=\"/b\">B</a>",
+                "/b", "<a href=\"/c\">C</a>"));
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1).limits(CrawlLimits.UNLIMITED.withMaxDepth(1)).build();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+            Set<String> found = ConcurrentHashMap.newKeySet();
+
+            service.scrapeUri(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()));
+
+            assertEquals(Set.of("/a", "/b"), found);
+            assertEquals(List.of("/", "/a"), List.copyOf(site.requestedPaths));
+        }
+    }
+
+    @Test
+    void noMorePagesThanTheBudgetAreRequested() throws Exception {
+        Site site = new Site(Map.of(
+                "/", "<a href=\"/a\">A</a><a href=\"/b\">B</a><a href=\"/c\">C</a>",
+                "/a", "<a href=\"/d\">D</a>"));
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1)
+                .maxConcurrentRequests(1)
+                .limits(CrawlLimits.UNLIMITED.withMaxPages(2))
+                .build();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+            Set<String> found = ConcurrentHashMap.newKeySet();
+
+            service.scrapeUri(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()));
+
+            // with one request at a time, nothing is in flight beyond the budget
+            assertEquals(List.of("/", "/a"), List.copyOf(site.requestedPaths));
+            assertEquals(Set.of("/a", "/b", "/c", "/d"), found);
+        }
+    }
+
+    @Test
+    void pagesInFlightWhenACheckpointedCrawlIsCancelledAreFetchedAgainOnResume(@TempDir Path checkpointDirectory) throws Exception {
+        Site site = new Site(Map.of(
+                "/", "<a href=\"/slow\">Slow</a><a href=\"/fast\">Fast</a>",
+                "/slow", "<a href=\"/behind-slow\">Behind</a>",
+                "/fast", "nothing to follow",
+                "/behind-slow", "nothing to follow"));
+        site.hold("/slow");
+        HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1)
+                .checkpointing(checkpointDirectory, Duration.ofMinutes(1))
+                .build();
+
+        try (site; PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+            Set<String> found = ConcurrentHashMap.newKeySet();
+            PropagatingHyperlinkWebScraperWorker worker = service.createWorker(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()), null);
+            try (ExecutorService crawls = Executors.newVirtualThreadPerTaskExecutor()) {
+                Future<?> crawl = crawls.submit(() -> service.run(worker));
+                site.awaitRequest("/slow");
+                site.awaitRequest("/fast");
+                // until /fast is finished, and only /slow is left in flight
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (service.getMetrics().snapshot().gauge(CrawlMetrics.PAGES_IN_FLIGHT) != 1) {
+                    assertTrue(System.nanoTime() < deadline, "/fast never finished");
+                    Thread.sleep(10);
+                }
+
+                worker.cancel();
+                crawl.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(Set.of("/slow", "/fast"), found);
+
+            // the cancelled page went back into the frontier, and so into the last checkpoint
+            CrawlCheckpointStore store = new CrawlCheckpointStore(checkpointDirectory);
+            CrawlCheckpointStore.Checkpoint checkpoint = store.load().orElseThrow();
+            store.close();
+            assertEquals(List.of(site.uri("/slow")), checkpoint.pendingHyperlinks().stream().map(Hyperlink::getUri).toList());
+
+            site.release();
+            site.requestedPaths.clear();
+            service.scrapeUri(site.uri("/"), hyperlink -> found.add(hyperlink.getUri().getPath()));
+
+            assertEquals(List.of("/slow", "/behind-slow"), List.copyOf(site.requestedPaths));
+            assertEquals(Set.of("/slow", "/fast", "/behind-slow"), found);
+        }
+    }
+
+    @Test
+    void unchangedPagesAreNotDownloadedAgainAndTheirCachedHyperlinksAreFollowed(@TempDir Path cacheDirectory) throws Exception {
+        Queue<String> conditions = new ConcurrentLinkedQueue<>();
+        Queue<String> downloadedPaths = new ConcurrentLinkedQueue<>();
+        try (ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(handlers);
+            server.createContext("/", exchange -> {
+                String path = exchange.getRequestURI().getPath();
+                String entityTag = "\"%s-v1\"".formatted(path);
+                String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+                conditions.add(path + " " + condition);
+                exchange.getResponseHeaders().set("ETag", entityTag);
+                if (entityTag.equals(condition)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                downloadedPaths.add(path);
+                byte[] body = (path.equals("/") ? "<a href=\"/a\">A</a>" : "nothing to follow").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.start();
+            HyperlinkCrawlSettings settings = HyperlinkCrawlSettings.builder(5, 1)
+                    .pageCache(new HyperlinkPageCache(cacheDirectory, 1 << 20))
+                    .build();
+            URI seed = URI.create("http://127.0.0.1:%d/".formatted(server.getAddress().getPort()));
+
+            try (PropagatingHyperlinkWebScraperService service = new PropagatingHyperlinkWebScraperService(settings)) {
+                Set<String> firstCrawl = ConcurrentHashMap.newKeySet();
+                service.scrapeUri(seed, hyperlink -> firstCrawl.add(hyperlink.getLabel() + " " + hyperlink.getUri().getPath()));
+                Set<String> secondCrawl = ConcurrentHashMap.newKeySet();
+                service.scrapeUri(seed, hyperlink -> secondCrawl.add(hyperlink.getLabel() + " " + hyperlink.getUri().getPath()));
+
+                assertEquals(Set.of("A /a"), firstCrawl);
+                // the hyperlinks of the unchanged seed came from the cache, and were followed all the same
+                assertEquals(firstCrawl, secondCrawl);
+                assertEquals(List.of("/", "/a"), List.copyOf(downloadedPaths));
+                assertEquals(List.of("/ null", "/a null", "/ \"/-v1\"", "/a \"/a-v1\""), List.copyOf(conditions));
+            } finally {
+                server.stop(0);
+            }
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) throws IOException {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * Serves the given pages on a loopback port, anything else is answered with 404. Every request is recorded.
+     * {origin} in a page is replaced with the origin of the server, for the absolute URLs of e.g. sitemaps.
+     * Requests for held pages are only answered once the site is released or closed, failing pages are answered with 503.
+     */
+    static final class Site implements AutoCloseable {
+        private final HttpServer server;
+        private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+        private final Set<String> heldPaths = ConcurrentHashMap.newKeySet();
+        private final Set<String> failingPaths = ConcurrentHashMap.newKeySet();
+        private final CountDownLatch released = new CountDownLatch(1);
+        final Queue<String> requestedPaths = new ConcurrentLinkedQueue<>();
+
+        Site(Map<String, String> pages) throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(handlers);
+            server.createContext("/", exchange -> {
+                requestedPaths.add(exchange.getRequestURI().getPath());
+                if (heldPaths.contains(exchange.getRequestURI().getPath())) {
+                    await(released);
+                }
+                String page = pages.get(exchange.getRequestURI().getPath());
+                if (page == null || failingPaths.contains(exchange.getRequestURI().getPath())) {
+                    exchange.sendResponseHeaders(page == null ? 404 : 503, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = page.replace("{origin}", uri("").toString()).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.start();
+        }
+
+        URI uri(String path) {
+            return URI.create("http://127.0.0.1:%d%s".formatted(server.getAddress().getPort(), path));
+        }
+
+        void hold(String path) {
+            heldPaths.add(path);
+        }
+
+        void fail(String path) {
+            failingPaths.add(path);
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        void awaitRequest(String path) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!requestedPaths.contains(path)) {
+                assertTrue(System.nanoTime() < deadline, "'%s' was never requested".formatted(path));
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+            server.stop(0);
+            handlers.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package me.borzan.linkscraper.web.hyperlink;
+
+import me.borzan.linkscraper.web.html.HtmlEntities;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UriCanonicalizerTest {
+    private static final URI BASE_URI = URI.create("https://example.com/docs/");
+
+    @Test
+    void sortsQueryParametersAndRemovesTrackingParameters() {
+        assertEquals(URI.create("https://example.com/search?a=1&b=2&b=1"),
+                UriCanonicalizer.DEFAULT.resolve(BASE_URI, "/search?b=2&utm_source=x&a=1&b=1#results"));
+    }
+
+    @Test
+    void escapedAmpersandsInHrefsSeparateTheSameParameters() {
+        URI expected = URI.create("https://example.com/search?x=1&y=2");
+        assertEquals(expected, UriCanonicalizer.DEFAULT.resolve(BASE_URI, HtmlEntities.decode("/search?y=2&amp;x=1")));
+        assertEquals(expected, UriCanonicalizer.DEFAULT.resolve(BASE_URI, HtmlEntities.decode("/search?y=2&#38;x=1")));
+        assertEquals(expected, UriCanonicalizer.DEFAULT.resolve(BASE_URI, "/search?y=2&x=1"));
+    }
+
+    @Test
+    void normalizesSchemeHostPortAndPath() {
+        assertEquals(URI.create("https://example.com/a/c/"),
+                UriCanonicalizer.DEFAULT.resolve(null, "HTTPS://Example.COM:443/a/./b/../c/"));
+    }
+}
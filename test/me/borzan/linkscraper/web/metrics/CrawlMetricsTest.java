@@ -0,0 +1,42 @@
+package me.borzan.linkscraper.web.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CrawlMetricsTest {
+    @Test
+    void hostsBeyondTheLimitAreAddedUpAsOtherHosts() {
+        CrawlMetrics metrics = new CrawlMetrics(2);
+        metrics.recordResponse("a.example.com", 200, 100);
+        metrics.recordResponse("b.example.com", 500, 200);
+        metrics.recordResponse("c.example.com", 200, 300);
+        metrics.recordResponse("d.example.com", -1, 400);
+        // a host that is tracked stays tracked
+        metrics.recordResponse("a.example.com", 200, 1_000);
+
+        Map<String, HostStatistics.Snapshot> hosts = metrics.snapshot().hostsBySlowest().stream()
+                .collect(Collectors.toMap(HostStatistics.Snapshot::host, Function.identity()));
+
+        assertEquals(List.of("a.example.com", CrawlMetrics.OTHER_HOSTS, "b.example.com"),
+                metrics.snapshot().hostsBySlowest().stream().map(HostStatistics.Snapshot::host).toList());
+        assertEquals(new HostStatistics.Snapshot("a.example.com", 2, 0, 1_100, 1_000), hosts.get("a.example.com"));
+        assertEquals(new HostStatistics.Snapshot("b.example.com", 1, 1, 200, 200), hosts.get("b.example.com"));
+        assertEquals(new HostStatistics.Snapshot(CrawlMetrics.OTHER_HOSTS, 2, 1, 700, 400), hosts.get(CrawlMetrics.OTHER_HOSTS));
+        assertEquals(5, metrics.snapshot().counter(CrawlCounter.RESPONSES_RECEIVED) + metrics.snapshot().counter(CrawlCounter.FAILED_REQUESTS));
+    }
+
+    @Test
+    void otherHostsOnlyShowUpOnceTheLimitIsReached() {
+        CrawlMetrics metrics = new CrawlMetrics(2);
+        metrics.recordResponse("a.example.com", 200, 100);
+
+        assertEquals(List.of("a.example.com"),
+                metrics.snapshot().hostsBySlowest().stream().map(HostStatistics.Snapshot::host).toList());
+    }
+}
@@ -0,0 +1,92 @@
+package me.borzan.linkscraper.web.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void smallValuesHaveABucketEach() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.bucketIndex(value));
+            assertEquals(value, LatencyHistogram.highestValueInBucket((int) value));
+        }
+        // from here on, two values share a bucket
+        assertEquals(64, LatencyHistogram.bucketIndex(65));
+        assertEquals(65, LatencyHistogram.highestValueInBucket(64));
+        assertEquals(65, LatencyHistogram.bucketIndex(66));
+    }
+
+    @Test
+    void everyValueIsInABucketThatOverstatesItByAtMostAThirtySecond() {
+        long previousValue = -1;
+        int previousIndex = -1;
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 1) {
+            for (long candidate : new long[]{value - 1, value, value + 1}) {
+                int index = LatencyHistogram.bucketIndex(candidate);
+                long highest = LatencyHistogram.highestValueInBucket(index);
+                assertTrue(highest >= candidate, "%d is above its bucket, which ends at %d".formatted(candidate, highest));
+                assertTrue(highest - candidate <= candidate / 32, "%d is in a bucket that ends at %d".formatted(candidate, highest));
+                if (candidate > previousValue) {
+                    assertTrue(index >= previousIndex, "%d is in a bucket below the one of a smaller value".formatted(candidate));
+                    previousValue = candidate;
+                    previousIndex = index;
+                }
+            }
+        }
+        int lastIndex = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueInBucket(lastIndex));
+    }
+
+    @Test
+    void percentilesOfExactlyCountedValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 60; value >= 1; value--) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(60, snapshot.getCount());
+        assertEquals(60 * 61 / 2, snapshot.getTotalNanos());
+        assertEquals(30, snapshot.getMeanNanos());
+        assertEquals(1, snapshot.getPercentileNanos(0.0));
+        assertEquals(30, snapshot.getPercentileNanos(50.0));
+        assertEquals(54, snapshot.getPercentileNanos(90.0));
+        assertEquals(60, snapshot.getPercentileNanos(100.0));
+        assertEquals(60, snapshot.getMaxNanos());
+    }
+
+    @Test
+    void percentilesOfLargeValuesAreOffByAtMostAThirtySecondAndNeverAboveTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1_234_567_890);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        long median = snapshot.getPercentileNanos(50.0);
+        assertTrue(median >= 1_000_000 && median <= 1_000_000 + 1_000_000 / 32, "median " + median);
+        long p99 = snapshot.getPercentileNanos(99.0);
+        assertTrue(p99 >= 1_000_000 && p99 <= 1_000_000 + 1_000_000 / 32, "p99 " + p99);
+        // the bucket of the slowest values reaches beyond them, the maximum is what was actually recorded
+        assertEquals(1_234_567_890, snapshot.getPercentileNanos(99.9));
+        assertEquals(1_234_567_890, snapshot.getMaxNanos());
+    }
+
+    @Test
+    void emptyHistogramAndNegativeDurationsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getPercentileNanos(99.0));
+        assertEquals(0, histogram.snapshot().getMeanNanos());
+
+        // e.g. a clock that went backwards
+        histogram.record(-5);
+        assertEquals(1, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentileNanos(50.0));
+        assertEquals(0, histogram.snapshot().getTotalNanos());
+    }
+}
@@ -0,0 +1,110 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.visited.FingerprintVisitedUriSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlCheckpointStoreTest {
+    private static final URI SEED = URI.create("https://example.com/");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void directoryWithoutCheckpointHasNothingToResume() {
+        assertTrue(new CrawlCheckpointStore(directory).load().isEmpty());
+    }
+
+    @Test
+    void checkpointRoundTrip() {
+        FingerprintVisitedUriSet visitedUris = new FingerprintVisitedUriSet();
+        visitedUris.markVisited(URI.create("https://example.com/visited/1"));
+        visitedUris.markVisited(URI.create("https://example.com/visited/2"));
+        List<Hyperlink> pendingHyperlinks = List.of(hyperlink(10), hyperlink(11));
+
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory);
+        store.openResults(null, hyperlink -> {});
+        store.appendResult(hyperlink(0));
+        store.appendResult(hyperlink(1));
+        store.write(SEED, visitedUris.fingerprints(), pendingHyperlinks, new HyperlinkRecordLog.Cursor(3, 42), store.resultsLength());
+        store.close();
+
+        CrawlCheckpointStore resumedStore = new CrawlCheckpointStore(directory);
+        CrawlCheckpointStore.Checkpoint checkpoint = resumedStore.load().orElseThrow();
+        assertEquals(SEED, checkpoint.seed());
+        assertEquals(1, checkpoint.generation());
+        assertEquals(pendingHyperlinks, checkpoint.pendingHyperlinks());
+        assertEquals(new HyperlinkRecordLog.Cursor(3, 42), checkpoint.frontierCursor());
+
+        FingerprintVisitedUriSet resumedVisitedUris = new FingerprintVisitedUriSet();
+        resumedStore.loadVisitedInto(checkpoint, resumedVisitedUris);
+        assertEquals(2, resumedVisitedUris.size());
+        assertTrue(resumedVisitedUris.contains(URI.create("https://example.com/visited/1")));
+        assertTrue(resumedVisitedUris.contains(URI.create("https://example.com/visited/2")));
+
+        List<Hyperlink> replayedResults = new ArrayList<>();
+        assertEquals(2, resumedStore.openResults(checkpoint, replayedResults::add));
+        assertEquals(List.of(hyperlink(0), hyperlink(1)), replayedResults);
+        resumedStore.close();
+    }
+
+    @Test
+    void resultsAfterTheCheckpointAreCutOffWhenResuming() throws IOException {
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory);
+        store.openResults(null, hyperlink -> {});
+        store.appendResult(hyperlink(0));
+        store.write(SEED, new long[0], List.of(), new HyperlinkRecordLog.Cursor(0, 0), store.resultsLength());
+        store.appendResult(hyperlink(1));
+        store.close();
+        // the JVM died in the middle of writing the next result
+        byte[] cutOffRecord = Arrays.copyOf(HyperlinkRecords.encode(hyperlink(2)), 10);
+        Files.write(directory.resolve("results.records"), cutOffRecord, StandardOpenOption.APPEND);
+
+        CrawlCheckpointStore resumedStore = new CrawlCheckpointStore(directory);
+        CrawlCheckpointStore.Checkpoint checkpoint = resumedStore.load().orElseThrow();
+        List<Hyperlink> replayedResults = new ArrayList<>();
+        assertEquals(1, resumedStore.openResults(checkpoint, replayedResults::add));
+        assertEquals(List.of(hyperlink(0)), replayedResults);
+
+        resumedStore.appendResult(hyperlink(3));
+        resumedStore.close();
+        ByteBuffer results = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("results.records")));
+        assertEquals(hyperlink(0), HyperlinkRecords.decode(results));
+        assertEquals(hyperlink(3), HyperlinkRecords.decode(results));
+        assertFalse(results.hasRemaining());
+    }
+
+    @Test
+    void newerCheckpointReplacesTheOlderOne() {
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory);
+        store.openResults(null, hyperlink -> {});
+        store.write(SEED, new long[]{1}, List.of(hyperlink(0)), new HyperlinkRecordLog.Cursor(0, 0), store.resultsLength());
+        store.write(SEED, new long[]{1, 2}, List.of(hyperlink(1)), new HyperlinkRecordLog.Cursor(1, 0), store.resultsLength());
+        store.close();
+
+        CrawlCheckpointStore.Checkpoint checkpoint = new CrawlCheckpointStore(directory).load().orElseThrow();
+        assertEquals(2, checkpoint.generation());
+        assertEquals(List.of(hyperlink(1)), checkpoint.pendingHyperlinks());
+        assertFalse(Files.exists(directory.resolve("visited-1.fingerprints")));
+        assertFalse(Files.exists(directory.resolve("pending-1.records")));
+    }
+
+    private static Hyperlink hyperlink(int i) {
+        return new Hyperlink(URI.create("https://example.com/page/" + i), "Page " + i, 1);
+    }
+}
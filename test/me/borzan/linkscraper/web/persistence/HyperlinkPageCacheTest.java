@@ -0,0 +1,65 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperlinkPageCacheTest {
+    private static final URI PAGE = URI.create("https://example.com/");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void validatorsAndHyperlinksSurviveARestart() {
+        HyperlinkPageCache.CachedPage page = new HyperlinkPageCache.CachedPage(PAGE, "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT",
+                List.of(new Hyperlink(URI.create("https://example.com/a"), "A", 1), new Hyperlink(URI.create("https://example.com/b"), "", 1)));
+        new HyperlinkPageCache(directory, 1 << 20).put(page);
+
+        HyperlinkPageCache restarted = new HyperlinkPageCache(directory, 1 << 20);
+        HyperlinkPageCache.CachedPage cached = restarted.get(PAGE).orElseThrow();
+
+        assertEquals(page.entityTag(), cached.entityTag());
+        assertEquals(page.lastModified(), cached.lastModified());
+        assertEquals(page.hyperlinks(), cached.hyperlinks());
+        assertEquals(List.of("A", ""), cached.hyperlinks().stream().map(Hyperlink::getLabel).toList());
+        assertEquals(List.of(1, 1), cached.hyperlinks().stream().map(Hyperlink::getDepth).toList());
+        assertEquals(1, restarted.getDiskHits());
+
+        // the second lookup is answered from memory
+        restarted.get(PAGE);
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    @Test
+    void pagesWithoutValidatorsAreNotKept() {
+        HyperlinkPageCache cache = new HyperlinkPageCache(directory, 1 << 20);
+        cache.put(new HyperlinkPageCache.CachedPage(PAGE, "", "", List.of()));
+
+        assertTrue(cache.get(PAGE).isEmpty());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void leastRecentlyUsedPagesLeaveTheMemoryTierButStayOnDisk() {
+        // room for about two pages without hyperlinks
+        HyperlinkPageCache cache = new HyperlinkPageCache(directory, 600);
+        for (int i = 0; i < 3; i++) {
+            cache.put(new HyperlinkPageCache.CachedPage(URI.create("https://example.com/" + i), "\"" + i + "\"", "", List.of()));
+        }
+
+        cache.get(URI.create("https://example.com/2"));
+        cache.get(URI.create("https://example.com/0"));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals("\"0\"", cache.get(URI.create("https://example.com/0")).orElseThrow().entityTag());
+        assertEquals(2, cache.getMemoryHits());
+    }
+}
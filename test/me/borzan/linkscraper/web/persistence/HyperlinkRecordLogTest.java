@@ -0,0 +1,102 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperlinkRecordLogTest {
+    // a few records per segment
+    private static final long SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsComeBackInOrderAcrossSegments() throws IOException {
+        try (HyperlinkRecordLog log = new HyperlinkRecordLog(directory, "test", SEGMENT_SIZE, null, false)) {
+            for (int i = 0; i < 50; i++) {
+                log.append(hyperlink(i));
+            }
+            assertEquals(50, log.size());
+            assertTrue(segmentFiles() > 1);
+
+            assertPolled(log, 0, 50);
+            assertNull(log.poll());
+            assertTrue(log.isEmpty());
+            // read segments are deleted, only the one being written is left
+            assertEquals(1, segmentFiles());
+        }
+    }
+
+    @Test
+    void reopenedLogContinuesAtTheCursor() throws IOException {
+        HyperlinkRecordLog.Cursor cursor;
+        try (HyperlinkRecordLog log = new HyperlinkRecordLog(directory, "test", SEGMENT_SIZE, null, true)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(hyperlink(i));
+            }
+            assertPolled(log, 0, 7);
+            log.flush();
+            cursor = log.readCursor();
+            // read after the cursor was taken, so read again after resuming
+            assertPolled(log, 7, 10);
+        }
+
+        try (HyperlinkRecordLog log = new HyperlinkRecordLog(directory, "test", SEGMENT_SIZE, cursor, true)) {
+            assertEquals(13, log.size());
+            assertPolled(log, 7, 20);
+            assertNull(log.poll());
+        }
+    }
+
+    @Test
+    void cutOffLastRecordIsDroppedAndAppendingContinuesBehindTheLastCompleteOne() throws IOException {
+        try (HyperlinkRecordLog log = new HyperlinkRecordLog(directory, "test", 1 << 20, null, false)) {
+            for (int i = 0; i < 3; i++) {
+                log.append(hyperlink(i));
+            }
+        }
+        byte[] cutOffRecord = Arrays.copyOf(HyperlinkRecords.encode(hyperlink(3)), 20);
+        Files.write(directory.resolve("test-000000.segment"), cutOffRecord, StandardOpenOption.APPEND);
+
+        try (HyperlinkRecordLog log = new HyperlinkRecordLog(directory, "test", 1 << 20, null, false)) {
+            assertEquals(3, log.size());
+            log.append(hyperlink(4));
+
+            assertPolled(log, 0, 3);
+            assertEquals(URI.create("https://example.com/page/4"), log.poll().getUri());
+            assertNull(log.poll());
+        }
+    }
+
+    private static void assertPolled(HyperlinkRecordLog log, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Hyperlink hyperlink = log.poll();
+            assertEquals(URI.create("https://example.com/page/" + i), hyperlink.getUri());
+            assertEquals("Page " + i, hyperlink.getLabel());
+            assertEquals(i % 3, hyperlink.getDepth());
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".segment")).count();
+        }
+    }
+
+    private static Hyperlink hyperlink(int i) {
+        return new Hyperlink(URI.create("https://example.com/page/" + i), "Page " + i, i % 3);
+    }
+}
@@ -0,0 +1,132 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import me.borzan.linkscraper.web.hyperlink.HyperlinkSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortingHyperlinkSinkTest {
+    @Test
+    void hyperlinksThatFitIntoTheBudgetAreSortedWithoutTouchingTheDisk(@TempDir Path tempDirectory) throws IOException {
+        List<Hyperlink> hyperlinks = shuffledHyperlinks(50);
+        RecordingSink downstream = new RecordingSink();
+        SortingHyperlinkSink sink = new SortingHyperlinkSink(downstream, Long.MAX_VALUE, tempDirectory);
+
+        hyperlinks.forEach(sink::accept);
+        assertEquals(List.of(), runFiles(tempDirectory));
+        sink.close();
+
+        assertEquals(sorted(hyperlinks), downstream.accepted);
+        assertTrue(downstream.closed);
+        assertEquals(List.of(), entries(tempDirectory));
+    }
+
+    @Test
+    void moreRunsThanCanBeMergedAtOnceAreMergedInSeveralPasses(@TempDir Path tempDirectory) throws IOException {
+        // a budget of one byte makes a run of every single hyperlink, far more than the fan-in of 64
+        List<Hyperlink> hyperlinks = shuffledHyperlinks(300);
+        RecordingSink downstream = new RecordingSink();
+        SortingHyperlinkSink sink = new SortingHyperlinkSink(downstream, 1, tempDirectory);
+
+        hyperlinks.forEach(sink::accept);
+        assertEquals(300, runFiles(tempDirectory).size());
+        sink.close();
+
+        assertEquals(sorted(hyperlinks), downstream.accepted);
+        assertTrue(downstream.closed);
+        assertEquals(List.of(), entries(tempDirectory));
+    }
+
+    @Test
+    void runsAreDeletedWhenTheDownstreamSinkFails(@TempDir Path tempDirectory) throws IOException {
+        HyperlinkSink failingDownstream = hyperlink -> {
+            throw new UncheckedIOException(new IOException("The disk is full."));
+        };
+        SortingHyperlinkSink sink = new SortingHyperlinkSink(failingDownstream, 200, tempDirectory);
+        shuffledHyperlinks(100).forEach(sink::accept);
+        assertTrue(runFiles(tempDirectory).size() > 1);
+
+        assertThrows(UncheckedIOException.class, sink::close);
+        assertEquals(List.of(), entries(tempDirectory));
+    }
+
+    @Test
+    void closeFailsOnceARunCouldNotBeWritten(@TempDir Path tempDirectory) throws IOException {
+        RecordingSink downstream = new RecordingSink();
+        SortingHyperlinkSink sink = new SortingHyperlinkSink(downstream, 1, tempDirectory);
+        // the first run file cannot be created where a directory is in its way
+        Path runDirectory = entries(tempDirectory).get(0);
+        Files.createDirectory(runDirectory.resolve("run-000000.records"));
+        List<Hyperlink> hyperlinks = shuffledHyperlinks(3);
+
+        assertThrows(UncheckedIOException.class, () -> sink.accept(hyperlinks.get(0)));
+        sink.accept(hyperlinks.get(1));
+        sink.accept(hyperlinks.get(2));
+        assertEquals(2, runFiles(tempDirectory).size());
+
+        assertThrows(IOException.class, sink::close);
+        assertEquals(List.of(), downstream.accepted);
+        assertTrue(downstream.closed);
+        assertEquals(List.of(), entries(tempDirectory));
+    }
+
+    private static List<Hyperlink> shuffledHyperlinks(int count) {
+        List<Hyperlink> hyperlinks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // few labels, so the order within a label matters as well
+            hyperlinks.add(new Hyperlink(URI.create("https://example.com/page/" + i), "Label " + (i % 7), i % 3));
+        }
+        Collections.shuffle(hyperlinks, new Random(42));
+        return hyperlinks;
+    }
+
+    private static List<String> sorted(List<Hyperlink> hyperlinks) {
+        return hyperlinks.stream().sorted().map(SortingHyperlinkSinkTest::describe).toList();
+    }
+
+    private static String describe(Hyperlink hyperlink) {
+        return hyperlink + " at depth " + hyperlink.getDepth();
+    }
+
+    private static List<Path> entries(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.toList();
+        }
+    }
+
+    private static List<Path> runFiles(Path tempDirectory) throws IOException {
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static final class RecordingSink implements HyperlinkSink {
+        private final List<String> accepted = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public void accept(Hyperlink hyperlink) {
+            accepted.add(describe(hyperlink));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
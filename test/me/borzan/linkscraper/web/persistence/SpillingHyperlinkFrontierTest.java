@@ -0,0 +1,51 @@
+package me.borzan.linkscraper.web.persistence;
+
+import me.borzan.linkscraper.web.hyperlink.Hyperlink;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillingHyperlinkFrontierTest {
+    private static final int HYPERLINKS = 100;
+
+    @Test
+    void spilledHyperlinksAtDepthZeroComeBackInOrder() throws IOException {
+        assertRoundTrip(0);
+    }
+
+    @Test
+    void spilledHyperlinksKeepTheirDepth() throws IOException {
+        assertRoundTrip(1);
+        assertRoundTrip(1_000_000);
+    }
+
+    private static void assertRoundTrip(int depth) throws IOException {
+        try (SpillingHyperlinkFrontier frontier = new SpillingHyperlinkFrontier(1000)) {
+            for (int i = 0; i < HYPERLINKS; i++) {
+                frontier.offer(new Hyperlink(URI.create("https://example.com/page/" + i), "Page " + i, depth));
+            }
+
+            List<Hyperlink> polled = new ArrayList<>();
+            Hyperlink hyperlink;
+            while ((hyperlink = frontier.poll()) != null) {
+                polled.add(hyperlink);
+            }
+
+            assertEquals(HYPERLINKS, polled.size());
+            for (int i = 0; i < HYPERLINKS; i++) {
+                assertEquals(URI.create("https://example.com/page/" + i), polled.get(i).getUri());
+                assertEquals("Page " + i, polled.get(i).getLabel());
+                assertEquals(depth, polled.get(i).getDepth());
+            }
+            assertTrue(frontier.isEmpty());
+            assertNull(frontier.poll());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.borzan.linkscraper.web.politeness;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HostPolitenessSchedulerTest {
+    // one connection and ten requests per second per host, independent of latency
+    private static final HostPolitenessPolicy TEN_PER_SECOND = new HostPolitenessPolicy(1, 10.0, 0, Duration.ofSeconds(30));
+    private static final long DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void hostsWithQueuedRequestsTakeTurns() {
+        HostPolitenessScheduler<String> scheduler = new HostPolitenessScheduler<>(TEN_PER_SECOND);
+        scheduler.offer("a.example", "a1");
+        scheduler.offer("a.example", "a2");
+        scheduler.offer("b.example", "b1");
+
+        assertEquals("a1", scheduler.pollReady());
+        assertEquals("b1", scheduler.pollReady());
+        // a.example still has its only connection in flight
+        assertNull(scheduler.pollReady());
+        assertEquals(1, scheduler.getQueuedRequests());
+    }
+
+    @Test
+    void tooManyRequestsDoublesTheDelayAndSuccessRecoversIt() {
+        HostPolitenessScheduler<String> scheduler = new HostPolitenessScheduler<>(TEN_PER_SECOND);
+        scheduler.offer("example.com", "first");
+        scheduler.offer("example.com", "second");
+        assertEquals("first", scheduler.pollReady());
+
+        scheduler.onRequestFinished("example.com", 0, 429, null);
+        assertNull(scheduler.pollReady());
+        assertDelayBetween(DELAY_NANOS + 1, 2 * DELAY_NANOS, scheduler.getNanosUntilNextReady());
+
+        scheduler.onRequestFinished("example.com", 0, 503, null);
+        assertNull(scheduler.pollReady());
+        assertDelayBetween(2 * DELAY_NANOS + 1, 4 * DELAY_NANOS, scheduler.getNanosUntilNextReady());
+
+        scheduler.onRequestFinished("example.com", 0, 200, null);
+        scheduler.offer("example.com", "third");
+        awaitReady(scheduler);
+        assertEquals("second", scheduler.pollReady());
+        // failed without a response, so only the connection is freed
+        scheduler.onRequestFinished("example.com", -1, -1, null);
+        assertNull(scheduler.pollReady());
+        // backed off to 4 times the delay, then recovered by a quarter
+        assertDelayBetween(2 * DELAY_NANOS + 1, 3 * DELAY_NANOS, scheduler.getNanosUntilNextReady());
+    }
+
+    @Test
+    void retryAfterHoldsTheHostBackBeyondTheMaximumDelay() {
+        HostPolitenessScheduler<String> scheduler = new HostPolitenessScheduler<>(TEN_PER_SECOND);
+        scheduler.offer("example.com", "first");
+        scheduler.offer("example.com", "second");
+        assertEquals("first", scheduler.pollReady());
+
+        scheduler.onRequestFinished("example.com", 0, 503, "120");
+
+        assertNull(scheduler.pollReady());
+        assertDelayBetween(TimeUnit.SECONDS.toNanos(119), TimeUnit.SECONDS.toNanos(120), scheduler.getNanosUntilNextReady());
+    }
+
+    @Test
+    void retryAfterIsEitherSecondsOrAnHttpDate() {
+        assertEquals(TimeUnit.SECONDS.toNanos(30), HostPolitenessScheduler.parseRetryAfterNanos(" 30 "));
+
+        String inOneMinute = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1));
+        assertDelayBetween(TimeUnit.SECONDS.toNanos(55), TimeUnit.SECONDS.toNanos(60), HostPolitenessScheduler.parseRetryAfterNanos(inOneMinute));
+
+        String aMinuteAgo = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(1));
+        assertEquals(0, HostPolitenessScheduler.parseRetryAfterNanos(aMinuteAgo));
+
+        assertEquals(-1, HostPolitenessScheduler.parseRetryAfterNanos(null));
+        assertEquals(-1, HostPolitenessScheduler.parseRetryAfterNanos("soon"));
+    }
+
+    @Test
+    void removedRequestIsNeverPolledAndCostsNoConnection() {
+        HostPolitenessScheduler<String> scheduler = new HostPolitenessScheduler<>(TEN_PER_SECOND);
+        scheduler.offer("example.com", "removed");
+
+        assertTrue(scheduler.remove("example.com", "removed"));
+        assertFalse(scheduler.remove("example.com", "removed"));
+        assertFalse(scheduler.hasQueuedRequests());
+        assertNull(scheduler.pollReady());
+
+        scheduler.offer("example.com", "next");
+        assertEquals("next", scheduler.pollReady());
+    }
+
+    private static void awaitReady(HostPolitenessScheduler<String> scheduler) {
+        assertNull(scheduler.pollReady());
+        long nanosUntilReady = scheduler.getNanosUntilNextReady();
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanosUntilReady + TimeUnit.MILLISECONDS.toNanos(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void assertDelayBetween(long minNanos, long maxNanos, long actualNanos) {
+        assertTrue(actualNanos >= minNanos && actualNanos <= maxNanos,
+                "Delay of " + actualNanos + "ns is not between " + minNanos + "ns and " + maxNanos + "ns");
+    }
+}
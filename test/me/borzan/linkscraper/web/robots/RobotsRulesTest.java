@@ -0,0 +1,126 @@
+package me.borzan.linkscraper.web.robots;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsRulesTest {
+    private static final URI ROBOTS_TXT = URI.create("https://example.com/robots.txt");
+
+    @Test
+    void longestMatchingRuleDecides() {
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /shop
+                Allow: /shop/catalog
+                Disallow: /shop/catalog/private
+                """);
+
+        assertTrue(rules.isAllowed(uri("/")));
+        assertFalse(rules.isAllowed(uri("/shop/cart")));
+        assertTrue(rules.isAllowed(uri("/shop/catalog/shoes")));
+        assertFalse(rules.isAllowed(uri("/shop/catalog/private/1")));
+    }
+
+    @Test
+    void allowBeatsDisallowOfTheSameLength() {
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /page
+                Allow: /page
+                Disallow: /*.htm
+                Allow: /a*.htm
+                """);
+
+        assertTrue(rules.isAllowed(uri("/page")));
+        assertTrue(rules.isAllowed(uri("/a.htm")));
+        assertFalse(rules.isAllowed(uri("/b.htm")));
+    }
+
+    @Test
+    void wildcardsMatchAnyRunOfCharactersAndDollarAnchorsAtTheEnd() {
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                Disallow: /*/print/*?page=
+                Disallow: /exact$
+                """);
+
+        assertFalse(rules.isAllowed(uri("/docs/manual.pdf")));
+        assertTrue(rules.isAllowed(uri("/docs/manual.pdf?download=1")));
+        assertTrue(rules.isAllowed(uri("/docs/manual.pdf.html")));
+        assertFalse(rules.isAllowed(uri("/article/print/1?page=2")));
+        assertTrue(rules.isAllowed(uri("/article/print/1")));
+        assertFalse(rules.isAllowed(uri("/exact")));
+        assertTrue(rules.isAllowed(uri("/exact/not")));
+    }
+
+    @Test
+    void patternsMatchPercentEncodedPaths() {
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /größe
+                Disallow: /a%2fb
+                """);
+
+        assertFalse(rules.isAllowed(uri("/gr%C3%B6%C3%9Fe/xl")));
+        assertFalse(rules.isAllowed(uri("/a%2Fb")));
+    }
+
+    @Test
+    void groupOfTheUserAgentReplacesTheGroupOfEveryAgent() {
+        String robotsTxt = """
+                User-agent: *
+                Disallow: /
+                Crawl-delay: 10
+
+                User-agent: OtherBot
+                User-agent: LinkScraper/1.0
+                Disallow: /private # no comment
+                Crawl-delay: 0.5
+
+                Sitemap: /sitemap.xml
+                """;
+
+        RobotsRules ownRules = RobotsRules.parse(ROBOTS_TXT, robotsTxt.getBytes(StandardCharsets.UTF_8), "linkscraper");
+        assertTrue(ownRules.isAllowed(uri("/public")));
+        assertFalse(ownRules.isAllowed(uri("/private")));
+        assertEquals(Duration.ofMillis(500), ownRules.crawlDelay());
+
+        RobotsRules anyRules = RobotsRules.parse(ROBOTS_TXT, robotsTxt.getBytes(StandardCharsets.UTF_8), "SomeBot");
+        assertFalse(anyRules.isAllowed(uri("/public")));
+        assertTrue(anyRules.isAllowed(uri("/robots.txt")));
+        assertEquals(Duration.ofSeconds(10), anyRules.crawlDelay());
+
+        assertEquals(List.of(URI.create("https://example.com/sitemap.xml")), ownRules.sitemaps());
+        assertEquals(ownRules.sitemaps(), anyRules.sitemaps());
+    }
+
+    @Test
+    void emptyDisallowAllowsEverything() {
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow:
+                """);
+
+        assertEquals(0, rules.ruleCount());
+        assertTrue(rules.isAllowed(uri("/anything")));
+        assertNull(rules.crawlDelay());
+    }
+
+    private static RobotsRules parse(String robotsTxt) {
+        return RobotsRules.parse(ROBOTS_TXT, robotsTxt.getBytes(StandardCharsets.UTF_8), "LinkScraper");
+    }
+
+    private static URI uri(String pathAndQuery) {
+        return ROBOTS_TXT.resolve(pathAndQuery);
+    }
+}
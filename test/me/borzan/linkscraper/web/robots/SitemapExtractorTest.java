@@ -0,0 +1,77 @@
+package me.borzan.linkscraper.web.robots;
+
+import me.borzan.linkscraper.web.html.HtmlTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SitemapExtractorTest {
+    @Test
+    void locationsOfEveryUrlAreFound() {
+        List<String> pages = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+
+        extract("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9" xmlns:image="http://www.google.com/schemas/sitemap-image/1.1">
+                  <url>
+                    <loc>
+                      https://example.com/
+                    </loc>
+                    <lastmod>2024-01-01</lastmod>
+                  </url>
+                  <url>
+                    <loc>https://example.com/search?q=1&amp;page=2</loc>
+                    <image:image><image:loc>https://example.com/image.png</image:loc></image:image>
+                  </url>
+                  <loc>https://example.com/outside-of-any-url</loc>
+                </urlset>
+                """, pages, sitemaps, 7);
+
+        assertEquals(List.of("https://example.com/", "https://example.com/search?q=1&page=2"), pages);
+        assertEquals(List.of(), sitemaps);
+    }
+
+    @Test
+    void locationsOfASitemapIndexAreFurtherSitemaps() {
+        List<String> pages = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+
+        extract("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <sitemapindex xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                  <sitemap><loc>https://example.com/sitemap-1.xml.gz</loc></sitemap>
+                  <sitemap><loc>sitemap-2.xml</loc><lastmod>2024-01-01</lastmod></sitemap>
+                </sitemapindex>
+                """, pages, sitemaps, 1);
+
+        assertEquals(List.of(), pages);
+        assertEquals(List.of("https://example.com/sitemap-1.xml.gz", "sitemap-2.xml"), sitemaps);
+    }
+
+    @Test
+    void overlongLocationIsDropped() {
+        List<String> pages = new ArrayList<>();
+
+        extract("<urlset><url><loc>https://example.com/" + "a".repeat(5000) + "</loc></url>"
+                + "<url><loc>https://example.com/short</loc></url></urlset>", pages, new ArrayList<>(), 1000);
+
+        assertEquals(List.of("https://example.com/short"), pages);
+    }
+
+    /*
+     * Feeds the document in chunks of the given size, the way it arrives from the network.
+     */
+    private static void extract(String sitemap, List<String> pages, List<String> sitemaps, int chunkSize) {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new SitemapExtractor(pages::add, sitemaps::add), SitemapExtractor.TAG_NAMES);
+        byte[] bytes = sitemap.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            tokenizer.feed(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+        }
+        tokenizer.finish();
+    }
+}
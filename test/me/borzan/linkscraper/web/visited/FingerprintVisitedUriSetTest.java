@@ -0,0 +1,46 @@
+package me.borzan.linkscraper.web.visited;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintVisitedUriSetTest {
+    private static final int URIS = 10_000;
+
+    @Test
+    void setOnTheHeapGrowsByAddingTables() {
+        assertEveryUriVisitedOnce(new FingerprintVisitedUriSet(2, false));
+    }
+
+    @Test
+    void setOffTheHeapGrowsByAddingTables() {
+        assertEveryUriVisitedOnce(new FingerprintVisitedUriSet(2, true));
+    }
+
+    @Test
+    void urisOfTheSameIdentityAreVisitedOnce() {
+        FingerprintVisitedUriSet visitedUris = new FingerprintVisitedUriSet();
+
+        assertTrue(visitedUris.markVisited(URI.create("https://example.com/page")));
+        assertFalse(visitedUris.markVisited(URI.create("http://example.com/page/")));
+        assertEquals(1, visitedUris.size());
+    }
+
+    private static void assertEveryUriVisitedOnce(FingerprintVisitedUriSet visitedUris) {
+        for (int i = 0; i < URIS; i++) {
+            assertTrue(visitedUris.markVisited(URI.create("https://example.com/page/" + i)));
+        }
+        for (int i = 0; i < URIS; i++) {
+            assertFalse(visitedUris.markVisited(URI.create("https://example.com/page/" + i)));
+            assertTrue(visitedUris.contains(URI.create("https://example.com/page/" + i)));
+        }
+
+        assertFalse(visitedUris.contains(URI.create("https://example.com/page/" + URIS)));
+        assertEquals(URIS, visitedUris.size());
+        assertEquals(URIS, visitedUris.fingerprints().length);
+    }
+}